@@ -0,0 +1,405 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.apache.james.mime4j.util.MimeUtil;
+import org.apache.jsieve.exception.FeatureException;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.AsyncMailAdapter;
+import org.apache.jsieve.mail.HeaderIndex;
+import org.apache.jsieve.mail.HeaderIndexImpl;
+import org.apache.jsieve.mail.HeaderIndexProvider;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.mail.body.BodySearch;
+import org.apache.jsieve.parser.address.SieveAddressBuilder;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.parser.generated.address.ParseException;
+
+/**
+ * <p>
+ * Evaluates a parsed script against an {@link AsyncMailAdapter} without
+ * blocking. The parts of the mail which the script reads, as answered by
+ * {@link SieveFactory#analyze(Node)}, are fetched at once: the headers, the
+ * size and the searches of the body tests. The script is then evaluated
+ * against a snapshot of the parts which have arrived.
+ * </p>
+ * 
+ * <p>
+ * When a test reaches a part which the analysis did not name, such as the
+ * headers read by a test whose reads are unknown, its fetch is started and
+ * evaluation is suspended by a {@link SuspendedException}. Once the fetch
+ * completes, evaluation resumes on the thread which completed it by
+ * evaluating the script again against the larger snapshot. Each part is
+ * fetched at most once, so each evaluation is suspended at most once for each
+ * part read. Actions added by an evaluation which is suspended are discarded.
+ * </p>
+ * 
+ * <p>
+ * Since a resumed evaluation runs the script again, scripts whose analysis
+ * reports {@link ScriptAnalysis#hasSideEffects() side effects}, such as
+ * <code>log</code> or <code>vacation</code>, are refused with a
+ * {@link FeatureException} rather than risk acting twice.
+ * </p>
+ * 
+ * <p>
+ * An {@link AsyncMailAdapter} answers only case insensitive searches of the
+ * body, so scripts whose body tests need the source of the mail, such as
+ * <code>:is</code> and <code>:matches</code>, are refused with a
+ * {@link org.apache.jsieve.exception.FeatureException}.
+ * </p>
+ * 
+ * @see SieveFactory#evaluateAsync(AsyncMailAdapter, Node)
+ */
+final class AsyncEvaluation {
+
+    /**
+     * Suspends an evaluation until the given fetch completes.
+     */
+    @SuppressWarnings("serial")
+    static final class SuspendedException extends SieveMailException {
+
+        private final transient CompletableFuture<?> pending;
+
+        SuspendedException(final CompletableFuture<?> pending) {
+            super("Suspended until the mail has been read");
+            this.pending = pending;
+        }
+
+        CompletableFuture<?> getPending() {
+            return pending;
+        }
+    }
+
+    private final SieveFactory factory;
+
+    private final AsyncMailAdapter mail;
+
+    private final Node startNode;
+
+    private final CompletableFuture<List<Action>> result;
+
+    private final Map<String, CompletableFuture<List<String>>> headers;
+
+    private final Map<String, CompletableFuture<List<String>>> matchingHeaders;
+
+    private final Map<List<Object>, CompletableFuture<Boolean>> bodySearches;
+
+    private CompletableFuture<List<String>> headerNames;
+
+    private CompletableFuture<Integer> size;
+
+    private CompletableFuture<String> contentType;
+
+    AsyncEvaluation(final SieveFactory factory, final AsyncMailAdapter mail,
+            final Node startNode) {
+        super();
+        this.factory = factory;
+        this.mail = mail;
+        this.startNode = startNode;
+        this.result = new CompletableFuture<List<Action>>();
+        this.headers = new ConcurrentHashMap<String, CompletableFuture<List<String>>>();
+        this.matchingHeaders = new ConcurrentHashMap<String, CompletableFuture<List<String>>>();
+        this.bodySearches = new ConcurrentHashMap<List<Object>, CompletableFuture<Boolean>>();
+    }
+
+    /**
+     * Starts fetching the parts of the mail read by the script, and evaluates
+     * the script once they have arrived.
+     * 
+     * @return future Actions in the order they were added, including any
+     *         implicit Keep. Completed exceptionally when evaluation fails
+     */
+    CompletableFuture<List<Action>> start() {
+        final ScriptAnalysis analysis;
+        try {
+            analysis = factory.analyze(startNode);
+        } catch (SieveException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (analysis.hasSideEffects()) {
+            result.completeExceptionally(new FeatureException(
+                    "Scripts with side effects cannot be evaluated asynchronously."));
+            return result;
+        }
+        final List<CompletableFuture<?>> fetches = new ArrayList<CompletableFuture<?>>();
+        for (final String name : analysis.getHeaderNames()) {
+            fetches.add(matchingHeader(name));
+        }
+        if (analysis.isAnyHeaderRead()) {
+            fetches.add(headerNames().thenCompose(
+                    new Function<List<String>, CompletableFuture<Void>>() {
+                        public CompletableFuture<Void> apply(List<String> names) {
+                            return matchingHeaders(names);
+                        }
+                    }));
+        }
+        if (analysis.isSizeRead()) {
+            fetches.add(size());
+        }
+        for (final ScriptAnalysis.BodyKeys keys : analysis.getBodySearches()) {
+            fetches.add(bodySearch(keys.getTransformation(), keys
+                    .getContentTypes(), keys.getKeys()));
+        }
+        resumeAfter(CompletableFuture.allOf(fetches
+                .toArray(new CompletableFuture<?>[fetches.size()])));
+        return result;
+    }
+
+    /**
+     * Evaluates the script once the given fetch has completed, successfully
+     * or not. A failed fetch is reported when a test reads it.
+     */
+    private void resumeAfter(final CompletableFuture<?> pending) {
+        pending.whenComplete(new BiConsumer<Object, Throwable>() {
+            public void accept(Object value, Throwable failure) {
+                evaluate();
+            }
+        });
+    }
+
+    private void evaluate() {
+        final Snapshot snapshot = new Snapshot();
+        try {
+            factory.evaluate(snapshot, startNode);
+            result.complete(snapshot.getActions());
+        } catch (SuspendedException e) {
+            resumeAfter(e.getPending());
+        } catch (SieveException e) {
+            result.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<List<String>> header(final String name) {
+        CompletableFuture<List<String>> future = headers.get(name);
+        if (future == null) {
+            future = mail.getHeader(name);
+            final CompletableFuture<List<String>> fetched = headers
+                    .putIfAbsent(name, future);
+            if (fetched != null) {
+                future = fetched;
+            }
+        }
+        return future;
+    }
+
+    private CompletableFuture<List<String>> matchingHeader(final String name) {
+        final String key = HeaderIndexImpl.normalize(name);
+        CompletableFuture<List<String>> future = matchingHeaders.get(key);
+        if (future == null) {
+            future = mail.getMatchingHeader(key);
+            final CompletableFuture<List<String>> fetched = matchingHeaders
+                    .putIfAbsent(key, future);
+            if (fetched != null) {
+                future = fetched;
+            }
+        }
+        return future;
+    }
+
+    private CompletableFuture<Void> matchingHeaders(final List<String> names) {
+        final List<CompletableFuture<List<String>>> fetches = new ArrayList<CompletableFuture<List<String>>>(
+                names.size());
+        for (final String name : names) {
+            fetches.add(matchingHeader(name));
+        }
+        return CompletableFuture.allOf(fetches
+                .toArray(new CompletableFuture<?>[fetches.size()]));
+    }
+
+    private synchronized CompletableFuture<List<String>> headerNames() {
+        if (headerNames == null) {
+            headerNames = mail.getHeaderNames();
+        }
+        return headerNames;
+    }
+
+    private synchronized CompletableFuture<Integer> size() {
+        if (size == null) {
+            size = mail.getSize();
+        }
+        return size;
+    }
+
+    private synchronized CompletableFuture<String> contentType() {
+        if (contentType == null) {
+            contentType = mail.getContentType();
+        }
+        return contentType;
+    }
+
+    private CompletableFuture<Boolean> bodySearch(final String transformation,
+            final List<String> contentTypes, final List<String> phrases) {
+        final List<Object> key = Arrays.<Object> asList(transformation,
+                contentTypes, phrases);
+        CompletableFuture<Boolean> future = bodySearches.get(key);
+        if (future == null) {
+            if (BodySearch.RAW.equals(transformation)) {
+                future = mail.isInBodyRaw(phrases);
+            } else if (BodySearch.CONTENT.equals(transformation)) {
+                future = mail.isInBodyContent(contentTypes, phrases);
+            } else {
+                future = mail.isInBodyText(phrases);
+            }
+            final CompletableFuture<Boolean> fetched = bodySearches
+                    .putIfAbsent(key, future);
+            if (fetched != null) {
+                future = fetched;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Answers the value of a completed fetch, or suspends evaluation until it
+     * completes.
+     */
+    private static <T> T valueOf(final CompletableFuture<T> future)
+            throws SieveMailException {
+        if (!future.isDone()) {
+            throw new SuspendedException(future);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SieveMailException) {
+                throw (SieveMailException) e.getCause();
+            }
+            throw new SieveMailException(e.getCause());
+        } catch (CancellationException e) {
+            throw new SieveMailException(e);
+        }
+    }
+
+    /**
+     * The parts of the mail which have arrived, read by one evaluation.
+     */
+    private final class Snapshot implements MailAdapter, HeaderIndexProvider {
+
+        private final List<Action> actions = new ArrayList<Action>();
+
+        public void setContext(SieveContext context) {
+        }
+
+        public List<Action> getActions() {
+            return Collections.unmodifiableList(actions);
+        }
+
+        public void addAction(Action action) {
+            actions.add(action);
+        }
+
+        public void executeActions() {
+        }
+
+        public List<String> getHeader(String name) throws SieveMailException {
+            return valueOf(header(name));
+        }
+
+        public List<String> getMatchingHeader(String name)
+                throws SieveMailException {
+            return valueOf(matchingHeader(name));
+        }
+
+        public List<String> getHeaderNames() throws SieveMailException {
+            return valueOf(headerNames());
+        }
+
+        /**
+         * Answers an index which fetches only the headers read through it.
+         */
+        public HeaderIndex getHeaderIndex() {
+            return new HeaderIndex() {
+                public List<String> getMatchingHeader(String name)
+                        throws SieveMailException {
+                    return valueOf(matchingHeader(name));
+                }
+
+                public Set<String> getHeaderNames() throws SieveMailException {
+                    final Set<String> names = new HashSet<String>();
+                    for (final String name : valueOf(headerNames())) {
+                        names.add(HeaderIndexImpl.normalize(name));
+                    }
+                    return Collections.unmodifiableSet(names);
+                }
+            };
+        }
+
+        public int getSize() throws SieveMailException {
+            return valueOf(size()).intValue();
+        }
+
+        public String getContentType() throws SieveMailException {
+            return valueOf(contentType());
+        }
+
+        public boolean isInBodyText(List<String> phrasesCaseInsensitive)
+                throws SieveMailException {
+            return valueOf(
+                    bodySearch(BodySearch.TEXT, Collections.<String> emptyList(),
+                            phrasesCaseInsensitive)).booleanValue();
+        }
+
+        public boolean isInBodyRaw(List<String> phrasesCaseInsensitive)
+                throws SieveMailException {
+            return valueOf(
+                    bodySearch(BodySearch.RAW, Collections.<String> emptyList(),
+                            phrasesCaseInsensitive)).booleanValue();
+        }
+
+        public boolean isInBodyContent(List<String> contentTypes,
+                List<String> phrasesCaseInsensitive) throws SieveMailException {
+            return valueOf(
+                    bodySearch(BodySearch.CONTENT, contentTypes,
+                            phrasesCaseInsensitive)).booleanValue();
+        }
+
+        public Address[] parseAddresses(String headerName)
+                throws SieveMailException {
+            try {
+                final SieveAddressBuilder builder = new SieveAddressBuilder();
+                for (final String value : getMatchingHeader(headerName)) {
+                    builder.addAddresses(MimeUtil.unscrambleHeaderValue(value));
+                }
+                return builder.getAddresses();
+            } catch (ParseException e) {
+                throw new SieveMailException(e);
+            }
+        }
+    }
+}
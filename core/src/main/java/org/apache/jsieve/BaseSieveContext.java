@@ -19,6 +19,10 @@
 
 package org.apache.jsieve;
 
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.jsieve.mail.MessageCache;
+
 /**
  * Bean based implementation of context.
  */
@@ -36,6 +40,10 @@ public class BaseSieveContext extends SieveContext {
 
     private final TestManager testManager;
 
+    private MessageCache messageCache;
+
+    private ForkJoinPool testPool;
+
     public BaseSieveContext(final CommandManager commandManager,
                             final ComparatorManager comparatorManager,
                             final TestManager testManager) {
@@ -113,4 +121,39 @@ public class BaseSieveContext extends SieveContext {
     public TestManager getTestManager() {
         return testManager;
     }
+
+    /**
+     * @see SieveContext#getMessageCache()
+     */
+    @Override
+    public MessageCache getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * Sets the views of the mail cached for the current evaluation.
+     *
+     * @param messageCache <code>MessageCache</code>, possibly null
+     */
+    public void setMessageCache(MessageCache messageCache) {
+        this.messageCache = messageCache;
+    }
+
+    /**
+     * @see SieveContext#getTestPool()
+     */
+    @Override
+    public ForkJoinPool getTestPool() {
+        return testPool;
+    }
+
+    /**
+     * Sets the pool on which expensive operands of <code>anyof</code> and
+     * <code>allof</code> may be evaluated concurrently.
+     *
+     * @param testPool <code>ForkJoinPool</code>, or null to evaluate tests serially
+     */
+    public void setTestPool(ForkJoinPool testPool) {
+        this.testPool = testPool;
+    }
 }
@@ -0,0 +1,115 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jsieve.exception.FeatureException;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.tests.ExecutableTest;
+import org.apache.jsieve.tests.optional.Body;
+
+/**
+ * <p>
+ * Registers the values of every body test in a script with the
+ * {@link org.apache.jsieve.mail.body.BodySearch} of the evaluation before the
+ * script is executed. Body tests sharing a transformation are then answered
+ * by a single pass over the mail, made when the first of them is executed.
+ * </p>
+ * 
+ * <p>
+ * Tests whose arguments are not valid are skipped here; they fail as before
+ * if and when they are executed. Tests which the mail cannot answer, as
+ * reported by a {@link FeatureException}, fail the evaluation here, before any
+ * command has been executed.
+ * </p>
+ */
+final class BodySearchPlanner {
+
+    private final SieveContext context;
+
+    private final MessageCache cache;
+
+    /** Whether each test name is mapped to a body test */
+    private final Map<String, Boolean> bodyTests = new HashMap<String, Boolean>();
+
+    /**
+     * Constructs a planner.
+     * 
+     * @param context
+     *            <code>SieveContext</code> supplying the managers, not null
+     * @param cache
+     *            cache for the evaluation, not null
+     */
+    BodySearchPlanner(final SieveContext context, final MessageCache cache) {
+        super();
+        this.context = context;
+        this.cache = cache;
+    }
+
+    /**
+     * Registers the body tests in the given commands and their blocks.
+     * 
+     * @param commands
+     *            not null
+     * @throws FeatureException
+     *             when a body test cannot be answered for the mail
+     */
+    void plan(Commands commands) throws FeatureException {
+        for (final Command command : commands.getChildren()) {
+            tests(command.getArguments());
+            final Block block = command.getBlock();
+            if (block != null) {
+                plan(block.getChildren());
+            }
+        }
+    }
+
+    private void tests(Arguments arguments) throws FeatureException {
+        if (arguments != null && arguments.getTestList() != null) {
+            for (final Test test : arguments.getTestList().getTests()) {
+                test(test);
+            }
+        }
+    }
+
+    private void test(Test test) throws FeatureException {
+        try {
+            Boolean isBody = bodyTests.get(test.getName());
+            if (isBody == null) {
+                final ExecutableTest executable = context.getTestManager()
+                        .getTest(test.getName());
+                isBody = Boolean.valueOf(executable instanceof Body);
+                bodyTests.put(test.getName(), isBody);
+            }
+            if (isBody.booleanValue() && test.getArguments() != null) {
+                ((Body) context.getTestManager().getTest(test.getName()))
+                        .registerSearch(test.getArguments(), context, cache);
+            }
+        } catch (FeatureException e) {
+            throw e;
+        } catch (SieveException e) {
+            // Reported when the test is executed
+        }
+        tests(test.getArguments());
+    }
+}
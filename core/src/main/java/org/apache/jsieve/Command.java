@@ -152,6 +152,10 @@ public class Command implements Executable {
         // recursively from the top level block
         // so need to use the coordinate recorded from the parse
         context.setCoordinate(coordinate);
+        final EvaluationBudget budget = context.getBudget();
+        if (budget != null) {
+            budget.chargeStep();
+        }
         final ExecutableCommand executable = context.getCommandManager().getCommand(getName());
         return executable.execute(mail, getArguments(),getBlock(), context);
     }
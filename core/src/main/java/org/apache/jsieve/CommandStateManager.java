@@ -50,6 +50,11 @@ public class CommandStateManager {
      */
     private boolean vacationProcessed = false;
 
+    /**
+     * The evaluated script has executed a Stop Command
+     */
+    private boolean stopped = false;
+
     /**
      * Constructor for CommandStateManager.
      */
@@ -66,6 +71,16 @@ public class CommandStateManager {
         setRejected(false);
         setHasActions(false);
         setImplicitKeep(true);
+        setStopped(false);
+    }
+
+    /**
+     * Resets the receiver to the state of a new evaluation, so that it may be
+     * reused.
+     */
+    public void reset() {
+        initialize();
+        setVacationProcessed(false);
     }
 
     /**
@@ -160,4 +175,23 @@ public class CommandStateManager {
     public void setVacationProcessed(boolean vacationProcessed) {
         this.vacationProcessed = vacationProcessed;
     }
+
+    /**
+     * Has the evaluated script executed a Stop Command? No further commands
+     * are then executed.
+     * 
+     * @return boolean
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Sets whether the evaluated script has executed a Stop Command.
+     * 
+     * @param stopped
+     */
+    public void setStopped(boolean stopped) {
+        this.stopped = stopped;
+    }
 }
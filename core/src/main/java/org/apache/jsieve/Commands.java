@@ -79,6 +79,9 @@ public class Commands implements Executable {
             throws SieveException {
         for (Command command : fieldChildren) {
             command.execute(mail, context);
+            if (context.getCommandStateManager().isStopped()) {
+                break;
+            }
         }
         return null;
     }
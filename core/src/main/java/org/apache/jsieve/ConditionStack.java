@@ -0,0 +1,148 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+/**
+ * <p>
+ * A {@link ConditionManager} holding the state of every enclosing block, one
+ * level for each block depth, in primitive arrays. Conditional commands
+ * executing a block {@link #push()} a level on entry and {@link #pop()} it on
+ * exit instead of switching to a new manager, so an evaluation needs no
+ * allocation once the arrays are as deep as its deepest block.
+ * </p>
+ * 
+ * <p>
+ * Instances are not thread safe: each belongs to a single evaluation at a
+ * time, and may be {@link #reset()} and reused for the next.
+ * </p>
+ * 
+ * @see org.apache.jsieve.commands.AbstractConditionalCommand
+ */
+public class ConditionStack extends ConditionManager {
+
+    private static final int INITIAL_DEPTH = 8;
+
+    private boolean[] elseAllowed;
+
+    private boolean[] testResults;
+
+    private int depth;
+
+    /**
+     * Constructor for ConditionStack.
+     */
+    public ConditionStack() {
+        super();
+    }
+
+    /**
+     * Enters a block, whose conditions are initially those of a new
+     * {@link ConditionManager}.
+     */
+    public void push() {
+        depth++;
+        initialize();
+    }
+
+    /**
+     * Leaves a block, restoring the conditions of the enclosing one.
+     * 
+     * @throws IllegalStateException
+     *             when no block has been entered
+     */
+    public void pop() {
+        if (depth == 0) {
+            throw new IllegalStateException("No block has been entered");
+        }
+        depth--;
+    }
+
+    /**
+     * Leaves every block and initializes the conditions of the outermost.
+     */
+    public void reset() {
+        depth = 0;
+        initialize();
+    }
+
+    /**
+     * Gets the number of blocks entered.
+     * 
+     * @return depth, zero outside every block
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @see ConditionManager#isElseAllowed()
+     */
+    @Override
+    public boolean isElseAllowed() {
+        return elseAllowed[depth];
+    }
+
+    /**
+     * @see ConditionManager#setElseAllowed(boolean)
+     */
+    @Override
+    protected void setElseAllowed(boolean allowed) {
+        ensureCapacity();
+        elseAllowed[depth] = allowed;
+    }
+
+    /**
+     * @see ConditionManager#isTestResult()
+     */
+    @Override
+    protected boolean isTestResult() {
+        return testResults[depth];
+    }
+
+    /**
+     * @see ConditionManager#setTestResult(boolean)
+     */
+    @Override
+    protected void setTestResult(boolean testResult) {
+        ensureCapacity();
+        testResults[depth] = testResult;
+    }
+
+    /**
+     * Grows the arrays to hold the current depth. They are first allocated
+     * while the superclass is constructed.
+     */
+    private void ensureCapacity() {
+        if (elseAllowed == null) {
+            elseAllowed = new boolean[INITIAL_DEPTH];
+            testResults = new boolean[INITIAL_DEPTH];
+        } else if (depth >= elseAllowed.length) {
+            final int length = Math.max(depth + 1, elseAllowed.length * 2);
+            final boolean[] grownElseAllowed = new boolean[length];
+            final boolean[] grownTestResults = new boolean[length];
+            System.arraycopy(elseAllowed, 0, grownElseAllowed, 0,
+                    elseAllowed.length);
+            System.arraycopy(testResults, 0, grownTestResults, 0,
+                    testResults.length);
+            elseAllowed = grownElseAllowed;
+            testResults = grownTestResults;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.parser.generated.Node;
+
+/**
+ * <p>
+ * Remembers the actions answered by evaluations of scripts, so that a script
+ * evaluated again for a mail which it cannot distinguish from an earlier one
+ * answers the same actions without being evaluated. This suits mail sent in
+ * bulk, where many nearly identical mails reach the same recipient.
+ * </p>
+ * 
+ * <p>
+ * Decisions are keyed by the identifier of the script and a fingerprint of
+ * exactly the inputs which the script reads, as reported by its
+ * {@link ScriptAnalysis}: the values of the headers it names and, when it
+ * tests the size, how the size compares with each of its limits. Scripts
+ * which may read any header, the body or the envelope, and those with side
+ * effects such as <code>vacation</code> and <code>log</code>, bypass the
+ * cache and are always evaluated.
+ * </p>
+ * 
+ * <p>
+ * The cache holds at most a given number of decisions, discarding the least
+ * recently used. Identifiers must identify the content of a script: a script
+ * which is changed should be given a new identifier. Counts of hits, misses
+ * and bypasses are kept to judge its effect.
+ * </p>
+ * 
+ * <p>
+ * Instances are thread safe.
+ * </p>
+ * 
+ * @see SieveFactory#evaluate(org.apache.jsieve.mail.MailAdapter, Node,
+ *      DecisionCache, Object)
+ */
+public class DecisionCache {
+
+    private final Map<List<Object>, List<Action>> decisions;
+
+    private final Map<Node, ScriptAnalysis> analyses = new WeakHashMap<Node, ScriptAnalysis>();
+
+    private long hits;
+
+    private long misses;
+
+    private long bypasses;
+
+    /**
+     * Constructs a cache.
+     * 
+     * @param maximumSize
+     *            greatest number of decisions held, at least one
+     */
+    public DecisionCache(final int maximumSize) {
+        super();
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.decisions = new LinkedHashMap<List<Object>, List<Action>>(16,
+                0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<List<Object>, List<Action>> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the number of evaluations answered by the cache.
+     * 
+     * @return number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of evaluations which could have been answered by the
+     * cache but were not.
+     * 
+     * @return number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of evaluations of scripts which bypass the cache.
+     * 
+     * @return number of bypasses
+     */
+    public synchronized long getBypasses() {
+        return bypasses;
+    }
+
+    /**
+     * Gets the proportion of evaluations answered by the cache, including
+     * those which bypassed it.
+     * 
+     * @return hits divided by all evaluations, or zero when there have been
+     *         none
+     */
+    public synchronized double getHitRate() {
+        final long total = hits + misses + bypasses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Gets the number of decisions held.
+     * 
+     * @return number of decisions
+     */
+    public synchronized int size() {
+        return decisions.size();
+    }
+
+    /**
+     * Discards every decision and resets the counts.
+     */
+    public synchronized void clear() {
+        decisions.clear();
+        analyses.clear();
+        hits = 0;
+        misses = 0;
+        bypasses = 0;
+    }
+
+    /**
+     * Answers the analysis of a script, analyzing it the first time.
+     */
+    ScriptAnalysis getAnalysis(final Node startNode, final SieveFactory factory)
+            throws SieveException {
+        synchronized (this) {
+            final ScriptAnalysis analysis = analyses.get(startNode);
+            if (analysis != null) {
+                return analysis;
+            }
+        }
+        final ScriptAnalysis analysis = factory.analyze(startNode);
+        synchronized (this) {
+            analyses.put(startNode, analysis);
+        }
+        return analysis;
+    }
+
+    /**
+     * Answers the key of the decision of a script for the mail held by the
+     * given cache, or null when the script bypasses the cache.
+     */
+    List<Object> getKey(final Object scriptId, final ScriptAnalysis analysis,
+            final MessageCache cache) throws SieveException {
+        if (analysis.isAnyHeaderRead() || analysis.isBodyRead()
+                || analysis.isEnvelopeRead() || analysis.hasSideEffects()) {
+            synchronized (this) {
+                bypasses++;
+            }
+            return null;
+        }
+        final List<Object> key = new ArrayList<Object>(analysis
+                .getHeaderNames().size() + 2);
+        key.add(scriptId);
+        for (final String name : analysis.getHeaderNames()) {
+            key.add(cache.getMatchingHeader(name));
+        }
+        if (analysis.isSizeRead()) {
+            final int size = cache.getMail().getSize();
+            final List<Integer> sizeClass = new ArrayList<Integer>();
+            if (analysis.getSizeLimits() == null) {
+                sizeClass.add(Integer.valueOf(size));
+            } else {
+                for (final Integer limit : analysis.getSizeLimits()) {
+                    sizeClass.add(Integer.valueOf(Integer.signum(Integer
+                            .compare(size, limit.intValue()))));
+                }
+            }
+            key.add(sizeClass);
+        }
+        return key;
+    }
+
+    /**
+     * Answers the decision held for the given key, counting a hit or a miss.
+     */
+    synchronized List<Action> get(final List<Object> key) {
+        final List<Action> actions = decisions.get(key);
+        if (actions == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return actions;
+    }
+
+    /**
+     * Holds the decision for the given key.
+     */
+    synchronized void put(final List<Object> key, final List<Action> actions) {
+        decisions.put(key, Collections
+                .unmodifiableList(new ArrayList<Action>(actions)));
+    }
+}
@@ -0,0 +1,254 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import org.apache.jsieve.EvaluationLimits.Resource;
+import org.apache.jsieve.exception.BudgetExceededException;
+
+/**
+ * <p>
+ * The resources used so far by one evaluation, checked against its
+ * {@link EvaluationLimits}. Commands, tests and comparators charge the
+ * budget of their context, when it has one, as they work.
+ * </p>
+ * 
+ * <p>
+ * Instances are not thread safe. An operand of a test list evaluated on
+ * another thread charges a budget {@link #fork(SieveContext) forked} from
+ * that of the evaluation. Its charges are {@link #merge(EvaluationBudget)
+ * merged} back only when its result is considered, so an evaluation is
+ * charged for the same operands as when they are evaluated serially.
+ * </p>
+ * 
+ * @see SieveContext#getBudget()
+ */
+public final class EvaluationBudget {
+
+    private final SieveContext context;
+
+    private long maxSteps;
+
+    private long maxComparisons;
+
+    private long maxScannedBytes;
+
+    private long maxElapsedNanos;
+
+    private long started;
+
+    private long steps;
+
+    private long comparisons;
+
+    private long scannedBytes;
+
+    private long forkedSteps;
+
+    private long forkedComparisons;
+
+    private long forkedScannedBytes;
+
+    /**
+     * Constructs a budget for evaluations in the given context.
+     * 
+     * @param context
+     *            <code>SieveContext</code> whose coordinate is reported when
+     *            a limit is exceeded, not null
+     */
+    EvaluationBudget(final SieveContext context) {
+        super();
+        this.context = context;
+    }
+
+    /**
+     * Starts a new evaluation within the given limits.
+     * 
+     * @param limits
+     *            <code>EvaluationLimits</code>, not null
+     */
+    void reset(final EvaluationLimits limits) {
+        maxSteps = limitOf(limits.getMaxSteps());
+        maxComparisons = limitOf(limits.getMaxComparisons());
+        maxScannedBytes = limitOf(limits.getMaxScannedBytes());
+        maxElapsedNanos = limitOf(limits.getMaxElapsedNanos());
+        started = System.nanoTime();
+        steps = 0;
+        comparisons = 0;
+        scannedBytes = 0;
+        forkedSteps = 0;
+        forkedComparisons = 0;
+        forkedScannedBytes = 0;
+    }
+
+    /**
+     * Answers a budget for an operand evaluated on another thread. It starts
+     * from the charges made so far and shares the limits and start time of
+     * this budget.
+     * 
+     * @param operandContext
+     *            context of the operand, supplying the position reported when
+     *            the budget is exceeded, not null
+     * @return <code>EvaluationBudget</code>, not null
+     */
+    EvaluationBudget fork(final SieveContext operandContext) {
+        final EvaluationBudget fork = new EvaluationBudget(operandContext);
+        fork.maxSteps = maxSteps;
+        fork.maxComparisons = maxComparisons;
+        fork.maxScannedBytes = maxScannedBytes;
+        fork.maxElapsedNanos = maxElapsedNanos;
+        fork.started = started;
+        fork.steps = fork.forkedSteps = steps;
+        fork.comparisons = fork.forkedComparisons = comparisons;
+        fork.scannedBytes = fork.forkedScannedBytes = scannedBytes;
+        return fork;
+    }
+
+    /**
+     * Charges this budget with the charges made to a budget forked from it.
+     * 
+     * @param fork
+     *            budget answered by {@link #fork(SieveContext)}, no longer
+     *            charged, not null
+     * @throws BudgetExceededException
+     *             when the charges exceed any limit
+     */
+    void merge(final EvaluationBudget fork) throws BudgetExceededException {
+        steps += fork.steps - fork.forkedSteps;
+        comparisons += fork.comparisons - fork.forkedComparisons;
+        scannedBytes += fork.scannedBytes - fork.forkedScannedBytes;
+        checkSteps();
+        checkComparisons();
+        checkScannedBytes();
+        checkElapsed();
+    }
+
+    /**
+     * Charges the execution of a command or test.
+     * 
+     * @throws BudgetExceededException
+     *             when too many steps have been executed, or too much time
+     *             has elapsed
+     */
+    public void chargeStep() throws BudgetExceededException {
+        steps++;
+        checkSteps();
+        checkElapsed();
+    }
+
+    /**
+     * Charges a comparison of a value with a key.
+     * 
+     * @param length
+     *            length of the value compared
+     * @throws BudgetExceededException
+     *             when too many comparisons have been made, too many bytes
+     *             scanned, or too much time has elapsed
+     */
+    public void chargeComparison(final int length)
+            throws BudgetExceededException {
+        comparisons++;
+        checkComparisons();
+        chargeScannedBytes(length);
+    }
+
+    /**
+     * Charges bytes scanned.
+     * 
+     * @param length
+     *            number of bytes
+     * @throws BudgetExceededException
+     *             when too many bytes have been scanned, or too much time has
+     *             elapsed
+     */
+    public void chargeScannedBytes(final long length)
+            throws BudgetExceededException {
+        scannedBytes += length;
+        checkScannedBytes();
+        checkElapsed();
+    }
+
+    /**
+     * Gets the number of commands and tests executed.
+     * 
+     * @return number of steps
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Gets the number of comparisons made.
+     * 
+     * @return number of comparisons
+     */
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    /**
+     * Gets the number of bytes scanned.
+     * 
+     * @return number of bytes
+     */
+    public long getScannedBytes() {
+        return scannedBytes;
+    }
+
+    private void checkSteps() throws BudgetExceededException {
+        if (steps > maxSteps) {
+            throw exceeded(Resource.STEPS, "Evaluation exceeded "
+                    + maxSteps + " commands and tests.");
+        }
+    }
+
+    private void checkComparisons() throws BudgetExceededException {
+        if (comparisons > maxComparisons) {
+            throw exceeded(Resource.COMPARISONS, "Evaluation exceeded "
+                    + maxComparisons + " comparisons.");
+        }
+    }
+
+    private void checkScannedBytes() throws BudgetExceededException {
+        if (scannedBytes > maxScannedBytes) {
+            throw exceeded(Resource.SCANNED_BYTES, "Evaluation exceeded "
+                    + maxScannedBytes + " scanned bytes.");
+        }
+    }
+
+    private void checkElapsed() throws BudgetExceededException {
+        if (maxElapsedNanos != Long.MAX_VALUE
+                && System.nanoTime() - started > maxElapsedNanos) {
+            throw exceeded(Resource.ELAPSED_TIME, "Evaluation exceeded "
+                    + maxElapsedNanos + " nanoseconds.");
+        }
+    }
+
+    private BudgetExceededException exceeded(final Resource resource,
+            final String message) {
+        final ScriptCoordinate coordinate = context.getCoordinate();
+        return new BudgetExceededException(coordinate == null ? message
+                : coordinate.addStartLineAndColumn(message), resource,
+                coordinate);
+    }
+
+    private static long limitOf(final long limit) {
+        return limit > 0 ? limit : Long.MAX_VALUE;
+    }
+}
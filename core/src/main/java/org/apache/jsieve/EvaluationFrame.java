@@ -0,0 +1,170 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.jsieve.mail.ActionCollector;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.parser.generated.SieveParserVisitor;
+
+/**
+ * <p>
+ * The state of one evaluation: the context, with its command state and a
+ * {@link ConditionStack}, and the visitor which evaluates the parsed
+ * script. A {@link SieveFactory} keeps a frame for each thread and resets it
+ * for each evaluation, rather than allocating the state afresh.
+ * </p>
+ * 
+ * <p>
+ * A frame is used by one evaluation at a time. An evaluation started while
+ * the frame of its thread is in use, for example by an adapter executing
+ * actions, is given a frame of its own.
+ * </p>
+ */
+final class EvaluationFrame extends BaseSieveContext {
+
+    private final ConditionStack conditions;
+
+    private final SieveParserVisitor visitor;
+
+    private final EvaluationBudget budget;
+
+    private final ActionCollector actions;
+
+    private final List<String> warnings;
+
+    private boolean limited;
+
+    private boolean inUse;
+
+    EvaluationFrame(final CommandManager commandManager,
+            final ComparatorManager comparatorManager,
+            final TestManager testManager) {
+        super(commandManager, comparatorManager, testManager);
+        this.conditions = new ConditionStack();
+        this.visitor = new SieveParserVisitorImpl(this);
+        this.budget = new EvaluationBudget(this);
+        this.actions = new ActionCollector();
+        this.warnings = new ArrayList<String>();
+        setConditionManager(conditions);
+    }
+
+    /**
+     * Gets the visitor evaluating parsed scripts in this frame.
+     * 
+     * @return <code>SieveParserVisitor</code>, not null
+     */
+    SieveParserVisitor getVisitor() {
+        return visitor;
+    }
+
+    /**
+     * Gets the budget of the evaluation, when it is limited.
+     * 
+     * @return <code>EvaluationBudget</code>, or null when the evaluation is
+     *         not limited
+     */
+    public EvaluationBudget getBudget() {
+        return limited ? budget : null;
+    }
+
+    /**
+     * Gets the collector of the actions of the evaluation.
+     * 
+     * @return <code>ActionCollector</code>, not null
+     */
+    public ActionCollector getActionCollector() {
+        return actions;
+    }
+
+    /**
+     * Records a warning about the evaluation.
+     * 
+     * @param warning
+     *            message, not null
+     */
+    public void addWarning(String warning) {
+        warnings.add(warning);
+    }
+
+    /**
+     * Gets the warnings recorded by the evaluation.
+     * 
+     * @return <code>List</code> of messages, not null
+     */
+    List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Is the frame used by an evaluation?
+     * 
+     * @return true between {@link #acquire(MailAdapter, MessageCache, ForkJoinPool, EvaluationLimits)} and
+     *         {@link #release()}
+     */
+    boolean isInUse() {
+        return inUse;
+    }
+
+    /**
+     * Resets the frame for a new evaluation.
+     * 
+     * @param mail
+     *            mail to which the actions of the evaluation are added, not
+     *            null
+     * @param cache
+     *            views of the mail evaluated, not null
+     * @param testPool
+     *            pool for concurrent tests, possibly null
+     * @param limits
+     *            limits of the evaluation, or null when it is not limited
+     */
+    void acquire(final MailAdapter mail, final MessageCache cache,
+            final ForkJoinPool testPool, final EvaluationLimits limits) {
+        inUse = true;
+        getCommandStateManager().reset();
+        conditions.reset();
+        setConditionManager(conditions);
+        setMessageCache(cache);
+        setTestPool(testPool);
+        actions.reset(mail);
+        warnings.clear();
+        limited = limits != null;
+        if (limited) {
+            budget.reset(limits);
+        }
+    }
+
+    /**
+     * Ends the evaluation, releasing the mail it read.
+     */
+    void release() {
+        setMessageCache(null);
+        setTestPool(null);
+        actions.reset(null);
+        warnings.clear();
+        limited = false;
+        inUse = false;
+    }
+}
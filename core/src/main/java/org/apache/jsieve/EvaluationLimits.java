@@ -0,0 +1,157 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Limits on the resources one evaluation of a script may use, so that a
+ * hostile or mistaken script cannot stall the thread delivering a mail.
+ * Evaluation ends with a
+ * {@link org.apache.jsieve.exception.BudgetExceededException} as soon as any
+ * limit is exceeded. Each limit which is zero or negative, as by default, is
+ * not enforced.
+ * </p>
+ * 
+ * <ul>
+ * <li>Steps: commands and tests executed</li>
+ * <li>Comparisons: values compared with keys by comparators</li>
+ * <li>Scanned bytes: the lengths of the values compared, and the size of the
+ * mail for each pass made over its body. Body tests which share a search are
+ * charged once for their common pass</li>
+ * <li>Elapsed time: from the start of evaluation, checked at each step and
+ * comparison</li>
+ * </ul>
+ * 
+ * <p>
+ * Limits are read when each evaluation starts.
+ * </p>
+ * 
+ * @see SieveFactory#setEvaluationLimits(EvaluationLimits)
+ */
+public class EvaluationLimits {
+
+    /**
+     * The resources limited.
+     */
+    public enum Resource {
+        STEPS, COMPARISONS, SCANNED_BYTES, ELAPSED_TIME
+    }
+
+    private long maxSteps;
+
+    private long maxComparisons;
+
+    private long maxScannedBytes;
+
+    private long maxElapsedNanos;
+
+    /**
+     * Constructs limits which enforce nothing.
+     */
+    public EvaluationLimits() {
+        super();
+    }
+
+    /**
+     * Gets the greatest number of commands and tests executed.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Sets the greatest number of commands and tests executed.
+     * 
+     * @param maxSteps
+     *            limit, not enforced when not positive
+     */
+    public void setMaxSteps(long maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Gets the greatest number of comparisons made.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public long getMaxComparisons() {
+        return maxComparisons;
+    }
+
+    /**
+     * Sets the greatest number of comparisons made.
+     * 
+     * @param maxComparisons
+     *            limit, not enforced when not positive
+     */
+    public void setMaxComparisons(long maxComparisons) {
+        this.maxComparisons = maxComparisons;
+    }
+
+    /**
+     * Gets the greatest number of bytes scanned.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public long getMaxScannedBytes() {
+        return maxScannedBytes;
+    }
+
+    /**
+     * Sets the greatest number of bytes scanned.
+     * 
+     * @param maxScannedBytes
+     *            limit, not enforced when not positive
+     */
+    public void setMaxScannedBytes(long maxScannedBytes) {
+        this.maxScannedBytes = maxScannedBytes;
+    }
+
+    /**
+     * Gets the longest time an evaluation may take.
+     * 
+     * @return nanoseconds, not enforced when not positive
+     */
+    public long getMaxElapsedNanos() {
+        return maxElapsedNanos;
+    }
+
+    /**
+     * Sets the longest time an evaluation may take.
+     * 
+     * @param maxElapsedTime
+     *            limit, not enforced when not positive
+     * @param unit
+     *            <code>TimeUnit</code> of the limit, not null
+     */
+    public void setMaxElapsedTime(long maxElapsedTime, TimeUnit unit) {
+        this.maxElapsedNanos = unit.toNanos(maxElapsedTime);
+    }
+
+    public String toString() {
+        return "EvaluationLimits: steps " + maxSteps + ", comparisons "
+                + maxComparisons + ", scanned bytes " + maxScannedBytes
+                + ", elapsed nanos " + maxElapsedNanos;
+    }
+}
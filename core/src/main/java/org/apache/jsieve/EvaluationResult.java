@@ -0,0 +1,123 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jsieve.mail.Action;
+
+/**
+ * <p>
+ * The outcome of one evaluation of a script: the Actions decided, in the
+ * order they were added, whether the implicit Keep remained in effect, the
+ * warnings recorded and the time taken. Nothing has been executed: callers
+ * apply the Actions as they see fit, for example by batching deliveries
+ * across mails or retrying a failed Action alone.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable.
+ * </p>
+ * 
+ * @see SieveFactory#evaluateResult(org.apache.jsieve.mail.MailAdapter,
+ *      org.apache.jsieve.parser.generated.Node)
+ */
+public final class EvaluationResult {
+
+    private final List<Action> actions;
+
+    private final boolean implicitKeep;
+
+    private final List<String> warnings;
+
+    private final long evaluationNanos;
+
+    /**
+     * Constructs a result.
+     * 
+     * @param actions
+     *            Actions decided, including any implicit Keep, not null
+     * @param implicitKeep
+     *            whether the implicit Keep remained in effect
+     * @param warnings
+     *            warnings recorded, not null
+     * @param evaluationNanos
+     *            time taken by the evaluation in nanoseconds
+     */
+    EvaluationResult(final List<Action> actions, final boolean implicitKeep,
+            final List<String> warnings, final long evaluationNanos) {
+        super();
+        this.actions = Collections.unmodifiableList(new ArrayList<Action>(
+                actions));
+        this.implicitKeep = implicitKeep;
+        this.warnings = warnings.isEmpty() ? Collections.<String> emptyList()
+                : Collections.unmodifiableList(new ArrayList<String>(warnings));
+        this.evaluationNanos = evaluationNanos;
+    }
+
+    /**
+     * Gets the Actions decided, in the order they were added. When the
+     * implicit Keep remained in effect, the last is a Keep.
+     * 
+     * @return unmodifiable <code>List</code> of <code>Action</code>s, not
+     *         null
+     */
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    /**
+     * Did the implicit Keep remain in effect, as when the script took no
+     * Action cancelling it?
+     * 
+     * @return true when a Keep was added for the implicit Keep
+     */
+    public boolean isImplicitKeep() {
+        return implicitKeep;
+    }
+
+    /**
+     * Gets the warnings recorded by the evaluation, such as Actions dropped
+     * as duplicates.
+     * 
+     * @return unmodifiable <code>List</code> of messages, not null
+     * @see SieveContext#addWarning(String)
+     */
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Gets the time taken by the evaluation.
+     * 
+     * @return nanoseconds
+     */
+    public long getEvaluationNanos() {
+        return evaluationNanos;
+    }
+
+    public String toString() {
+        return "EvaluationResult: actions " + actions + ", implicit keep "
+                + implicitKeep + ", warnings " + warnings + ", nanos "
+                + evaluationNanos;
+    }
+}
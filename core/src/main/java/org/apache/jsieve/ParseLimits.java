@@ -0,0 +1,173 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+/**
+ * <p>
+ * Limits on the size and shape of scripts accepted by
+ * {@link SieveFactory#parse(java.io.InputStream)}, so that a script uploaded
+ * by a user cannot exhaust the stack or memory of the server parsing,
+ * validating or evaluating it. A script exceeding a limit fails to parse
+ * with a {@link org.apache.jsieve.exception.ParseLimitException}. Each limit
+ * which is zero or negative, as by default, is not enforced.
+ * </p>
+ * 
+ * <ul>
+ * <li>Script bytes: the length of the encoded script</li>
+ * <li>Nesting depth: blocks and tests nested within one another</li>
+ * <li>String list members: strings in all string lists of the script</li>
+ * <li>Commands: commands in the script, including those in blocks</li>
+ * <li>Literal length: characters in each string as written, including its
+ * quotes</li>
+ * </ul>
+ * 
+ * @see SieveFactory#setParseLimits(ParseLimits)
+ */
+public class ParseLimits {
+
+    /**
+     * The resources limited.
+     */
+    public enum Resource {
+        SCRIPT_BYTES, NESTING_DEPTH, STRING_LIST_MEMBERS, COMMANDS, LITERAL_LENGTH
+    }
+
+    private int maxScriptBytes;
+
+    private int maxNestingDepth;
+
+    private int maxStringListMembers;
+
+    private int maxCommands;
+
+    private int maxLiteralLength;
+
+    /**
+     * Constructs limits which enforce nothing.
+     */
+    public ParseLimits() {
+        super();
+    }
+
+    /**
+     * Gets the greatest length of a script in bytes.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public int getMaxScriptBytes() {
+        return maxScriptBytes;
+    }
+
+    /**
+     * Sets the greatest length of a script in bytes.
+     * 
+     * @param maxScriptBytes
+     *            limit, not enforced when not positive
+     */
+    public void setMaxScriptBytes(int maxScriptBytes) {
+        this.maxScriptBytes = maxScriptBytes;
+    }
+
+    /**
+     * Gets the greatest depth of blocks and tests nested within one another.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public int getMaxNestingDepth() {
+        return maxNestingDepth;
+    }
+
+    /**
+     * Sets the greatest depth of blocks and tests nested within one another.
+     * 
+     * @param maxNestingDepth
+     *            limit, not enforced when not positive
+     */
+    public void setMaxNestingDepth(int maxNestingDepth) {
+        this.maxNestingDepth = maxNestingDepth;
+    }
+
+    /**
+     * Gets the greatest number of strings in all string lists of a script.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public int getMaxStringListMembers() {
+        return maxStringListMembers;
+    }
+
+    /**
+     * Sets the greatest number of strings in all string lists of a script.
+     * 
+     * @param maxStringListMembers
+     *            limit, not enforced when not positive
+     */
+    public void setMaxStringListMembers(int maxStringListMembers) {
+        this.maxStringListMembers = maxStringListMembers;
+    }
+
+    /**
+     * Gets the greatest number of commands in a script.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public int getMaxCommands() {
+        return maxCommands;
+    }
+
+    /**
+     * Sets the greatest number of commands in a script.
+     * 
+     * @param maxCommands
+     *            limit, not enforced when not positive
+     */
+    public void setMaxCommands(int maxCommands) {
+        this.maxCommands = maxCommands;
+    }
+
+    /**
+     * Gets the greatest length of a string as written in the script,
+     * including its quotes.
+     * 
+     * @return limit, not enforced when not positive
+     */
+    public int getMaxLiteralLength() {
+        return maxLiteralLength;
+    }
+
+    /**
+     * Sets the greatest length of a string as written in the script,
+     * including its quotes.
+     * 
+     * @param maxLiteralLength
+     *            limit, not enforced when not positive
+     */
+    public void setMaxLiteralLength(int maxLiteralLength) {
+        this.maxLiteralLength = maxLiteralLength;
+    }
+
+    public String toString() {
+        return "ParseLimits: script bytes " + maxScriptBytes
+                + ", nesting depth " + maxNestingDepth
+                + ", string list members " + maxStringListMembers
+                + ", commands " + maxCommands + ", literal length "
+                + maxLiteralLength;
+    }
+}
@@ -0,0 +1,435 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>
+ * Describes the parts of a mail which evaluating a script may read. An
+ * analysis is conservative: a part which is not reported will not be read by
+ * any evaluation of the script, but a part which is reported may not be read
+ * by every evaluation.
+ * </p>
+ * 
+ * <p>
+ * Analysis covers the tests and commands supplied with jSieve. When a script
+ * uses a test or command whose reads are unknown (for example, a custom
+ * extension) the analysis reports that any part may be read.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable.
+ * </p>
+ * 
+ * @see SieveFactory#analyze(org.apache.jsieve.parser.generated.Node)
+ */
+public final class ScriptAnalysis {
+
+    /**
+     * The keys sought by a <code>body</code> test using <code>:contains</code>
+     * under the default comparator, as passed to the <code>isInBody</code>
+     * methods of a mail. Instances are immutable.
+     */
+    public static final class BodyKeys {
+
+        private final String transformation;
+
+        private final List<String> contentTypes;
+
+        private final List<String> keys;
+
+        /**
+         * Constructs the keys of a body test.
+         * 
+         * @param transformation
+         *            {@link org.apache.jsieve.mail.body.BodySearch#TEXT},
+         *            {@link org.apache.jsieve.mail.body.BodySearch#RAW} or
+         *            {@link org.apache.jsieve.mail.body.BodySearch#CONTENT}
+         * @param contentTypes
+         *            content types searched by <code>:content</code>, empty
+         *            for other transformations, not null
+         * @param keys
+         *            keys sought, not null
+         */
+        public BodyKeys(final String transformation,
+                final List<String> contentTypes, final List<String> keys) {
+            super();
+            this.transformation = transformation;
+            this.contentTypes = Collections
+                    .unmodifiableList(new ArrayList<String>(contentTypes));
+            this.keys = Collections.unmodifiableList(new ArrayList<String>(
+                    keys));
+        }
+
+        /**
+         * Gets the transformation of the body searched.
+         * 
+         * @return transformation, not null
+         */
+        public String getTransformation() {
+            return transformation;
+        }
+
+        /**
+         * Gets the content types searched by <code>:content</code>.
+         * 
+         * @return unmodifiable <code>List</code>, empty for other
+         *         transformations, not null
+         */
+        public List<String> getContentTypes() {
+            return contentTypes;
+        }
+
+        /**
+         * Gets the keys sought, ignoring case.
+         * 
+         * @return unmodifiable <code>List</code>, not null
+         */
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof BodyKeys)) {
+                return false;
+            }
+            final BodyKeys other = (BodyKeys) obj;
+            return transformation.equals(other.transformation)
+                    && contentTypes.equals(other.contentTypes)
+                    && keys.equals(other.keys);
+        }
+
+        public int hashCode() {
+            return (transformation.hashCode() * 31 + contentTypes.hashCode())
+                    * 31 + keys.hashCode();
+        }
+
+        public String toString() {
+            return transformation
+                    + (contentTypes.isEmpty() ? "" : " " + contentTypes) + " "
+                    + keys;
+        }
+    }
+
+    private final boolean anyHeaderRead;
+
+    private final Set<String> headerNames;
+
+    private final boolean bodyTextRead;
+
+    private final boolean rawBodyRead;
+
+    private final boolean anyContentRead;
+
+    private final Set<String> contentTypes;
+
+    private final boolean sizeRead;
+
+    private final boolean envelopeRead;
+
+    private final Set<Integer> sizeLimits;
+
+    private final boolean sideEffects;
+
+    private final List<BodyKeys> bodySearches;
+
+    /**
+     * Constructs an analysis of a script without side effects, whose size
+     * limits are not known.
+     * 
+     * @param anyHeaderRead
+     *            true when any header may be read
+     * @param headerNames
+     *            lower case names of the headers read, not null
+     * @param bodyTextRead
+     *            true when the decoded text of the body may be read
+     * @param rawBodyRead
+     *            true when the undecoded body may be read
+     * @param anyContentRead
+     *            true when body parts of any content type may be read
+     * @param contentTypes
+     *            content types of the body parts read, not null
+     * @param sizeRead
+     *            true when the size of the mail may be read
+     * @param envelopeRead
+     *            true when the envelope may be read
+     */
+    public ScriptAnalysis(final boolean anyHeaderRead,
+            final Set<String> headerNames, final boolean bodyTextRead,
+            final boolean rawBodyRead, final boolean anyContentRead,
+            final Set<String> contentTypes, final boolean sizeRead,
+            final boolean envelopeRead) {
+        this(anyHeaderRead, headerNames, bodyTextRead, rawBodyRead,
+                anyContentRead, contentTypes, sizeRead, envelopeRead,
+                sizeRead ? null : Collections.<Integer> emptySet(), false);
+    }
+
+    /**
+     * Constructs an analysis which names no body searches.
+     * 
+     * @param anyHeaderRead
+     *            true when any header may be read
+     * @param headerNames
+     *            lower case names of the headers read, not null
+     * @param bodyTextRead
+     *            true when the decoded text of the body may be read
+     * @param rawBodyRead
+     *            true when the undecoded body may be read
+     * @param anyContentRead
+     *            true when body parts of any content type may be read
+     * @param contentTypes
+     *            content types of the body parts read, not null
+     * @param sizeRead
+     *            true when the size of the mail may be read
+     * @param envelopeRead
+     *            true when the envelope may be read
+     * @param sizeLimits
+     *            limits to which the size is compared, or null when these are
+     *            not known
+     * @param sideEffects
+     *            true when evaluation may have effects other than adding
+     *            actions
+     */
+    public ScriptAnalysis(final boolean anyHeaderRead,
+            final Set<String> headerNames, final boolean bodyTextRead,
+            final boolean rawBodyRead, final boolean anyContentRead,
+            final Set<String> contentTypes, final boolean sizeRead,
+            final boolean envelopeRead, final Set<Integer> sizeLimits,
+            final boolean sideEffects) {
+        this(anyHeaderRead, headerNames, bodyTextRead, rawBodyRead,
+                anyContentRead, contentTypes, sizeRead, envelopeRead,
+                sizeLimits, sideEffects, Collections.<BodyKeys> emptyList());
+    }
+
+    /**
+     * Constructs an analysis.
+     * 
+     * @param anyHeaderRead
+     *            true when any header may be read
+     * @param headerNames
+     *            lower case names of the headers read, not null
+     * @param bodyTextRead
+     *            true when the decoded text of the body may be read
+     * @param rawBodyRead
+     *            true when the undecoded body may be read
+     * @param anyContentRead
+     *            true when body parts of any content type may be read
+     * @param contentTypes
+     *            content types of the body parts read, not null
+     * @param sizeRead
+     *            true when the size of the mail may be read
+     * @param envelopeRead
+     *            true when the envelope may be read
+     * @param sizeLimits
+     *            limits to which the size is compared, or null when these are
+     *            not known
+     * @param sideEffects
+     *            true when evaluation may have effects other than adding
+     *            actions
+     * @param bodySearches
+     *            keys sought by the body tests answered by a search, not null
+     */
+    public ScriptAnalysis(final boolean anyHeaderRead,
+            final Set<String> headerNames, final boolean bodyTextRead,
+            final boolean rawBodyRead, final boolean anyContentRead,
+            final Set<String> contentTypes, final boolean sizeRead,
+            final boolean envelopeRead, final Set<Integer> sizeLimits,
+            final boolean sideEffects, final List<BodyKeys> bodySearches) {
+        super();
+        this.anyHeaderRead = anyHeaderRead;
+        this.headerNames = Collections.unmodifiableSet(headerNames);
+        this.bodyTextRead = bodyTextRead;
+        this.rawBodyRead = rawBodyRead;
+        this.anyContentRead = anyContentRead;
+        this.contentTypes = Collections.unmodifiableSet(contentTypes);
+        this.sizeRead = sizeRead;
+        this.envelopeRead = envelopeRead;
+        this.sizeLimits = sizeLimits == null ? null : Collections
+                .unmodifiableSet(sizeLimits);
+        this.sideEffects = sideEffects;
+        this.bodySearches = Collections
+                .unmodifiableList(new ArrayList<BodyKeys>(bodySearches));
+    }
+
+    /**
+     * Is any header read? When true, the names reported by
+     * {@link #getHeaderNames()} are not exhaustive.
+     * 
+     * @return true when the script may read headers other than those named
+     */
+    public boolean isAnyHeaderRead() {
+        return anyHeaderRead;
+    }
+
+    /**
+     * Gets the names of the headers read.
+     * 
+     * @return unmodifiable <code>Set</code> of lower case header names, not
+     *         null
+     */
+    public Set<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    /**
+     * Is the named header read?
+     * 
+     * @param name
+     *            header name, not null
+     * @return true when the script may read the header
+     */
+    public boolean isHeaderRead(String name) {
+        return anyHeaderRead
+                || headerNames.contains(name.trim().toLowerCase(Locale.US));
+    }
+
+    /**
+     * Is the decoded text of the body read? This is the case for
+     * <code>body</code> tests using the <code>:text</code> transform.
+     * 
+     * @return true when the text of the body may be read
+     */
+    public boolean isBodyTextRead() {
+        return bodyTextRead;
+    }
+
+    /**
+     * Is the undecoded body read? This is the case for <code>body</code>
+     * tests using the <code>:raw</code> transform.
+     * 
+     * @return true when the raw body may be read
+     */
+    public boolean isRawBodyRead() {
+        return rawBodyRead;
+    }
+
+    /**
+     * Are body parts of any content type read? When true, the types reported
+     * by {@link #getContentTypes()} are not exhaustive.
+     * 
+     * @return true when body parts of any content type may be read
+     */
+    public boolean isAnyContentRead() {
+        return anyContentRead;
+    }
+
+    /**
+     * Gets the content types inspected by <code>body</code> tests using the
+     * <code>:content</code> transform.
+     * 
+     * @return unmodifiable <code>Set</code> of content types, not null
+     */
+    public Set<String> getContentTypes() {
+        return contentTypes;
+    }
+
+    /**
+     * Gets the keys sought by the <code>body</code> tests which use
+     * <code>:contains</code> under the default comparator, each once. Body
+     * tests using other match types or comparators read the source of the
+     * mail and are not named.
+     * 
+     * @return unmodifiable <code>List</code> of keys, not null
+     */
+    public List<BodyKeys> getBodySearches() {
+        return bodySearches;
+    }
+
+    /**
+     * Is any part of the body read?
+     * 
+     * @return true when the text, raw form or any part of the body may be
+     *         read
+     */
+    public boolean isBodyRead() {
+        return bodyTextRead || rawBodyRead || anyContentRead
+                || !contentTypes.isEmpty();
+    }
+
+    /**
+     * Is the size of the mail read?
+     * 
+     * @return true when a <code>size</code> test may be evaluated
+     */
+    public boolean isSizeRead() {
+        return sizeRead;
+    }
+
+    /**
+     * Is the envelope read?
+     * 
+     * @return true when an <code>envelope</code> test may be evaluated
+     */
+    public boolean isEnvelopeRead() {
+        return envelopeRead;
+    }
+
+    /**
+     * Gets the limits to which <code>size</code> tests compare the size of the
+     * mail. Two mails whose sizes compare alike with every limit are not
+     * distinguished by the script.
+     * 
+     * @return unmodifiable <code>Set</code> of limits, empty when the size is
+     *         not read, or null when the limits are not known
+     */
+    public Set<Integer> getSizeLimits() {
+        return sizeLimits;
+    }
+
+    /**
+     * Does evaluation have effects other than adding actions? This is the case
+     * for <code>vacation</code>, whose response depends on earlier responses,
+     * for <code>log</code>, and for commands whose behaviour is not known.
+     * 
+     * @return true when evaluations of the script may not be replaced by
+     *         their actions
+     */
+    public boolean hasSideEffects() {
+        return sideEffects;
+    }
+
+    /**
+     * Can the script be evaluated given only the headers (and envelope) of a
+     * mail?
+     * 
+     * @return true when neither the body nor the size is read
+     */
+    public boolean isHeaderOnly() {
+        return !isBodyRead() && !sizeRead;
+    }
+
+    public String toString() {
+        return "ScriptAnalysis [headers: "
+                + (anyHeaderRead ? "any" : headerNames.toString())
+                + ", body text: " + bodyTextRead + ", raw body: "
+                + rawBodyRead + ", content: "
+                + (anyContentRead ? "any" : contentTypes.toString())
+                + ", size: " + sizeRead + ", envelope: " + envelopeRead
+                + ", side effects: " + sideEffects + "]";
+    }
+}
@@ -0,0 +1,294 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.jsieve.commands.Discard;
+import org.apache.jsieve.commands.Else;
+import org.apache.jsieve.commands.Elsif;
+import org.apache.jsieve.commands.If;
+import org.apache.jsieve.commands.Keep;
+import org.apache.jsieve.commands.Redirect;
+import org.apache.jsieve.commands.Require;
+import org.apache.jsieve.commands.Stop;
+import org.apache.jsieve.commands.extensions.Log;
+import org.apache.jsieve.commands.optional.FileInto;
+import org.apache.jsieve.commands.optional.Reject;
+import org.apache.jsieve.commands.optional.Vacation;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.exception.SyntaxException;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.tests.Address;
+import org.apache.jsieve.tests.AllOf;
+import org.apache.jsieve.tests.AnyOf;
+import org.apache.jsieve.tests.Exists;
+import org.apache.jsieve.tests.False;
+import org.apache.jsieve.tests.Header;
+import org.apache.jsieve.tests.Not;
+import org.apache.jsieve.tests.Size;
+import org.apache.jsieve.tests.True;
+import org.apache.jsieve.tests.optional.Body;
+import org.apache.jsieve.tests.optional.Envelope;
+
+/**
+ * Analyzes the parts of a mail read by a script.
+ * 
+ * @see ScriptAnalysis
+ */
+final class ScriptAnalyzer {
+
+    /** Commands which read nothing from the mail */
+    private static final Set<Class<?>> PLAIN_COMMANDS = new HashSet<Class<?>>(
+            Arrays.<Class<?>> asList(If.class, Elsif.class, Else.class,
+                    Require.class, Stop.class, Keep.class, Discard.class,
+                    Redirect.class, Reject.class, FileInto.class,
+                    Vacation.class, Log.class));
+
+    /** Tests which read nothing from the mail */
+    private static final Set<Class<?>> PLAIN_TESTS = new HashSet<Class<?>>(
+            Arrays.<Class<?>> asList(AllOf.class, AnyOf.class, Not.class,
+                    True.class, False.class));
+
+    private final SieveContext context;
+
+    private boolean anyHeaderRead;
+
+    private final Set<String> headerNames = new LinkedHashSet<String>();
+
+    private boolean bodyTextRead;
+
+    private boolean rawBodyRead;
+
+    private boolean anyContentRead;
+
+    private final Set<String> contentTypes = new LinkedHashSet<String>();
+
+    private boolean sizeRead;
+
+    private boolean envelopeRead;
+
+    private Set<Integer> sizeLimits = new LinkedHashSet<Integer>();
+
+    private boolean sideEffects;
+
+    private final Set<ScriptAnalysis.BodyKeys> bodySearches = new LinkedHashSet<ScriptAnalysis.BodyKeys>();
+
+    /**
+     * Constructs an analyzer.
+     * 
+     * @param context
+     *            <code>SieveContext</code> supplying the managers, not null
+     */
+    ScriptAnalyzer(final SieveContext context) {
+        super();
+        this.context = context;
+    }
+
+    /**
+     * Analyzes the given parsed script.
+     * 
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @return <code>ScriptAnalysis</code>, not null
+     * @throws SieveException
+     */
+    public ScriptAnalysis analyze(Node startNode) throws SieveException {
+        // Build the commands without executing them
+        final List<Object> children = new ArrayList<Object>(1);
+        final SieveParserVisitorImpl visitor = new SieveParserVisitorImpl(
+                context);
+        for (int i = 0; i < startNode.jjtGetNumChildren(); i++) {
+            startNode.jjtGetChild(i).jjtAccept(visitor, children);
+        }
+        for (final Object child : children) {
+            if (child instanceof Commands) {
+                commands((Commands) child);
+            }
+        }
+        return new ScriptAnalysis(anyHeaderRead, headerNames, bodyTextRead,
+                rawBodyRead, anyContentRead, contentTypes, sizeRead,
+                envelopeRead, sizeLimits, sideEffects,
+                new ArrayList<ScriptAnalysis.BodyKeys>(bodySearches));
+    }
+
+    private void commands(Commands commands) throws SieveException {
+        for (final Command command : commands.getChildren()) {
+            final Class<?> type = context.getCommandManager().getCommand(
+                    command.getName()).getClass();
+            if (!PLAIN_COMMANDS.contains(type)) {
+                anyRead();
+            } else if (type == Vacation.class || type == Log.class) {
+                sideEffects = true;
+            }
+            tests(command.getArguments());
+            final Block block = command.getBlock();
+            if (block != null) {
+                commands(block.getChildren());
+            }
+        }
+    }
+
+    private void tests(Arguments arguments) throws SieveException {
+        if (arguments != null && arguments.getTestList() != null) {
+            for (final Test test : arguments.getTestList().getTests()) {
+                test(test);
+            }
+        }
+    }
+
+    private void test(Test test) throws SieveException {
+        final Class<?> type = context.getTestManager().getTest(
+                test.getName()).getClass();
+        final List<Argument> arguments = test.getArguments() == null ? new ArrayList<Argument>()
+                : test.getArguments().getArgumentList();
+        if (type == Header.class || type == Address.class) {
+            headers(firstList(arguments, true));
+        } else if (type == Exists.class) {
+            headers(firstList(arguments, false));
+        } else if (type == Size.class) {
+            size(arguments);
+        } else if (type == Envelope.class) {
+            envelopeRead = true;
+        } else if (type == Body.class) {
+            body(arguments);
+            bodySearch(test);
+        } else if (!PLAIN_TESTS.contains(type)) {
+            anyRead();
+        }
+        tests(test.getArguments());
+    }
+
+    private void size(List<Argument> arguments) {
+        sizeRead = true;
+        final Argument limit = arguments.size() == 2 ? arguments.get(1) : null;
+        if (sizeLimits != null && limit instanceof NumberArgument) {
+            sizeLimits.add(((NumberArgument) limit).getInteger());
+        } else {
+            sizeLimits = null;
+        }
+    }
+
+    /**
+     * The transformation may be given anywhere among the tags, and defaults
+     * to <code>:text</code>.
+     */
+    private void body(List<Argument> arguments) {
+        final Iterator<Argument> iterator = arguments.iterator();
+        while (iterator.hasNext()) {
+            final Argument argument = iterator.next();
+            if (!(argument instanceof TagArgument)) {
+                break;
+            }
+            final TagArgument tag = (TagArgument) argument;
+            if (tag.is(Body.RAW)) {
+                rawBodyRead = true;
+                return;
+            } else if (tag.is(Body.CONTENT)) {
+                final Argument types = iterator.hasNext() ? iterator.next()
+                        : null;
+                if (types instanceof StringListArgument) {
+                    for (final String type : ((StringListArgument) types)
+                            .getList()) {
+                        contentTypes.add(type.toLowerCase(Locale.US));
+                    }
+                } else {
+                    anyContentRead = true;
+                }
+                return;
+            } else if (tag.isComparator() && iterator.hasNext()) {
+                iterator.next();
+            }
+        }
+        bodyTextRead = true;
+    }
+
+    private void bodySearch(Test test) throws SieveException {
+        if (test.getArguments() == null) {
+            return;
+        }
+        try {
+            final ScriptAnalysis.BodyKeys keys = ((Body) context
+                    .getTestManager().getTest(test.getName())).getBodyKeys(
+                    test.getArguments(), context);
+            if (keys != null) {
+                bodySearches.add(keys);
+            }
+        } catch (SyntaxException e) {
+            // Reported when the test is executed
+        }
+    }
+
+    /**
+     * Answers the first string list argument following any tags.
+     * 
+     * @param arguments
+     *            not null
+     * @param skipComparator
+     *            true when the value of a comparator tag is to be skipped
+     * @return names, or null when not found
+     */
+    private List<String> firstList(List<Argument> arguments,
+            boolean skipComparator) {
+        final Iterator<Argument> iterator = arguments.iterator();
+        while (iterator.hasNext()) {
+            final Argument argument = iterator.next();
+            if (argument instanceof TagArgument) {
+                if (skipComparator && ((TagArgument) argument).isComparator()
+                        && iterator.hasNext()) {
+                    iterator.next();
+                }
+            } else if (argument instanceof StringListArgument) {
+                return ((StringListArgument) argument).getList();
+            } else {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void headers(List<String> names) {
+        if (names == null) {
+            anyHeaderRead = true;
+        } else {
+            for (final String name : names) {
+                headerNames.add(name.toLowerCase(Locale.US));
+            }
+        }
+    }
+
+    private void anyRead() {
+        anyHeaderRead = true;
+        bodyTextRead = true;
+        rawBodyRead = true;
+        anyContentRead = true;
+        sizeRead = true;
+        envelopeRead = true;
+        sizeLimits = null;
+        sideEffects = true;
+    }
+}
@@ -19,6 +19,11 @@
 
 package org.apache.jsieve;
 
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.jsieve.mail.ActionCollector;
+import org.apache.jsieve.mail.MessageCache;
+
 /**
  * Context for sieve operations.
  * 
@@ -75,4 +80,55 @@ public abstract class SieveContext {
      * @return test manager, not null
      */
     public abstract TestManager getTestManager();
+
+    /**
+     * Gets the views of the mail cached for the current evaluation.
+     * Contexts which do not cache answer null.
+     * @return message cache, possibly null
+     */
+    public MessageCache getMessageCache() {
+        return null;
+    }
+
+    /**
+     * Gets the pool on which expensive operands of <code>anyof</code> and
+     * <code>allof</code> may be evaluated concurrently. Contexts which
+     * evaluate tests serially answer null.
+     * @return pool, possibly null
+     * @see org.apache.jsieve.mail.ConcurrentMailAdapter
+     */
+    public ForkJoinPool getTestPool() {
+        return null;
+    }
+
+    /**
+     * Gets the budget charged by commands, tests and comparators as the
+     * evaluation proceeds. Contexts whose evaluations are not limited
+     * answer null.
+     * @return budget, possibly null
+     * @see EvaluationLimits
+     */
+    public EvaluationBudget getBudget() {
+        return null;
+    }
+
+    /**
+     * Gets the collector of the actions of the current evaluation. Contexts
+     * which do not hold one answer null.
+     * @return collector, possibly null
+     * @see ActionCollector#of(org.apache.jsieve.mail.MailAdapter, SieveContext)
+     */
+    public ActionCollector getActionCollector() {
+        return null;
+    }
+
+    /**
+     * Records a warning about the current evaluation, such as an Action
+     * dropped as a duplicate. Contexts which do not record warnings ignore
+     * them.
+     * @param warning message, not null
+     * @see EvaluationResult#getWarnings()
+     */
+    public void addWarning(String warning) {
+    }
 }
@@ -0,0 +1,526 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.parser.generated.Node;
+
+/**
+ * <p>
+ * Evaluates a stream of jobs, each a mail and a parsed script, with
+ * {@link SieveFactory#evaluate(MailAdapter, Node)}. Each job runs on a new
+ * thread of its own: a virtual thread when the runtime supports them,
+ * otherwise a daemon platform thread. Whole evaluations, from
+ * {@link MailAdapter#setContext(SieveContext)} to the clearing of the
+ * context, therefore run on a single thread which no other job uses, so
+ * adapters which keep the context in a thread local variable are neither
+ * shared between jobs nor leaked to later ones.
+ * </p>
+ * 
+ * <p>
+ * At most a given number of jobs are evaluated at once. Jobs waiting for a
+ * thread are held in a queue of bounded capacity: when it is full,
+ * {@link #submit(Object, MailAdapter, Node)} blocks the submitter until a
+ * job starts, so a fast producer is slowed to the rate at which jobs are
+ * evaluated. Each job belongs to a tenant, such as a domain or a mailbox.
+ * Waiting jobs are started in turn from each tenant with jobs waiting, so one
+ * tenant submitting many jobs does not delay the jobs of others behind its
+ * own.
+ * </p>
+ * 
+ * <p>
+ * The time each job waits in the queue and the time it takes to evaluate are
+ * measured, and are answered by the {@link Job} and in aggregate by the
+ * evaluator.
+ * </p>
+ * 
+ * <p>
+ * Instances are thread safe. A mail should not be submitted again before its
+ * earlier job has completed.
+ * </p>
+ */
+public class SieveEvaluator {
+
+    /**
+     * A mail and a parsed script submitted for evaluation.
+     */
+    public static final class Job {
+
+        private final Object tenant;
+
+        private final MailAdapter mail;
+
+        private final Node startNode;
+
+        private final CompletableFuture<Job> completion;
+
+        private final long submitted;
+
+        private long started;
+
+        private long finished;
+
+        private Job(final Object tenant, final MailAdapter mail,
+                final Node startNode) {
+            super();
+            this.tenant = tenant;
+            this.mail = mail;
+            this.startNode = startNode;
+            this.completion = new CompletableFuture<Job>();
+            this.submitted = System.nanoTime();
+        }
+
+        /**
+         * Gets the tenant which submitted the job.
+         * 
+         * @return tenant, not null
+         */
+        public Object getTenant() {
+            return tenant;
+        }
+
+        /**
+         * Gets the mail evaluated.
+         * 
+         * @return <code>MailAdapter</code>, not null
+         */
+        public MailAdapter getMail() {
+            return mail;
+        }
+
+        /**
+         * Gets the start node of the script evaluated.
+         * 
+         * @return <code>Node</code>, not null
+         */
+        public Node getStartNode() {
+            return startNode;
+        }
+
+        /**
+         * Gets the time the job waited between its submission and the start
+         * of its evaluation.
+         * 
+         * @return nanoseconds
+         */
+        public long getQueueNanos() {
+            return started - submitted;
+        }
+
+        /**
+         * Gets the time taken to evaluate the mail, including the execution
+         * of its Actions.
+         * 
+         * @return nanoseconds
+         */
+        public long getEvaluationNanos() {
+            return finished - started;
+        }
+    }
+
+    private final SieveFactory factory;
+
+    private final int maxInFlight;
+
+    private final int queueCapacity;
+
+    private final ThreadFactory threadFactory;
+
+    /** Frames reused by jobs, since each job runs on a thread of its own */
+    private final Queue<EvaluationFrame> frames = new ConcurrentLinkedQueue<EvaluationFrame>();
+
+    private final Map<Object, Deque<Job>> waiting = new HashMap<Object, Deque<Job>>();
+
+    private final Deque<Object> turns = new ArrayDeque<Object>();
+
+    private int queued;
+
+    private int inFlight;
+
+    private boolean shutdown;
+
+    private long completed;
+
+    private long failed;
+
+    private long totalQueueNanos;
+
+    private long maxQueueNanos;
+
+    /**
+     * Constructs an evaluator which runs each job on a new virtual thread, or
+     * on a new daemon thread when the runtime does not support virtual
+     * threads.
+     * 
+     * @param factory
+     *            <code>SieveFactory</code> evaluating jobs, not null
+     * @param maxInFlight
+     *            greatest number of jobs evaluated at once, positive
+     * @param queueCapacity
+     *            greatest number of jobs waiting to start, positive
+     */
+    public SieveEvaluator(final SieveFactory factory, final int maxInFlight,
+            final int queueCapacity) {
+        this(factory, maxInFlight, queueCapacity, newThreadFactory());
+    }
+
+    /**
+     * Constructs an evaluator which runs each job on a new thread from the
+     * given factory.
+     * 
+     * @param factory
+     *            <code>SieveFactory</code> evaluating jobs, not null
+     * @param maxInFlight
+     *            greatest number of jobs evaluated at once, positive
+     * @param queueCapacity
+     *            greatest number of jobs waiting to start, positive
+     * @param threadFactory
+     *            <code>ThreadFactory</code> creating a thread for each job,
+     *            not null
+     */
+    public SieveEvaluator(final SieveFactory factory, final int maxInFlight,
+            final int queueCapacity, final ThreadFactory threadFactory) {
+        super();
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        this.factory = factory;
+        this.maxInFlight = maxInFlight;
+        this.queueCapacity = queueCapacity;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Submits a job, waiting while the queue is full.
+     * 
+     * @param tenant
+     *            tenant submitting the job, not null. Tenants are compared by
+     *            equality
+     * @param mail
+     *            mail evaluated, not null
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @return the job, once it has been evaluated. Completed exceptionally
+     *         with the failure when evaluation fails
+     * @throws InterruptedException
+     *             when interrupted while waiting
+     * @throws RejectedExecutionException
+     *             when the evaluator has been shut down
+     */
+    public CompletableFuture<Job> submit(final Object tenant,
+            final MailAdapter mail, final Node startNode)
+            throws InterruptedException {
+        final Job job = new Job(tenant, mail, startNode);
+        synchronized (this) {
+            while (!shutdown && queued >= queueCapacity) {
+                wait();
+            }
+            enqueue(job);
+        }
+        dispatch();
+        return job.completion;
+    }
+
+    /**
+     * Submits a job, waiting at most the given time while the queue is full.
+     * 
+     * @param tenant
+     *            tenant submitting the job, not null
+     * @param mail
+     *            mail evaluated, not null
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @param timeout
+     *            greatest time to wait
+     * @param unit
+     *            <code>TimeUnit</code> of the timeout, not null
+     * @return the job, once it has been evaluated, or null when the queue
+     *         remained full
+     * @throws InterruptedException
+     *             when interrupted while waiting
+     * @throws RejectedExecutionException
+     *             when the evaluator has been shut down
+     * @see #submit(Object, MailAdapter, Node)
+     */
+    public CompletableFuture<Job> trySubmit(final Object tenant,
+            final MailAdapter mail, final Node startNode, final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        final Job job = new Job(tenant, mail, startNode);
+        synchronized (this) {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!shutdown && queued >= queueCapacity) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            enqueue(job);
+        }
+        dispatch();
+        return job.completion;
+    }
+
+    /**
+     * Stops accepting jobs. Jobs already submitted are still evaluated.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until every job submitted has been evaluated, after
+     * {@link #shutdown()}.
+     * 
+     * @param timeout
+     *            greatest time to wait
+     * @param unit
+     *            <code>TimeUnit</code> of the timeout, not null
+     * @return true when every job has been evaluated, false when the time
+     *         elapsed first
+     * @throws InterruptedException
+     *             when interrupted while waiting
+     */
+    public synchronized boolean awaitTermination(final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (queued > 0 || inFlight > 0) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of jobs waiting to start.
+     * 
+     * @return number of jobs
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Gets the number of jobs being evaluated.
+     * 
+     * @return number of jobs
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the number of jobs which have been evaluated, including those
+     * which failed.
+     * 
+     * @return number of jobs
+     */
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Gets the number of jobs whose evaluation failed.
+     * 
+     * @return number of jobs
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Gets the mean time completed jobs waited in the queue.
+     * 
+     * @return nanoseconds, zero when no job has completed
+     */
+    public synchronized long getMeanQueueNanos() {
+        return completed == 0 ? 0 : totalQueueNanos / completed;
+    }
+
+    /**
+     * Gets the longest time a job waited in the queue.
+     * 
+     * @return nanoseconds
+     */
+    public synchronized long getMaxQueueNanos() {
+        return maxQueueNanos;
+    }
+
+    private void enqueue(final Job job) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The evaluator has been shut down");
+        }
+        Deque<Job> jobs = waiting.get(job.tenant);
+        if (jobs == null) {
+            jobs = new ArrayDeque<Job>();
+            waiting.put(job.tenant, jobs);
+            turns.add(job.tenant);
+        }
+        jobs.add(job);
+        queued++;
+    }
+
+    /**
+     * Answers the first job waiting for the tenant whose turn it is.
+     */
+    private Job dequeue() {
+        final Object tenant = turns.poll();
+        final Deque<Job> jobs = waiting.get(tenant);
+        final Job job = jobs.poll();
+        if (jobs.isEmpty()) {
+            waiting.remove(tenant);
+        } else {
+            turns.add(tenant);
+        }
+        queued--;
+        return job;
+    }
+
+    /**
+     * Starts waiting jobs while fewer than the limit are in flight.
+     */
+    private void dispatch() {
+        while (true) {
+            final Job job;
+            synchronized (this) {
+                if (inFlight >= maxInFlight || queued == 0) {
+                    return;
+                }
+                job = dequeue();
+                inFlight++;
+                notifyAll();
+            }
+            start(job);
+        }
+    }
+
+    /**
+     * Starts a thread evaluating the given job. When no thread can be
+     * started, the job fails, so that it is no longer counted as in flight.
+     */
+    private void start(final Job job) {
+        Throwable failure = null;
+        try {
+            final Thread thread = threadFactory.newThread(new Runnable() {
+                public void run() {
+                    evaluate(job);
+                }
+            });
+            if (thread == null) {
+                failure = new RejectedExecutionException("No thread was created");
+            } else {
+                thread.start();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (failure != null) {
+                job.started = System.nanoTime();
+                finish(job, failure);
+            }
+        }
+    }
+
+    private void evaluate(final Job job) {
+        job.started = System.nanoTime();
+        Throwable failure = null;
+        try {
+            factory.evaluate(job.mail, job.startNode, frames);
+        } catch (SieveException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            finish(job, failure);
+        }
+    }
+
+    private void finish(final Job job, final Throwable failure) {
+        job.finished = System.nanoTime();
+        synchronized (this) {
+            inFlight--;
+            completed++;
+            if (failure != null) {
+                failed++;
+            }
+            final long queueNanos = job.getQueueNanos();
+            totalQueueNanos += queueNanos;
+            maxQueueNanos = Math.max(maxQueueNanos, queueNanos);
+            notifyAll();
+        }
+        if (failure == null) {
+            job.completion.complete(job);
+        } else {
+            job.completion.completeExceptionally(failure);
+        }
+        dispatch();
+    }
+
+    /**
+     * Answers a factory of virtual threads when the runtime supports them,
+     * otherwise of daemon platform threads.
+     */
+    private static ThreadFactory newThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(
+                    null);
+            final Method factory = Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            final AtomicInteger count = new AtomicInteger();
+            return new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable,
+                            "sieve-evaluator-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+    }
+}
@@ -19,18 +19,37 @@
 
 package org.apache.jsieve;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.jsieve.exception.ParseLimitException;
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.exception.StopException;
+import org.apache.jsieve.mail.Action;
 import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.mail.AsyncMailAdapter;
+import org.apache.jsieve.mail.BodyRequiredException;
+import org.apache.jsieve.mail.ConcurrentMailAdapter;
+import org.apache.jsieve.mail.HeaderBlockMailAdapter;
 import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.mail.SharedMailAdapter;
+import org.apache.jsieve.parser.generated.ASTarguments;
+import org.apache.jsieve.parser.generated.ASTcommand;
+import org.apache.jsieve.parser.generated.ASTcommands;
 import org.apache.jsieve.parser.generated.Node;
 import org.apache.jsieve.parser.generated.ParseException;
 import org.apache.jsieve.parser.generated.SieveParser;
-import org.apache.jsieve.parser.generated.SieveParserVisitor;
 import org.apache.jsieve.parser.generated.SimpleNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +71,26 @@ import org.slf4j.LoggerFactory;
  * operation above. As evaluation proceeds a List of {@link org.apache.jsieve.mail.Action}s 
  * is added to the MailAdapter. At the end of evaluation, each Action in the List is executed in
  * the order they were added. </dd>
+ * <dt>{@link #evaluate(MailAdapter, Node, DecisionCache, Object)}</dt>
+ * <dd> Evaluate as above, reusing the Actions decided for an earlier mail
+ * which the script cannot distinguish from this one. </dd>
+ * <dt>{@link #evaluateAll(MailAdapter, List)}</dt>
+ * <dd> Evaluate one mail against many parse results, sharing the views of the
+ * mail derived by the tests and answering the Actions of each script
+ * separately. </dd>
+ * <dt>{@link #evaluateResult(MailAdapter, Node)}</dt>
+ * <dd> Evaluate as above, answering the Actions in an {@link EvaluationResult}
+ * rather than executing them. </dd>
+ * <dt>{@link #evaluateHeaders(ByteBuffer, Node)}</dt>
+ * <dd> Evaluate a parse result against the header block of a mail alone,
+ * answering the Actions without executing them, or signalling that the body
+ * is required. </dd>
+ * <dt>{@link #evaluateAsync(AsyncMailAdapter, Node)}</dt>
+ * <dd> Evaluate a parse result against a mail whose parts are fetched without
+ * blocking, answering the Actions when evaluation completes. </dd>
+ * <dt>{@link #analyze(Node)}</dt>
+ * <dd>Analyze the parts of a mail which evaluations of a parsed script may
+ * read. </dd>
  * <dt>{@link #interpret(MailAdapter, InputStream)}</dt>
  * <dd>A concatenation of parse and evaluate. Useful for testing, but generally
  * the parse result should be stored for reuse in subsequent evaluations. </dd>
@@ -62,7 +101,13 @@ import org.slf4j.LoggerFactory;
  * An instance can be safely accessed concurrently by multiple threads
  * provided that the managers used to construct the instance 
  * (when {@link #SieveFactory(CommandManager, ComparatorManager, TestManager, Log)} 
- * is called) are thread safe.
+ * is called) are thread safe. The state of an evaluation is kept in a frame
+ * which each thread reuses for its successive evaluations. Frames are held
+ * in a thread local variable, so they pay off only on threads which are
+ * reused, such as those of a pool: a thread which evaluates once, such as a
+ * virtual thread started for each mail, allocates a frame of its own and a
+ * thread local entry. {@link SieveEvaluator} reuses frames across its
+ * threads instead.
  * </p>
  */
 public class SieveFactory {
@@ -74,6 +119,14 @@ public class SieveFactory {
 
     private final TestManager testManager;
 
+    private volatile ForkJoinPool testPool;
+
+    private volatile EvaluationLimits evaluationLimits;
+
+    private volatile ParseLimits parseLimits;
+
+    private final ThreadLocal<EvaluationFrame> frames = new ThreadLocal<EvaluationFrame>();
+
     /**
      * Constructor for SieveFactory.
      */
@@ -86,6 +139,96 @@ public class SieveFactory {
         this.testManager = testManager;
     }
 
+    /**
+     * Gets the pool on which expensive tests are evaluated concurrently.
+     * 
+     * @return <code>ForkJoinPool</code>, or null when tests are evaluated
+     *         serially
+     * @see #setTestPool(ForkJoinPool)
+     */
+    public ForkJoinPool getTestPool() {
+        return testPool;
+    }
+
+    /**
+     * <p>
+     * Sets the pool on which expensive operands of <code>anyof</code> and
+     * <code>allof</code> are evaluated concurrently, or null to evaluate every
+     * test serially, as by default. Only evaluations of mail which is a
+     * {@link ConcurrentMailAdapter} use the pool, and only for test lists
+     * with at least two body tests among their operands.
+     * </p>
+     * 
+     * <p>
+     * The result, and any failure, is that of serial evaluation: the operands
+     * are considered in order, and those after the first which decides the
+     * result are cancelled.
+     * </p>
+     * 
+     * @param testPool
+     *            <code>ForkJoinPool</code>, possibly null
+     */
+    public void setTestPool(ForkJoinPool testPool) {
+        this.testPool = testPool;
+    }
+
+    /**
+     * Gets the limits on the resources used by each evaluation.
+     * 
+     * @return <code>EvaluationLimits</code>, or null when evaluations are
+     *         not limited
+     * @see #setEvaluationLimits(EvaluationLimits)
+     */
+    public EvaluationLimits getEvaluationLimits() {
+        return evaluationLimits;
+    }
+
+    /**
+     * <p>
+     * Sets the limits on the commands and tests executed, comparisons made,
+     * bytes scanned and time taken by each evaluation, or null not to limit
+     * evaluations, as by default. An evaluation exceeding a limit ends with a
+     * {@link org.apache.jsieve.exception.BudgetExceededException}, and no
+     * actions are executed.
+     * </p>
+     * 
+     * <p>
+     * The limits are read as each evaluation starts.
+     * </p>
+     * 
+     * @param evaluationLimits
+     *            <code>EvaluationLimits</code>, possibly null
+     */
+    public void setEvaluationLimits(EvaluationLimits evaluationLimits) {
+        this.evaluationLimits = evaluationLimits;
+    }
+
+    /**
+     * Gets the limits on the scripts accepted by {@link #parse(InputStream)}.
+     * 
+     * @return <code>ParseLimits</code>, or null when scripts are not limited
+     * @see #setParseLimits(ParseLimits)
+     */
+    public ParseLimits getParseLimits() {
+        return parseLimits;
+    }
+
+    /**
+     * Sets the limits on the length, nesting depth, string lists, commands
+     * and strings of the scripts accepted by {@link #parse(InputStream)}, or
+     * null not to limit scripts, as by default. A script exceeding a limit
+     * fails to parse with a {@link ParseLimitException} giving the position
+     * at which the limit was exceeded. Servers accepting scripts from users
+     * should set limits, so that no script can exhaust the stack or memory
+     * when it is parsed or evaluated.
+     * 
+     * @param parseLimits
+     *            <code>ParseLimits</code>, possibly null
+     */
+    public void setParseLimits(ParseLimits parseLimits) {
+        this.parseLimits = parseLimits;
+    }
+
     /**
      * Method parse parses a Sieve script into a hierarchy of parsed nodes. A
      * successful parse means the script is lexically and grammatically valid
@@ -98,9 +241,17 @@ public class SieveFactory {
      * @throws ParseException
      */
     public Node parse(InputStream inputStream) throws ParseException {
+        final ParseLimits limits = parseLimits;
         try {
-            final SimpleNode node = new SieveParser(inputStream, "UTF-8")
-                    .start();
+            final SieveParser parser;
+            if (limits != null && limits.getMaxScriptBytes() > 0) {
+                parser = new SieveParser(readScript(inputStream, limits
+                        .getMaxScriptBytes()), "UTF-8");
+            } else {
+                parser = new SieveParser(inputStream, "UTF-8");
+            }
+            parser.setParseLimits(limits);
+            final SimpleNode node = parser.start();
             SieveValidationVisitor visitor = new SieveValidationVisitor(
                     commandManager, testManager, comparatorManager);
             node.jjtAccept(visitor, null);
@@ -111,7 +262,69 @@ public class SieveFactory {
         } catch (SieveException ex) {
             LOGGER.error("Parse failed.", ex);
             throw new ParseException(ex.getMessage());
+        } catch (IOException ex) {
+            LOGGER.error("Parse failed.", ex);
+            throw new ParseException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Reads a script no longer than the given number of bytes.
+     * 
+     * @throws ParseLimitException
+     *             when the script is longer, giving the position of the first
+     *             byte beyond the limit
+     */
+    private static InputStream readScript(InputStream inputStream,
+            int maxScriptBytes) throws IOException, ParseLimitException {
+        byte[] buffer = new byte[(int) Math.min(maxScriptBytes + 1L, 8192)];
+        int length = 0;
+        while (length <= maxScriptBytes) {
+            if (length == buffer.length) {
+                final byte[] grown = new byte[(int) Math.min(
+                        maxScriptBytes + 1L, buffer.length * 2L)];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+            final int read = inputStream.read(buffer, length, buffer.length
+                    - length);
+            if (read < 0) {
+                return new ByteArrayInputStream(buffer, 0, length);
+            }
+            length += read;
         }
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < maxScriptBytes; i++) {
+            if (buffer[i] == '\n') {
+                line++;
+                column = 1;
+            } else if ((buffer[i] & 0xC0) != 0x80) {
+                // Count characters rather than the continuation bytes of UTF-8
+                column++;
+            }
+        }
+        throw new ParseLimitException("Script is longer than "
+                + maxScriptBytes + " bytes.",
+                ParseLimits.Resource.SCRIPT_BYTES, new ScriptCoordinate(line,
+                        column, line, column));
+    }
+
+    /**
+     * Method analyze answers the parts of a mail which evaluating a parsed
+     * script may read. The analysis may be stored with the start node and
+     * used to avoid fetching parts of a mail which the script never reads,
+     * for example, to supply only the headers of most mail.
+     * 
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @return <code>ScriptAnalysis</code>, not null
+     * @throws SieveException
+     */
+    public ScriptAnalysis analyze(Node startNode) throws SieveException {
+        final SieveContext context = new BaseSieveContext(commandManager,
+                comparatorManager, testManager);
+        return new ScriptAnalyzer(context).analyze(startNode);
     }
 
     /**
@@ -136,30 +349,194 @@ public class SieveFactory {
      */
     public void evaluate(MailAdapter mail, Node startNode)
             throws SieveException {
-        final SieveContext context = new BaseSieveContext(commandManager,
-                comparatorManager, testManager);
+        evaluate(mail, startNode, new MessageCache(mail));
+    }
+
+    /**
+     * <p>
+     * Method evaluate evaluates a mail as {@link #evaluate(MailAdapter, Node)}
+     * does, unless the given cache holds the decision of the script for a mail
+     * which the script cannot distinguish from this one. In that case, the
+     * Actions of that decision are added to the mail, dropping duplicates as
+     * evaluation does, and executed without evaluating the script.
+     * </p>
+     * 
+     * <p>
+     * Scripts which bypass the cache are simply evaluated.
+     * </p>
+     * 
+     * @param mail
+     *            mail evaluated, not null
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @param decisions
+     *            <code>DecisionCache</code>, not null
+     * @param scriptId
+     *            identifies the content of the script, not null
+     * @throws SieveException
+     * @see DecisionCache
+     */
+    public void evaluate(MailAdapter mail, Node startNode,
+            DecisionCache decisions, Object scriptId) throws SieveException {
+        final MessageCache cache = new MessageCache(mail);
+        final List<Object> key = decisions.getKey(scriptId, decisions
+                .getAnalysis(startNode, this), cache);
+        if (key == null) {
+            evaluate(mail, startNode, cache);
+            return;
+        }
+        List<Action> actions = decisions.get(key);
+        if (actions == null) {
+            final SharedMailAdapter shared = new SharedMailAdapter(mail);
+            evaluate(shared, startNode, cache);
+            actions = shared.getActions();
+            decisions.put(key, actions);
+        }
+        final EvaluationFrame context = acquireFrame(mail, cache);
         try {
-            // Ensure that the context is set on the mail
             mail.setContext(context);
-            
-            SieveParserVisitor visitor = new SieveParserVisitorImpl(context);
+            for (final Action action : actions) {
+                context.getActionCollector().add(action);
+            }
             try {
-                // Evaluate the Nodes
-                startNode.jjtAccept(visitor, mail);
-    
-            } catch (StopException ex) {
-                // Stop is OK
+                mail.executeActions();
             } catch (SieveException ex) {
                 LOGGER.error("Evaluation failed.", ex);
                 throw ex;
             }
-    
-            // If after evaluating all of the nodes or stopping, implicitKeep is
-            // still
-            // in effect, add a Keep to the list of Actions.
-            if (context.getCommandStateManager().isImplicitKeep())
-                mail.addAction(new ActionKeep());
-    
+        } finally {
+            mail.setContext(null);
+            context.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Method evaluateAll evaluates one mail against each of the passed parsed
+     * scripts, as when a mail is delivered to many recipients. The views of the
+     * mail derived by the tests, such as its decoded headers, parsed addresses
+     * and body searches, are held by one {@link MessageCache} and shared by
+     * every evaluation, so the adapter is asked for each at most once.
+     * </p>
+     * 
+     * <p>
+     * Each script is evaluated through its own {@link SharedMailAdapter}, and
+     * the Actions it would execute, including any implicit Keep, are answered
+     * in a separate List. No Actions are executed and none are added to the
+     * passed mail. Evaluation stops at the first script which fails.
+     * </p>
+     * 
+     * <p>
+     * Scripts are grouped by the identity of their start nodes: a start node
+     * which occurs many times, as when many recipients share a template, is
+     * evaluated once and its unmodifiable List of Actions is answered for each
+     * occurrence. Callers should therefore reuse the start node of each
+     * distinct script. Scripts which are empty or hold a single
+     * <code>keep</code> are not evaluated at all: they always answer a single
+     * Keep.
+     * </p>
+     * 
+     * @param mail
+     *            mail evaluated, not null
+     * @param startNodes
+     *            start nodes of parsed scripts, not null
+     * @return for each script in order, the Actions it added, not null
+     * @throws SieveException
+     */
+    public List<List<Action>> evaluateAll(MailAdapter mail,
+            List<Node> startNodes) throws SieveException {
+        final MessageCache cache = new MessageCache(mail);
+        final Map<Node, List<Action>> evaluated = new IdentityHashMap<Node, List<Action>>();
+        final List<List<Action>> results = new ArrayList<List<Action>>(
+                startNodes.size());
+        for (final Node startNode : startNodes) {
+            List<Action> actions = evaluated.get(startNode);
+            if (actions == null) {
+                if (isKeepOnly(startNode)) {
+                    actions = Collections.<Action> singletonList(new ActionKeep());
+                } else {
+                    final SharedMailAdapter shared = new SharedMailAdapter(mail);
+                    evaluate(shared, startNode, cache);
+                    actions = shared.getActions();
+                }
+                evaluated.put(startNode, actions);
+            }
+            results.add(actions);
+        }
+        return results;
+    }
+
+    /**
+     * Answers whether a parsed script holds no commands but an optional
+     * <code>keep</code> without arguments, so that every evaluation answers a
+     * single Keep.
+     */
+    private static boolean isKeepOnly(Node startNode) {
+        if (startNode.jjtGetNumChildren() != 1
+                || !(startNode.jjtGetChild(0) instanceof ASTcommands)) {
+            return false;
+        }
+        final Node commands = startNode.jjtGetChild(0);
+        if (commands.jjtGetNumChildren() == 0) {
+            return true;
+        }
+        if (commands.jjtGetNumChildren() > 1) {
+            return false;
+        }
+        final Node command = commands.jjtGetChild(0);
+        if (!(command instanceof ASTcommand)
+                || !"keep".equalsIgnoreCase(((ASTcommand) command).getName())) {
+            return false;
+        }
+        for (int i = 0; i < command.jjtGetNumChildren(); i++) {
+            final Node child = command.jjtGetChild(i);
+            if (!(child instanceof ASTarguments)
+                    || child.jjtGetNumChildren() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void evaluate(MailAdapter mail, Node startNode, MessageCache cache)
+            throws SieveException {
+        execute(mail, startNode, acquireFrame(mail, cache));
+    }
+
+    /**
+     * Evaluates a mail as {@link #evaluate(MailAdapter, Node)} does, in a
+     * frame taken from the given pool and returned to it afterwards rather
+     * than in the frame of this thread. Callers which run each evaluation on
+     * a new thread, such as {@link SieveEvaluator}, reuse frames this way.
+     */
+    void evaluate(MailAdapter mail, Node startNode, Queue<EvaluationFrame> pool)
+            throws SieveException {
+        EvaluationFrame frame = pool.poll();
+        if (frame == null) {
+            frame = new EvaluationFrame(commandManager, comparatorManager,
+                    testManager);
+        }
+        try {
+            frame.acquire(mail, new MessageCache(mail), testPool,
+                    evaluationLimits);
+            execute(mail, startNode, frame);
+        } finally {
+            pool.offer(frame);
+        }
+    }
+
+    /**
+     * Evaluates the script in an acquired frame, executes the Actions it
+     * decides and releases the frame.
+     */
+    private void execute(MailAdapter mail, Node startNode,
+            EvaluationFrame context) throws SieveException {
+        try {
+            // Ensure that the context is set on the mail
+            mail.setContext(context);
+
+            decide(mail, startNode, context);
+
             // Execute the List of Actions
             try {
                 mail.executeActions();
@@ -171,7 +548,162 @@ public class SieveFactory {
             // Tidy up by ensuring that a reference to the context is not held by the adapter.
             // This prevents leaks when the adapter stores the context in a thread local variable.
             mail.setContext(null);
+            context.release();
+        }
+    }
+
+    /**
+     * Evaluates the script, adding the Actions it decides, and any implicit
+     * Keep, to the mail without executing them.
+     */
+    private void decide(MailAdapter mail, Node startNode,
+            EvaluationFrame context) throws SieveException {
+        try {
+            // Evaluate the Nodes
+            startNode.jjtAccept(context.getVisitor(), mail);
+
+        } catch (StopException ex) {
+            // Stop is OK. Thrown only by custom commands: stop itself
+            // is recorded by the command state
+        } catch (BodyRequiredException ex) {
+            // Not a failure: the caller will evaluate the whole mail
+            throw ex;
+        } catch (AsyncEvaluation.SuspendedException ex) {
+            // Not a failure: evaluation resumes once the mail has been read
+            throw ex;
+        } catch (SieveException ex) {
+            LOGGER.error("Evaluation failed.", ex);
+            throw ex;
         }
+
+        // If after evaluating all of the nodes or stopping, implicitKeep is
+        // still
+        // in effect, add a Keep to the list of Actions.
+        if (context.getCommandStateManager().isImplicitKeep())
+            context.getActionCollector().add(new ActionKeep());
+    }
+
+    /**
+     * Answers the frame of this thread reset for a new evaluation, or a new
+     * frame when that of this thread is in use. Callers must release it.
+     */
+    private EvaluationFrame acquireFrame(MailAdapter mail, MessageCache cache) {
+        EvaluationFrame frame = frames.get();
+        if (frame == null) {
+            frame = new EvaluationFrame(commandManager, comparatorManager,
+                    testManager);
+            frames.set(frame);
+        } else if (frame.isInUse()) {
+            frame = new EvaluationFrame(commandManager, comparatorManager,
+                    testManager);
+        }
+        frame.acquire(mail, cache, testPool, evaluationLimits);
+        return frame;
+    }
+
+    /**
+     * <p>
+     * Method evaluateResult evaluates the parsed script against a mail,
+     * answering the Actions which {@link #evaluate(MailAdapter, Node)} would
+     * have executed without executing them, or adding them to the mail. The
+     * evaluation has no effect but that of commands which act during
+     * evaluation rather than by adding an Action, such as <code>log</code>,
+     * so the result may be used for a dry run of a script. Callers may also
+     * apply the Actions themselves, for example batching deliveries across
+     * mails, or retrying a failed Action alone.
+     * </p>
+     * 
+     * @param mail
+     *            mail evaluated, not null. Its Actions are not changed
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @return <code>EvaluationResult</code>, not null
+     * @throws SieveException
+     */
+    public EvaluationResult evaluateResult(MailAdapter mail, Node startNode)
+            throws SieveException {
+        final long started = System.nanoTime();
+        final SharedMailAdapter shared = new SharedMailAdapter(mail);
+        final EvaluationFrame context = acquireFrame(shared, new MessageCache(
+                mail));
+        try {
+            shared.setContext(context);
+            decide(shared, startNode, context);
+            return new EvaluationResult(shared.getActions(), context
+                    .getCommandStateManager().isImplicitKeep(), context
+                    .getWarnings(), System.nanoTime() - started);
+        } finally {
+            shared.setContext(null);
+            context.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Method evaluateHeaders evaluates the parsed script against the header
+     * block of a mail, before its body is available. The buffer may hold any
+     * prefix of the mail which includes the whole header block; reading stops
+     * at the blank line which ends it.
+     * </p>
+     * 
+     * <p>
+     * When evaluation completes without reading the body or size of the mail,
+     * the Actions which {@link #evaluate(MailAdapter, Node)} would have
+     * executed are answered, including any implicit Keep, and nothing is
+     * executed. When a test reading the body or size is reached, evaluation
+     * stops at once with a {@link BodyRequiredException}: the script should
+     * then be evaluated again once the whole mail is available. Scripts
+     * which never read the body, as answered by {@link #analyze(Node)}, never
+     * signal this.
+     * </p>
+     * 
+     * @param headers
+     *            raw header block, not null. Its position is not changed
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @return Actions in the order they were added, not null
+     * @throws BodyRequiredException
+     *             when a test reading the body or size is reached
+     * @throws SieveException
+     */
+    public List<Action> evaluateHeaders(ByteBuffer headers, Node startNode)
+            throws SieveException {
+        final HeaderBlockMailAdapter mail = new HeaderBlockMailAdapter(headers);
+        evaluate(mail, startNode);
+        return mail.getActions();
+    }
+
+    /**
+     * <p>
+     * Method evaluateAsync evaluates the parsed script against a mail whose
+     * parts are fetched without blocking. The parts read by the script, as
+     * answered by {@link #analyze(Node)}, are fetched at once, including the
+     * searches of its body tests. Evaluation is
+     * suspended whenever a test reaches a part which has not yet arrived, and
+     * resumes on the thread which completes its fetch. No thread is blocked
+     * while the mail is read, so a few threads may drive many evaluations.
+     * </p>
+     * 
+     * <p>
+     * The Actions which {@link #evaluate(MailAdapter, Node)} would have
+     * executed are answered, including any implicit Keep, and nothing is
+     * executed. Evaluation resumes by evaluating the script again, so scripts
+     * with side effects, such as <code>log</code>, are refused, as are body
+     * tests which need the source of the mail.
+     * </p>
+     * 
+     * @param mail
+     *            mail evaluated, not null
+     * @param startNode
+     *            start node of a parsed script, not null
+     * @return Actions in the order they were added, completed exceptionally
+     *         with a {@link SieveException} when evaluation fails, or with a
+     *         {@link org.apache.jsieve.exception.FeatureException} when the
+     *         script is refused
+     */
+    public CompletionStage<List<Action>> evaluateAsync(AsyncMailAdapter mail,
+            Node startNode) {
+        return new AsyncEvaluation(this, mail, startNode).start();
     }
 
     /**
@@ -25,6 +25,7 @@ import java.util.List;
 
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageCache;
 import org.apache.jsieve.parser.generated.ASTargument;
 import org.apache.jsieve.parser.generated.ASTarguments;
 import org.apache.jsieve.parser.generated.ASTblock;
@@ -217,6 +218,10 @@ public class SieveParserVisitorImpl implements SieveParserVisitor {
         Commands commands = (Commands) ((List) node.childrenAccept(this,
                 children)).get(0);
         Block block = new Block(commands);
+        final MessageCache cache = context.getMessageCache();
+        if (cache != null && cache.isCacheOf(data)) {
+            new BodySearchPlanner(context, cache).plan(commands);
+        }
         context.setCoordinate(node.getCoordinate());
         // Answer the result of executing the Block
         return block.execute((MailAdapter) data, context);
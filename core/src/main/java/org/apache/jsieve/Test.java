@@ -60,6 +60,10 @@ public class Test implements Executable {
      */
     public boolean isTestPassed(MailAdapter mail, SieveContext context) throws SieveException {
         LOGGER.debug(toString());
+        final EvaluationBudget budget = context.getBudget();
+        if (budget != null) {
+            budget.chargeStep();
+        }
         final String name = getName();
         final ExecutableTest test = context.getTestManager().getTest(name);
         return test.execute(mail, getArguments(), context);
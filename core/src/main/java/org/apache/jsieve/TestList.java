@@ -20,10 +20,26 @@
 package org.apache.jsieve;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.jsieve.exception.LookupException;
 import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionCollector;
+import org.apache.jsieve.mail.ConcurrentMailAdapter;
 import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.tests.AllOf;
+import org.apache.jsieve.tests.AnyOf;
+import org.apache.jsieve.tests.ExecutableTest;
+import org.apache.jsieve.tests.Not;
+import org.apache.jsieve.tests.optional.Body;
 
 /**
  * <p>
@@ -38,6 +54,13 @@ public class TestList implements Executable {
      */
     private List<Test> fieldTests;
 
+    /**
+     * Which tests are expensive, computed when first evaluated concurrently
+     */
+    private boolean[] expensive;
+
+    private int expensiveCount;
+
     /**
      * Constructor for TestList.
      */
@@ -87,6 +110,9 @@ public class TestList implements Executable {
      * @throws SieveException
      */
     public boolean allTestsPass(MailAdapter mail, SieveContext context) throws SieveException {
+        if (isConcurrent(mail, context)) {
+            return testsPassConcurrently(mail, context, false);
+        }
         boolean result = true;
         for (Test test:getTests()) {
             result = test.isTestPassed(mail, context);
@@ -107,6 +133,9 @@ public class TestList implements Executable {
      * @throws SieveException
      */
     public boolean anyTestsPass(MailAdapter mail, SieveContext context) throws SieveException {
+        if (isConcurrent(mail, context)) {
+            return testsPassConcurrently(mail, context, true);
+        }
         boolean result = false;
         for (Test test:getTests()) {
             result = test.isTestPassed(mail, context);
@@ -117,6 +146,305 @@ public class TestList implements Executable {
         return result;
     }
     
+    /**
+     * Are the tests to be evaluated concurrently? Only when the context
+     * supplies a pool, the mail may be read concurrently and at least two
+     * tests are expensive, each making a pass over the mail of its own.
+     */
+    private boolean isConcurrent(MailAdapter mail, SieveContext context) {
+        if (context.getTestPool() == null
+                || !(MessageCache.of(mail, context).getMail() instanceof ConcurrentMailAdapter)) {
+            return false;
+        }
+        if (expensive == null) {
+            expensive = new boolean[getTests().size()];
+            expensiveCount = 0;
+            final Set<List<Object>> searches = new HashSet<List<Object>>();
+            for (int i = 0; i < expensive.length; i++) {
+                expensive[i] = isExpensive(getTests().get(i), context, searches);
+                if (expensive[i]) {
+                    expensiveCount++;
+                }
+            }
+        }
+        return expensiveCount > 1;
+    }
+
+    /**
+     * Is the test expensive? Body tests which match the body are, as is the
+     * first body test answered by each shared search. Later body tests
+     * answered by the same search gain nothing from a thread of their own:
+     * the search answers one test at a time, so they would only wait for the
+     * first. They are evaluated in order. Compound tests are expensive when an operand is. All of these
+     * are free of side effects.
+     * 
+     * @param searches
+     *            transformation and content types of the searches already
+     *            answering an expensive test, not null
+     */
+    private static boolean isExpensive(Test test, SieveContext context,
+            Set<List<Object>> searches) {
+        final ExecutableTest executable;
+        try {
+            executable = context.getTestManager().getTest(test.getName());
+        } catch (LookupException e) {
+            // Reported when the test is executed
+            return false;
+        }
+        if (executable instanceof Body && test.getArguments() != null) {
+            final ScriptAnalysis.BodyKeys keys;
+            try {
+                keys = ((Body) executable).getBodyKeys(test.getArguments(), context);
+            } catch (SieveException e) {
+                // Reported when the test is executed
+                return false;
+            }
+            return keys == null || searches.add(Arrays.<Object> asList(
+                    keys.getTransformation(), keys.getContentTypes()));
+        }
+        boolean result = false;
+        if ((executable instanceof AnyOf || executable instanceof AllOf || executable instanceof Not)
+                && test.getArguments() != null
+                && test.getArguments().getTestList() != null) {
+            for (final Test operand : test.getArguments().getTestList().getTests()) {
+                // Claim the searches of every operand
+                if (isExpensive(operand, context, searches)) {
+                    result = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the expensive tests concurrently on the pool of the context,
+     * and the others in order on this thread. Results are considered in the
+     * order of the tests, so the answer, or the failure, is that of serial
+     * evaluation. Once a test answers the decisive result, the tests after it
+     * are cancelled. Each concurrent test has a context of its own, whose
+     * budget is charged to that of the evaluation only when its result is
+     * considered.
+     * 
+     * @param decisive
+     *            result which decides the list: true for anyof, false for
+     *            allof
+     */
+    private boolean testsPassConcurrently(MailAdapter mail,
+            SieveContext context, boolean decisive) throws SieveException {
+        final ForkJoinPool pool = context.getTestPool();
+        final List<Test> tests = getTests();
+        final AtomicInteger decidedAt = new AtomicInteger(Integer.MAX_VALUE);
+        final List<ConcurrentTest> tasks = new ArrayList<ConcurrentTest>(tests.size());
+        for (int i = 0; i < tests.size(); i++) {
+            if (expensive[i]) {
+                final ConcurrentTest task = new ConcurrentTest(tests.get(i), i,
+                        decisive, decidedAt, mail, new OperandContext(context));
+                pool.execute(task);
+                tasks.add(task);
+            } else {
+                tasks.add(null);
+            }
+        }
+        try {
+            for (int i = 0; i < tests.size(); i++) {
+                final ConcurrentTest task = tasks.get(i);
+                final boolean result;
+                if (task == null) {
+                    result = tests.get(i).isTestPassed(mail, context);
+                } else {
+                    result = task.getResult();
+                }
+                if (result == decisive) {
+                    return decisive;
+                }
+            }
+            return !decisive;
+        } finally {
+            for (final ForkJoinTask<Boolean> task : tasks) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates a test on a pool, keeping any failure for the thread which
+     * considers its result.
+     */
+    @SuppressWarnings("serial")
+    private static final class ConcurrentTest extends RecursiveTask<Boolean> {
+
+        private final Test test;
+
+        private final int index;
+
+        private final boolean decisive;
+
+        private final AtomicInteger decidedAt;
+
+        private final MailAdapter mail;
+
+        private final OperandContext context;
+
+        private SieveException failure;
+
+        private RuntimeException runtimeFailure;
+
+        ConcurrentTest(Test test, int index, boolean decisive,
+                AtomicInteger decidedAt, MailAdapter mail, OperandContext context) {
+            super();
+            this.test = test;
+            this.index = index;
+            this.decisive = decisive;
+            this.decidedAt = decidedAt;
+            this.mail = mail;
+            this.context = context;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (decidedAt.get() < index) {
+                // An earlier test has decided the list
+                return Boolean.valueOf(!decisive);
+            }
+            try {
+                final boolean result = test.isTestPassed(mail, context);
+                if (result == decisive) {
+                    int earliest = decidedAt.get();
+                    while (index < earliest
+                            && !decidedAt.compareAndSet(earliest, index)) {
+                        earliest = decidedAt.get();
+                    }
+                }
+                return Boolean.valueOf(result);
+            } catch (SieveException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                runtimeFailure = e;
+            }
+            return Boolean.valueOf(!decisive);
+        }
+
+        /**
+         * Waits for the test, answering its result or throwing its failure.
+         * The charges of the test are then made to the evaluation.
+         */
+        boolean getResult() throws SieveException {
+            final Boolean result = join();
+            if (failure != null) {
+                throw failure;
+            }
+            if (runtimeFailure != null) {
+                throw runtimeFailure;
+            }
+            context.merge();
+            return result.booleanValue();
+        }
+    }
+
+    /**
+     * The context of a test evaluated on a pool. It shares the managers and
+     * the views of the mail of the evaluation, but keeps its own position,
+     * budget and warnings, so that the evaluating thread is not raced.
+     */
+    private static final class OperandContext extends SieveContext {
+
+        private final SieveContext parent;
+
+        private final EvaluationBudget budget;
+
+        private final List<String> warnings = new ArrayList<String>();
+
+        private ScriptCoordinate coordinate;
+
+        OperandContext(SieveContext parent) {
+            super();
+            this.parent = parent;
+            this.coordinate = parent.getCoordinate();
+            final EvaluationBudget parentBudget = parent.getBudget();
+            this.budget = parentBudget == null ? null : parentBudget.fork(this);
+        }
+
+        /**
+         * Charges the budget of the evaluation and records the warnings of
+         * the test. Called by the evaluating thread once the test is done.
+         */
+        void merge() throws SieveException {
+            if (budget != null) {
+                parent.getBudget().merge(budget);
+            }
+            for (final String warning : warnings) {
+                parent.addWarning(warning);
+            }
+        }
+
+        @Override
+        public ScriptCoordinate getCoordinate() {
+            return coordinate;
+        }
+
+        @Override
+        public void setCoordinate(ScriptCoordinate coordinate) {
+            this.coordinate = coordinate;
+        }
+
+        @Override
+        public CommandStateManager getCommandStateManager() {
+            return parent.getCommandStateManager();
+        }
+
+        @Override
+        public ConditionManager getConditionManager() {
+            return parent.getConditionManager();
+        }
+
+        @Override
+        public void setConditionManager(ConditionManager manager) {
+            parent.setConditionManager(manager);
+        }
+
+        @Override
+        public CommandManager getCommandManager() {
+            return parent.getCommandManager();
+        }
+
+        @Override
+        public ComparatorManager getComparatorManager() {
+            return parent.getComparatorManager();
+        }
+
+        @Override
+        public TestManager getTestManager() {
+            return parent.getTestManager();
+        }
+
+        @Override
+        public MessageCache getMessageCache() {
+            return parent.getMessageCache();
+        }
+
+        @Override
+        public ForkJoinPool getTestPool() {
+            return parent.getTestPool();
+        }
+
+        @Override
+        public EvaluationBudget getBudget() {
+            return budget;
+        }
+
+        @Override
+        public ActionCollector getActionCollector() {
+            return parent.getActionCollector();
+        }
+
+        @Override
+        public void addWarning(String warning) {
+            warnings.add(warning);
+        }
+    }
+
     /**
      * Returns the children.
      * 
@@ -134,6 +462,7 @@ public class TestList implements Executable {
      */
     protected void setTests(List<Test> children) {
         fieldTests = children;
+        expensive = null;
     }
 
     public String toString() {
@@ -21,6 +21,7 @@ package org.apache.jsieve.commands;
 
 import org.apache.jsieve.Block;
 import org.apache.jsieve.ConditionManager;
+import org.apache.jsieve.ConditionStack;
 import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.mail.MailAdapter;
@@ -41,7 +42,8 @@ public abstract class AbstractConditionalCommand extends AbstractControlCommand
 
     /**
      * Method execute executes a Block within the context of a new
-     * ConditionManager.
+     * ConditionManager. When the context holds a {@link ConditionStack}, a
+     * new level of the stack is used instead.
      * 
      * @param mail not null
      * @param block not null
@@ -51,8 +53,19 @@ public abstract class AbstractConditionalCommand extends AbstractControlCommand
      */
     protected Object execute(MailAdapter mail, Block block, SieveContext context)
             throws SieveException {
+        final ConditionManager manager = context.getConditionManager();
+        if (manager instanceof ConditionStack) {
+            final ConditionStack stack = (ConditionStack) manager;
+            stack.push();
+            try {
+                return block.execute(mail, context);
+            } finally {
+                stack.pop();
+            }
+        }
+
         // Switch to a new ConditionManager
-        ConditionManager oldManager = context.getConditionManager();
+        ConditionManager oldManager = manager;
         context.setConditionManager(new ConditionManager());
 
         try {
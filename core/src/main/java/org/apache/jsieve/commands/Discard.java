@@ -23,6 +23,7 @@ import org.apache.jsieve.Arguments;
 import org.apache.jsieve.Block;
 import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionCollector;
 import org.apache.jsieve.mail.ActionDiscard;
 import org.apache.jsieve.mail.MailAdapter;
 
@@ -56,7 +57,7 @@ public class Discard extends AbstractActionCommand {
         // See http://tools.ietf.org/html/rfc5228#section-4.4
         context.getCommandStateManager().setImplicitKeep(false);
 
-        mail.addAction(new ActionDiscard());
+        ActionCollector.of(mail, context).add(new ActionDiscard());
 
         return null;
     }
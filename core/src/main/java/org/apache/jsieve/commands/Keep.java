@@ -23,6 +23,7 @@ import org.apache.jsieve.Arguments;
 import org.apache.jsieve.Block;
 import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionCollector;
 import org.apache.jsieve.mail.ActionKeep;
 import org.apache.jsieve.mail.MailAdapter;
 
@@ -40,7 +41,9 @@ public class Keep extends AbstractActionCommand {
 
     /**
      * <p>
-     * Add an ActionKeep to the List of Actions to be performed.
+     * Add an ActionKeep to the List of Actions to be performed. RFC 5228
+     * mandates that a mail is kept only once. If this is a duplicate, this
+     * Command is silently ignored.
      * </p>
      * <p>
      * Also,
@@ -51,7 +54,10 @@ public class Keep extends AbstractActionCommand {
      */
     protected Object executeBasic(MailAdapter mail, Arguments arguments,
             Block block, SieveContext context) throws SieveException {
-        mail.addAction(new ActionKeep());
+        if (!ActionCollector.of(mail, context).add(new ActionKeep())) {
+            context.addWarning(context.getCoordinate().addStartLineAndColumn(
+                    "Duplicate keep ignored."));
+        }
         return null;
     }
 
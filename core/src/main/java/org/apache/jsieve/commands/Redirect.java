@@ -24,6 +24,7 @@ import org.apache.jsieve.Block;
 import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.StringListArgument;
 import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionCollector;
 import org.apache.jsieve.mail.ActionRedirect;
 import org.apache.jsieve.mail.MailAdapter;
 
@@ -43,7 +44,9 @@ public class Redirect extends AbstractActionCommand {
     /**
      * <p>
      * Add an ActionRedirect to the List of Actions to be performed passing the
-     * sole StringList argument as the recipient.
+     * sole StringList argument as the recipient. RFC 5228 mandates that a mail
+     * is redirected only once to each recipient. If this is a duplicate, this
+     * Command is silently ignored.
      * </p>
      * <p>
      * Also,
@@ -57,7 +60,11 @@ public class Redirect extends AbstractActionCommand {
         String recipient = ((StringListArgument) arguments
                 .getArgumentList().get(0)).getList().get(0);
 
-        mail.addAction(new ActionRedirect(recipient));
+        if (!ActionCollector.of(mail, context).add(
+                new ActionRedirect(recipient))) {
+            context.addWarning(context.getCoordinate().addStartLineAndColumn(
+                    "Duplicate redirect to \"" + recipient + "\" ignored."));
+        }
 
         return null;
     }
@@ -25,7 +25,7 @@ import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.StringListArgument;
 import org.apache.jsieve.commands.AbstractActionCommand;
 import org.apache.jsieve.exception.SieveException;
-import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.ActionCollector;
 import org.apache.jsieve.mail.ActionFileInto;
 import org.apache.jsieve.mail.MailAdapter;
 
@@ -63,19 +63,12 @@ public class FileInto extends AbstractActionCommand {
 
         // Only one fileinto per destination allowed, others should be
         // discarded
-        boolean isDuplicate = false;
-        for (final Action action: mail.getActions()) {
-            isDuplicate = (action instanceof ActionFileInto)
-                    && (((ActionFileInto) action).getDestination()
-                            .equals(destination));
-            if (isDuplicate) {
-                break;
-            }
+        if (!ActionCollector.of(mail, context).add(
+                new ActionFileInto(destination))) {
+            context.addWarning(context.getCoordinate().addStartLineAndColumn(
+                    "Duplicate fileinto \"" + destination + "\" ignored."));
         }
 
-        if (!isDuplicate)
-            mail.addAction(new ActionFileInto(destination));
-
         return null;
     }
 
@@ -26,6 +26,7 @@ import org.apache.jsieve.StringListArgument;
 import org.apache.jsieve.commands.AbstractActionCommand;
 import org.apache.jsieve.exception.CommandException;
 import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionCollector;
 import org.apache.jsieve.mail.ActionReject;
 import org.apache.jsieve.mail.MailAdapter;
 
@@ -67,7 +68,7 @@ public class Reject extends AbstractActionCommand {
         final String message = ((StringListArgument) arguments
                 .getArgumentList().get(0)).getList().get(0);
 
-        mail.addAction(new ActionReject(message));
+        ActionCollector.of(mail, context).add(new ActionReject(message));
         return null;
     }
 
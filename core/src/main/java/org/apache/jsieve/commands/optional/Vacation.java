@@ -25,6 +25,7 @@ import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.commands.AbstractActionCommand;
 import org.apache.jsieve.exception.CommandException;
 import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionCollector;
 import org.apache.jsieve.mail.MailAdapter;
 import org.apache.jsieve.mail.optional.ActionVacation;
 import org.apache.jsieve.utils.ArgumentParser;
@@ -49,7 +50,7 @@ public class Vacation extends AbstractActionCommand {
 
     @Override
     protected Object executeBasic(MailAdapter mail, Arguments arguments, Block block, SieveContext context) throws SieveException {
-        mail.addAction(retrieveAction(arguments));
+        ActionCollector.of(mail, context).add(retrieveAction(arguments));
         return null;
     }
 
@@ -19,6 +19,8 @@
 
 package org.apache.jsieve.comparators;
 
+import java.nio.ByteBuffer;
+
 import org.apache.jsieve.exception.SievePatternException;
 
 /**
@@ -27,7 +29,7 @@ import org.apache.jsieve.exception.SievePatternException;
  * values "hello" and "HELLO" have the same ordinal value and are considered
  * equal".
  */
-public class AsciiCasemap implements Comparator {
+public class AsciiCasemap implements Comparator, Folding, ByteComparator {
 
     /**
      * Constructor for AsciiCasemap.
@@ -61,4 +63,32 @@ public class AsciiCasemap implements Comparator {
                 .matches(string.toUpperCase(), glob.toUpperCase());
     }
 
+    /**
+     * @see org.apache.jsieve.comparators.Folding#fold(String)
+     */
+    public String fold(String value) {
+        return value.toUpperCase();
+    }
+
+    /**
+     * @see org.apache.jsieve.comparators.ByteComparator#equals(ByteBuffer, byte[])
+     */
+    public boolean equals(ByteBuffer value, byte[] key) {
+        return ComparatorUtils.equals(value, key, true);
+    }
+
+    /**
+     * @see org.apache.jsieve.comparators.ByteComparator#contains(ByteBuffer, byte[])
+     */
+    public boolean contains(ByteBuffer container, byte[] content) {
+        return ComparatorUtils.contains(container, content, true);
+    }
+
+    /**
+     * @see org.apache.jsieve.comparators.ByteComparator#matches(ByteBuffer, byte[])
+     */
+    public boolean matches(ByteBuffer value, byte[] glob) {
+        return ComparatorUtils.matches(value, glob, true);
+    }
+
 }
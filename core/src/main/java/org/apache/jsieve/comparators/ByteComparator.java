@@ -0,0 +1,80 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.comparators;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Interface ByteComparator is implemented by comparators whose operations are
+ * defined over octets, as <code>i;octet</code> and
+ * <code>i;ascii-casemap</code> are by RFC 4790. Values are compared as they
+ * stand, without decoding them into strings first.
+ * </p>
+ * 
+ * <p>
+ * Values are the remaining bytes of a buffer. Implementations read them by
+ * absolute index and do not change the position of the buffer. Keys are the
+ * UTF-8 encoding of the key.
+ * </p>
+ * 
+ * <p>
+ * For values which are printable US-ASCII, each operation must agree with
+ * the corresponding string operation of the comparator.
+ * </p>
+ * 
+ * @see ComparatorUtils#isPlainAscii(ByteBuffer)
+ */
+public interface ByteComparator {
+
+    /**
+     * Method equals answers whether the value is equal to the key.
+     * 
+     * @param value
+     *            not null
+     * @param key
+     *            not null
+     * @return boolean
+     */
+    public boolean equals(ByteBuffer value, byte[] key);
+
+    /**
+     * Method contains answers whether the value contains the key.
+     * 
+     * @param container
+     *            not null
+     * @param content
+     *            not null
+     * @return boolean
+     */
+    public boolean contains(ByteBuffer container, byte[] content);
+
+    /**
+     * Method matches answers whether the value is matched by the glob
+     * pattern.
+     * 
+     * @param value
+     *            not null
+     * @param glob
+     *            not null
+     * @return boolean
+     */
+    public boolean matches(ByteBuffer value, byte[] glob);
+}
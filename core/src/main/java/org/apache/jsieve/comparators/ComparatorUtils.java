@@ -19,10 +19,12 @@
 
 package org.apache.jsieve.comparators;
 
+import java.nio.ByteBuffer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import org.apache.jsieve.EvaluationBudget;
 import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.exception.LookupException;
 import org.apache.jsieve.exception.SieveException;
@@ -35,6 +37,12 @@ import static  org.apache.jsieve.comparators.MatchTypeTags.*;
  */
 public class ComparatorUtils {
 
+    /** Compiled glob wildcard matching any sequence of octets */
+    private static final int ANY_SEQUENCE = -1;
+
+    /** Compiled glob wildcard matching a single octet */
+    private static final int ANY_OCTET = -2;
+
     /**
      * Constructor for ComparatorUtils.
      */
@@ -58,6 +66,10 @@ public class ComparatorUtils {
     public static boolean match(String comparatorName, String matchType,
             String matchTarget, String matchArgument, SieveContext context)
             throws SieveException {
+        final EvaluationBudget budget = context.getBudget();
+        if (budget != null) {
+            budget.chargeComparison(matchTarget.length());
+        }
         boolean isMatched = false;
         if (matchType.equals(IS_TAG))
             isMatched = is(comparatorName, matchTarget, matchArgument, context);
@@ -70,6 +82,31 @@ public class ComparatorUtils {
         return isMatched;
     }
 
+    /**
+     * Method <code>match</code> answers a boolean indicating if the parameter
+     * <code>matchTarget</code> compares to parameter
+     * <code>matchArgument</code> is a match of <code>matchType</code> using
+     * the given comparator. Tests which compare many values should look up
+     * their comparator once and use this method.
+     * 
+     * @param comparator not null
+     * @param matchType not null
+     * @param matchTarget not null
+     * @param matchArgument not null
+     * @return boolean
+     */
+    public static boolean match(Comparator comparator, String matchType,
+            String matchTarget, String matchArgument) throws SieveException {
+        boolean isMatched = false;
+        if (matchType.equals(IS_TAG))
+            isMatched = comparator.equals(matchTarget, matchArgument);
+        else if (matchType.equals(CONTAINS_TAG))
+            isMatched = comparator.contains(matchTarget, matchArgument);
+        else if (matchType.equals(MATCHES_TAG))
+            isMatched = comparator.matches(matchTarget, matchArgument);
+        return isMatched;
+    }
+
     /**
      * <p>
      * Method <code>matches</code> answers a boolean indicating if the
@@ -122,6 +159,180 @@ public class ComparatorUtils {
         return string1.equals(string2);
     }
 
+    /**
+     * Method <code>match</code> answers a boolean indicating if the parameter
+     * <code>matchTarget</code> compares to parameter
+     * <code>matchArgument</code> is a match of <code>matchType</code> using
+     * the given comparator, octet by octet.
+     * 
+     * @param comparator not null
+     * @param matchType not null
+     * @param matchTarget not null
+     * @param matchArgument UTF-8 encoded, not null
+     * @return boolean
+     */
+    public static boolean match(ByteComparator comparator, String matchType,
+            ByteBuffer matchTarget, byte[] matchArgument) {
+        boolean isMatched = false;
+        if (matchType.equals(IS_TAG))
+            isMatched = comparator.equals(matchTarget, matchArgument);
+        else if (matchType.equals(CONTAINS_TAG))
+            isMatched = comparator.contains(matchTarget, matchArgument);
+        else if (matchType.equals(MATCHES_TAG))
+            isMatched = comparator.matches(matchTarget, matchArgument);
+        return isMatched;
+    }
+
+    /**
+     * <p>
+     * Method <code>isPlainAscii</code> answers a boolean indicating if the
+     * remaining bytes of <code>value</code> are printable US-ASCII or tabs
+     * and contain no encoded word. Such a raw header value reads the same
+     * once unfolded and decoded, so it may be compared octet by octet.
+     * </p>
+     * 
+     * @param value not null
+     * @return boolean
+     */
+    public static boolean isPlainAscii(ByteBuffer value) {
+        final int limit = value.limit();
+        byte previous = 0;
+        for (int i = value.position(); i < limit; i++) {
+            final byte next = value.get(i);
+            if ((next < 0x20 && next != '\t') || next > 0x7E
+                    || (previous == '=' && next == '?')) {
+                return false;
+            }
+            previous = next;
+        }
+        return true;
+    }
+
+    /**
+     * <p>
+     * Method <code>equals</code> answers a boolean indicating if the remaining
+     * bytes of <code>value</code> are equal to <code>key</code>.
+     * </p>
+     * 
+     * @param value not null
+     * @param key not null
+     * @param caseFold true to ignore the case of US-ASCII letters
+     * @return boolean
+     */
+    public static boolean equals(ByteBuffer value, byte[] key,
+            boolean caseFold) {
+        final int position = value.position();
+        if (value.limit() - position != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (fold(value.get(position + i), caseFold) != fold(key[i],
+                    caseFold)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>
+     * Method <code>contains</code> answers a boolean indicating if the
+     * remaining bytes of <code>container</code> contain <code>content</code>.
+     * </p>
+     * 
+     * @param container not null
+     * @param content not null
+     * @param caseFold true to ignore the case of US-ASCII letters
+     * @return boolean
+     */
+    public static boolean contains(ByteBuffer container, byte[] content,
+            boolean caseFold) {
+        final int last = container.limit() - content.length;
+        for (int start = container.position(); start <= last; start++) {
+            int i = 0;
+            while (i < content.length
+                    && fold(container.get(start + i), caseFold) == fold(
+                            content[i], caseFold)) {
+                i++;
+            }
+            if (i == content.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>
+     * Method <code>matches</code> answers a boolean indicating if the
+     * remaining bytes of <code>value</code> are matched by the glob pattern
+     * <code>glob</code>. The pattern is read as by
+     * {@link #sieveToJavaRegex(String)}, with <code>?</code> matching a single
+     * octet.
+     * </p>
+     * 
+     * @param value not null
+     * @param glob not null
+     * @param caseFold true to ignore the case of US-ASCII letters
+     * @return boolean
+     */
+    public static boolean matches(ByteBuffer value, byte[] glob,
+            boolean caseFold) {
+        // Compile the pattern to literal octets and wildcards
+        final int[] pattern = new int[glob.length];
+        int length = 0;
+        for (int i = 0; i < glob.length; i++) {
+            final byte next = glob[i];
+            if (next == '*') {
+                pattern[length++] = ANY_SEQUENCE;
+            } else if (next == '?') {
+                pattern[length++] = ANY_OCTET;
+            } else if (next == '\\' && i + 1 < glob.length
+                    && isSieveMatcherSpecialChar((char) glob[i + 1])) {
+                pattern[length++] = fold(glob[++i], caseFold);
+            } else {
+                pattern[length++] = fold(next, caseFold);
+            }
+        }
+
+        // Match, returning to the last sequence wildcard on failure
+        final int limit = value.limit();
+        int p = 0;
+        int v = value.position();
+        int sequenceP = -1;
+        int sequenceV = 0;
+        while (v < limit) {
+            if (p < length
+                    && (pattern[p] == ANY_OCTET || pattern[p] == fold(value
+                            .get(v), caseFold))) {
+                p++;
+                v++;
+            } else if (p < length && pattern[p] == ANY_SEQUENCE) {
+                sequenceP = p++;
+                sequenceV = v;
+            } else if (sequenceP >= 0) {
+                p = sequenceP + 1;
+                v = ++sequenceV;
+            } else {
+                return false;
+            }
+        }
+        while (p < length && pattern[p] == ANY_SEQUENCE) {
+            p++;
+        }
+        return p == length;
+    }
+
+    /**
+     * Answers the octet as an unsigned value, upper cased when folding.
+     */
+    private static int fold(byte octet, boolean caseFold) {
+        if (caseFold && octet >= 'a' && octet <= 'z') {
+            return octet - ('a' - 'A');
+        }
+        return octet & 0xFF;
+    }
+
     /**
      * Returns true if the char is a special char for regex
      */
@@ -0,0 +1,48 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.comparators;
+
+/**
+ * <p>
+ * Interface Folding is implemented by comparators whose operations are the
+ * octet operations applied to a folded form of each operand. For example,
+ * <code>i;ascii-casemap</code> compares upper case forms.
+ * </p>
+ * 
+ * <p>
+ * Tests which compare the same value many times may fold it once, cache the
+ * result and compare the folded forms using
+ * {@link ComparatorUtils#equals(String, String)},
+ * {@link ComparatorUtils#contains(String, String)} and
+ * {@link ComparatorUtils#matches(String, String)}.
+ * </p>
+ */
+public interface Folding {
+
+    /**
+     * Method fold answers the folded form of the passed value. Implementations
+     * must answer equal results for equal values.
+     * 
+     * @param value
+     *            not null
+     * @return folded value, not null
+     */
+    public String fold(String value);
+}
@@ -19,6 +19,8 @@
 
 package org.apache.jsieve.comparators;
 
+import java.nio.ByteBuffer;
+
 import org.apache.jsieve.exception.SievePatternException;
 
 /**
@@ -27,7 +29,7 @@ import org.apache.jsieve.exception.SievePatternException;
  * equal if they are the same length and contain the same octets in the same
  * order. NIL is equal only to itself".
  */
-public class Octet implements Comparator {
+public class Octet implements Comparator, Folding, ByteComparator {
 
     /**
      * Constructor for Octet.
@@ -58,4 +60,32 @@ public class Octet implements Comparator {
         return ComparatorUtils.matches(string, glob);
     }
 
+    /**
+     * @see org.apache.jsieve.comparators.Folding#fold(String)
+     */
+    public String fold(String value) {
+        return value;
+    }
+
+    /**
+     * @see org.apache.jsieve.comparators.ByteComparator#equals(ByteBuffer, byte[])
+     */
+    public boolean equals(ByteBuffer value, byte[] key) {
+        return ComparatorUtils.equals(value, key, false);
+    }
+
+    /**
+     * @see org.apache.jsieve.comparators.ByteComparator#contains(ByteBuffer, byte[])
+     */
+    public boolean contains(ByteBuffer container, byte[] content) {
+        return ComparatorUtils.contains(container, content, false);
+    }
+
+    /**
+     * @see org.apache.jsieve.comparators.ByteComparator#matches(ByteBuffer, byte[])
+     */
+    public boolean matches(ByteBuffer value, byte[] glob) {
+        return ComparatorUtils.matches(value, glob, false);
+    }
+
 }
@@ -0,0 +1,71 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.exception;
+
+import org.apache.jsieve.EvaluationLimits;
+import org.apache.jsieve.ScriptCoordinate;
+
+/**
+ * Class <code>BudgetExceededException</code> indicates that an evaluation
+ * has used more of a resource than its {@link EvaluationLimits} allow, and
+ * has been ended.
+ */
+@SuppressWarnings("serial")
+public class BudgetExceededException extends SieveException {
+
+    private final EvaluationLimits.Resource resource;
+
+    private final transient ScriptCoordinate coordinate;
+
+    /**
+     * Constructor for BudgetExceededException.
+     * 
+     * @param message
+     * @param resource
+     *            the resource exhausted, not null
+     * @param coordinate
+     *            where in the script evaluation was ended, possibly null
+     */
+    public BudgetExceededException(String message,
+            EvaluationLimits.Resource resource, ScriptCoordinate coordinate) {
+        super(message);
+        this.resource = resource;
+        this.coordinate = coordinate;
+    }
+
+    /**
+     * Gets the resource exhausted.
+     * 
+     * @return <code>EvaluationLimits.Resource</code>, not null
+     */
+    public EvaluationLimits.Resource getResource() {
+        return resource;
+    }
+
+    /**
+     * Gets the position in the script of the command, or of the command
+     * holding the test, being executed when evaluation was ended.
+     * 
+     * @return <code>ScriptCoordinate</code>, possibly null
+     */
+    public ScriptCoordinate getCoordinate() {
+        return coordinate;
+    }
+}
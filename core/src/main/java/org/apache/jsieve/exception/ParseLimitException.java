@@ -0,0 +1,70 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.exception;
+
+import org.apache.jsieve.ParseLimits;
+import org.apache.jsieve.ScriptCoordinate;
+import org.apache.jsieve.parser.generated.ParseException;
+
+/**
+ * Class <code>ParseLimitException</code> indicates that a script exceeds the
+ * {@link ParseLimits} of the parser, and has been rejected.
+ */
+@SuppressWarnings("serial")
+public class ParseLimitException extends ParseException {
+
+    private final ParseLimits.Resource resource;
+
+    private final transient ScriptCoordinate coordinate;
+
+    /**
+     * Constructor for ParseLimitException.
+     * 
+     * @param message
+     * @param resource
+     *            the resource exceeded, not null
+     * @param coordinate
+     *            where in the script the limit was exceeded, not null
+     */
+    public ParseLimitException(String message, ParseLimits.Resource resource,
+            ScriptCoordinate coordinate) {
+        super(coordinate.addStartLineAndColumn(message));
+        this.resource = resource;
+        this.coordinate = coordinate;
+    }
+
+    /**
+     * Gets the resource exceeded.
+     * 
+     * @return <code>ParseLimits.Resource</code>, not null
+     */
+    public ParseLimits.Resource getResource() {
+        return resource;
+    }
+
+    /**
+     * Gets the position in the script at which the limit was exceeded.
+     * 
+     * @return <code>ScriptCoordinate</code>, not null
+     */
+    public ScriptCoordinate getCoordinate() {
+        return coordinate;
+    }
+}
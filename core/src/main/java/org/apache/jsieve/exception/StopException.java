@@ -21,8 +21,10 @@ package org.apache.jsieve.exception;
 
 /**
  * Class <code>StopException</code> indicates that evaluation should be
- * terminated. Typically, this exception is thrown when a Stop Command is
- * encountered.
+ * terminated. The Stop Command no longer throws it, but records that
+ * evaluation has stopped with
+ * {@link org.apache.jsieve.CommandStateManager#setStopped(boolean)}, which
+ * is cheaper. Custom commands may still throw it.
  */
 @SuppressWarnings("serial")
 public class StopException extends SieveException {
@@ -0,0 +1,156 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jsieve.SieveContext;
+
+/**
+ * <p>
+ * Collects the actions of one evaluation of a mail, adding each to the mail
+ * unless it duplicates one already added. RFC 5228 requires that a mail be
+ * filed into each mailbox, kept, or redirected to each address at most once.
+ * Actions are indexed by type and destination or address, so duplicates are
+ * found in constant time, without asking the mail for its actions at each
+ * command. As before actions were collected, only <code>fileinto</code> is
+ * checked against the actions added to the mail before evaluation: the mail
+ * is asked for them once, when the first <code>fileinto</code> is added.
+ * </p>
+ * 
+ * <p>
+ * Actions other than <code>fileinto</code>, <code>keep</code> and
+ * <code>redirect</code> are never duplicates. {@link #getActions()} answers
+ * the actions collected, in the order they were added.
+ * </p>
+ * 
+ * @see SieveContext#getActionCollector()
+ */
+public final class ActionCollector {
+
+    /**
+     * Answers the collector for the current evaluation of the given mail.
+     * When the context does not hold a collector for the mail, a new
+     * collector is answered which will be discarded by the caller.
+     * 
+     * @param mail
+     *            <code>MailAdapter</code>, not null
+     * @param context
+     *            <code>SieveContext</code>, not null
+     * @return <code>ActionCollector</code>, not null
+     */
+    public static ActionCollector of(MailAdapter mail, SieveContext context) {
+        final ActionCollector collector = context.getActionCollector();
+        if (collector != null && collector.isCollectorOf(mail)) {
+            return collector;
+        }
+        final ActionCollector result = new ActionCollector();
+        result.reset(mail);
+        return result;
+    }
+
+    private final Set<ActionTarget> targets = new HashSet<ActionTarget>();
+
+    private final List<Action> actions = new ArrayList<Action>();
+
+    private final List<Action> view = Collections.unmodifiableList(actions);
+
+    private MailAdapter mail;
+
+    private boolean indexed;
+
+    /**
+     * Constructs a collector which collects for no mail until
+     * {@link #reset(MailAdapter)}.
+     */
+    public ActionCollector() {
+        super();
+    }
+
+    /**
+     * Starts collecting the actions of a new evaluation.
+     * 
+     * @param mail
+     *            <code>MailAdapter</code> to which actions are added, or null
+     *            to collect for no mail
+     */
+    public void reset(MailAdapter mail) {
+        this.mail = mail;
+        targets.clear();
+        actions.clear();
+        indexed = false;
+    }
+
+    /**
+     * Is this the collector of the given mail?
+     * 
+     * @param mail
+     *            <code>MailAdapter</code>, possibly null
+     * @return true when actions are added to the given mail
+     */
+    public boolean isCollectorOf(MailAdapter mail) {
+        return mail != null && this.mail == mail;
+    }
+
+    /**
+     * Adds the given action to the mail, unless it duplicates an action
+     * already added.
+     * 
+     * @param action
+     *            <code>Action</code>, not null
+     * @return true when the action was added, false when it was a duplicate
+     */
+    public boolean add(Action action) {
+        final ActionTarget target = ActionTarget.of(action);
+        if (target != null) {
+            if (!indexed && action instanceof ActionFileInto) {
+                // Index once any actions added to the mail before evaluation
+                for (final Action added : mail.getActions()) {
+                    final ActionTarget existing = ActionTarget.of(added);
+                    if (existing != null) {
+                        targets.add(existing);
+                    }
+                }
+                indexed = true;
+            }
+            if (!targets.add(target)) {
+                return false;
+            }
+        }
+        actions.add(action);
+        mail.addAction(action);
+        return true;
+    }
+
+    /**
+     * Answers the actions collected since the last reset, in the order they
+     * were added.
+     * 
+     * @return unmodifiable <code>List</code> of <code>Action</code>s, not
+     *         null
+     */
+    public List<Action> getActions() {
+        return view;
+    }
+}
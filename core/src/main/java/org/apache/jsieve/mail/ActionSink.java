@@ -0,0 +1,113 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.util.List;
+
+import org.apache.jsieve.exception.SieveException;
+
+/**
+ * <p>
+ * Applies the Actions decided for many mails, as a mail store which files
+ * many mails into one mailbox in a single transaction. Each method applies
+ * one Action to every mail given, in order.
+ * </p>
+ * 
+ * <p>
+ * A method throwing a <code>SieveException</code> signals that the Action
+ * was applied to none of the mails given. The remaining Actions of those
+ * mails are then handed back to {@link #failed(Object, List, SieveException)}
+ * rather than applied.
+ * </p>
+ * 
+ * @param <M>
+ *            identifies a mail to the store
+ * @see BatchingActionExecutor
+ */
+public interface ActionSink<M> {
+
+    /**
+     * Files the mails into a mailbox.
+     * 
+     * @param destination
+     *            mailbox, not null
+     * @param mails
+     *            not null, not empty
+     * @throws SieveException
+     */
+    void fileInto(String destination, List<M> mails) throws SieveException;
+
+    /**
+     * Keeps the mails, filing them into the default mailbox.
+     * 
+     * @param mails
+     *            not null, not empty
+     * @throws SieveException
+     */
+    void keep(List<M> mails) throws SieveException;
+
+    /**
+     * Redirects the mails to an address.
+     * 
+     * @param address
+     *            not null
+     * @param mails
+     *            not null, not empty
+     * @throws SieveException
+     */
+    void redirect(String address, List<M> mails) throws SieveException;
+
+    /**
+     * Rejects the mails, returning them to their senders.
+     * 
+     * @param reason
+     *            explanation for the senders, not null
+     * @param mails
+     *            not null, not empty
+     * @throws SieveException
+     */
+    void reject(String reason, List<M> mails) throws SieveException;
+
+    /**
+     * Applies an Action which is not grouped with those of other mails, such
+     * as a vacation reply.
+     * 
+     * @param action
+     *            not null
+     * @param mail
+     *            not null
+     * @throws SieveException
+     */
+    void execute(Action action, M mail) throws SieveException;
+
+    /**
+     * Receives the Actions of a mail which were not applied because an Action
+     * failed, so that they may be retried or reported.
+     * 
+     * @param mail
+     *            not null
+     * @param actions
+     *            the Action which failed, followed by those after it, not
+     *            null
+     * @param cause
+     *            failure, not null
+     */
+    void failed(M mail, List<Action> actions, SieveException cause);
+}
@@ -0,0 +1,101 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+/**
+ * Identifies the target of an action by its type and its destination,
+ * address or reason, so that actions with the same effect may be found or
+ * grouped in constant time.
+ */
+final class ActionTarget {
+
+    private static final ActionTarget KEEP = new ActionTarget(
+            ActionKeep.class, null);
+
+    /**
+     * Answers the target of the given action, when another action with the
+     * same target is a duplicate of it.
+     * 
+     * @param action
+     *            <code>Action</code>, not null
+     * @return <code>ActionTarget</code> of a <code>fileinto</code>,
+     *         <code>keep</code> or <code>redirect</code> action, or null for
+     *         any other action
+     */
+    static ActionTarget of(Action action) {
+        if (action instanceof ActionFileInto) {
+            return new ActionTarget(ActionFileInto.class,
+                    ((ActionFileInto) action).getDestination());
+        } else if (action instanceof ActionRedirect) {
+            return new ActionTarget(ActionRedirect.class,
+                    ((ActionRedirect) action).getAddress());
+        } else if (action instanceof ActionKeep) {
+            return KEEP;
+        }
+        return null;
+    }
+
+    /**
+     * Answers the target of the given action, when actions of different mails
+     * with the same target may be applied together.
+     * 
+     * @param action
+     *            <code>Action</code>, not null
+     * @return <code>ActionTarget</code> of a <code>fileinto</code>,
+     *         <code>keep</code>, <code>redirect</code> or <code>reject</code>
+     *         action, or null for any other action
+     */
+    static ActionTarget groupOf(Action action) {
+        if (action instanceof ActionReject) {
+            return new ActionTarget(ActionReject.class,
+                    ((ActionReject) action).getMessage());
+        }
+        return of(action);
+    }
+
+    private final Class<? extends Action> type;
+
+    private final String value;
+
+    private ActionTarget(final Class<? extends Action> type,
+            final String value) {
+        super();
+        this.type = type;
+        this.value = value;
+    }
+
+    public int hashCode() {
+        return 31 * type.hashCode() + (value == null ? 0 : value.hashCode());
+    }
+
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ActionTarget)) {
+            return false;
+        }
+        final ActionTarget other = (ActionTarget) obj;
+        return type == other.type
+                && (value == null ? other.value == null : value
+                        .equals(other.value));
+    }
+
+    public String toString() {
+        return "ActionTarget: " + type.getName() + ", " + value;
+    }
+}
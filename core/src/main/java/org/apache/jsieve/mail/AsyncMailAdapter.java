@@ -0,0 +1,137 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * Interface <code>AsyncMailAdapter</code> answers the parts of a mail read by
+ * Sieve tests without blocking the calling thread. It suits mail whose parts
+ * are fetched from storage on demand: each method starts the fetch and
+ * answers a future completed once the part has arrived.
+ * </p>
+ * 
+ * <p>
+ * The methods mirror those of {@link MailAdapter} which read the mail, and
+ * answer the same values. Implementations must not block and must not fail
+ * synchronously: a failure should complete the future answered
+ * exceptionally, preferably with a {@link SieveMailException}. A method may be
+ * called from any thread, and several fetches may be in flight at once.
+ * </p>
+ * 
+ * <p>
+ * Actions are not added to the adapter: the evaluation answers them.
+ * Envelope tests are not supported.
+ * </p>
+ * 
+ * @see org.apache.jsieve.SieveFactory#evaluateAsync(AsyncMailAdapter,
+ *      org.apache.jsieve.parser.generated.Node)
+ */
+public interface AsyncMailAdapter {
+
+    /**
+     * Method getHeader answers the values of all of the headers in the mail
+     * whose name is equal to the passed name.
+     * 
+     * @param name
+     *            header name, not null
+     * @return future <code>List</code> of values, not null
+     * @see MailAdapter#getHeader(String)
+     */
+    public CompletableFuture<List<String>> getHeader(String name);
+
+    /**
+     * Method getMatchingHeader answers the values of all of the headers in the
+     * mail with the passed name, ignoring case and the whitespace prefixes and
+     * suffixes of the header names in the mail.
+     * 
+     * @param name
+     *            header name, not null
+     * @return future <code>List</code> of values, not null
+     * @see MailAdapter#getMatchingHeader(String)
+     */
+    public CompletableFuture<List<String>> getMatchingHeader(String name);
+
+    /**
+     * Method getHeaderNames answers the names of all of the headers in the
+     * mail.
+     * 
+     * @return future <code>List</code> of names, not null
+     * @see MailAdapter#getHeaderNames()
+     */
+    public CompletableFuture<List<String>> getHeaderNames();
+
+    /**
+     * Method getSize answers the size of the mail in octets.
+     * 
+     * @return future size
+     * @see MailAdapter#getSize()
+     */
+    public CompletableFuture<Integer> getSize();
+
+    /**
+     * Method getContentType answers the content type of the mail.
+     * 
+     * @return future content type
+     * @see MailAdapter#getContentType()
+     */
+    public CompletableFuture<String> getContentType();
+
+    /**
+     * Method isInBodyText answers whether any of the passed phrases occurs in
+     * the text parts of the body of the mail.
+     * 
+     * @param phrasesCaseInsensitive
+     *            phrases sought, not null
+     * @return future answer
+     * @see MailAdapter#isInBodyText(List)
+     */
+    public CompletableFuture<Boolean> isInBodyText(
+            List<String> phrasesCaseInsensitive);
+
+    /**
+     * Method isInBodyRaw answers whether any of the passed phrases occurs in
+     * the undecoded body of the mail.
+     * 
+     * @param phrasesCaseInsensitive
+     *            phrases sought, not null
+     * @return future answer
+     * @see MailAdapter#isInBodyRaw(List)
+     */
+    public CompletableFuture<Boolean> isInBodyRaw(
+            List<String> phrasesCaseInsensitive);
+
+    /**
+     * Method isInBodyContent answers whether any of the passed phrases occurs
+     * in the parts of the body of the mail with one of the passed content
+     * types.
+     * 
+     * @param contentTypes
+     *            content types searched, not null
+     * @param phrasesCaseInsensitive
+     *            phrases sought, not null
+     * @return future answer
+     * @see MailAdapter#isInBodyContent(List, List)
+     */
+    public CompletableFuture<Boolean> isInBodyContent(
+            List<String> contentTypes, List<String> phrasesCaseInsensitive);
+}
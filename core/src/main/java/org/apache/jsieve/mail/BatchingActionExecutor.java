@@ -0,0 +1,337 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jsieve.EvaluationResult;
+import org.apache.jsieve.exception.SieveException;
+
+/**
+ * <p>
+ * Applies the Actions decided for many mails through an {@link ActionSink},
+ * grouping those of different mails with the same target so that, for
+ * example, every mail filed into one mailbox is appended in a single call.
+ * Mails submitted are held until a batch holds enough mails, or its oldest
+ * mail has waited long enough, and are then flushed together.
+ * </p>
+ * 
+ * <p>
+ * The Actions of each mail are applied in the order they were decided: an
+ * Action is applied only once every earlier Action of its mail has been.
+ * When an Action fails, it and the later Actions of its mail are handed to
+ * {@link ActionSink#failed(Object, List, SieveException)}, while other mails
+ * proceed. Discard Actions need nothing to be done and are dropped.
+ * </p>
+ * 
+ * <p>
+ * Instances may be shared by many threads. Batches are applied one at a
+ * time, in the order they were flushed.
+ * </p>
+ * 
+ * @param <M>
+ *            identifies a mail to the sink
+ * @see org.apache.jsieve.SieveFactory#evaluateResult(MailAdapter,
+ *      org.apache.jsieve.parser.generated.Node)
+ */
+public class BatchingActionExecutor<M> {
+
+    /**
+     * The Actions of a mail yet to be applied.
+     */
+    private static final class Pending<M> {
+
+        private final M mail;
+
+        private final List<Action> actions;
+
+        private int next;
+
+        Pending(final M mail, final List<Action> actions) {
+            this.mail = mail;
+            this.actions = actions;
+        }
+    }
+
+    private final ActionSink<M> sink;
+
+    private final int maxMails;
+
+    private final long maxDelayNanos;
+
+    private final ScheduledFuture<?> timer;
+
+    private final Object flushLock = new Object();
+
+    private List<Pending<M>> pending = new ArrayList<Pending<M>>();
+
+    private long oldest;
+
+    private long flushes;
+
+    /**
+     * Constructs an executor flushing when a batch holds the given number of
+     * mails, or when its oldest mail has waited for the given time and
+     * another mail is submitted or {@link #flushIfDue()} is called.
+     * 
+     * @param sink
+     *            <code>ActionSink</code>, not null
+     * @param maxMails
+     *            greatest number of mails in a batch, positive
+     * @param maxDelay
+     *            longest time a mail waits for its batch to fill
+     * @param unit
+     *            <code>TimeUnit</code> of the delay, not null
+     */
+    public BatchingActionExecutor(final ActionSink<M> sink, final int maxMails,
+            final long maxDelay, final TimeUnit unit) {
+        this(sink, maxMails, maxDelay, unit, null);
+    }
+
+    /**
+     * Constructs an executor flushing when a batch holds the given number of
+     * mails, or when its oldest mail has waited for the given time. The
+     * given scheduler, when not null, checks for a batch which is due at
+     * intervals of the delay until {@link #close()}.
+     * 
+     * @param sink
+     *            <code>ActionSink</code>, not null
+     * @param maxMails
+     *            greatest number of mails in a batch, positive
+     * @param maxDelay
+     *            longest time a mail waits for its batch to fill
+     * @param unit
+     *            <code>TimeUnit</code> of the delay, not null
+     * @param scheduler
+     *            <code>ScheduledExecutorService</code>, possibly null
+     */
+    public BatchingActionExecutor(final ActionSink<M> sink, final int maxMails,
+            final long maxDelay, final TimeUnit unit,
+            final ScheduledExecutorService scheduler) {
+        super();
+        if (maxMails < 1) {
+            throw new IllegalArgumentException("Batches must hold mail");
+        }
+        this.sink = sink;
+        this.maxMails = maxMails;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        if (scheduler == null) {
+            this.timer = null;
+        } else {
+            final long period = Math.max(maxDelayNanos, 1);
+            this.timer = scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flushIfDue();
+                }
+            }, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Submits the Actions decided for a mail.
+     * 
+     * @param mail
+     *            identifies the mail to the sink, not null
+     * @param result
+     *            result of evaluating the mail, not null
+     */
+    public void submit(M mail, EvaluationResult result) {
+        submit(mail, result.getActions());
+    }
+
+    /**
+     * Submits the Actions decided for a mail, flushing the batch when it is
+     * full or due.
+     * 
+     * @param mail
+     *            identifies the mail to the sink, not null
+     * @param actions
+     *            in the order they are to be applied, not null
+     */
+    public void submit(M mail, List<Action> actions) {
+        final boolean flush;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                oldest = System.nanoTime();
+            }
+            pending.add(new Pending<M>(mail, new ArrayList<Action>(actions)));
+            flush = pending.size() >= maxMails || isDue();
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    /**
+     * Flushes the batch when its oldest mail has waited for the delay.
+     */
+    public void flushIfDue() {
+        final boolean flush;
+        synchronized (this) {
+            flush = isDue();
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies the Actions of every mail submitted.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final List<Pending<M>> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<Pending<M>>();
+                flushes++;
+            }
+            apply(batch);
+        }
+    }
+
+    /**
+     * Stops checking for due batches and flushes the mails submitted.
+     */
+    public void close() {
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        flush();
+    }
+
+    /**
+     * Gets the number of mails waiting to be flushed.
+     * 
+     * @return number of mails
+     */
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the number of batches flushed.
+     * 
+     * @return number of batches
+     */
+    public synchronized long getFlushes() {
+        return flushes;
+    }
+
+    private boolean isDue() {
+        return !pending.isEmpty()
+                && System.nanoTime() - oldest >= maxDelayNanos;
+    }
+
+    /**
+     * Applies a batch in rounds. Each round groups the next Action of every
+     * mail by target, so no Action is applied before the earlier Actions of
+     * its mail.
+     */
+    private void apply(List<Pending<M>> batch) {
+        List<Pending<M>> active = new ArrayList<Pending<M>>(batch.size());
+        for (final Pending<M> mail : batch) {
+            if (!mail.actions.isEmpty()) {
+                active.add(mail);
+            }
+        }
+        while (!active.isEmpty()) {
+            final Map<Object, List<Pending<M>>> groups =
+                    new LinkedHashMap<Object, List<Pending<M>>>();
+            for (final Pending<M> mail : active) {
+                final Action action = mail.actions.get(mail.next);
+                final Object target = ActionTarget.groupOf(action);
+                // Actions without a target are applied alone
+                final Object key = target == null ? mail : target;
+                List<Pending<M>> group = groups.get(key);
+                if (group == null) {
+                    group = new ArrayList<Pending<M>>();
+                    groups.put(key, group);
+                }
+                group.add(mail);
+            }
+            final List<Pending<M>> remaining = new ArrayList<Pending<M>>(
+                    active.size());
+            for (final List<Pending<M>> group : groups.values()) {
+                if (applyNext(group)) {
+                    for (final Pending<M> mail : group) {
+                        if (++mail.next < mail.actions.size()) {
+                            remaining.add(mail);
+                        }
+                    }
+                }
+            }
+            active = remaining;
+        }
+    }
+
+    /**
+     * Applies the next Action of each mail in a group with one target.
+     * 
+     * @return true when applied, false when failed
+     */
+    private boolean applyNext(List<Pending<M>> group) {
+        final Pending<M> first = group.get(0);
+        final Action action = first.actions.get(first.next);
+        final List<M> mails = new ArrayList<M>(group.size());
+        for (final Pending<M> mail : group) {
+            mails.add(mail.mail);
+        }
+        try {
+            if (action instanceof ActionFileInto) {
+                sink.fileInto(((ActionFileInto) action).getDestination(),
+                        Collections.unmodifiableList(mails));
+            } else if (action instanceof ActionRedirect) {
+                sink.redirect(((ActionRedirect) action).getAddress(),
+                        Collections.unmodifiableList(mails));
+            } else if (action instanceof ActionReject) {
+                sink.reject(((ActionReject) action).getMessage(), Collections
+                        .unmodifiableList(mails));
+            } else if (action instanceof ActionKeep) {
+                sink.keep(Collections.unmodifiableList(mails));
+            } else if (!(action instanceof ActionDiscard)) {
+                sink.execute(action, first.mail);
+            }
+            return true;
+        } catch (SieveException e) {
+            failed(group, e);
+        } catch (RuntimeException e) {
+            failed(group, new SieveException(e.getMessage(), e));
+        }
+        return false;
+    }
+
+    private void failed(List<Pending<M>> group, SieveException cause) {
+        for (final Pending<M> mail : group) {
+            sink.failed(mail.mail, Collections.unmodifiableList(mail.actions
+                    .subList(mail.next, mail.actions.size())), cause);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve.mail;
+
+/**
+ * <p>
+ * Class <code>BodyRequiredException</code> indicates that evaluation reached
+ * a test which reads the body or the size of a mail when only its header
+ * block was supplied. The evaluation should be repeated once the whole mail
+ * is available.
+ * </p>
+ * 
+ * @see HeaderBlockMailAdapter
+ */
+@SuppressWarnings("serial")
+public class BodyRequiredException extends SieveMailException {
+
+    /**
+     * Constructor for BodyRequiredException.
+     */
+    public BodyRequiredException() {
+        super();
+    }
+
+    /**
+     * Constructor for BodyRequiredException.
+     * 
+     * @param message
+     */
+    public BodyRequiredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,49 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Interface <code>BufferedMessageSource</code> is implemented by a
+ * {@link MessageSource} whose bytes are already addressable, for example a
+ * spool file mapped into memory.
+ * </p>
+ * 
+ * <p>
+ * The raw body test searches the buffer answered by {@link #getBody()} in
+ * place rather than reading a stream, so nothing is copied.
+ * </p>
+ */
+public interface BufferedMessageSource extends MessageSource {
+
+    /**
+     * Method getBody answers a read only view of the body of the mail: the
+     * bytes following the blank line which ends the header block. The view is
+     * positioned at the first byte of the body and is independent of any
+     * other view, so callers may move its position freely.
+     * 
+     * @return <code>ByteBuffer</code>, not null, possibly empty
+     * @throws IOException
+     */
+    public ByteBuffer getBody() throws IOException;
+}
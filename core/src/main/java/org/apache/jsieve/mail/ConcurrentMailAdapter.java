@@ -0,0 +1,40 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+/**
+ * <p>
+ * Interface <code>ConcurrentMailAdapter</code> declares that the methods of
+ * a {@link MailAdapter} which read the mail may be called by several threads
+ * at once during a single evaluation, and from threads on which
+ * {@link #setContext(org.apache.jsieve.SieveContext)} was not called.
+ * </p>
+ * 
+ * <p>
+ * When a pool is supplied for the purpose, expensive operands of
+ * <code>anyof</code> and <code>allof</code>, such as body tests, are then
+ * evaluated concurrently. Actions are still added, and executed, by the
+ * thread evaluating the script.
+ * </p>
+ * 
+ * @see org.apache.jsieve.SieveFactory#setTestPool(java.util.concurrent.ForkJoinPool)
+ */
+public interface ConcurrentMailAdapter extends MailAdapter {
+}
@@ -0,0 +1,409 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.Field;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+import org.apache.james.mime4j.stream.RawField;
+import org.apache.james.mime4j.util.ByteSequence;
+import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.james.mime4j.util.MimeUtil;
+import org.apache.jsieve.SieveContext;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.body.StreamingBodyMatcher;
+import org.apache.jsieve.parser.address.SieveAddressBuilder;
+import org.apache.jsieve.parser.generated.address.ParseException;
+
+/**
+ * <p>
+ * {@link MailAdapter} over the header block of a mail alone, read with <a
+ * href='http://james.apache.org/mime4j'>Apache Mime4J</a>. This allows a
+ * script to be evaluated as soon as the headers of a mail have arrived, for
+ * example while the body is still being received.
+ * </p>
+ * 
+ * <p>
+ * Header values are kept as raw bytes, and decoded only when a test needs
+ * them as strings: octet comparisons of plain US-ASCII values read the bytes
+ * directly. The body and size of the mail are not known: the methods which
+ * answer them throw {@link BodyRequiredException}, so that evaluation stops
+ * only when a body or size test is actually reached.
+ * </p>
+ * 
+ * <p>
+ * Actions are accumulated by {@link #addAction(Action)}.
+ * {@link #executeActions()} does nothing: callers apply those answered by
+ * {@link #getActions()} once the script has been evaluated.
+ * </p>
+ * 
+ * <p>
+ * Apart from the actions and the decoded headers, instances are not changed
+ * after construction. A new adapter should be created for each evaluation.
+ * </p>
+ * 
+ * @see org.apache.jsieve.SieveFactory#evaluateHeaders(ByteBuffer,
+ *      org.apache.jsieve.parser.generated.Node)
+ */
+public class HeaderBlockMailAdapter implements MailAdapter,
+        HeaderIndexProvider, RawHeaderProvider, MessageSourceProvider {
+
+    private static final String DEFAULT_CONTENT_TYPE = "text/plain";
+
+    private final Map<String, List<byte[]>> rawHeaders;
+
+    private final Map<String, List<byte[]>> rawIndex;
+
+    private final List<String> headerNames;
+
+    private HeaderIndexImpl headerIndex;
+
+    private final List<Action> actions;
+
+    /**
+     * Constructs an adapter over the header block at the start of the given
+     * buffer, read with {@link StreamingBodyMatcher#DEFAULT_CONFIG}. Reading
+     * stops at the blank line ending the block or at the limit of the buffer,
+     * whichever comes first, so the buffer may hold any prefix of the mail
+     * which includes the whole header block.
+     * 
+     * @param headers
+     *            raw header block, not null. Its position is not changed
+     * @throws SieveMailException
+     *             when the header block cannot be read
+     */
+    public HeaderBlockMailAdapter(final ByteBuffer headers)
+            throws SieveMailException {
+        this(headers, StreamingBodyMatcher.DEFAULT_CONFIG);
+    }
+
+    /**
+     * Constructs an adapter over the header block at the start of the given
+     * buffer, read with the given configuration.
+     * 
+     * @param headers
+     *            raw header block, not null. Its position is not changed
+     * @param config
+     *            <code>MimeConfig</code>, not null
+     * @throws SieveMailException
+     *             when the header block cannot be read
+     * @see #HeaderBlockMailAdapter(ByteBuffer)
+     */
+    public HeaderBlockMailAdapter(final ByteBuffer headers,
+            final MimeConfig config) throws SieveMailException {
+        this(new ByteBufferInputStream(headers.duplicate()), config);
+    }
+
+    /**
+     * Constructs an adapter over the header block read from the given
+     * stream, which is closed once the block has been read.
+     * 
+     * @param in
+     *            raw mail, not null
+     * @param config
+     *            <code>MimeConfig</code>, not null
+     * @throws SieveMailException
+     *             when the header block cannot be read
+     */
+    protected HeaderBlockMailAdapter(final InputStream in,
+            final MimeConfig config) throws SieveMailException {
+        super();
+        this.actions = new ArrayList<Action>();
+
+        final Map<String, List<byte[]>> rawHeaders = new LinkedHashMap<String, List<byte[]>>();
+        final Map<String, List<byte[]>> rawIndex = new HashMap<String, List<byte[]>>();
+        try {
+            final MimeTokenStream stream = new MimeTokenStream(config);
+            stream.parse(in);
+            for (EntityState state = stream.getState(); state != EntityState.T_END_HEADER
+                    && state != EntityState.T_END_OF_STREAM; state = stream
+                    .next()) {
+                if (state == EntityState.T_FIELD) {
+                    final Field field = stream.getField();
+                    final byte[] value = rawValue(field);
+                    add(rawHeaders, field.getName(), value);
+                    add(rawIndex, HeaderIndexImpl.normalize(field.getName()),
+                            value);
+                }
+            }
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        } catch (MimeException e) {
+            throw new SieveMailException(e);
+        } finally {
+            close(in);
+        }
+        this.rawHeaders = rawHeaders;
+        this.rawIndex = rawIndex;
+        this.headerNames = Collections
+                .unmodifiableList(new ArrayList<String>(rawHeaders.keySet()));
+    }
+
+    /**
+     * Decodes the header values the first time this is called.
+     * 
+     * @see HeaderIndexProvider#getHeaderIndex()
+     */
+    public synchronized HeaderIndexImpl getHeaderIndex() {
+        if (headerIndex == null) {
+            final Map<String, List<String>> headers = new HashMap<String, List<String>>(
+                    rawIndex.size() * 2);
+            for (final Map.Entry<String, List<byte[]>> entry : rawIndex
+                    .entrySet()) {
+                headers.put(entry.getKey(), decode(entry.getValue()));
+            }
+            headerIndex = new HeaderIndexImpl(headers);
+        }
+        return headerIndex;
+    }
+
+    /**
+     * @see RawHeaderProvider#getRawMatchingHeader(String)
+     */
+    public List<ByteBuffer> getRawMatchingHeader(final String name) {
+        final List<byte[]> values = rawIndex.get(HeaderIndexImpl
+                .normalize(name));
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        final List<ByteBuffer> results = new ArrayList<ByteBuffer>(values
+                .size());
+        for (final byte[] value : values) {
+            results.add(ByteBuffer.wrap(value).asReadOnlyBuffer());
+        }
+        return results;
+    }
+
+    /**
+     * The source of the mail is not known.
+     * 
+     * @throws BodyRequiredException
+     *             always
+     * @see MessageSourceProvider#getMessageSource()
+     */
+    public MessageSource getMessageSource() throws SieveMailException {
+        throw new BodyRequiredException("The source of the mail is required");
+    }
+
+    /**
+     * @see MailAdapter#addAction(Action)
+     */
+    public void addAction(final Action action) {
+        actions.add(action);
+    }
+
+    /**
+     * This implementation does nothing.
+     * 
+     * @see MailAdapter#executeActions()
+     */
+    public void executeActions() throws SieveException {
+    }
+
+    /**
+     * @see MailAdapter#getActions()
+     */
+    public List<Action> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
+
+    /**
+     * Answers the values of the headers with exactly the given name, unfolded
+     * but not decoded.
+     * 
+     * @see MailAdapter#getHeader(String)
+     */
+    public List<String> getHeader(final String name) {
+        final List<byte[]> values = rawHeaders.get(name);
+        return values == null ? new ArrayList<String>() : decode(values);
+    }
+
+    /**
+     * @see MailAdapter#getHeaderNames()
+     */
+    public List<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    /**
+     * Answers the values of the headers matching the given name, unfolded but
+     * not decoded.
+     * 
+     * @see MailAdapter#getMatchingHeader(String)
+     */
+    public List<String> getMatchingHeader(final String name) {
+        return getHeaderIndex().getMatchingHeader(
+                HeaderIndexImpl.normalize(name));
+    }
+
+    /**
+     * The size of the mail is not known.
+     * 
+     * @throws BodyRequiredException
+     *             always
+     * @see MailAdapter#getSize()
+     */
+    public int getSize() throws SieveMailException {
+        throw new BodyRequiredException("The size of the mail is required");
+    }
+
+    /**
+     * Answers the value of the Content-Type header, or <code>text/plain</code>
+     * when there is none.
+     * 
+     * @see MailAdapter#getContentType()
+     */
+    public String getContentType() {
+        final List<String> values = getMatchingHeader("Content-Type");
+        return values.isEmpty() ? DEFAULT_CONTENT_TYPE : values.get(0).trim();
+    }
+
+    /**
+     * @see MailAdapter#parseAddresses(String)
+     */
+    public Address[] parseAddresses(final String headerName)
+            throws SieveMailException {
+        try {
+            final SieveAddressBuilder builder = new SieveAddressBuilder();
+            for (final String value : getMatchingHeader(headerName)) {
+                builder.addAddresses(MimeUtil.unscrambleHeaderValue(value));
+            }
+            return builder.getAddresses();
+        } catch (ParseException e) {
+            throw new SieveMailException(e);
+        }
+    }
+
+    /**
+     * The body of the mail is not known.
+     * 
+     * @throws BodyRequiredException
+     *             always
+     * @see MailAdapter#isInBodyText(List)
+     */
+    public boolean isInBodyText(final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        throw new BodyRequiredException("The body of the mail is required");
+    }
+
+    /**
+     * The body of the mail is not known.
+     * 
+     * @throws BodyRequiredException
+     *             always
+     * @see MailAdapter#isInBodyRaw(List)
+     */
+    public boolean isInBodyRaw(final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        throw new BodyRequiredException("The body of the mail is required");
+    }
+
+    /**
+     * The body of the mail is not known.
+     * 
+     * @throws BodyRequiredException
+     *             always
+     * @see MailAdapter#isInBodyContent(List, List)
+     */
+    public boolean isInBodyContent(final List<String> contentTypes,
+            final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        throw new BodyRequiredException("The body of the mail is required");
+    }
+
+    /**
+     * @see MailAdapter#setContext(SieveContext)
+     */
+    public void setContext(final SieveContext context) {
+    }
+
+    /**
+     * Closes the given stream, ignoring failures.
+     * 
+     * @param in
+     *            <code>InputStream</code>, possibly null
+     */
+    protected static void close(final InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nothing more will be read
+            }
+        }
+    }
+
+    /**
+     * Answers the raw value of a field as Mime4J delimits it: from the colon,
+     * less a single leading whitespace, to the end of the field.
+     */
+    private static byte[] rawValue(final Field field) {
+        if (field instanceof RawField && field.getRaw() != null) {
+            final ByteSequence raw = field.getRaw();
+            int start = ((RawField) field).getDelimiterIdx() + 1;
+            if (raw.length() > start + 1
+                    && CharsetUtil.isWhitespace((char) (raw.byteAt(start) & 0xFF))) {
+                start++;
+            }
+            final byte[] value = new byte[Math.max(0, raw.length() - start)];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = raw.byteAt(start + i);
+            }
+            return value;
+        }
+        return field.getBody().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void add(final Map<String, List<byte[]>> headers,
+            final String name, final byte[] value) {
+        List<byte[]> values = headers.get(name);
+        if (values == null) {
+            values = new ArrayList<byte[]>(2);
+            headers.put(name, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * Decodes raw values as UTF-8 and unfolds them, as Mime4J does.
+     */
+    private static List<String> decode(final List<byte[]> values) {
+        final List<String> results = new ArrayList<String>(values.size());
+        for (final byte[] value : values) {
+            results.add(MimeUtil.unfold(new String(value,
+                    StandardCharsets.UTF_8)));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,63 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * Interface <code>HeaderIndex</code> answers the values of the headers of a
+ * mail by name. It is consulted by the header based tests in place of
+ * {@link MailAdapter#getMatchingHeader(String)} so that the headers of a mail
+ * are scanned at most once per evaluation.
+ * </p>
+ * 
+ * <p>
+ * Names are matched as required by RFC 3028: case is ignored, as are the
+ * whitespace prefixes and suffixes of the header names in the mail.
+ * </p>
+ * 
+ * @see HeaderIndexProvider
+ */
+public interface HeaderIndex {
+
+    /**
+     * Method getMatchingHeader answers the values of all of the headers with
+     * the passed name, in the order they appear in the mail.
+     * 
+     * @param name
+     *            header name, not null
+     * @return <code>List</code> of values, not null, possibly empty,
+     *         unmodifiable
+     * @throws SieveMailException
+     */
+    public List<String> getMatchingHeader(String name) throws SieveMailException;
+
+    /**
+     * Method getHeaderNames answers the normalized (trimmed and lower case)
+     * names of all of the headers indexed.
+     * 
+     * @return <code>Set</code> of names, not null, possibly empty,
+     *         unmodifiable
+     * @throws SieveMailException
+     */
+    public Set<String> getHeaderNames() throws SieveMailException;
+}
@@ -0,0 +1,129 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Simple immutable {@link HeaderIndex} implementation backed by a hash map
+ * keyed on the normalized header name.
+ * </p>
+ * 
+ * <p>
+ * Use {@link #build(MailAdapter)} to index the headers of any
+ * {@link MailAdapter} in a single pass.
+ * </p>
+ */
+public final class HeaderIndexImpl implements HeaderIndex {
+
+    private static final List<String> NO_VALUES = Collections.emptyList();
+
+    /**
+     * Normalizes a header name for use as an index key.
+     * 
+     * @param name
+     *            header name, not null
+     * @return trimmed lower case name, not null
+     */
+    public static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Indexes the headers of the given mail. The headers names are read once
+     * and the values of each are read once.
+     * 
+     * @param mail
+     *            <code>MailAdapter</code>, not null
+     * @return <code>HeaderIndex</code>, not null
+     * @throws SieveMailException
+     */
+    public static HeaderIndex build(MailAdapter mail) throws SieveMailException {
+        final List<String> headerNames = mail.getHeaderNames();
+        final Map<String, List<String>> headers = new HashMap<String, List<String>>(
+                headerNames.size() * 2);
+        for (final String headerName : headerNames) {
+            final String key = normalize(headerName);
+            List<String> values = headers.get(key);
+            if (values == null) {
+                values = new ArrayList<String>(2);
+                headers.put(key, values);
+            }
+            values.addAll(mail.getHeader(headerName));
+        }
+        return new HeaderIndexImpl(headers);
+    }
+
+    private final Map<String, List<String>> values;
+
+    /**
+     * Constructs an index over the given values. Names are normalized and the
+     * values of names which normalize to the same key are concatenated.
+     * 
+     * @param headers
+     *            values indexed by header name, not null
+     */
+    public HeaderIndexImpl(final Map<String, List<String>> headers) {
+        super();
+        final Map<String, List<String>> values = new HashMap<String, List<String>>(
+                headers.size() * 2);
+        for (final Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            final String key = normalize(entry.getKey());
+            final List<String> existing = values.get(key);
+            final List<String> keyValues;
+            if (existing == null) {
+                keyValues = new ArrayList<String>(entry.getValue());
+            } else {
+                keyValues = new ArrayList<String>(existing.size()
+                        + entry.getValue().size());
+                keyValues.addAll(existing);
+                keyValues.addAll(entry.getValue());
+            }
+            values.put(key, Collections.unmodifiableList(keyValues));
+        }
+        this.values = values;
+    }
+
+    /**
+     * @see HeaderIndex#getMatchingHeader(String)
+     */
+    public List<String> getMatchingHeader(String name) {
+        final List<String> result = values.get(name.toLowerCase(Locale.US));
+        return result == null ? NO_VALUES : result;
+    }
+
+    /**
+     * @see HeaderIndex#getHeaderNames()
+     */
+    public Set<String> getHeaderNames() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    public String toString() {
+        return "HeaderIndex: " + values;
+    }
+}
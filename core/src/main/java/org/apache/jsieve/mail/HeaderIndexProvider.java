@@ -0,0 +1,47 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+/**
+ * <p>
+ * Interface <code>HeaderIndexProvider</code> is an optional capability of a
+ * {@link MailAdapter}. Adapters which already hold the headers of a mail in a
+ * structure suitable for lookup by name may implement this interface to supply
+ * a {@link HeaderIndex} directly.
+ * </p>
+ * 
+ * <p>
+ * When a <code>MailAdapter</code> does not implement this interface, an index
+ * is built lazily from {@link MailAdapter#getHeaderNames()} and
+ * {@link MailAdapter#getHeader(String)} the first time a header is tested
+ * during an evaluation.
+ * </p>
+ */
+public interface HeaderIndexProvider {
+
+    /**
+     * Method getHeaderIndex answers an index over the headers of the mail.
+     * This is called at most once per evaluation.
+     * 
+     * @return <code>HeaderIndex</code>, not null
+     * @throws SieveMailException
+     */
+    public HeaderIndex getHeaderIndex() throws SieveMailException;
+}
@@ -0,0 +1,283 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.james.mime4j.util.MimeUtil;
+import org.apache.jsieve.SieveContext;
+import org.apache.jsieve.comparators.Folding;
+import org.apache.jsieve.exception.InternetAddressException;
+import org.apache.jsieve.mail.body.BodySearch;
+
+/**
+ * <p>
+ * Class <code>MessageCache</code> holds the views of a mail which are derived
+ * during a single evaluation. Each view is built lazily the first time it is
+ * required and then reused by every later test, so that the cost of deriving
+ * it is paid at most once per evaluation rather than once per test.
+ * </p>
+ * 
+ * <p>
+ * A <code>MessageCache</code> is bound to a single {@link MailAdapter} and must
+ * not outlive the evaluations for which it was created. The views it answers
+ * are immutable. One cache may be shared by several evaluations of the same
+ * mail, each through its own {@link SharedMailAdapter}.
+ * </p>
+ * 
+ * @see SieveContext#getMessageCache()
+ */
+public class MessageCache {
+
+    /**
+     * Answers the cache for the current evaluation of the given mail. When the
+     * context does not hold a cache for the mail, a new cache is answered
+     * which will be discarded by the caller. Tests should read the mail
+     * through {@link #getMail()} of the cache answered.
+     * 
+     * @param mail
+     *            <code>MailAdapter</code>, not null
+     * @param context
+     *            <code>SieveContext</code>, not null
+     * @return <code>MessageCache</code>, not null
+     */
+    public static MessageCache of(MailAdapter mail, SieveContext context) {
+        final MessageCache cache = context.getMessageCache();
+        if (cache != null && cache.isCacheOf(mail)) {
+            return cache;
+        }
+        return new MessageCache(mail);
+    }
+
+    private final MailAdapter mail;
+
+    private HeaderIndex headerIndex;
+
+    private final Map<String, List<String>> decodedHeaders = new HashMap<String, List<String>>();
+
+    private final Map<String, List<ParsedAddress>> addresses = new HashMap<String, List<ParsedAddress>>();
+
+    private final Map<Class<?>, Map<String, List<String>>> foldedHeaders = new HashMap<Class<?>, Map<String, List<String>>>();
+
+    private final Map<List<Object>, BodySearch> bodySearches = new HashMap<List<Object>, BodySearch>();
+
+    /**
+     * Constructs a cache for the given mail.
+     * 
+     * @param mail
+     *            <code>MailAdapter</code>, not null
+     */
+    public MessageCache(final MailAdapter mail) {
+        super();
+        this.mail = mail;
+    }
+
+    /**
+     * Gets the mail whose views are cached.
+     * 
+     * @return <code>MailAdapter</code>, not null
+     */
+    public MailAdapter getMail() {
+        return mail;
+    }
+
+    /**
+     * Answers whether this cache holds the views of the given mail: either the
+     * mail itself, or a {@link SharedMailAdapter} reading it.
+     * 
+     * @param mail
+     *            <code>MailAdapter</code>, possibly null
+     * @return true when the views of this cache are those of the mail
+     */
+    public boolean isCacheOf(Object mail) {
+        return this.mail == mail
+                || (mail instanceof SharedMailAdapter && ((SharedMailAdapter) mail)
+                        .getMail() == this.mail);
+    }
+
+    /**
+     * Gets the index over the headers of the mail. When the mail is a
+     * {@link HeaderIndexProvider}, the index it supplies is used. Otherwise an
+     * index is built from the headers of the mail.
+     * 
+     * @return <code>HeaderIndex</code>, not null
+     * @throws SieveMailException
+     */
+    public synchronized HeaderIndex getHeaderIndex() throws SieveMailException {
+        if (headerIndex == null) {
+            if (mail instanceof HeaderIndexProvider) {
+                headerIndex = ((HeaderIndexProvider) mail).getHeaderIndex();
+            } else {
+                headerIndex = HeaderIndexImpl.build(mail);
+            }
+        }
+        return headerIndex;
+    }
+
+    /**
+     * Method getMatchingHeader answers the values of all of the headers in the
+     * mail with the passed name, ignoring case and the whitespace prefixes and
+     * suffixes of the header names in the mail.
+     * 
+     * @param name
+     *            header name, not null
+     * @return <code>List</code> of values, not null, possibly empty,
+     *         unmodifiable
+     * @throws SieveMailException
+     * @see MailUtils#getMatchingHeader(MailAdapter, String)
+     */
+    public List<String> getMatchingHeader(String name)
+            throws SieveMailException {
+        return getHeaderIndex().getMatchingHeader(name);
+    }
+
+    /**
+     * Method getDecodedHeader answers the values of all of the headers in the
+     * mail with the passed name, unfolded and with any RFC 2047 encoded words
+     * decoded.
+     * 
+     * @param name
+     *            header name, not null
+     * @return <code>List</code> of decoded values, not null, possibly empty,
+     *         unmodifiable
+     * @throws SieveMailException
+     * @see MimeUtil#unscrambleHeaderValue(String)
+     */
+    public synchronized List<String> getDecodedHeader(String name)
+            throws SieveMailException {
+        final String key = name.toLowerCase(Locale.US);
+        List<String> result = decodedHeaders.get(key);
+        if (result == null) {
+            final List<String> values = getMatchingHeader(name);
+            final List<String> decoded = new ArrayList<String>(values.size());
+            for (final String value : values) {
+                decoded.add(MimeUtil.unscrambleHeaderValue(value));
+            }
+            result = Collections.unmodifiableList(decoded);
+            decodedHeaders.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Method getFoldedHeader answers the decoded values of all of the headers
+     * in the mail with the passed name, folded by the passed comparator.
+     * 
+     * @param name
+     *            header name, not null
+     * @param folding
+     *            <code>Folding</code> comparator, not null
+     * @return <code>List</code> of folded values, not null, possibly empty,
+     *         unmodifiable
+     * @throws SieveMailException
+     * @see #getDecodedHeader(String)
+     */
+    public synchronized List<String> getFoldedHeader(String name,
+            Folding folding) throws SieveMailException {
+        Map<String, List<String>> folded = foldedHeaders.get(folding
+                .getClass());
+        if (folded == null) {
+            folded = new HashMap<String, List<String>>();
+            foldedHeaders.put(folding.getClass(), folded);
+        }
+        final String key = name.toLowerCase(Locale.US);
+        List<String> result = folded.get(key);
+        if (result == null) {
+            final List<String> values = getDecodedHeader(name);
+            final List<String> foldedValues = new ArrayList<String>(values
+                    .size());
+            for (final String value : values) {
+                foldedValues.add(folding.fold(value));
+            }
+            result = Collections.unmodifiableList(foldedValues);
+            folded.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Method getAddresses answers the addresses listed in the headers of the
+     * mail with the passed name. Each header is parsed by
+     * {@link MailAdapter#parseAddresses(String)} at most once per evaluation.
+     * Failures are not cached.
+     * 
+     * @param headerName
+     *            header name, not null
+     * @return <code>List</code> of addresses, not null, possibly empty,
+     *         unmodifiable
+     * @throws SieveMailException
+     * @throws InternetAddressException
+     */
+    public synchronized List<ParsedAddress> getAddresses(String headerName)
+            throws SieveMailException, InternetAddressException {
+        final String key = headerName.toLowerCase(Locale.US);
+        List<ParsedAddress> result = addresses.get(key);
+        if (result == null) {
+            final MailAdapter.Address[] parsed = mail
+                    .parseAddresses(headerName);
+            final List<ParsedAddress> values = new ArrayList<ParsedAddress>(
+                    parsed.length);
+            for (final MailAdapter.Address address : parsed) {
+                values.add(address instanceof ParsedAddress ? (ParsedAddress) address
+                        : new ParsedAddress(address));
+            }
+            result = Collections.unmodifiableList(values);
+            addresses.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Method getBodySearch answers the search shared by the body tests with
+     * the given transformation and, for <code>:content</code>, the given set
+     * of content types. Content types are compared ignoring case and order.
+     * 
+     * @param transformation
+     *            {@link BodySearch#TEXT}, {@link BodySearch#RAW} or
+     *            {@link BodySearch#CONTENT}, not null
+     * @param contentTypes
+     *            content types searched by <code>:content</code>, otherwise
+     *            ignored
+     * @return <code>BodySearch</code>, not null
+     */
+    public synchronized BodySearch getBodySearch(String transformation,
+            List<String> contentTypes) {
+        final HashSet<String> types = new HashSet<String>();
+        if (BodySearch.CONTENT.equals(transformation)) {
+            for (final String type : contentTypes) {
+                types.add(type.trim().toLowerCase(Locale.US));
+            }
+        }
+        final List<Object> key = Arrays.<Object> asList(transformation, types);
+        BodySearch result = bodySearches.get(key);
+        if (result == null) {
+            result = new BodySearch(transformation, contentTypes);
+            bodySearches.put(key, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * Interface <code>MessageSource</code> supplies the raw bytes of a mail as
+ * defined by RFC 5322: the header block, a blank line and the body.
+ * </p>
+ * 
+ * <p>
+ * Body tests read the source as a stream, so the whole of a large mail need
+ * never be held in memory.
+ * </p>
+ * 
+ * @see MessageSourceProvider
+ */
+public interface MessageSource {
+
+    /**
+     * Method getInputStream answers a new stream over the raw bytes of the
+     * mail, positioned at the start of the header block. Each call answers an
+     * independent stream which the caller must close.
+     * 
+     * @return <code>InputStream</code>, not null
+     * @throws IOException
+     */
+    public InputStream getInputStream() throws IOException;
+
+    /**
+     * Method getSize answers the number of raw bytes in the mail.
+     * 
+     * @return long
+     * @throws IOException
+     */
+    public long getSize() throws IOException;
+}
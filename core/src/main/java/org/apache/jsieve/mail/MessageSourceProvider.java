@@ -0,0 +1,45 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+/**
+ * <p>
+ * Interface <code>MessageSourceProvider</code> is an optional capability of a
+ * {@link MailAdapter}. Adapters with access to the raw bytes of a mail may
+ * implement this interface to supply a {@link MessageSource}.
+ * </p>
+ * 
+ * <p>
+ * When a <code>MailAdapter</code> implements this interface, the body test
+ * streams the source through
+ * {@link org.apache.jsieve.mail.body.StreamingBodyMatcher} rather than calling
+ * the <code>isInBody</code> methods of the adapter.
+ * </p>
+ */
+public interface MessageSourceProvider {
+
+    /**
+     * Method getMessageSource answers the raw source of the mail.
+     * 
+     * @return <code>MessageSource</code>, not null
+     * @throws SieveMailException
+     */
+    public MessageSource getMessageSource() throws SieveMailException;
+}
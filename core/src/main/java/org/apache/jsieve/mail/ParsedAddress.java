@@ -0,0 +1,112 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+/**
+ * <p>
+ * Immutable address whose match forms are computed once. Addresses parsed
+ * from a header are cached in this form by {@link MessageCache} so that each
+ * address test need only compare.
+ * </p>
+ */
+public final class ParsedAddress implements MailAdapter.Address {
+
+    private final String localPart;
+
+    private final String domain;
+
+    private final String lowerCaseDomain;
+
+    private final String address;
+
+    /**
+     * Constructs a parsed form of the given address.
+     * 
+     * @param address
+     *            <code>MailAdapter.Address</code>, not null
+     */
+    public ParsedAddress(final MailAdapter.Address address) {
+        this(address.getLocalPart(), address.getDomain());
+    }
+
+    /**
+     * Constructs an address.
+     * 
+     * @param localPart
+     *            the local part of the address, not null
+     * @param domain
+     *            the domain part of the address, or null when the address
+     *            has none, as in <code>From: root</code>
+     */
+    public ParsedAddress(final String localPart, final String domain) {
+        super();
+        this.localPart = localPart;
+        this.domain = domain;
+        if (domain == null) {
+            this.lowerCaseDomain = "";
+            this.address = localPart;
+        } else {
+            this.lowerCaseDomain = domain.toLowerCase();
+            this.address = localPart + "@" + domain;
+        }
+    }
+
+    /**
+     * Gets the local part of the address.
+     * 
+     * @return local part, not null
+     */
+    public String getLocalPart() {
+        return localPart;
+    }
+
+    /**
+     * Gets the domain of the address.
+     * 
+     * @return domain, or null when the address has none
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Gets the domain of the address in lower case, as matched by
+     * <code>:domain</code>.
+     * 
+     * @return lower case domain, empty when the address has none, not null
+     */
+    public String getLowerCaseDomain() {
+        return lowerCaseDomain;
+    }
+
+    /**
+     * Gets the whole address, as matched by <code>:all</code>.
+     * 
+     * @return local part and domain joined by <code>@</code>, or the local
+     *         part alone when the address has no domain, not null
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public String toString() {
+        return address;
+    }
+}
@@ -0,0 +1,56 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * <p>
+ * Interface <code>RawHeaderProvider</code> is an optional capability of a
+ * {@link MailAdapter}. Adapters which hold the raw bytes of the header block
+ * may implement this interface so that header values are compared octet by
+ * octet, without being decoded into strings, whenever the comparator is a
+ * {@link org.apache.jsieve.comparators.ByteComparator} and the value is
+ * printable US-ASCII.
+ * </p>
+ * 
+ * <p>
+ * Each raw value must decode as UTF-8 to the corresponding value answered by
+ * {@link MailAdapter#getMatchingHeader(String)}. Values which are not plain
+ * US-ASCII are decoded and compared as strings.
+ * </p>
+ */
+public interface RawHeaderProvider {
+
+    /**
+     * Method getRawMatchingHeader answers the raw values of all of the headers
+     * with the passed name, matched as by
+     * {@link MailAdapter#getMatchingHeader(String)}. Each value is the
+     * remaining bytes of its buffer, which the caller must not change.
+     * 
+     * @param name
+     *            header name, not null
+     * @return <code>List</code> of values, not null, possibly empty
+     * @throws SieveMailException
+     */
+    public List<ByteBuffer> getRawMatchingHeader(String name)
+            throws SieveMailException;
+}
@@ -0,0 +1,171 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jsieve.SieveContext;
+import org.apache.jsieve.exception.InternetAddressException;
+import org.apache.jsieve.exception.SieveException;
+
+/**
+ * <p>
+ * {@link MailAdapter} which reads a mail through another adapter but keeps
+ * its own list of actions. This allows one mail to be evaluated against many
+ * scripts, each script answering its own actions, while the views of the mail
+ * held by a {@link MessageCache} for the shared adapter are reused by every
+ * evaluation.
+ * </p>
+ * 
+ * <p>
+ * {@link #executeActions()} does nothing: callers apply those answered by
+ * {@link #getActions()}.
+ * </p>
+ * 
+ * @see org.apache.jsieve.SieveFactory#evaluateAll(MailAdapter, List)
+ */
+public class SharedMailAdapter implements MailAdapter {
+
+    private final MailAdapter mail;
+
+    private final List<Action> actions;
+
+    /**
+     * Constructs an adapter reading the given mail.
+     * 
+     * @param mail
+     *            <code>MailAdapter</code> shared, not null
+     */
+    public SharedMailAdapter(final MailAdapter mail) {
+        super();
+        this.mail = mail;
+        this.actions = new ArrayList<Action>();
+    }
+
+    /**
+     * Gets the adapter through which the mail is read.
+     * 
+     * @return <code>MailAdapter</code>, not null
+     */
+    public MailAdapter getMail() {
+        return mail;
+    }
+
+    /**
+     * @see MailAdapter#setContext(SieveContext)
+     */
+    public void setContext(final SieveContext context) {
+        mail.setContext(context);
+    }
+
+    /**
+     * @see MailAdapter#getActions()
+     */
+    public List<Action> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
+
+    /**
+     * @see MailAdapter#getHeader(String)
+     */
+    public List<String> getHeader(final String name) throws SieveMailException {
+        return mail.getHeader(name);
+    }
+
+    /**
+     * @see MailAdapter#getMatchingHeader(String)
+     */
+    public List<String> getMatchingHeader(final String name)
+            throws SieveMailException {
+        return mail.getMatchingHeader(name);
+    }
+
+    /**
+     * @see MailAdapter#getHeaderNames()
+     */
+    public List<String> getHeaderNames() throws SieveMailException {
+        return mail.getHeaderNames();
+    }
+
+    /**
+     * @see MailAdapter#addAction(Action)
+     */
+    public void addAction(final Action action) {
+        actions.add(action);
+    }
+
+    /**
+     * This implementation does nothing.
+     * 
+     * @see MailAdapter#executeActions()
+     */
+    public void executeActions() throws SieveException {
+    }
+
+    /**
+     * @see MailAdapter#getSize()
+     */
+    public int getSize() throws SieveMailException {
+        return mail.getSize();
+    }
+
+    /**
+     * @see MailAdapter#getContentType()
+     */
+    public String getContentType() throws SieveMailException {
+        return mail.getContentType();
+    }
+
+    /**
+     * @see MailAdapter#isInBodyText(List)
+     */
+    public boolean isInBodyText(final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        return mail.isInBodyText(phrasesCaseInsensitive);
+    }
+
+    /**
+     * @see MailAdapter#isInBodyRaw(List)
+     */
+    public boolean isInBodyRaw(final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        return mail.isInBodyRaw(phrasesCaseInsensitive);
+    }
+
+    /**
+     * @see MailAdapter#isInBodyContent(List, List)
+     */
+    public boolean isInBodyContent(final List<String> contentTypes,
+            final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        return mail.isInBodyContent(contentTypes, phrasesCaseInsensitive);
+    }
+
+    /**
+     * @see MailAdapter#parseAddresses(String)
+     */
+    public Address[] parseAddresses(final String headerName)
+            throws SieveMailException, InternetAddressException {
+        return mail.parseAddresses(headerName);
+    }
+}
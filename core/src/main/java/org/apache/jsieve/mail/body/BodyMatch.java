@@ -0,0 +1,164 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve.mail.body;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jsieve.EvaluationBudget;
+import org.apache.jsieve.comparators.Folding;
+import org.apache.jsieve.comparators.MatchTypeTags;
+import org.apache.jsieve.exception.BudgetExceededException;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageSource;
+import org.apache.jsieve.mail.MessageSourceProvider;
+import org.apache.jsieve.mail.SieveMailException;
+
+/**
+ * <p>
+ * Matches the body of a mail against the keys of a body test using the
+ * <code>:is</code> or <code>:matches</code> match type, or
+ * <code>:contains</code> under a comparator other than the default, as
+ * defined in <a href='http://tools.ietf.org/html/rfc5173'>RFC5173</a>.
+ * </p>
+ * 
+ * <p>
+ * Each key is compiled to a {@link StreamingGlobMatcher} and the text of
+ * each selected part is streamed through all of them together by
+ * {@link StreamingBodyMatcher}. The mail must therefore be a
+ * {@link MessageSourceProvider}: the <code>isInBody</code> methods of
+ * {@link MailAdapter} only answer whether phrases are contained, ignoring
+ * case.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ * </p>
+ */
+public final class BodyMatch {
+
+    private static final StreamingBodyMatcher MATCHER = new StreamingBodyMatcher();
+
+    private final String transformation;
+
+    private final List<String> contentTypes;
+
+    private final String matchType;
+
+    private final Folding folding;
+
+    /**
+     * Constructs a match.
+     * 
+     * @param transformation
+     *            {@link BodySearch#TEXT}, {@link BodySearch#RAW} or
+     *            {@link BodySearch#CONTENT}
+     * @param contentTypes
+     *            content types matched by {@link BodySearch#CONTENT},
+     *            otherwise ignored
+     * @param matchType
+     *            <code>:is</code>, <code>:contains</code> or
+     *            <code>:matches</code>
+     * @param folding
+     *            folding of the comparator, applied to keys and text
+     */
+    public BodyMatch(final String transformation,
+            final List<String> contentTypes, final String matchType,
+            final Folding folding) {
+        super();
+        this.transformation = transformation;
+        this.contentTypes = contentTypes;
+        this.matchType = matchType;
+        this.folding = folding;
+    }
+
+    /**
+     * Answers whether the body of the mail matches any of the given keys.
+     * 
+     * @param mail
+     *            mail matched, not null
+     * @param keys
+     *            keys of a body test, not null
+     * @param budget
+     *            budget of the evaluation, charged the size of the mail, or
+     *            null when unlimited
+     * @return true when any key matches
+     * @throws SieveMailException
+     *             when the mail is not a {@link MessageSourceProvider} or
+     *             cannot be read
+     * @throws BudgetExceededException
+     *             when the pass would exceed the budget
+     */
+    public boolean isMatched(final MailAdapter mail, final List<String> keys,
+            final EvaluationBudget budget) throws SieveMailException,
+            BudgetExceededException {
+        if (!(mail instanceof MessageSourceProvider)) {
+            throw new SieveMailException("Body test " + matchType
+                    + " requires a mail providing its source");
+        }
+        final MessageSource messageSource = ((MessageSourceProvider) mail)
+                .getMessageSource();
+        if (budget != null) {
+            budget.chargeScannedBytes(BodySearch.sizeOf(messageSource));
+        }
+        final List<StreamingGlobMatcher> patterns = compile(keys);
+        InputStream source = null;
+        try {
+            source = messageSource.getInputStream();
+            if (BodySearch.RAW.equals(transformation)) {
+                return MATCHER.matchesBodyRaw(source, patterns, folding);
+            } else if (BodySearch.CONTENT.equals(transformation)) {
+                return MATCHER.matchesBodyContent(source, contentTypes,
+                        patterns, folding);
+            } else {
+                return MATCHER.matchesBodyText(source, patterns, folding);
+            }
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        } finally {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    // Nothing more to read
+                }
+            }
+        }
+    }
+
+    private List<StreamingGlobMatcher> compile(final List<String> keys) {
+        final List<StreamingGlobMatcher> patterns = new ArrayList<StreamingGlobMatcher>(
+                keys.size());
+        for (final String key : keys) {
+            final String folded = folding.fold(key);
+            if (MatchTypeTags.IS_TAG.equals(matchType)) {
+                patterns.add(StreamingGlobMatcher.forIs(folded));
+            } else if (MatchTypeTags.CONTAINS_TAG.equals(matchType)) {
+                patterns.add(StreamingGlobMatcher.forContains(folded));
+            } else {
+                patterns.add(StreamingGlobMatcher.forMatches(folded));
+            }
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,239 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail.body;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jsieve.EvaluationBudget;
+import org.apache.jsieve.exception.BudgetExceededException;
+import org.apache.jsieve.mail.BufferedMessageSource;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageSource;
+import org.apache.jsieve.mail.MessageSourceProvider;
+import org.apache.jsieve.mail.SieveMailException;
+
+/**
+ * <p>
+ * Searches the body of one mail for the keys of all of the body tests which
+ * share a transformation and, for <code>:content</code>, a set of content
+ * types. Each test registers its keys, and the result for each test is
+ * computed the first time it is asked for and then remembered.
+ * </p>
+ * 
+ * <p>
+ * When the mail is a {@link MessageSourceProvider}, all of the keys
+ * registered so far are sought in a single pass over the source, so five
+ * body tests decode the mail once rather than five times. Otherwise each set
+ * of keys is passed to the <code>isInBody</code> methods of the adapter, once.
+ * </p>
+ * 
+ * <p>
+ * Instances are held by {@link org.apache.jsieve.mail.MessageCache} for the
+ * duration of an evaluation. They are thread safe.
+ * </p>
+ */
+public final class BodySearch {
+
+    /** Transformation searching the decoded text parts */
+    public static final String TEXT = ":text";
+
+    /** Transformation searching the undecoded body */
+    public static final String RAW = ":raw";
+
+    /** Transformation searching the decoded parts of given content types */
+    public static final String CONTENT = ":content";
+
+    private static final StreamingBodyMatcher MATCHER = new StreamingBodyMatcher();
+
+    private final String transformation;
+
+    private final List<String> contentTypes;
+
+    private final List<List<String>> keys = new ArrayList<List<String>>();
+
+    private final List<Boolean> results = new ArrayList<Boolean>();
+
+    /**
+     * Constructs a search.
+     * 
+     * @param transformation
+     *            {@link #TEXT}, {@link #RAW} or {@link #CONTENT}
+     * @param contentTypes
+     *            content types searched by {@link #CONTENT}, otherwise ignored
+     */
+    public BodySearch(final String transformation,
+            final List<String> contentTypes) {
+        super();
+        this.transformation = transformation;
+        this.contentTypes = contentTypes;
+    }
+
+    /**
+     * Registers the keys of a test so that they are sought in the next pass.
+     * Registering keys which are already registered has no effect.
+     * 
+     * @param phrasesCaseInsensitive
+     *            keys of a body test, not null
+     */
+    public synchronized void register(final List<String> phrasesCaseInsensitive) {
+        indexOf(phrasesCaseInsensitive);
+    }
+
+    /**
+     * Answers whether any of the given keys is found in the body of the mail.
+     * When the result is not yet known, the keys of every test registered but
+     * not yet searched for are sought together, and the size of the mail is
+     * charged to the budget for that pass. Known results are not charged.
+     * 
+     * @param mail
+     *            mail searched, not null
+     * @param phrasesCaseInsensitive
+     *            keys of a body test, not null
+     * @param budget
+     *            budget of the evaluation, or null when unlimited
+     * @return true when any of the keys is found
+     * @throws SieveMailException
+     * @throws BudgetExceededException
+     *             when the pass would exceed the budget
+     */
+    public synchronized boolean isFound(final MailAdapter mail,
+            final List<String> phrasesCaseInsensitive,
+            final EvaluationBudget budget) throws SieveMailException,
+            BudgetExceededException {
+        final int index = indexOf(phrasesCaseInsensitive);
+        if (results.get(index) == null) {
+            if (mail instanceof MessageSourceProvider) {
+                final MessageSource messageSource = ((MessageSourceProvider) mail)
+                        .getMessageSource();
+                if (budget != null) {
+                    budget.chargeScannedBytes(sizeOf(messageSource));
+                }
+                searchPending(messageSource);
+            } else {
+                if (budget != null) {
+                    budget.chargeScannedBytes(mail.getSize());
+                }
+                results.set(index, Boolean.valueOf(search(mail,
+                        phrasesCaseInsensitive)));
+            }
+        }
+        return results.get(index).booleanValue();
+    }
+
+    /**
+     * Answers the size of the given source in octets.
+     * 
+     * @param messageSource
+     *            not null
+     * @return size in octets
+     * @throws SieveMailException
+     *             when the size cannot be read
+     */
+    static long sizeOf(final MessageSource messageSource)
+            throws SieveMailException {
+        try {
+            return messageSource.getSize();
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        }
+    }
+
+    private int indexOf(final List<String> phrasesCaseInsensitive) {
+        int index = keys.indexOf(phrasesCaseInsensitive);
+        if (index < 0) {
+            index = keys.size();
+            keys.add(phrasesCaseInsensitive);
+            results.add(null);
+        }
+        return index;
+    }
+
+    private boolean search(final MailAdapter mail,
+            final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        if (RAW.equals(transformation)) {
+            return mail.isInBodyRaw(phrasesCaseInsensitive);
+        } else if (CONTENT.equals(transformation)) {
+            return mail.isInBodyContent(contentTypes, phrasesCaseInsensitive);
+        } else {
+            return mail.isInBodyText(phrasesCaseInsensitive);
+        }
+    }
+
+    /**
+     * Seeks the keys of every test not yet searched for in one pass.
+     */
+    private void searchPending(final MessageSource messageSource)
+            throws SieveMailException {
+        final List<Integer> pending = new ArrayList<Integer>();
+        final List<List<String>> pendingKeys = new ArrayList<List<String>>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (results.get(i) == null) {
+                pending.add(Integer.valueOf(i));
+                pendingKeys.add(keys.get(i));
+            }
+        }
+        final boolean[] found;
+        if (RAW.equals(transformation)
+                && messageSource instanceof BufferedMessageSource) {
+            try {
+                found = MATCHER.findInBodyRaw(
+                        ((BufferedMessageSource) messageSource).getBody(),
+                        pendingKeys);
+            } catch (IOException e) {
+                throw new SieveMailException(e);
+            }
+        } else {
+            found = searchStream(messageSource, pendingKeys);
+        }
+        for (int i = 0; i < found.length; i++) {
+            results.set(pending.get(i).intValue(), Boolean.valueOf(found[i]));
+        }
+    }
+
+    private boolean[] searchStream(final MessageSource messageSource,
+            final List<List<String>> pendingKeys) throws SieveMailException {
+        InputStream source = null;
+        try {
+            source = messageSource.getInputStream();
+            if (RAW.equals(transformation)) {
+                return MATCHER.findInBodyRaw(source, pendingKeys);
+            } else if (CONTENT.equals(transformation)) {
+                return MATCHER.findInBodyContent(source, contentTypes,
+                        pendingKeys);
+            } else {
+                return MATCHER.findInBodyText(source, pendingKeys);
+            }
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        } finally {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    // Nothing more to read
+                }
+            }
+        }
+    }
+}
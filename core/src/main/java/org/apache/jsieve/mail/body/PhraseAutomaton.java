@@ -0,0 +1,253 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail.body;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Aho-Corasick automaton which finds any of a set of phrases in a stream of
+ * characters, ignoring case. Text is fed one character at a time so matches
+ * which span buffers are found, and the work done per character does not
+ * depend on the number of phrases.
+ * </p>
+ * 
+ * <p>
+ * Phrases are arranged in groups, numbered from zero, so that several
+ * searches may be made in one pass. Each state answers the groups of the
+ * phrases found on reaching it.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable. The state of a search is an <code>int</code>
+ * held by the caller, starting at {@link #START}.
+ * </p>
+ */
+final class PhraseAutomaton {
+
+    /** State at the start of a search */
+    static final int START = 0;
+
+    private final boolean asciiOnly;
+
+    private final char[][] labels;
+
+    private final int[][] targets;
+
+    private final int[] failures;
+
+    private final int[][] groups;
+
+    /**
+     * Builds an automaton for the given groups of phrases.
+     * 
+     * @param phraseGroups
+     *            groups of phrases to be found, not null
+     * @param asciiOnly
+     *            true when only ASCII letters are to be folded, false to fold
+     *            all letters
+     * @return <code>PhraseAutomaton</code>, not null
+     */
+    static PhraseAutomaton forGroups(final List<List<String>> phraseGroups,
+            final boolean asciiOnly) {
+        return new PhraseAutomaton(asciiOnly, phraseGroups);
+    }
+
+    /**
+     * Builds an automaton for a single group of phrases.
+     * 
+     * @param phrases
+     *            phrases to be found, not null
+     * @param asciiOnly
+     *            true when only ASCII letters are to be folded, false to fold
+     *            all letters
+     */
+    PhraseAutomaton(final List<String> phrases, final boolean asciiOnly) {
+        this(asciiOnly, Collections.singletonList(phrases));
+    }
+
+    private PhraseAutomaton(final boolean asciiOnly,
+            final List<? extends List<String>> phraseGroups) {
+        super();
+        this.asciiOnly = asciiOnly;
+
+        // Build the trie
+        final List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        final List<Set<Integer>> ends = new ArrayList<Set<Integer>>();
+        trie.add(new TreeMap<Character, Integer>());
+        ends.add(new TreeSet<Integer>());
+        for (int group = 0; group < phraseGroups.size(); group++) {
+            for (final String phrase : phraseGroups.get(group)) {
+                int state = START;
+                for (int i = 0; i < phrase.length(); i++) {
+                    final Character next = Character.valueOf(fold(phrase
+                            .charAt(i)));
+                    Integer target = trie.get(state).get(next);
+                    if (target == null) {
+                        target = Integer.valueOf(trie.size());
+                        trie.add(new TreeMap<Character, Integer>());
+                        ends.add(new TreeSet<Integer>());
+                        trie.get(state).put(next, target);
+                    }
+                    state = target.intValue();
+                }
+                ends.get(state).add(Integer.valueOf(group));
+            }
+        }
+
+        final int size = trie.size();
+        labels = new char[size][];
+        targets = new int[size][];
+        failures = new int[size];
+        for (int state = 0; state < size; state++) {
+            final Map<Character, Integer> transitions = trie.get(state);
+            labels[state] = new char[transitions.size()];
+            targets[state] = new int[transitions.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Integer> entry : transitions
+                    .entrySet()) {
+                labels[state][i] = entry.getKey().charValue();
+                targets[state][i++] = entry.getValue().intValue();
+            }
+        }
+
+        // Link failures breadth first
+        final int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (final int target : targets[START]) {
+            ends.get(target).addAll(ends.get(START));
+            queue[tail++] = target;
+        }
+        while (head < tail) {
+            final int state = queue[head++];
+            for (int i = 0; i < labels[state].length; i++) {
+                final char label = labels[state][i];
+                final int target = targets[state][i];
+                int failure = failures[state];
+                int next = transition(failure, label);
+                while (next < 0 && failure != START) {
+                    failure = failures[failure];
+                    next = transition(failure, label);
+                }
+                failures[target] = next < 0 ? START : next;
+                // Failures are linked breadth first so their ends are complete
+                ends.get(target).addAll(ends.get(failures[target]));
+                queue[tail++] = target;
+            }
+        }
+
+        groups = new int[size][];
+        for (int state = 0; state < size; state++) {
+            final Set<Integer> stateEnds = ends.get(state);
+            groups[state] = new int[stateEnds.size()];
+            int i = 0;
+            for (final Integer group : stateEnds) {
+                groups[state][i++] = group.intValue();
+            }
+        }
+    }
+
+    /**
+     * Does the automaton match before any character is read? This is the case
+     * when an empty phrase is sought.
+     * 
+     * @return true when the start state matches
+     */
+    boolean isMatchedAtStart() {
+        return isMatch(START);
+    }
+
+    /**
+     * Answers the state following the given state on reading a character.
+     * 
+     * @param state
+     *            current state
+     * @param next
+     *            character read
+     * @return next state
+     */
+    int next(int state, char next) {
+        final char folded = fold(next);
+        while (true) {
+            final int target = transition(state, folded);
+            if (target >= 0) {
+                return target;
+            } else if (state == START) {
+                return START;
+            }
+            state = failures[state];
+        }
+    }
+
+    /**
+     * Has a phrase been found on reaching the given state?
+     * 
+     * @param state
+     *            current state
+     * @return true when some phrase ends at this state
+     */
+    boolean isMatch(int state) {
+        return groups[state].length > 0;
+    }
+
+    /**
+     * Answers the groups of the phrases found on reaching the given state.
+     * 
+     * @param state
+     *            current state
+     * @return group numbers in ascending order, not null, possibly empty
+     */
+    int[] getGroups(int state) {
+        return groups[state];
+    }
+
+    private int transition(int state, char label) {
+        final char[] stateLabels = labels[state];
+        int low = 0;
+        int high = stateLabels.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final char value = stateLabels[middle];
+            if (value < label) {
+                low = middle + 1;
+            } else if (value > label) {
+                high = middle - 1;
+            } else {
+                return targets[state][middle];
+            }
+        }
+        return -1;
+    }
+
+    private char fold(char next) {
+        if (asciiOnly) {
+            return next >= 'A' && next <= 'Z' ? (char) (next + ('a' - 'A'))
+                    : next;
+        }
+        return Character.toLowerCase(next);
+    }
+}
@@ -0,0 +1,690 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail.body;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.parser.AbstractContentHandler;
+import org.apache.james.mime4j.parser.MimeStreamParser;
+import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.util.CharsetUtil;
+import org.apache.jsieve.comparators.Folding;
+import org.apache.jsieve.mail.SieveMailException;
+
+/**
+ * <p>
+ * Searches the raw source of a mail for phrases as required by the body test
+ * defined in <a href='http://tools.ietf.org/html/rfc5173'>RFC5173</a>.
+ * </p>
+ * 
+ * <p>
+ * The source is read once as a stream. All phrases are sought together by a
+ * single automaton, so each character is examined once however many phrases
+ * there are, and reading stops as soon as any phrase is found. Only fixed size
+ * buffers are held, so memory does not grow with the size of the mail.
+ * </p>
+ * 
+ * <p>
+ * For <code>:text</code> and <code>:content</code> the mail is parsed by
+ * <a href='http://james.apache.org/mime4j'>Apache Mime4J</a>: parts are
+ * selected by content type, their transfer encoding is removed and their
+ * charset decoded before being searched. For <code>:raw</code> the body is
+ * searched undecoded.
+ * </p>
+ * 
+ * <p>
+ * Each search is made for one or more groups of phrases. Searching for
+ * several groups at once answers, in a single pass, whether any phrase of
+ * each group is found; reading stops once every group has been found.
+ * </p>
+ * 
+ * <p>
+ * The <code>:is</code> and <code>:matches</code> match types, and
+ * <code>:contains</code> under comparators other than the default, compare
+ * the whole text of each part with a {@link StreamingGlobMatcher}. The text
+ * is folded by the comparator and fed to the matcher a chunk at a time, so
+ * these too use memory fixed by the patterns rather than by the part.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ * </p>
+ */
+public final class StreamingBodyMatcher {
+
+    /**
+     * Configuration used by default. Lines and content are unbounded, since
+     * nothing is retained as the body is read; the header limits of Mime4J
+     * are kept.
+     */
+    public static final MimeConfig DEFAULT_CONFIG = MimeConfig.custom()
+            .setMaxLineLen(-1).setMaxContentLen(-1).build();
+
+    private static final List<String> TEXT_TYPES = Collections
+            .singletonList("text");
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final MimeConfig config;
+
+    /**
+     * Constructs a matcher using {@link #DEFAULT_CONFIG}.
+     */
+    public StreamingBodyMatcher() {
+        this(DEFAULT_CONFIG);
+    }
+
+    /**
+     * Constructs a matcher parsing with the given configuration.
+     * 
+     * @param config
+     *            <code>MimeConfig</code>, not null
+     */
+    public StreamingBodyMatcher(final MimeConfig config) {
+        super();
+        this.config = config;
+    }
+
+    /**
+     * Method isInBodyText answers whether any of the phrases is found in the
+     * decoded textual parts of the mail, ignoring case.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param phrasesCaseInsensitive
+     *            phrases to be found
+     * @return true when any phrase is found, false otherwise
+     * @throws SieveMailException
+     *             when the source cannot be read or parsed
+     */
+    public boolean isInBodyText(final InputStream source,
+            final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        return findInBodyText(source, Collections
+                .singletonList(phrasesCaseInsensitive))[0];
+    }
+
+    /**
+     * Method isInBodyContent answers whether any of the phrases is found in
+     * the decoded parts of the mail with one of the given content types,
+     * ignoring case. An empty content type selects every part, a type without
+     * subtype selects every subtype.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param contentTypes
+     *            content types of the parts to be searched
+     * @param phrasesCaseInsensitive
+     *            phrases to be found
+     * @return true when any phrase is found, false otherwise
+     * @throws SieveMailException
+     *             when the source cannot be read or parsed
+     */
+    public boolean isInBodyContent(final InputStream source,
+            final List<String> contentTypes,
+            final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        return findInBodyContent(source, contentTypes, Collections
+                .singletonList(phrasesCaseInsensitive))[0];
+    }
+
+    /**
+     * Method isInBodyRaw answers whether any of the phrases is found in the
+     * body of the mail, ignoring case. The body is searched as it stands,
+     * without decoding. Phrases are sought as their UTF-8 encoding, ignoring
+     * the case of ASCII letters only.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param phrasesCaseInsensitive
+     *            phrases to be found
+     * @return true when any phrase is found, false otherwise
+     * @throws SieveMailException
+     *             when the source cannot be read
+     */
+    public boolean isInBodyRaw(final InputStream source,
+            final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        return findInBodyRaw(source, Collections
+                .singletonList(phrasesCaseInsensitive))[0];
+    }
+
+    /**
+     * Method isInBodyRaw answers whether any of the phrases is found in the
+     * given body, ignoring case. The remaining bytes of the buffer are
+     * searched in place, without decoding and without copying. Phrases are
+     * sought as their UTF-8 encoding, ignoring the case of ASCII letters only.
+     * 
+     * @param body
+     *            raw body, not null. Its position is not changed
+     * @param phrasesCaseInsensitive
+     *            phrases to be found
+     * @return true when any phrase is found, false otherwise
+     */
+    public boolean isInBodyRaw(final ByteBuffer body,
+            final List<String> phrasesCaseInsensitive) {
+        return findInBodyRaw(body, Collections
+                .singletonList(phrasesCaseInsensitive))[0];
+    }
+
+    /**
+     * Method findInBodyText searches the decoded textual parts of the mail for
+     * several groups of phrases in one pass.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param phraseGroups
+     *            groups of phrases to be found
+     * @return for each group, whether any of its phrases is found
+     * @throws SieveMailException
+     *             when the source cannot be read or parsed
+     * @see #isInBodyText(InputStream, List)
+     */
+    public boolean[] findInBodyText(final InputStream source,
+            final List<List<String>> phraseGroups) throws SieveMailException {
+        return findInBodyContent(source, TEXT_TYPES, phraseGroups);
+    }
+
+    /**
+     * Method findInBodyContent searches the decoded parts of the mail with one
+     * of the given content types for several groups of phrases in one pass.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param contentTypes
+     *            content types of the parts to be searched
+     * @param phraseGroups
+     *            groups of phrases to be found
+     * @return for each group, whether any of its phrases is found
+     * @throws SieveMailException
+     *             when the source cannot be read or parsed
+     * @see #isInBodyContent(InputStream, List, List)
+     */
+    public boolean[] findInBodyContent(final InputStream source,
+            final List<String> contentTypes,
+            final List<List<String>> phraseGroups) throws SieveMailException {
+        final Hits hits = new Hits(PhraseAutomaton.forGroups(phraseGroups,
+                false), phraseGroups);
+        final MimeStreamParser parser = new MimeStreamParser(config);
+        parser.setContentDecoding(true);
+        parser.setRecurse();
+        parser.setContentHandler(new PartSearcher(parser, hits, contentTypes));
+        try {
+            parser.parse(source);
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        } catch (MimeException e) {
+            throw new SieveMailException(e);
+        }
+        return hits.getFound();
+    }
+
+    /**
+     * Method findInBodyRaw searches the undecoded body of the mail for several
+     * groups of phrases in one pass.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param phraseGroups
+     *            groups of phrases to be found
+     * @return for each group, whether any of its phrases is found
+     * @throws SieveMailException
+     *             when the source cannot be read
+     * @see #isInBodyRaw(InputStream, List)
+     */
+    public boolean[] findInBodyRaw(final InputStream source,
+            final List<List<String>> phraseGroups) throws SieveMailException {
+        final Hits hits = rawHits(phraseGroups);
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        boolean inBody = false;
+        int lineLength = 0;
+        int state = PhraseAutomaton.START;
+        try {
+            int read;
+            while (!hits.isComplete() && (read = source.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    final byte next = buffer[i];
+                    if (inBody) {
+                        state = hits.automaton.next(state, (char) (next & 0xFF));
+                        if (hits.record(state)) {
+                            break;
+                        }
+                    } else if (next == '\n') {
+                        // A blank line ends the header block
+                        inBody = lineLength == 0;
+                        lineLength = 0;
+                    } else if (next != '\r') {
+                        lineLength++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        }
+        return hits.getFound();
+    }
+
+    /**
+     * Method findInBodyRaw searches the given body for several groups of
+     * phrases in one pass, in place.
+     * 
+     * @param body
+     *            raw body, not null. Its position is not changed
+     * @param phraseGroups
+     *            groups of phrases to be found
+     * @return for each group, whether any of its phrases is found
+     * @see #isInBodyRaw(ByteBuffer, List)
+     */
+    public boolean[] findInBodyRaw(final ByteBuffer body,
+            final List<List<String>> phraseGroups) {
+        final Hits hits = rawHits(phraseGroups);
+        int state = PhraseAutomaton.START;
+        final int limit = body.limit();
+        for (int i = body.position(); i < limit && !hits.isComplete(); i++) {
+            state = hits.automaton.next(state, (char) (body.get(i) & 0xFF));
+            hits.record(state);
+        }
+        return hits.getFound();
+    }
+
+    /**
+     * Method matchesBodyText answers whether the whole decoded text of any
+     * textual part of the mail matches any of the patterns.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param patterns
+     *            patterns, already folded
+     * @param folding
+     *            folding applied to the text, not null
+     * @return true when any part matches any pattern
+     * @throws SieveMailException
+     *             when the source cannot be read or parsed
+     */
+    public boolean matchesBodyText(final InputStream source,
+            final List<StreamingGlobMatcher> patterns, final Folding folding)
+            throws SieveMailException {
+        return matchesBodyContent(source, TEXT_TYPES, patterns, folding);
+    }
+
+    /**
+     * Method matchesBodyContent answers whether the whole decoded text of any
+     * part of the mail with one of the given content types matches any of the
+     * patterns.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param contentTypes
+     *            content types of the parts to be matched
+     * @param patterns
+     *            patterns, already folded
+     * @param folding
+     *            folding applied to the text, not null
+     * @return true when any part matches any pattern
+     * @throws SieveMailException
+     *             when the source cannot be read or parsed
+     * @see #isInBodyContent(InputStream, List, List)
+     */
+    public boolean matchesBodyContent(final InputStream source,
+            final List<String> contentTypes,
+            final List<StreamingGlobMatcher> patterns, final Folding folding)
+            throws SieveMailException {
+        final PartMatcher matcher = new PartMatcher(patterns, folding);
+        final MimeStreamParser parser = new MimeStreamParser(config);
+        parser.setContentDecoding(true);
+        parser.setRecurse();
+        parser.setContentHandler(new PartMatchHandler(parser, matcher,
+                contentTypes));
+        try {
+            parser.parse(source);
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        } catch (MimeException e) {
+            throw new SieveMailException(e);
+        }
+        return matcher.isMatched();
+    }
+
+    /**
+     * Method matchesBodyRaw answers whether the whole undecoded body of the
+     * mail, read as UTF-8, matches any of the patterns.
+     * 
+     * @param source
+     *            raw mail, not closed by this method
+     * @param patterns
+     *            patterns, already folded
+     * @param folding
+     *            folding applied to the text, not null
+     * @return true when the body matches any pattern
+     * @throws SieveMailException
+     *             when the source cannot be read
+     */
+    public boolean matchesBodyRaw(final InputStream source,
+            final List<StreamingGlobMatcher> patterns, final Folding folding)
+            throws SieveMailException {
+        final PartMatcher matcher = new PartMatcher(patterns, folding);
+        try {
+            final InputStream buffered = new BufferedInputStream(source,
+                    BUFFER_SIZE);
+            int lineLength = 0;
+            int next;
+            while ((next = buffered.read()) >= 0) {
+                if (next == '\n') {
+                    // A blank line ends the header block
+                    if (lineLength == 0) {
+                        break;
+                    }
+                    lineLength = 0;
+                } else if (next != '\r') {
+                    lineLength++;
+                }
+            }
+            matcher.match(new InputStreamReader(buffered,
+                    StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        }
+        return matcher.isMatched();
+    }
+
+    /**
+     * Locates the body of a mail: the first byte following the blank line
+     * which ends the header block. The remaining bytes of the buffer are
+     * scanned and its position is not changed.
+     * 
+     * @param message
+     *            raw mail, not null
+     * @return index of the first byte of the body, or the limit of the buffer
+     *         when the mail has no body
+     */
+    public static int getBodyOffset(final ByteBuffer message) {
+        final int limit = message.limit();
+        int lineLength = 0;
+        for (int i = message.position(); i < limit; i++) {
+            final byte next = message.get(i);
+            if (next == '\n') {
+                if (lineLength == 0) {
+                    return i + 1;
+                }
+                lineLength = 0;
+            } else if (next != '\r') {
+                lineLength++;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Prepares to find the UTF-8 encoding of the phrases in undecoded bytes
+     * read as ISO-8859-1 characters. Empty phrases are found at once.
+     */
+    private static Hits rawHits(final List<List<String>> phraseGroups) {
+        final List<List<String>> encodedGroups = new ArrayList<List<String>>(
+                phraseGroups.size());
+        for (final List<String> phrases : phraseGroups) {
+            final List<String> encoded = new ArrayList<String>(phrases.size());
+            for (final String phrase : phrases) {
+                encoded.add(new String(phrase.getBytes(StandardCharsets.UTF_8),
+                        StandardCharsets.ISO_8859_1));
+            }
+            encodedGroups.add(encoded);
+        }
+        final Hits hits = new Hits(PhraseAutomaton.forGroups(encodedGroups,
+                true), encodedGroups);
+        hits.record(PhraseAutomaton.START);
+        return hits;
+    }
+
+    /**
+     * Answers whether a part is selected by the given content types.
+     */
+    static boolean isSelected(final String mediaType, final String mimeType,
+            final List<String> contentTypes) {
+        for (final String contentType : contentTypes) {
+            final String type = contentType.trim();
+            if (type.length() == 0) {
+                return true;
+            } else if (type.indexOf('/') < 0) {
+                if (type.equalsIgnoreCase(mediaType)) {
+                    return true;
+                }
+            } else if (type.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the groups found during a search.
+     */
+    private static final class Hits {
+
+        private final PhraseAutomaton automaton;
+
+        private final boolean[] found;
+
+        private int remaining;
+
+        Hits(final PhraseAutomaton automaton,
+                final List<List<String>> phraseGroups) {
+            super();
+            this.automaton = automaton;
+            this.found = new boolean[phraseGroups.size()];
+            for (final List<String> phrases : phraseGroups) {
+                if (!phrases.isEmpty()) {
+                    remaining++;
+                }
+            }
+        }
+
+        /**
+         * Records the groups found on reaching the given state.
+         * 
+         * @return true when every group has been found
+         */
+        boolean record(final int state) {
+            for (final int group : automaton.getGroups(state)) {
+                if (!found[group]) {
+                    found[group] = true;
+                    remaining--;
+                }
+            }
+            return remaining == 0;
+        }
+
+        boolean isComplete() {
+            return remaining == 0;
+        }
+
+        boolean[] getFound() {
+            return found;
+        }
+    }
+
+    /**
+     * Matches the text of parts against the patterns, remembering whether any
+     * part has matched. One run per pattern is reused for every part.
+     */
+    private static final class PartMatcher {
+
+        private final StreamingGlobMatcher.Run[] runs;
+
+        private final Folding folding;
+
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        private boolean matched;
+
+        PartMatcher(final List<StreamingGlobMatcher> patterns,
+                final Folding folding) {
+            super();
+            this.runs = new StreamingGlobMatcher.Run[patterns.size()];
+            for (int i = 0; i < runs.length; i++) {
+                runs[i] = patterns.get(i).start();
+            }
+            this.folding = folding;
+        }
+
+        /**
+         * Matches the whole text read from the given reader, reading no
+         * further once every pattern is decided.
+         * 
+         * @return true when any pattern matches
+         */
+        boolean match(final Reader reader) throws IOException {
+            for (final StreamingGlobMatcher.Run run : runs) {
+                run.reset();
+            }
+            int read;
+            while (!isDecided() && (read = reader.read(buffer)) >= 0) {
+                final String chunk = folding.fold(new String(buffer, 0, read));
+                for (final StreamingGlobMatcher.Run run : runs) {
+                    run.feed(chunk);
+                }
+            }
+            for (final StreamingGlobMatcher.Run run : runs) {
+                if (run.isMatched()) {
+                    matched = true;
+                }
+            }
+            return matched;
+        }
+
+        boolean isMatched() {
+            return matched;
+        }
+
+        private boolean isDecided() {
+            for (final StreamingGlobMatcher.Run run : runs) {
+                if (!run.isDecided()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Matches each selected part as Mime4J delivers it, stopping the parser
+     * once any part has matched.
+     */
+    private static final class PartMatchHandler extends AbstractContentHandler {
+
+        private final MimeStreamParser parser;
+
+        private final PartMatcher matcher;
+
+        private final List<String> contentTypes;
+
+        PartMatchHandler(final MimeStreamParser parser,
+                final PartMatcher matcher, final List<String> contentTypes) {
+            super();
+            this.parser = parser;
+            this.matcher = matcher;
+            this.contentTypes = contentTypes;
+        }
+
+        @Override
+        public void body(final BodyDescriptor descriptor,
+                final InputStream content) throws MimeException, IOException {
+            if (matcher.isMatched()
+                    || !isSelected(descriptor.getMediaType(), descriptor
+                            .getMimeType(), contentTypes)) {
+                return;
+            }
+            if (matcher.match(new InputStreamReader(content,
+                    PartSearcher.charset(descriptor.getCharset())))) {
+                parser.stop();
+            }
+        }
+    }
+
+    /**
+     * Searches each selected part as Mime4J delivers it, stopping the parser
+     * once every group has been found.
+     */
+    private static final class PartSearcher extends AbstractContentHandler {
+
+        private final MimeStreamParser parser;
+
+        private final Hits hits;
+
+        private final List<String> contentTypes;
+
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        PartSearcher(final MimeStreamParser parser, final Hits hits,
+                final List<String> contentTypes) {
+            super();
+            this.parser = parser;
+            this.hits = hits;
+            this.contentTypes = contentTypes;
+        }
+
+        @Override
+        public void body(final BodyDescriptor descriptor,
+                final InputStream content) throws MimeException, IOException {
+            if (hits.isComplete()
+                    || !isSelected(descriptor.getMediaType(), descriptor
+                            .getMimeType(), contentTypes)) {
+                return;
+            }
+            // Empty phrases are found in any selected part
+            int state = PhraseAutomaton.START;
+            if (hits.record(state)) {
+                parser.stop();
+                return;
+            }
+            final Reader reader = new InputStreamReader(content,
+                    charset(descriptor.getCharset()));
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    state = hits.automaton.next(state, buffer[i]);
+                    if (hits.record(state)) {
+                        parser.stop();
+                        return;
+                    }
+                }
+            }
+        }
+
+        private static Charset charset(final String name) {
+            Charset charset = null;
+            if (name != null) {
+                charset = CharsetUtil.lookup(name);
+            }
+            return charset == null ? StandardCharsets.ISO_8859_1 : charset;
+        }
+    }
+}
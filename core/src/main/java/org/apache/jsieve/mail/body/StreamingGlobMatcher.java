@@ -0,0 +1,293 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve.mail.body;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Matches text delivered in chunks against a Sieve pattern, as used by the
+ * <code>:is</code>, <code>:contains</code> and <code>:matches</code> match
+ * types. In a pattern, <code>*</code> matches any sequence of characters,
+ * <code>?</code> matches a single character and <code>\</code> escapes
+ * either of them or itself.
+ * </p>
+ * 
+ * <p>
+ * The pattern is compiled once to a sequence of positions. A {@link Run}
+ * follows every position the text read so far may have reached, so a single
+ * pass is made without backtracking and without retaining the text. The
+ * memory used by a run is fixed by the length of the pattern, not by the
+ * length of the text.
+ * </p>
+ * 
+ * <p>
+ * Characters are compared exactly: callers apply the folding of the
+ * comparator to both the pattern and the text.
+ * </p>
+ * 
+ * <p>
+ * Instances are immutable and may be shared between threads. Runs are not.
+ * </p>
+ */
+public final class StreamingGlobMatcher {
+
+    private static final int ANY_SEQUENCE = -1;
+
+    private static final int ANY_CHARACTER = -2;
+
+    private final int[] pattern;
+
+    private StreamingGlobMatcher(final int[] pattern) {
+        super();
+        this.pattern = pattern;
+    }
+
+    /**
+     * Method forIs answers a matcher accepting only the given value.
+     * 
+     * @param value
+     *            not null
+     * @return <code>StreamingGlobMatcher</code>, not null
+     */
+    public static StreamingGlobMatcher forIs(final String value) {
+        final int[] pattern = new int[value.length()];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = value.charAt(i);
+        }
+        return new StreamingGlobMatcher(pattern);
+    }
+
+    /**
+     * Method forContains answers a matcher accepting any text containing the
+     * given value.
+     * 
+     * @param value
+     *            not null
+     * @return <code>StreamingGlobMatcher</code>, not null
+     */
+    public static StreamingGlobMatcher forContains(final String value) {
+        final int[] pattern = new int[value.length() + 2];
+        pattern[0] = ANY_SEQUENCE;
+        for (int i = 0; i < value.length(); i++) {
+            pattern[i + 1] = value.charAt(i);
+        }
+        pattern[pattern.length - 1] = ANY_SEQUENCE;
+        return new StreamingGlobMatcher(compact(pattern, pattern.length));
+    }
+
+    /**
+     * Method forMatches answers a matcher accepting any text matching the
+     * given Sieve pattern.
+     * 
+     * @param glob
+     *            not null
+     * @return <code>StreamingGlobMatcher</code>, not null
+     */
+    public static StreamingGlobMatcher forMatches(final String glob) {
+        final int[] pattern = new int[glob.length()];
+        int length = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            final char next = glob.charAt(i);
+            if (next == '*') {
+                pattern[length++] = ANY_SEQUENCE;
+            } else if (next == '?') {
+                pattern[length++] = ANY_CHARACTER;
+            } else if (next == '\\' && i + 1 < glob.length()
+                    && isSpecial(glob.charAt(i + 1))) {
+                pattern[length++] = glob.charAt(++i);
+            } else {
+                pattern[length++] = next;
+            }
+        }
+        return new StreamingGlobMatcher(compact(pattern, length));
+    }
+
+    /**
+     * Method start answers a new run positioned before any text.
+     * 
+     * @return <code>Run</code>, not null
+     */
+    public Run start() {
+        return new Run();
+    }
+
+    /**
+     * Collapses consecutive sequence wildcards, which match no more than one.
+     */
+    private static int[] compact(final int[] pattern, final int length) {
+        final int[] result = new int[length];
+        int compacted = 0;
+        for (int i = 0; i < length; i++) {
+            if (pattern[i] != ANY_SEQUENCE || compacted == 0
+                    || result[compacted - 1] != ANY_SEQUENCE) {
+                result[compacted++] = pattern[i];
+            }
+        }
+        if (compacted == length) {
+            return result;
+        }
+        final int[] trimmed = new int[compacted];
+        System.arraycopy(result, 0, trimmed, 0, compacted);
+        return trimmed;
+    }
+
+    private static boolean isSpecial(final char next) {
+        return next == '*' || next == '?' || next == '\\';
+    }
+
+    /**
+     * Follows one text through the pattern. A run is fed the text in as many
+     * chunks as convenient and then asked whether the whole text matched.
+     */
+    public final class Run {
+
+        private long[] positions;
+
+        private long[] next;
+
+        private Run() {
+            super();
+            final int words = (pattern.length >> 6) + 1;
+            this.positions = new long[words];
+            this.next = new long[words];
+            reset();
+        }
+
+        /**
+         * Method reset positions this run before any text, so that it may be
+         * reused for another text.
+         */
+        public void reset() {
+            Arrays.fill(positions, 0L);
+            positions[0] = 1L;
+            close(positions);
+        }
+
+        /**
+         * Method feed advances this run over the given characters.
+         * 
+         * @param chars
+         *            not null
+         * @param offset
+         *            index of the first character
+         * @param length
+         *            number of characters
+         */
+        public void feed(final char[] chars, final int offset,
+                final int length) {
+            final int limit = offset + length;
+            for (int i = offset; i < limit && !isDecided(); i++) {
+                step(chars[i]);
+            }
+        }
+
+        /**
+         * Method feed advances this run over the given characters.
+         * 
+         * @param chars
+         *            not null
+         */
+        public void feed(final CharSequence chars) {
+            final int length = chars.length();
+            for (int i = 0; i < length && !isDecided(); i++) {
+                step(chars.charAt(i));
+            }
+        }
+
+        /**
+         * Method isMatched answers whether the text fed so far matches the
+         * pattern.
+         * 
+         * @return true when the text matches
+         */
+        public boolean isMatched() {
+            return isSet(positions, pattern.length);
+        }
+
+        /**
+         * Method isDecided answers whether the result no longer depends on any
+         * text still to be fed: either no position remains, or the pattern is
+         * complete but for a final sequence wildcard which accepts anything.
+         * 
+         * @return true when feeding more text cannot change the result
+         */
+        public boolean isDecided() {
+            final int last = pattern.length - 1;
+            if (last >= 0 && pattern[last] == ANY_SEQUENCE
+                    && isSet(positions, last)) {
+                return true;
+            }
+            for (final long word : positions) {
+                if (word != 0L) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void step(final char character) {
+            Arrays.fill(next, 0L);
+            for (int word = 0; word < positions.length; word++) {
+                long bits = positions[word];
+                while (bits != 0L) {
+                    final int position = (word << 6)
+                            + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (position < pattern.length) {
+                        final int element = pattern[position];
+                        if (element == ANY_SEQUENCE) {
+                            set(next, position);
+                        } else if (element == ANY_CHARACTER
+                                || element == character) {
+                            set(next, position + 1);
+                        }
+                    }
+                }
+            }
+            close(next);
+            final long[] swap = positions;
+            positions = next;
+            next = swap;
+        }
+
+        /**
+         * Adds the positions following each reached sequence wildcard, which
+         * may match nothing.
+         */
+        private void close(final long[] reached) {
+            for (int position = 0; position < pattern.length; position++) {
+                if (pattern[position] == ANY_SEQUENCE
+                        && isSet(reached, position)) {
+                    set(reached, position + 1);
+                }
+            }
+        }
+
+        private boolean isSet(final long[] bits, final int position) {
+            return (bits[position >> 6] & (1L << position)) != 0L;
+        }
+
+        private void set(final long[] bits, final int position) {
+            bits[position >> 6] |= 1L << position;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.parser;
+
+import org.apache.jsieve.ParseLimits;
+import org.apache.jsieve.ScriptCoordinate;
+import org.apache.jsieve.exception.ParseLimitException;
+import org.apache.jsieve.parser.generated.ASTblock;
+import org.apache.jsieve.parser.generated.ASTcommand;
+import org.apache.jsieve.parser.generated.ASTstring;
+import org.apache.jsieve.parser.generated.ASTtest;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.parser.generated.ParseException;
+import org.apache.jsieve.parser.generated.Token;
+
+/**
+ * <p>
+ * Counts the nodes opened by one parse, checking them against
+ * {@link ParseLimits} as the parser reads the script, so that a script is
+ * rejected before a node beyond a limit is built or recursed into.
+ * </p>
+ * 
+ * <p>
+ * Instances are used by a single parse.
+ * </p>
+ */
+public final class ParseBudget {
+
+    private final int maxNestingDepth;
+
+    private final int maxStringListMembers;
+
+    private final int maxCommands;
+
+    private final int maxLiteralLength;
+
+    private int depth;
+
+    private int stringListMembers;
+
+    private int commands;
+
+    /**
+     * Constructs a budget for a parse within the given limits.
+     * 
+     * @param limits
+     *            <code>ParseLimits</code>, not null
+     */
+    public ParseBudget(final ParseLimits limits) {
+        super();
+        maxNestingDepth = limitOf(limits.getMaxNestingDepth());
+        maxStringListMembers = limitOf(limits.getMaxStringListMembers());
+        maxCommands = limitOf(limits.getMaxCommands());
+        maxLiteralLength = limitOf(limits.getMaxLiteralLength());
+    }
+
+    /**
+     * Charges a node opened by the parser.
+     * 
+     * @param node
+     *            node opened, not null
+     * @param token
+     *            first token of the node, not null
+     * @throws ParseException
+     *             when the node exceeds a limit
+     */
+    public void open(final Node node, final Token token) throws ParseException {
+        if (node instanceof ASTblock || node instanceof ASTtest) {
+            if (++depth > maxNestingDepth) {
+                throw exceeded(ParseLimits.Resource.NESTING_DEPTH,
+                        "Script nests blocks and tests deeper than "
+                                + maxNestingDepth + ".", token);
+            }
+        } else if (node instanceof ASTcommand) {
+            if (++commands > maxCommands) {
+                throw exceeded(ParseLimits.Resource.COMMANDS,
+                        "Script holds more than " + maxCommands
+                                + " commands.", token);
+            }
+        } else if (node instanceof ASTstring) {
+            if (++stringListMembers > maxStringListMembers) {
+                throw exceeded(ParseLimits.Resource.STRING_LIST_MEMBERS,
+                        "Script holds more than " + maxStringListMembers
+                                + " strings.", token);
+            }
+            if (token.image != null && token.image.length() > maxLiteralLength) {
+                throw exceeded(ParseLimits.Resource.LITERAL_LENGTH,
+                        "String is longer than " + maxLiteralLength
+                                + " characters.", token);
+            }
+        }
+    }
+
+    /**
+     * Releases a node closed by the parser.
+     * 
+     * @param node
+     *            node closed, not null
+     */
+    public void close(final Node node) {
+        if (node instanceof ASTblock || node instanceof ASTtest) {
+            depth--;
+        }
+    }
+
+    private static ParseLimitException exceeded(
+            final ParseLimits.Resource resource, final String message,
+            final Token token) {
+        return new ParseLimitException(message, resource,
+                new ScriptCoordinate(token.beginLine, token.beginColumn,
+                        token.endLine, token.endColumn));
+    }
+
+    private static int limitOf(final int limit) {
+        return limit > 0 ? limit : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,658 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.parser.address;
+
+import org.apache.jsieve.parser.generated.address.ParseException;
+
+/**
+ * <p>
+ * Single pass scanner for RFC822 address lists. The scanner accepts the same
+ * language as the <code>AddressListParser</code> grammar and answers the same
+ * local parts and domains, but reports each as a range of offsets into the
+ * scanned value rather than building a syntax tree.
+ * </p>
+ * 
+ * <p>
+ * When the source text of a part is exactly its value (which is the usual
+ * case) the value is a substring of the scanned text. Otherwise (for example,
+ * when the part is quoted, contains escaped characters or is interleaved with
+ * comments or whitespace) the value is built from the tokens in the range.
+ * </p>
+ * 
+ * <p>
+ * Instances are not thread safe. An instance may be reused by a single thread
+ * for any number of scans. Results are valid until the next scan.
+ * </p>
+ */
+public final class AddressListScanner {
+
+    private static final int EOF = 0;
+
+    private static final int DOTATOM = 1;
+
+    private static final int QUOTEDSTRING = 2;
+
+    private static final int DOMAINLITERAL = 3;
+
+    private static final int DOT = 4;
+
+    private static final int COMMA = 5;
+
+    private static final int COLON = 6;
+
+    private static final int SEMICOLON = 7;
+
+    private static final int LESS_THAN = 8;
+
+    private static final int GREATER_THAN = 9;
+
+    private static final int AT = 10;
+
+    private static final int LINE_BREAK = 11;
+
+    /** Offsets and flags recorded per address */
+    private static final int STRIDE = 5;
+
+    private static final int VERBATIM_LOCAL_PART = 1;
+
+    private static final int VERBATIM_DOMAIN = 2;
+
+    private String input;
+
+    private int length;
+
+    private int position;
+
+    private int kind;
+
+    private int tokenStart;
+
+    private int tokenEnd;
+
+    private boolean escaped;
+
+    private int[] results = new int[STRIDE * 4];
+
+    private int count;
+
+    // Range of the part most recently scanned
+    private int partStart;
+
+    private int partEnd;
+
+    private boolean partVerbatim;
+
+    private StringBuilder buffer;
+
+    /**
+     * Scans the given address list.
+     * 
+     * @param addressList
+     *            RFC822 address list, not null
+     * @return the number of addresses in the list
+     * @throws ParseException
+     *             when the list is not valid
+     */
+    public int scan(String addressList) throws ParseException {
+        input = addressList;
+        length = addressList.length();
+        position = 0;
+        count = 0;
+        try {
+            next();
+            if (startsAddress()) {
+                address();
+            }
+            while (kind == COMMA) {
+                next();
+                if (startsAddress()) {
+                    address();
+                }
+            }
+            expect(EOF);
+            return count;
+        } catch (ParseException e) {
+            count = 0;
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of addresses found by the last scan.
+     * 
+     * @return number of addresses
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the offset of the first character of the local part of an address.
+     * 
+     * @param index
+     *            index of the address
+     * @return offset into the scanned value
+     */
+    public int getLocalPartStart(int index) {
+        return results[checkIndex(index) * STRIDE];
+    }
+
+    /**
+     * Gets the offset after the last character of the local part of an
+     * address.
+     * 
+     * @param index
+     *            index of the address
+     * @return offset into the scanned value
+     */
+    public int getLocalPartEnd(int index) {
+        return results[checkIndex(index) * STRIDE + 1];
+    }
+
+    /**
+     * Gets the offset of the first character of the domain of an address.
+     * 
+     * @param index
+     *            index of the address
+     * @return offset into the scanned value
+     */
+    public int getDomainStart(int index) {
+        return results[checkIndex(index) * STRIDE + 2];
+    }
+
+    /**
+     * Gets the offset after the last character of the domain of an address.
+     * 
+     * @param index
+     *            index of the address
+     * @return offset into the scanned value
+     */
+    public int getDomainEnd(int index) {
+        return results[checkIndex(index) * STRIDE + 3];
+    }
+
+    /**
+     * Gets the local part of an address.
+     * 
+     * @param index
+     *            index of the address
+     * @return local part, not null
+     */
+    public String getLocalPart(int index) {
+        final int offset = checkIndex(index) * STRIDE;
+        return value(results[offset], results[offset + 1],
+                (results[offset + 4] & VERBATIM_LOCAL_PART) != 0);
+    }
+
+    /**
+     * Gets the domain of an address.
+     * 
+     * @param index
+     *            index of the address
+     * @return domain, not null
+     */
+    public String getDomain(int index) {
+        final int offset = checkIndex(index) * STRIDE;
+        return value(results[offset + 2], results[offset + 3],
+                (results[offset + 4] & VERBATIM_DOMAIN) != 0);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Address " + index + " of "
+                    + count);
+        }
+        return index;
+    }
+
+    private String value(int start, int end, boolean verbatim) {
+        if (verbatim) {
+            return input.substring(start, end);
+        }
+        // Concatenate the images of the tokens in the range
+        if (buffer == null) {
+            buffer = new StringBuilder(end - start);
+        } else {
+            buffer.setLength(0);
+        }
+        position = start;
+        try {
+            next();
+            while (kind != EOF && tokenStart < end) {
+                appendImage(buffer);
+                next();
+            }
+        } catch (ParseException e) {
+            // Cannot happen: the range has already been scanned
+            throw new IllegalStateException(e.getMessage());
+        }
+        return buffer.toString();
+    }
+
+    private void appendImage(StringBuilder builder) {
+        switch (kind) {
+        case QUOTEDSTRING:
+            appendUnescaped(builder, tokenStart + 1, tokenEnd - 1);
+            break;
+        case DOMAINLITERAL:
+            builder.append('[');
+            appendUnescaped(builder, tokenStart + 1, tokenEnd - 1);
+            builder.append(']');
+            break;
+        default:
+            builder.append(input, tokenStart, tokenEnd);
+            break;
+        }
+    }
+
+    private void appendUnescaped(StringBuilder builder, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char next = input.charAt(i);
+            if (next == '\\') {
+                next = input.charAt(++i);
+            }
+            builder.append(next);
+        }
+    }
+
+    private boolean startsAddress() {
+        return kind == DOTATOM || kind == QUOTEDSTRING || kind == LESS_THAN;
+    }
+
+    private boolean isWord() {
+        return kind == DOTATOM || kind == QUOTEDSTRING;
+    }
+
+    private void expect(int expected) throws ParseException {
+        if (kind != expected) {
+            throw unexpected();
+        }
+        next();
+    }
+
+    private ParseException unexpected() {
+        if (kind == EOF) {
+            return new ParseException("Unexpected end of address list");
+        }
+        return new ParseException("Unexpected \""
+                + input.substring(tokenStart, tokenEnd) + "\" at column "
+                + (tokenStart + 1));
+    }
+
+    private void address() throws ParseException {
+        if (isAddrSpecAhead()) {
+            addrSpec();
+        } else if (kind == LESS_THAN) {
+            angleAddr();
+        } else {
+            phrase();
+            if (kind == COLON) {
+                groupBody();
+            } else {
+                angleAddr();
+            }
+        }
+    }
+
+    private void mailbox() throws ParseException {
+        if (isAddrSpecAhead()) {
+            addrSpec();
+        } else if (kind == LESS_THAN) {
+            angleAddr();
+        } else {
+            phrase();
+            angleAddr();
+        }
+    }
+
+    private void groupBody() throws ParseException {
+        expect(COLON);
+        if (startsAddress()) {
+            mailbox();
+        }
+        while (kind == COMMA) {
+            next();
+            if (startsAddress()) {
+                mailbox();
+            }
+        }
+        expect(SEMICOLON);
+    }
+
+    private void angleAddr() throws ParseException {
+        expect(LESS_THAN);
+        if (kind == AT) {
+            route();
+        }
+        addrSpec();
+        expect(GREATER_THAN);
+    }
+
+    private void route() throws ParseException {
+        expect(AT);
+        domain();
+        while (kind == COMMA || kind == AT) {
+            while (kind == COMMA) {
+                next();
+            }
+            expect(AT);
+            domain();
+        }
+        expect(COLON);
+    }
+
+    private void phrase() throws ParseException {
+        if (!isWord()) {
+            throw unexpected();
+        }
+        do {
+            next();
+        } while (isWord());
+    }
+
+    /**
+     * Answers whether the tokens ahead are an addr-spec, without checking
+     * the separation of words.
+     */
+    private boolean isAddrSpecAhead() throws ParseException {
+        if (!isWord()) {
+            return false;
+        }
+        final int savedPosition = position;
+        final int savedKind = kind;
+        final int savedTokenStart = tokenStart;
+        final int savedTokenEnd = tokenEnd;
+        final boolean savedEscaped = escaped;
+        boolean result = false;
+        next();
+        while (true) {
+            if (kind == DOT) {
+                next();
+                if (!isWord()) {
+                    break;
+                }
+                next();
+            } else if (isWord()) {
+                next();
+            } else {
+                if (kind == AT) {
+                    next();
+                    result = kind == DOTATOM || kind == DOMAINLITERAL;
+                }
+                break;
+            }
+        }
+        position = savedPosition;
+        kind = savedKind;
+        tokenStart = savedTokenStart;
+        tokenEnd = savedTokenEnd;
+        escaped = savedEscaped;
+        return result;
+    }
+
+    private void addrSpec() throws ParseException {
+        localPart();
+        final int localStart = partStart;
+        final int localEnd = partEnd;
+        final boolean localVerbatim = partVerbatim;
+        expect(AT);
+        domain();
+        final int offset = count * STRIDE;
+        if (offset + STRIDE > results.length) {
+            final int[] grown = new int[results.length * 2];
+            System.arraycopy(results, 0, grown, 0, results.length);
+            results = grown;
+        }
+        results[offset] = localStart;
+        results[offset + 1] = localEnd;
+        results[offset + 2] = partStart;
+        results[offset + 3] = partEnd;
+        results[offset + 4] = (localVerbatim ? VERBATIM_LOCAL_PART : 0)
+                | (partVerbatim ? VERBATIM_DOMAIN : 0);
+        count++;
+    }
+
+    private void localPart() throws ParseException {
+        if (!isWord()) {
+            throw unexpected();
+        }
+        partStart = tokenStart;
+        partVerbatim = kind == DOTATOM;
+        boolean separated = isSeparator();
+        partEnd = tokenEnd;
+        next();
+        while (kind == DOT || isWord()) {
+            if (kind == DOT) {
+                partVerbatim = partVerbatim && tokenStart == partEnd;
+                separated = true;
+                partEnd = tokenEnd;
+                next();
+            }
+            if (!separated) {
+                throw new ParseException(
+                        "Words in local part must be separated by '.'");
+            }
+            if (!isWord()) {
+                throw unexpected();
+            }
+            partVerbatim = partVerbatim && kind == DOTATOM
+                    && tokenStart == partEnd;
+            separated = isSeparator();
+            partEnd = tokenEnd;
+            next();
+        }
+    }
+
+    private void domain() throws ParseException {
+        partStart = tokenStart;
+        if (kind == DOMAINLITERAL) {
+            partVerbatim = !escaped;
+            partEnd = tokenEnd;
+            next();
+        } else if (kind == DOTATOM) {
+            partVerbatim = true;
+            boolean separated = isSeparator();
+            partEnd = tokenEnd;
+            next();
+            while (kind == DOT || kind == DOTATOM) {
+                if (kind == DOT) {
+                    partVerbatim = partVerbatim && tokenStart == partEnd;
+                    separated = true;
+                    partEnd = tokenEnd;
+                    next();
+                }
+                if (!separated) {
+                    throw new ParseException(
+                            "Atoms in domain names must be separated by '.'");
+                }
+                if (kind != DOTATOM) {
+                    throw unexpected();
+                }
+                partVerbatim = partVerbatim && tokenStart == partEnd;
+                separated = isSeparator();
+                partEnd = tokenEnd;
+                next();
+            }
+        } else {
+            throw unexpected();
+        }
+    }
+
+    /**
+     * Answers whether the current token separates the words either side: that
+     * is, whether it is an atom ending in a dot.
+     */
+    private boolean isSeparator() {
+        return kind == DOTATOM && input.charAt(tokenEnd - 1) == '.';
+    }
+
+    /**
+     * Reads the next token, skipping whitespace and comments.
+     */
+    private void next() throws ParseException {
+        while (position < length) {
+            final char next = input.charAt(position);
+            if (next == ' ' || next == '\t') {
+                position++;
+            } else if (next == '(') {
+                skipComment();
+            } else {
+                break;
+            }
+        }
+        tokenStart = position;
+        escaped = false;
+        if (position >= length) {
+            kind = EOF;
+        } else {
+            final char next = input.charAt(position++);
+            if (isAtomText(next)) {
+                while (position < length) {
+                    final char following = input.charAt(position);
+                    if (isAtomText(following) || following == '.') {
+                        position++;
+                    } else {
+                        break;
+                    }
+                }
+                kind = DOTATOM;
+            } else {
+                switch (next) {
+                case '.':
+                    kind = DOT;
+                    break;
+                case ',':
+                    kind = COMMA;
+                    break;
+                case ':':
+                    kind = COLON;
+                    break;
+                case ';':
+                    kind = SEMICOLON;
+                    break;
+                case '<':
+                    kind = LESS_THAN;
+                    break;
+                case '>':
+                    kind = GREATER_THAN;
+                    break;
+                case '@':
+                    kind = AT;
+                    break;
+                case '\r':
+                case '\n':
+                    kind = LINE_BREAK;
+                    break;
+                case '"':
+                    skipQuoted('"', '\0');
+                    kind = QUOTEDSTRING;
+                    break;
+                case '[':
+                    skipQuoted(']', '[');
+                    kind = DOMAINLITERAL;
+                    break;
+                default:
+                    throw lexicalError(position - 1);
+                }
+            }
+        }
+        tokenEnd = position;
+    }
+
+    /**
+     * Skips to the end of a quoted string or domain literal.
+     */
+    private void skipQuoted(char close, char forbidden) throws ParseException {
+        while (position < length) {
+            final char next = input.charAt(position++);
+            if (next == close) {
+                return;
+            } else if (next == '\\') {
+                if (position == length) {
+                    break;
+                }
+                escaped = true;
+                position++;
+            } else if (next == forbidden) {
+                throw lexicalError(position - 1);
+            }
+        }
+        throw lexicalError(length);
+    }
+
+    /**
+     * Skips a possibly nested comment.
+     */
+    private void skipComment() throws ParseException {
+        int depth = 0;
+        while (position < length) {
+            final char next = input.charAt(position++);
+            if (next == '(') {
+                depth++;
+            } else if (next == ')') {
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (next == '\\' && position < length) {
+                position++;
+            }
+        }
+        throw lexicalError(length);
+    }
+
+    private ParseException lexicalError(int offset) {
+        if (offset >= length) {
+            return new ParseException("Unexpected end of address list");
+        }
+        return new ParseException("Unexpected character '"
+                + input.charAt(offset) + "' at column " + (offset + 1));
+    }
+
+    private static boolean isAtomText(char next) {
+        if ((next >= 'a' && next <= 'z') || (next >= 'A' && next <= 'Z')
+                || (next >= '0' && next <= '9')) {
+            return true;
+        }
+        switch (next) {
+        case '!':
+        case '#':
+        case '$':
+        case '%':
+        case '&':
+        case '\'':
+        case '*':
+        case '+':
+        case '-':
+        case '/':
+        case '=':
+        case '?':
+        case '^':
+        case '_':
+        case '`':
+        case '{':
+        case '|':
+        case '}':
+        case '~':
+            return true;
+        default:
+            return false;
+        }
+    }
+}
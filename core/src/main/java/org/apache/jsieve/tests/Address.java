@@ -22,18 +22,27 @@ package org.apache.jsieve.tests;
 import static org.apache.jsieve.tests.AddressPartTags.DOMAIN_TAG;
 import static org.apache.jsieve.tests.AddressPartTags.LOCALPART_TAG;
 
+import java.util.List;
+
+import org.apache.jsieve.EvaluationBudget;
 import org.apache.jsieve.SieveContext;
+import org.apache.jsieve.comparators.Comparator;
 import org.apache.jsieve.comparators.ComparatorUtils;
-import org.apache.jsieve.exception.InternetAddressException;
+import org.apache.jsieve.comparators.Folding;
+import org.apache.jsieve.comparators.Octet;
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.mail.MailAdapter;
-import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.mail.ParsedAddress;
 
 /**
  * Class Address implements the Addresss Test as defined in RFC 3028, section
  * 5.1.
  */
 public class Address extends AbstractComparatorTest {
+
+    private static final Comparator OCTET = new Octet();
+
     /**
      * Constructor for Address.
      */
@@ -41,40 +50,104 @@ public class Address extends AbstractComparatorTest {
         super();
     }
 
+    /**
+     * Matches the addresses in the named header against all keys. The header
+     * is parsed once per evaluation and the comparator is looked up once.
+     * Subclasses are matched key by key and address by address through the
+     * overloads below, so that overrides are honoured.
+     * 
+     * @see org.apache.jsieve.tests.AbstractComparatorTest#match(MailAdapter,
+     *      String, String, String, String, List, SieveContext)
+     */
+    protected boolean match(MailAdapter mail, String addressPart,
+            String comparator, String matchType, String headerName,
+            List<String> keys, SieveContext context) throws SieveException {
+        if (getClass() != Address.class) {
+            return super.match(mail, addressPart, comparator, matchType,
+                    headerName, keys, context);
+        }
+        final List<ParsedAddress> addresses = MessageCache.of(mail, context)
+                .getAddresses(headerName);
+        if (addresses.isEmpty()) {
+            return false;
+        }
+        Comparator comparatorObj = context.getComparatorManager()
+                .getComparator(comparator);
+
+        // Extract the parts of the addresses we are matching on
+        final int length = addresses.size();
+        final String[] matchAddresses = new String[length];
+        for (int i = 0; i < length; i++) {
+            matchAddresses[i] = matchAddress(addressPart, addresses.get(i));
+        }
+
+        // domain matches MUST ignore case, others should not
+        final boolean isDomain = addressPart.equals(DOMAIN_TAG);
+        final String[] matchKeys = new String[keys.size()];
+        for (int i = 0; i < matchKeys.length; i++) {
+            final String key = keys.get(i);
+            matchKeys[i] = isDomain ? key.toLowerCase() : key;
+        }
+
+        // Fold each operand once rather than on every comparison
+        if (comparatorObj instanceof Folding) {
+            final Folding folding = (Folding) comparatorObj;
+            for (int i = 0; i < length; i++) {
+                matchAddresses[i] = folding.fold(matchAddresses[i]);
+            }
+            for (int i = 0; i < matchKeys.length; i++) {
+                matchKeys[i] = folding.fold(matchKeys[i]);
+            }
+            comparatorObj = OCTET;
+        }
+
+        final EvaluationBudget budget = context.getBudget();
+        for (final String matchKey : matchKeys) {
+            for (final String matchAddress : matchAddresses) {
+                if (budget != null) {
+                    budget.chargeComparison(matchAddress.length());
+                }
+                if (ComparatorUtils.match(comparatorObj, matchType,
+                        matchAddress, matchKey)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     protected boolean match(MailAdapter mail, String addressPart,
             String comparator, String matchType, String headerName, String key,
             SieveContext context) throws SieveException {
-        final MailAdapter.Address[] addresses = getMatchingValues(mail, headerName);
-        final int length = addresses.length;
+        final List<ParsedAddress> addresses = MessageCache.of(mail, context)
+                .getAddresses(headerName);
+        final int length = addresses.size();
         int i = 0;
         boolean isMatched = false;
         while (!isMatched && i < length) {
             isMatched = match(addressPart, comparator, matchType,
-                    addresses[i++], key, context);
+                    addresses.get(i++), key, context);
         }
         return isMatched;
     }
 
-    private MailAdapter.Address[] getMatchingValues(MailAdapter mail,
-            String valueName) throws SieveMailException,
-            InternetAddressException {
-        return mail.parseAddresses(valueName);
+    private String matchAddress(String addressPart, ParsedAddress address) {
+        if (addressPart.equals(LOCALPART_TAG)) {
+            return address.getLocalPart();
+        } else if (addressPart.equals(DOMAIN_TAG)) {
+            return address.getLowerCaseDomain();
+        } else {
+            return address.getAddress();
+        }
     }
 
     protected boolean match(String addressPart, String comparator,
             String matchType, MailAdapter.Address address, String key,
             SieveContext context) throws SieveException {
-        final String localPart = address.getLocalPart();
-        final String domain = address.getDomain();
-
         // Extract the part of the address we are matching on
-        final String matchAddress;
-        if (addressPart.equals(":all"))
-            matchAddress = localPart + "@" + domain;
-        else {
-            matchAddress = (addressPart.equals(LOCALPART_TAG) ? localPart
-                    : domain.toLowerCase());
-        }
+        final String matchAddress = matchAddress(addressPart,
+                address instanceof ParsedAddress ? (ParsedAddress) address
+                        : new ParsedAddress(address));
 
         // domain matches MUST ignore case, others should not
         String matchKey = null;
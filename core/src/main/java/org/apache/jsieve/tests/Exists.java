@@ -27,6 +27,7 @@ import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.StringListArgument;
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageCache;
 
 /**
  * Class Exists implements the Exists Test as defined in RFC 3028, section 5.5.
@@ -50,9 +51,10 @@ public class Exists extends AbstractTest {
         final List<String> argumentList = ((StringListArgument) arguments
                                 .getArgumentList().get(0)).getList();
         
+        final MessageCache cache = MessageCache.of(mail, context);
         boolean found = true;
         for (final String arg:argumentList) {
-            List<String> headers = mail.getMatchingHeader(arg);
+            List<String> headers = cache.getMatchingHeader(arg);
             found = !headers.isEmpty();
             if (!found) {
                 break;
@@ -25,7 +25,10 @@ import static org.apache.jsieve.comparators.MatchTypeTags.IS_TAG;
 import static org.apache.jsieve.comparators.MatchTypeTags.MATCHES_TAG;
 import static org.apache.jsieve.tests.ComparatorTags.COMPARATOR_TAG;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -35,18 +38,30 @@ import org.apache.james.mime4j.codec.DecoderUtil;
 import org.apache.james.mime4j.util.MimeUtil;
 import org.apache.jsieve.Argument;
 import org.apache.jsieve.Arguments;
+import org.apache.jsieve.EvaluationBudget;
 import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.StringListArgument;
 import org.apache.jsieve.TagArgument;
+import org.apache.jsieve.comparators.ByteComparator;
+import org.apache.jsieve.comparators.Comparator;
 import org.apache.jsieve.comparators.ComparatorUtils;
+import org.apache.jsieve.comparators.Folding;
+import org.apache.jsieve.comparators.Octet;
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.mail.RawHeaderProvider;
 
 /**
  * Class Header implements the Header Test as defined in RFC 3028, section 5.7.
  */
 public class Header extends AbstractTest {
 
+    private static final Comparator OCTET = new Octet();
+
+    private static final List<String> EMPTY_VALUE = Collections
+            .singletonList("");
+
     /**
      * Constructor for Header.
      */
@@ -162,23 +177,183 @@ public class Header extends AbstractTest {
     protected boolean match(MailAdapter mail, String comparator,
             String matchType, List<String> headerNames, List<String> keys, SieveContext context)
             throws SieveException {
+        final MessageCache cache = MessageCache.of(mail, context);
+        if (getClass() != Header.class) {
+            // Subclasses may override the overloads below, so match through
+            // them using the raw values, as they expect
+            boolean isMatched = false;
+            Iterator<String> headerNamesIter = headerNames.iterator();
+            while (!isMatched && headerNamesIter.hasNext()) {
+                isMatched = match(comparator, matchType, cache
+                        .getMatchingHeader(headerNamesIter.next()), keys,
+                        context);
+            }
+            return isMatched;
+        }
+        final Comparator comparatorObj = context.getComparatorManager()
+                .getComparator(comparator);
+        final EvaluationBudget budget = context.getBudget();
+        if (comparatorObj instanceof ByteComparator
+                && cache.getMail() instanceof RawHeaderProvider) {
+            return matchRaw(cache, comparatorObj, matchType, headerNames,
+                    keys, budget);
+        }
+        if (comparatorObj instanceof Folding) {
+            // Compare the cached folded forms octet by octet
+            final Folding folding = (Folding) comparatorObj;
+            final List<String> foldedKeys = new ArrayList<String>(keys.size());
+            for (final String key : keys) {
+                foldedKeys.add(folding.fold(key));
+            }
+            boolean isMatched = false;
+            Iterator<String> headerNamesIter = headerNames.iterator();
+            while (!isMatched && headerNamesIter.hasNext()) {
+                isMatched = match(OCTET, matchType, cache.getFoldedHeader(
+                        headerNamesIter.next(), folding), foldedKeys, budget);
+            }
+            return isMatched;
+        }
+
         // Iterate over the header names looking for a match
         boolean isMatched = false;
-        Iterator headerNamesIter = headerNames.iterator();
+        Iterator<String> headerNamesIter = headerNames.iterator();
         while (!isMatched && headerNamesIter.hasNext()) {
-            isMatched = match(comparator, matchType, mail
-                    .getMatchingHeader((String) headerNamesIter.next()), keys,
-                    context);
+            isMatched = match(comparatorObj, matchType, cache
+                    .getDecodedHeader(headerNamesIter.next()), keys, budget);
         }
         return isMatched;
     }
 
     /**
-     * Method match.
+     * Matches raw header values against keys. Plain US-ASCII values are
+     * compared octet by octet. Others are compared using the decoded or
+     * folded value at the same position, cached for the evaluation, so each
+     * value is decoded at most once however many tests read it.
      * 
+     * @param cache
+     *            cache of a mail which is a <code>RawHeaderProvider</code>,
+     *            not null
      * @param comparator
+     *            a <code>ByteComparator</code>, not null
      * @param matchType
+     *            not null
+     * @param headerNames
+     *            not null
+     * @param keys
+     *            not null
+     * @param budget
+     *            charged for each comparison, possibly null
+     * @return boolean
+     * @throws SieveException
+     */
+    private boolean matchRaw(MessageCache cache, Comparator comparator,
+            String matchType, List<String> headerNames, List<String> keys,
+            EvaluationBudget budget) throws SieveException {
+        final RawHeaderProvider mail = (RawHeaderProvider) cache.getMail();
+        final ByteComparator byteComparator = (ByteComparator) comparator;
+        final Folding folding = comparator instanceof Folding ? (Folding) comparator
+                : null;
+        final List<String> foldedKeys = new ArrayList<String>(keys.size());
+        final List<byte[]> keyBytes = new ArrayList<byte[]>(keys.size());
+        for (final String key : keys) {
+            final String foldedKey = folding == null ? key : folding.fold(key);
+            foldedKeys.add(foldedKey);
+            keyBytes.add(foldedKey.getBytes(StandardCharsets.UTF_8));
+        }
+        for (final String headerName : headerNames) {
+            final List<ByteBuffer> values = mail.getRawMatchingHeader(headerName);
+            if (values.isEmpty()) {
+                if (match(comparator, matchType, Collections
+                        .<String> emptyList(), keys, budget)) {
+                    return true;
+                }
+            }
+            List<String> decodedValues = null;
+            for (int i = 0; i < values.size(); i++) {
+                final ByteBuffer value = values.get(i);
+                if (ComparatorUtils.isPlainAscii(value)) {
+                    for (final byte[] key : keyBytes) {
+                        if (budget != null) {
+                            budget.chargeComparison(value.remaining());
+                        }
+                        if (ComparatorUtils.match(byteComparator, matchType,
+                                value, key)) {
+                            return true;
+                        }
+                    }
+                } else {
+                    if (decodedValues == null) {
+                        decodedValues = folding == null ? cache
+                                .getDecodedHeader(headerName) : cache
+                                .getFoldedHeader(headerName, folding);
+                    }
+                    if (match(folding == null ? comparator : OCTET, matchType,
+                            Collections.singletonList(decodedValues.get(i)),
+                            foldedKeys, budget)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches decoded header values against keys using the given comparator.
+     * 
+     * @param comparator
+     *            not null
+     * @param matchType
+     *            not null
      * @param headerValues
+     *            decoded values, not null
+     * @param keys
+     *            not null
+     * @param budget
+     *            charged for each comparison, possibly null
+     * @return boolean
+     * @throws SieveException
+     */
+    private boolean match(Comparator comparator, String matchType,
+            List<String> headerValues, List<String> keys,
+            EvaluationBudget budget) throws SieveException {
+        // Special case for empty values
+        // If the matchType is :contains
+        // match against the null string
+        // else
+        // not matched
+        if (headerValues.isEmpty()) {
+            if (matchType.equals(CONTAINS_TAG)) {
+                headerValues = EMPTY_VALUE;
+            } else {
+                return false;
+            }
+        }
+        for (final String headerValue : headerValues) {
+            for (final String key : keys) {
+                if (budget != null) {
+                    budget.chargeComparison(headerValue.length());
+                }
+                if (ComparatorUtils.match(comparator, matchType, headerValue,
+                        key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method match matches the raw values of a header against keys, decoding
+     * each value. Only subclasses are matched through this method and
+     * {@link #match(String, String, String, List, SieveContext)}, so that
+     * overrides are honoured. <code>Header</code> itself matches the decoded,
+     * folded or raw forms cached for the evaluation.
+     * 
+     * @param comparator
+     * @param matchType
+     * @param headerValues
+     *            raw values, not decoded
      * @param keys
      * @param context not null
      * @return boolean
@@ -211,7 +386,8 @@ public class Header extends AbstractTest {
     }
 
     /**
-     * Method match.
+     * Method match matches one header value against keys, charging each
+     * comparison to the budget of the evaluation.
      * 
      * @param comparator
      * @param matchType
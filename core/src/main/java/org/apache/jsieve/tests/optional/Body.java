@@ -19,23 +19,61 @@
 
 package org.apache.jsieve.tests.optional;
 
+import static org.apache.jsieve.comparators.ComparatorNames.ASCII_CASEMAP_COMPARATOR;
+import static org.apache.jsieve.comparators.MatchTypeTags.CONTAINS_TAG;
+import static org.apache.jsieve.comparators.MatchTypeTags.IS_TAG;
+import static org.apache.jsieve.comparators.MatchTypeTags.MATCHES_TAG;
+import static org.apache.jsieve.tests.ComparatorTags.COMPARATOR_TAG;
+
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import org.apache.jsieve.Argument;
 import org.apache.jsieve.Arguments;
+import org.apache.jsieve.ScriptAnalysis;
 import org.apache.jsieve.SieveContext;
 import org.apache.jsieve.StringListArgument;
 import org.apache.jsieve.TagArgument;
+import org.apache.jsieve.comparators.Comparator;
+import org.apache.jsieve.comparators.Folding;
+import org.apache.jsieve.exception.FeatureException;
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.exception.SyntaxException;
 import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageCache;
+import org.apache.jsieve.mail.MessageSourceProvider;
+import org.apache.jsieve.mail.body.BodyMatch;
+import org.apache.jsieve.mail.body.BodySearch;
 import org.apache.jsieve.parser.generated.Token;
 import org.apache.jsieve.tests.AbstractTest;
 
 /**
+ * <p>
  * Implementation of body extension defined in
  * <a href='http://tools.ietf.org/html/rfc5173'>RFC5173</a>.
+ * </p>
+ * 
+ * <p>
+ * Syntax: body [COMPARATOR] [MATCH-TYPE] [BODY-TRANSFORM] &lt;key-list&gt;
+ * </p>
+ * 
+ * <p>
+ * The optional parts may be given in any order. The transformation defaults to
+ * <code>:text</code> and the comparator to <code>i;ascii-casemap</code>. The
+ * match type must be given.
+ * </p>
+ * 
+ * <p>
+ * <code>:contains</code> under the default comparator is answered by a
+ * {@link BodySearch} shared with the other body tests of the script. Other
+ * match types and comparators are answered by a {@link BodyMatch}, which
+ * requires the comparator to be {@link Folding} and the mail to be a
+ * {@link MessageSourceProvider}: the <code>isInBody</code> methods of
+ * {@link MailAdapter} only answer case insensitive containment. Scripts using
+ * these forms against other mails are refused with a {@link FeatureException}
+ * before any command is executed.
+ * </p>
  */
 public class Body extends AbstractTest {
 
@@ -44,69 +82,160 @@ public class Body extends AbstractTest {
     public static final String CONTENT = ":content";
     private TagArgument transformation;
     private StringListArgument contentTypes;
-    private TagArgument matcher;
+    private String comparator;
+    private String matchType;
     private StringListArgument valuesToBeMatched;
 
     protected void validateArguments(Arguments args, SieveContext ctx) throws SieveException {
-        Iterator<Argument> matchingSpecifications = retrieveTransformationAndMatchingSpecificationIterator(args.getArgumentList());
+        final List<Argument> arglist = args.getArgumentList();
+        if (arglist.size() < 1 ) {
+            throw new SyntaxException("Transformations should be specified. See RFC-5173 section 5.");
+        }
+        transformation = null;
+        contentTypes = null;
+        comparator = null;
+        matchType = null;
+        valuesToBeMatched = null;
 
-        if (transformation.getTag().equals(TEXT)) {
-            parseDefaultArguments(matchingSpecifications);
-        } else if (transformation.getTag().equals(RAW)) {
-            parseDefaultArguments(matchingSpecifications);
-        } else if (transformation.getTag().equals(CONTENT)) {
-            parseContentArguments(matchingSpecifications);
+        final Iterator<Argument> matchingSpecifications = arglist.iterator();
+        while (valuesToBeMatched == null && matchingSpecifications.hasNext()) {
+            final Argument argument = matchingSpecifications.next();
+            if (argument instanceof TagArgument) {
+                final String tag = ((TagArgument) argument).getTag();
+                if (transformation == null && (tag.equals(TEXT) || tag.equals(RAW))) {
+                    transformation = (TagArgument) argument;
+                } else if (transformation == null && tag.equals(CONTENT)) {
+                    transformation = (TagArgument) argument;
+                    retrieveContentTypes(matchingSpecifications);
+                } else if (comparator == null && tag.equals(COMPARATOR_TAG)) {
+                    retrieveComparator(matchingSpecifications);
+                } else if (matchType == null
+                        && (tag.equals(IS_TAG) || tag.equals(CONTAINS_TAG) || tag.equals(MATCHES_TAG))) {
+                    matchType = tag;
+                } else {
+                    throw new SyntaxException("Unexpected tag " + tag + " for Body test. See RFC-5173 section 5.");
+                }
+            } else if (matchType == null) {
+                throw new SyntaxException("Expecting a matcher :is, :contains or :matches and not a " + argument.getClass());
+            } else if (argument instanceof StringListArgument) {
+                valuesToBeMatched = (StringListArgument) argument;
+            } else {
+                throw new SyntaxException("Matcher " + matchType + " should be followed by a StringList and not a " + argument.getClass());
+            }
+        }
+        if (matchType == null) {
+            throw new SyntaxException("Expecting a matcher :is, :contains or :matches");
+        }
+        if (valuesToBeMatched == null) {
+            throw new SyntaxException("Matcher " + matchType + " should be followed by a StringList");
+        }
+        assureNoMoreArguments(matchingSpecifications);
+        if (transformation == null) {
+            // by default transformation should be :text
+            transformation = new TagArgument(new Token(0, TEXT));
+        }
+    }
+
+    protected boolean executeBasic(MailAdapter mail, Arguments args, SieveContext ctx) throws SieveException {
+        final MessageCache cache = MessageCache.of(mail, ctx);
+        if (isSearch()) {
+            return getSearch(cache).isFound(cache.getMail(), valuesToBeMatched.getList(), ctx.getBudget());
+        }
+        assureSource(cache.getMail());
+        return getMatch(ctx).isMatched(cache.getMail(), valuesToBeMatched.getList(), ctx.getBudget());
+    }
+
+    /**
+     * Registers the values of this test with the search shared by the body
+     * tests of the script which use the same transformation, so that they are
+     * all sought in one pass over the mail. Tests which are not answered by a
+     * shared search are not registered, but are refused when the mail does
+     * not provide the source they read.
+     * 
+     * @param args
+     *            arguments of the test, not null
+     * @param ctx
+     *            not null
+     * @param cache
+     *            cache for the evaluation, not null
+     * @throws FeatureException
+     *             when the test requires the source of a mail which does not
+     *             provide it
+     * @throws SieveException
+     *             when the arguments are not valid
+     */
+    public void registerSearch(Arguments args, SieveContext ctx, MessageCache cache) throws SieveException {
+        validateArguments(args, ctx);
+        if (isSearch()) {
+            getSearch(cache).register(valuesToBeMatched.getList());
         } else {
-            throw new SyntaxException("Unknown transformation " + transformation.getTag() + ". See RFC-5173 section 5.");
+            assureSource(cache.getMail());
         }
     }
 
-    private void parseContentArguments(Iterator<Argument> matchingSpecifications) throws SyntaxException {
-        retrieveContentTypes(matchingSpecifications);
-        retrieveMatcher(matchingSpecifications);
-        retrieveMatchValues(matchingSpecifications);
-        assureNoMoreArguments(matchingSpecifications);
+    /**
+     * Answers the keys which this test seeks in the body when it is answered
+     * by a search, as named by {@link ScriptAnalysis#getBodySearches()}.
+     * 
+     * @param args
+     *            arguments of the test, not null
+     * @param ctx
+     *            not null
+     * @return keys, or null when the test reads the source of the mail
+     * @throws SieveException
+     *             when the arguments are not valid
+     */
+    public ScriptAnalysis.BodyKeys getBodyKeys(Arguments args, SieveContext ctx) throws SieveException {
+        validateArguments(args, ctx);
+        if (!isSearch()) {
+            return null;
+        }
+        return new ScriptAnalysis.BodyKeys(getTransformation(),
+                contentTypes == null ? Collections.<String>emptyList() : contentTypes.getList(),
+                valuesToBeMatched.getList());
     }
 
-    private void parseDefaultArguments(Iterator<Argument> matchingSpecifications) throws SyntaxException {
-        retrieveMatcher(matchingSpecifications);
-        retrieveMatchValues(matchingSpecifications);
-        assureNoMoreArguments(matchingSpecifications);
+    private void assureSource(MailAdapter mail) throws FeatureException {
+        if (!(mail instanceof MessageSourceProvider)) {
+            throw new FeatureException("Body test " + matchType
+                    + (comparator == null ? "" : " with comparator " + comparator)
+                    + " requires a mail implementing " + MessageSourceProvider.class.getName());
+        }
     }
 
-    private Iterator<Argument> retrieveTransformationAndMatchingSpecificationIterator(List<Argument> arglist) throws SyntaxException {
-        if (arglist.size() < 1 ) {
-            throw new SyntaxException("Transformations should be specified. See RFC-5173 section 5.");
+    /**
+     * Answers whether this test is a case insensitive <code>:contains</code>,
+     * which the <code>isInBody</code> methods of the mail answer directly.
+     */
+    private boolean isSearch() {
+        return matchType.equals(CONTAINS_TAG)
+                && (comparator == null || comparator.equals(ASCII_CASEMAP_COMPARATOR));
+    }
+
+    private BodySearch getSearch(MessageCache cache) {
+        if (transformation.getTag().equals(CONTENT)) {
+            return cache.getBodySearch(BodySearch.CONTENT, contentTypes.getList());
         }
-        Argument arg = arglist.get(0);
-        if (!(arg instanceof TagArgument)) {
-            // by default transformation should be :text
-            transformation = new TagArgument(new Token(0, TEXT));
-            return arglist.iterator();
-        } else {
-            TagArgument transformationCandidate = (TagArgument) arg;
-            if (transformationCandidate.getTag().equals(TEXT) ||
-                    transformationCandidate.getTag().equals(RAW) ||
-                    transformationCandidate.getTag().equals(CONTENT) ) {
-                transformation = (TagArgument) arg;
-                Iterator<Argument> matchingSpecifications = arglist.iterator();
-                matchingSpecifications.next();
-                return matchingSpecifications;
-            } else {
-                // by default transformation should be :text
-                transformation = new TagArgument(new Token(0, TEXT));
-                return arglist.iterator();
-            }
+        return cache.getBodySearch(getTransformation(), null);
+    }
+
+    private BodyMatch getMatch(SieveContext ctx) throws SieveException {
+        final String comparatorName = comparator == null ? ASCII_CASEMAP_COMPARATOR : comparator;
+        final Comparator comparatorObj = ctx.getComparatorManager().getComparator(comparatorName);
+        if (!(comparatorObj instanceof Folding)) {
+            throw new FeatureException("Comparator " + comparatorName + " is not supported by the Body test");
         }
+        return new BodyMatch(getTransformation(),
+                contentTypes == null ? null : contentTypes.getList(), matchType, (Folding) comparatorObj);
     }
 
-    protected boolean executeBasic(MailAdapter mail, Arguments args, SieveContext ctx) throws SieveException {
+    private String getTransformation() {
         if (transformation.getTag().equals(RAW)) {
-            return mail.isInBodyRaw(valuesToBeMatched.getList());
+            return BodySearch.RAW;
         } else if (transformation.getTag().equals(CONTENT)) {
-            return mail.isInBodyContent(contentTypes.getList(), valuesToBeMatched.getList());
+            return BodySearch.CONTENT;
         } else if (transformation.getTag().equals(TEXT)) {
-            return mail.isInBodyText(valuesToBeMatched.getList());
+            return BodySearch.TEXT;
         } else {
             throw new RuntimeException("Invalid transformation caught. Is your argument parsing buggy ?");
         }
@@ -123,29 +252,16 @@ public class Body extends AbstractTest {
         contentTypes = (StringListArgument) contentTypesArgument;
     }
 
-    private void retrieveMatcher(Iterator<Argument> matchingSpecifications) throws SyntaxException {
-        if (!matchingSpecifications.hasNext()) {
-            throw new SyntaxException("Expecting a matcher :contains");
-        }
-        Argument matcherArgument = matchingSpecifications.next();
-        if (! (matcherArgument instanceof TagArgument)) {
-            throw new SyntaxException("Expecting a matcher :contains and not a" + matcherArgument.getClass());
-        }
-        if (!((TagArgument)matcherArgument).getTag().equals(":contains")) {
-            throw new SyntaxException("Expecting a matcher :contains. Matcher " + ((TagArgument) matcherArgument).getTag() + " is currently not supported.");
-        }
-        matcher = (TagArgument) matcherArgument;
-    }
-
-    private void retrieveMatchValues(Iterator<Argument> matchingSpecifications) throws SyntaxException {
+    private void retrieveComparator(Iterator<Argument> matchingSpecifications) throws SyntaxException {
         if (!matchingSpecifications.hasNext()) {
-            throw new SyntaxException("Matcher :contains should be followed by a StringList");
+            throw new SyntaxException("Expecting a comparator name following :comparator");
         }
-        Argument matchValues = matchingSpecifications.next();
-        if (! (matchValues instanceof StringListArgument)) {
-            throw new SyntaxException("Matcher :contains should be followed by a StringList and not a " + matchValues.getClass());
+        Argument comparatorArgument = matchingSpecifications.next();
+        if (! (comparatorArgument instanceof StringListArgument)
+                || ((StringListArgument) comparatorArgument).getList().size() != 1) {
+            throw new SyntaxException("Expecting exactly one String to name the comparator");
         }
-        valuesToBeMatched = (StringListArgument) matchValues;
+        comparator = ((StringListArgument) comparatorArgument).getList().get(0);
     }
 
     private void assureNoMoreArguments(Iterator<Argument> matchingSpecifications) throws SyntaxException {
@@ -0,0 +1,95 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.tests.Address;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AddressMatchTest {
+
+    private static final AtomicInteger KEYS = new AtomicInteger();
+
+    private static final AtomicInteger ADDRESSES = new AtomicInteger();
+
+    /**
+     * Counts the keys and addresses matched through the overridable methods.
+     */
+    public static final class CountingAddress extends Address {
+
+        public CountingAddress() {
+            super();
+        }
+
+        @Override
+        protected boolean match(MailAdapter mail, String addressPart,
+                String comparator, String matchType, String headerName,
+                String key, SieveContext context) throws SieveException {
+            KEYS.incrementAndGet();
+            return super.match(mail, addressPart, comparator, matchType,
+                    headerName, key, context);
+        }
+
+        @Override
+        protected boolean match(String addressPart, String comparator,
+                String matchType, MailAdapter.Address address, String key,
+                SieveContext context) throws SieveException {
+            ADDRESSES.incrementAndGet();
+            return super.match(addressPart, comparator, matchType, address,
+                    key, context);
+        }
+    }
+
+    private SieveFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        final ConfigurationManager configuration = new ConfigurationManager();
+        configuration.getTestMap().put("address",
+                CountingAddress.class.getName());
+        factory = configuration.build();
+        KEYS.set(0);
+        ADDRESSES.set(0);
+    }
+
+    @Test
+    public void testSubclassesAreMatchedThroughOverridableMethods()
+            throws Exception {
+        final InMemoryMailAdapter mail = new InMemoryMailAdapter().addHeader(
+                "To", "a@example.org, b@example.org");
+        factory.evaluate(mail, factory.parse(new ByteArrayInputStream(
+                "if address :domain :is \"To\" [\"example.com\", \"EXAMPLE.org\"] { discard; }"
+                        .getBytes(StandardCharsets.UTF_8))));
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertEquals(2, KEYS.get());
+        assertEquals(3, ADDRESSES.get());
+    }
+}
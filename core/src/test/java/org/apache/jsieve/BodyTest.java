@@ -23,6 +23,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.apache.jsieve.exception.FeatureException;
 import org.apache.jsieve.exception.SyntaxException;
 import org.apache.jsieve.utils.JUnitUtils;
 import org.apache.jsieve.utils.SieveMailAdapter;
@@ -64,8 +65,8 @@ public class BodyTest {
     }
 
     @Test(expected = SyntaxException.class)
-    public void rawShouldThrowWithoutMatcherContains() throws Exception {
-        String script = "if body :raw :is \"Wibble\" {throwTestException;}";
+    public void rawShouldThrowWithUnknownMatcher() throws Exception {
+        String script = "if body :raw :regex \"Wibble\" {throwTestException;}";
 
         JUnitUtils.interpret(sieveMailAdapter, script);
     }
@@ -121,7 +122,14 @@ public class BodyTest {
     }
 
     @Test(expected = SyntaxException.class)
-    public void textShouldThrowWithoutMatcherContains() throws Exception {
+    public void textShouldThrowWithUnknownMatcher() throws Exception {
+        String script = "if body :text :regex \"Wibble\" {throwTestException;}";
+
+        JUnitUtils.interpret(sieveMailAdapter, script);
+    }
+
+    @Test(expected = FeatureException.class)
+    public void isShouldThrowWhenMailProvidesNoSource() throws Exception {
         String script = "if body :text :is \"Wibble\" {throwTestException;}";
 
         JUnitUtils.interpret(sieveMailAdapter, script);
@@ -199,8 +207,8 @@ public class BodyTest {
     }
 
     @Test(expected = SyntaxException.class)
-    public void contentShouldThrowWithoutMatcherContains() throws Exception {
-        String script = "if body :content \"text/plain\" :is \"Wibble\" {throwTestException;}";
+    public void contentShouldThrowWithUnknownMatcher() throws Exception {
+        String script = "if body :content \"text/plain\" :regex \"Wibble\" {throwTestException;}";
 
         JUnitUtils.interpret(sieveMailAdapter, script);
     }
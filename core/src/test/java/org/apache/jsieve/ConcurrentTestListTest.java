@@ -0,0 +1,332 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jsieve.exception.BudgetExceededException;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.mail.ConcurrentMailAdapter;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentTestListTest {
+
+    /**
+     * Answers each :content search for a content type by the rule given in
+     * its first phrase: "yes", "no", "fail", or "meet" to wait for another
+     * search to reach the barrier.
+     */
+    private static class ContentMail extends InMemoryMailAdapter {
+
+        private final CyclicBarrier barrier = new CyclicBarrier(2);
+
+        private final Set<Thread> threads = Collections
+                .synchronizedSet(new HashSet<Thread>());
+
+        private final AtomicInteger searches = new AtomicInteger();
+
+        @Override
+        public boolean isInBodyContent(List<String> contentTypes,
+                List<String> phrasesCaseInsensitive) throws SieveMailException {
+            threads.add(Thread.currentThread());
+            searches.incrementAndGet();
+            final String rule = phrasesCaseInsensitive.get(0);
+            if ("meet".equals(rule)) {
+                try {
+                    barrier.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new SieveMailException(e);
+                }
+                return true;
+            }
+            if ("fail".equals(rule)) {
+                throw new SieveMailException("Storage unavailable");
+            }
+            return "yes".equals(rule);
+        }
+    }
+
+    private static final class ConcurrentContentMail extends ContentMail
+            implements ConcurrentMailAdapter {
+    }
+
+    /**
+     * Records the charges of the evaluation as its actions are executed.
+     */
+    private static final class RecordingContentMail extends ContentMail
+            implements ConcurrentMailAdapter {
+
+        private SieveContext context;
+
+        private long steps;
+
+        private long scannedBytes;
+
+        @Override
+        public void setContext(SieveContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void executeActions() throws SieveException {
+            steps = context.getBudget().getSteps();
+            scannedBytes = context.getBudget().getScannedBytes();
+        }
+    }
+
+    private SieveFactory factory;
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        pool = new ForkJoinPool(4);
+        factory.setTestPool(pool);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+    }
+
+    private void evaluate(ContentMail mail, String tests) throws Exception {
+        factory.interpret(mail, new ByteArrayInputStream(("require \"body\";"
+                + " if " + tests + " { discard; }")
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String content(String type, String rule) {
+        return "body :content \"" + type + "\" :contains \"" + rule + "\"";
+    }
+
+    @Test
+    public void testBodyTestsRunConcurrently() throws Exception {
+        final ContentMail mail = new ConcurrentContentMail();
+        evaluate(mail, "allof (" + content("text/plain", "meet") + ", "
+                + content("text/html", "meet") + ")");
+        assertEquals(1, mail.getActions().size());
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertEquals(2, mail.threads.size());
+        assertFalse(mail.threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void testTestsSharingASearchAreSerial() throws Exception {
+        final ContentMail mail = new ConcurrentContentMail();
+        evaluate(mail, "anyof (" + content("text/plain", "no") + ", "
+                + content("text/plain", "yes") + ")");
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertEquals(Collections.singleton(Thread.currentThread()),
+                mail.threads);
+    }
+
+    @Test
+    public void testTestsWithDistinctSearchesRunConcurrently()
+            throws Exception {
+        final ContentMail mail = new ConcurrentContentMail();
+        evaluate(mail, "allof (" + content("text/plain", "meet") + ", "
+                + content("text/plain", "yes") + ", "
+                + content("text/html", "meet") + ")");
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertTrue(mail.threads.contains(Thread.currentThread()));
+        assertEquals(3, mail.threads.size());
+    }
+
+    @Test
+    public void testSerialWithoutConcurrentAdapter() throws Exception {
+        final ContentMail mail = new ContentMail();
+        evaluate(mail, "anyof (" + content("text/plain", "no") + ", "
+                + content("text/html", "yes") + ")");
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertEquals(Collections.singleton(Thread.currentThread()),
+                mail.threads);
+    }
+
+    @Test
+    public void testSerialWithoutPool() throws Exception {
+        factory.setTestPool(null);
+        final ContentMail mail = new ConcurrentContentMail();
+        evaluate(mail, "anyof (" + content("text/plain", "no") + ", "
+                + content("text/html", "yes") + ")");
+        assertEquals(Collections.singleton(Thread.currentThread()),
+                mail.threads);
+    }
+
+    @Test
+    public void testEarlierFailureIsThrown() throws Exception {
+        final ContentMail mail = new ConcurrentContentMail();
+        try {
+            evaluate(mail, "anyof (" + content("text/plain", "fail") + ", "
+                    + content("text/html", "yes") + ")");
+            fail("Expected the failure of the first test");
+        } catch (SieveMailException e) {
+            assertEquals("Storage unavailable", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testLaterFailureIsIgnoredOnceDecided() throws Exception {
+        final ContentMail mail = new ConcurrentContentMail();
+        evaluate(mail, "allof (" + content("text/plain", "no") + ", "
+                + content("text/html", "fail") + ")");
+        assertEquals(1, mail.getActions().size());
+        assertTrue(mail.getActions().get(0) instanceof ActionKeep);
+        evaluate(mail, "anyof (" + content("text/plain", "yes") + ", "
+                + content("text/html", "fail") + ")");
+        assertTrue(mail.getActions().get(1) instanceof ActionDiscard);
+    }
+
+    @Test
+    public void testResultsMatchSerialEvaluation() throws Exception {
+        final String[] rules = { "yes", "no", "fail" };
+        for (final String list : new String[] { "anyof", "allof" }) {
+            for (final String first : rules) {
+                for (final String second : rules) {
+                    for (final String third : rules) {
+                        final String tests = list + " ("
+                                + content("text/plain", first) + ", "
+                                + content("text/html", second) + ", "
+                                + (third.equals("yes") ? "true" : third
+                                        .equals("no") ? "false" : content(
+                                        "text/xml", third)) + ")";
+                        factory.setTestPool(null);
+                        final String serial = outcome(new ConcurrentContentMail(), tests);
+                        factory.setTestPool(pool);
+                        assertEquals(tests, serial, outcome(
+                                new ConcurrentContentMail(), tests));
+                    }
+                }
+            }
+        }
+    }
+
+    private String outcome(ContentMail mail, String tests) {
+        try {
+            evaluate(mail, tests);
+            return mail.getActions().get(0).getClass().getSimpleName();
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void testDecidedTestsAreCancelled() throws Exception {
+        final ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            factory.setTestPool(single);
+            final ContentMail mail = new ConcurrentContentMail();
+            evaluate(mail, "anyof (" + content("text/plain", "yes") + ", "
+                    + content("text/html", "no") + ", "
+                    + content("text/xml", "no") + ", "
+                    + content("text/csv", "no") + ")");
+            assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+            assertTrue(mail.searches.get() < 4);
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBudgetIsChargedAsSerially() throws Exception {
+        factory.setEvaluationLimits(new EvaluationLimits());
+        final String[] lists = {
+                "anyof (" + content("text/plain", "yes") + ", "
+                        + content("text/html", "no") + ", "
+                        + content("text/xml", "no") + ")",
+                "anyof (" + content("text/plain", "no") + ", "
+                        + content("text/html", "yes") + ", "
+                        + content("text/xml", "yes") + ")",
+                "allof (" + content("text/plain", "yes") + ", " + "true, "
+                        + content("text/html", "no") + ", "
+                        + content("text/xml", "yes") + ")" };
+        for (final String tests : lists) {
+            factory.setTestPool(null);
+            final RecordingContentMail serial = new RecordingContentMail();
+            evaluate(serial, tests);
+            factory.setTestPool(pool);
+            for (int i = 0; i < 20; i++) {
+                final RecordingContentMail concurrent = new RecordingContentMail();
+                evaluate(concurrent, tests);
+                assertEquals(tests, serial.steps, concurrent.steps);
+                assertEquals(tests, serial.scannedBytes,
+                        concurrent.scannedBytes);
+            }
+        }
+    }
+
+    @Test
+    public void testLimitsAreEnforcedAsSerially() throws Exception {
+        final EvaluationLimits limits = new EvaluationLimits();
+        factory.setEvaluationLimits(limits);
+        final String tests = "anyof (" + content("text/plain", "no") + ", "
+                + content("text/html", "yes") + ", "
+                + content("text/xml", "no") + ", "
+                + content("text/csv", "no") + ")";
+        factory.setTestPool(null);
+        final RecordingContentMail serial = new RecordingContentMail();
+        evaluate(serial, tests);
+        factory.setTestPool(pool);
+
+        // The operands after the deciding one are not charged
+        limits.setMaxSteps(serial.steps);
+        for (int i = 0; i < 20; i++) {
+            final RecordingContentMail mail = new RecordingContentMail();
+            evaluate(mail, tests);
+            assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        }
+
+        limits.setMaxSteps(serial.steps - 2);
+        for (int i = 0; i < 20; i++) {
+            try {
+                evaluate(new RecordingContentMail(), tests);
+                fail("Expected the deciding operand to exceed the budget");
+            } catch (BudgetExceededException e) {
+                assertEquals(EvaluationLimits.Resource.STEPS, e.getResource());
+            }
+        }
+    }
+
+    @Test
+    public void testFactoryPool() throws Exception {
+        assertSame(pool, factory.getTestPool());
+    }
+}
@@ -0,0 +1,78 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConditionStackTest {
+
+    @Test
+    public void testNewLevelIsInitial() {
+        final ConditionStack stack = new ConditionStack();
+        assertEquals(0, stack.getDepth());
+        assertFalse(stack.isElseAllowed());
+        stack.setIfTestResult(false);
+        assertTrue(stack.isElseAllowed());
+        assertTrue(stack.isElseRunnable());
+        stack.push();
+        assertEquals(1, stack.getDepth());
+        assertFalse(stack.isElseAllowed());
+        assertFalse(stack.isElseRunnable());
+    }
+
+    @Test
+    public void testPopRestoresEnclosingLevel() {
+        final ConditionStack stack = new ConditionStack();
+        stack.setIfTestResult(false);
+        for (int i = 0; i < 100; i++) {
+            stack.push();
+            stack.setIfTestResult(i % 2 == 0);
+        }
+        for (int i = 99; i >= 0; i--) {
+            assertTrue(stack.isElseAllowed());
+            assertEquals(i % 2 != 0, stack.isElseRunnable());
+            stack.pop();
+        }
+        assertEquals(0, stack.getDepth());
+        assertTrue(stack.isElseRunnable());
+        stack.setElseTestResult(true);
+        assertFalse(stack.isElseAllowed());
+    }
+
+    @Test
+    public void testReset() {
+        final ConditionStack stack = new ConditionStack();
+        stack.push();
+        stack.setIfTestResult(false);
+        stack.reset();
+        assertEquals(0, stack.getDepth());
+        assertFalse(stack.isElseAllowed());
+        assertFalse(stack.isElseRunnable());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPopOutermost() {
+        new ConditionStack().pop();
+    }
+}
@@ -0,0 +1,143 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.apache.jsieve.utils.JUnitUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DecisionCacheTest {
+
+    private SieveFactory factory;
+
+    private DecisionCache decisions;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        decisions = new DecisionCache(100);
+    }
+
+    private static InMemoryMailAdapter mail(String subject, String messageId) {
+        return new InMemoryMailAdapter().addHeader("Subject", subject)
+                .addHeader("Message-ID", messageId);
+    }
+
+    @Test
+    public void testHitWhenHeadersReadAreEqual() throws Exception {
+        final Node script = JUnitUtils.parse(factory, "require \"fileinto\";"
+                + " if header :contains \"Subject\" \"sale\" { fileinto \"bulk\"; }");
+        final InMemoryMailAdapter first = mail("Big sale", "<1@example.org>");
+        factory.evaluate(first, script, decisions, "s1");
+        final InMemoryMailAdapter second = mail("Big sale", "<2@example.org>");
+        factory.evaluate(second, script, decisions, "s1");
+
+        assertEquals(1, decisions.getHits());
+        assertEquals(1, decisions.getMisses());
+        assertEquals(0.5, decisions.getHitRate(), 0);
+        assertEquals(1, second.getActions().size());
+        assertEquals("bulk", ((ActionFileInto) second.getActions().get(0))
+                .getDestination());
+    }
+
+    @Test
+    public void testHitDropsDuplicatesAsAMissDoes() throws Exception {
+        final Node script = JUnitUtils.parse(factory, "require \"fileinto\";"
+                + " if header :contains \"Subject\" \"sale\" { fileinto \"bulk\"; }");
+        final InMemoryMailAdapter first = mail("Big sale", "<1@example.org>");
+        first.addAction(new ActionFileInto("bulk"));
+        factory.evaluate(first, script, decisions, "s1");
+        final InMemoryMailAdapter second = mail("Big sale", "<2@example.org>");
+        second.addAction(new ActionFileInto("bulk"));
+        factory.evaluate(second, script, decisions, "s1");
+
+        assertEquals(1, decisions.getHits());
+        assertEquals(1, first.getActions().size());
+        assertEquals(1, second.getActions().size());
+    }
+
+    @Test
+    public void testMissWhenHeaderDiffers() throws Exception {
+        final Node script = JUnitUtils.parse(factory, "require \"fileinto\";"
+                + " if header :contains \"Subject\" \"sale\" { fileinto \"bulk\"; }");
+        factory.evaluate(mail("Big sale", "<1@example.org>"), script,
+                decisions, "s1");
+        final InMemoryMailAdapter other = mail("Minutes", "<2@example.org>");
+        factory.evaluate(other, script, decisions, "s1");
+        // Another script with the same inputs has its own decisions
+        factory.evaluate(mail("Big sale", "<3@example.org>"), script,
+                decisions, "s2");
+
+        assertEquals(0, decisions.getHits());
+        assertEquals(3, decisions.getMisses());
+        assertEquals(3, decisions.size());
+        assertTrue(other.getActions().get(0) instanceof ActionKeep);
+    }
+
+    @Test
+    public void testSizeClass() throws Exception {
+        final Node script = JUnitUtils.parse(factory, "if size :over 100 { discard; }");
+        factory.evaluate(mail("a", "<1@example.org>"), script, decisions, "s");
+        factory.evaluate(mail("b", "<2@example.org>"), script, decisions, "s");
+        final InMemoryMailAdapter large = mail("c", "<3@example.org>");
+        large.setBody(new String(new char[200]).replace('\0', 'x'));
+        factory.evaluate(large, script, decisions, "s");
+
+        assertEquals(1, decisions.getHits());
+        assertEquals(2, decisions.getMisses());
+    }
+
+    @Test
+    public void testSideEffectsBypass() throws Exception {
+        final Node log = JUnitUtils.parse(factory, "require \"log\"; log \"evaluated\";");
+        final Node body = JUnitUtils.parse(factory, "require \"body\"; if body :contains \"x\" { discard; }");
+        for (int i = 0; i < 2; i++) {
+            factory.evaluate(mail("a", "<1@example.org>"), log, decisions, "log");
+            factory.evaluate(mail("a", "<1@example.org>"), body, decisions, "body");
+        }
+
+        assertEquals(4, decisions.getBypasses());
+        assertEquals(0, decisions.getHits());
+        assertEquals(0, decisions.size());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        decisions = new DecisionCache(2);
+        final Node script = JUnitUtils.parse(factory, "if header :is \"Subject\" \"x\" { discard; }");
+        for (int i = 0; i < 10; i++) {
+            factory.evaluate(mail("Subject " + i, "<1@example.org>"), script,
+                    decisions, "s");
+        }
+        assertEquals(2, decisions.size());
+        factory.evaluate(mail("Subject 9", "<2@example.org>"), script,
+                decisions, "s");
+        factory.evaluate(mail("Subject 0", "<2@example.org>"), script,
+                decisions, "s");
+        assertEquals(1, decisions.getHits());
+    }
+}
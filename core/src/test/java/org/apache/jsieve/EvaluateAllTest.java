@@ -0,0 +1,164 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EvaluateAllTest {
+
+    private static final String[] SCRIPTS = {
+            "require \"fileinto\"; if header :contains \"Subject\" \"offer\" { fileinto \"offers\"; }",
+            "if address :domain \"From\" \"example.org\" { discard; }",
+            "require [\"body\", \"fileinto\"]; if body :contains \"watches\" { fileinto \"spam\"; }",
+            "require \"fileinto\"; if allof (address :localpart \"From\" \"alice\","
+                    + " body :contains \"watches\") { fileinto \"alice\"; }",
+            "" };
+
+    /**
+     * Counts the addresses parsed and the body searches made.
+     */
+    private static final class CountingMail extends InMemoryMailAdapter {
+
+        int parses = 0;
+
+        int searches = 0;
+
+        int evaluations = 0;
+
+        CountingMail() {
+            addHeader("From", "Alice <alice@example.org>");
+            addHeader("Subject", "Special offer");
+            setBody("Cheap watches");
+        }
+
+        @Override
+        public void setContext(SieveContext context) {
+            if (context != null) {
+                evaluations++;
+            }
+        }
+
+        @Override
+        public Address[] parseAddresses(String headerName)
+                throws SieveMailException {
+            parses++;
+            return super.parseAddresses(headerName);
+        }
+
+        @Override
+        public boolean isInBodyText(List<String> phrasesCaseInsensitive)
+                throws SieveMailException {
+            searches++;
+            return super.isInBodyText(phrasesCaseInsensitive);
+        }
+    }
+
+    private SieveFactory factory;
+
+    private List<Node> scripts;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        scripts = new ArrayList<Node>();
+        for (final String script : SCRIPTS) {
+            scripts.add(factory.parse(new ByteArrayInputStream(script
+                    .getBytes(StandardCharsets.UTF_8))));
+        }
+    }
+
+    @Test
+    public void testActionsPerScript() throws Exception {
+        final CountingMail mail = new CountingMail();
+        final List<List<Action>> results = factory.evaluateAll(mail, scripts);
+        assertEquals(SCRIPTS.length, results.size());
+        assertEquals("offers", ((ActionFileInto) results.get(0).get(0))
+                .getDestination());
+        assertEquals(1, results.get(1).size());
+        assertTrue(results.get(1).get(0) instanceof ActionDiscard);
+        assertEquals("spam", ((ActionFileInto) results.get(2).get(0))
+                .getDestination());
+        assertEquals("alice", ((ActionFileInto) results.get(3).get(0))
+                .getDestination());
+        assertEquals(1, results.get(4).size());
+        assertTrue(results.get(4).get(0) instanceof ActionKeep);
+        assertTrue(mail.getActions().isEmpty());
+    }
+
+    @Test
+    public void testMailReadOnce() throws Exception {
+        final CountingMail reference = new CountingMail();
+        factory.evaluateAll(reference, scripts.subList(0, 2));
+
+        final CountingMail mail = new CountingMail();
+        factory.evaluateAll(mail, scripts);
+        // Later scripts read through the same index, addresses and searches
+        assertEquals(reference.getHeaderReads(), mail.getHeaderReads());
+        assertEquals(1, mail.parses);
+        assertEquals(1, mail.searches);
+    }
+
+    @Test
+    public void testIdenticalScriptsEvaluatedOnce() throws Exception {
+        final List<Node> fanOut = new ArrayList<Node>();
+        for (int i = 0; i < 1000; i++) {
+            fanOut.add(scripts.get(i % 2));
+        }
+        final CountingMail mail = new CountingMail();
+        final List<List<Action>> results = factory.evaluateAll(mail, fanOut);
+        assertEquals(2, mail.evaluations);
+        assertEquals(1000, results.size());
+        assertEquals("offers", ((ActionFileInto) results.get(998).get(0))
+                .getDestination());
+        assertTrue(results.get(999).get(0) instanceof ActionDiscard);
+    }
+
+    @Test
+    public void testKeepOnlyScriptsNotEvaluated() throws Exception {
+        final List<Node> keepOnly = new ArrayList<Node>();
+        keepOnly.add(scripts.get(4));
+        keepOnly.add(factory.parse(new ByteArrayInputStream("keep;"
+                .getBytes(StandardCharsets.UTF_8))));
+        final CountingMail mail = new CountingMail();
+        final List<List<Action>> results = factory.evaluateAll(mail, keepOnly);
+        assertEquals(0, mail.evaluations);
+        for (final List<Action> actions : results) {
+            assertEquals(1, actions.size());
+            assertTrue(actions.get(0) instanceof ActionKeep);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jsieve.exception.FeatureException;
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.mail.AsyncMailAdapter;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.apache.jsieve.utils.JUnitUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EvaluateAsyncTest {
+
+    /**
+     * Fetches the parts of an in memory mail on an executor, counting them.
+     */
+    private static final class StorageMail implements AsyncMailAdapter {
+
+        private final InMemoryMailAdapter mail;
+
+        private final Executor executor;
+
+        private final AtomicInteger fetches = new AtomicInteger();
+
+        private final AtomicInteger bodyFetches = new AtomicInteger();
+
+        private boolean bodyFails;
+
+        StorageMail(InMemoryMailAdapter mail, Executor executor) {
+            this.mail = mail;
+            this.executor = executor;
+        }
+
+        private <T> CompletableFuture<T> fetch(final Callable<T> read) {
+            fetches.incrementAndGet();
+            final CompletableFuture<T> result = new CompletableFuture<T>();
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        result.complete(read.call());
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+            return result;
+        }
+
+        private CompletableFuture<Boolean> fetchBody(
+                final Callable<Boolean> read) {
+            bodyFetches.incrementAndGet();
+            if (bodyFails) {
+                return fetch(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        throw new SieveMailException("Storage unavailable");
+                    }
+                });
+            }
+            return fetch(read);
+        }
+
+        public CompletableFuture<List<String>> getHeader(final String name) {
+            return fetch(new Callable<List<String>>() {
+                public List<String> call() throws Exception {
+                    return mail.getHeader(name);
+                }
+            });
+        }
+
+        public CompletableFuture<List<String>> getMatchingHeader(
+                final String name) {
+            return fetch(new Callable<List<String>>() {
+                public List<String> call() throws Exception {
+                    return mail.getMatchingHeader(name);
+                }
+            });
+        }
+
+        public CompletableFuture<List<String>> getHeaderNames() {
+            return fetch(new Callable<List<String>>() {
+                public List<String> call() throws Exception {
+                    return mail.getHeaderNames();
+                }
+            });
+        }
+
+        public CompletableFuture<Integer> getSize() {
+            return fetch(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return mail.getSize();
+                }
+            });
+        }
+
+        public CompletableFuture<String> getContentType() {
+            return fetch(new Callable<String>() {
+                public String call() throws Exception {
+                    return mail.getContentType();
+                }
+            });
+        }
+
+        public CompletableFuture<Boolean> isInBodyText(
+                final List<String> phrasesCaseInsensitive) {
+            return fetchBody(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return mail.isInBodyText(phrasesCaseInsensitive);
+                }
+            });
+        }
+
+        public CompletableFuture<Boolean> isInBodyRaw(
+                final List<String> phrasesCaseInsensitive) {
+            return fetchBody(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return mail.isInBodyRaw(phrasesCaseInsensitive);
+                }
+            });
+        }
+
+        public CompletableFuture<Boolean> isInBodyContent(
+                final List<String> contentTypes,
+                final List<String> phrasesCaseInsensitive) {
+            return fetchBody(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return mail.isInBodyContent(contentTypes,
+                            phrasesCaseInsensitive);
+                }
+            });
+        }
+    }
+
+    /**
+     * Queues fetches until the test runs them.
+     */
+    private static final class Storage implements Executor {
+
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+
+        /**
+         * Runs the fetches queued so far, but not those they queue.
+         */
+        int complete() {
+            final int queued = pending.size();
+            for (int i = 0; i < queued; i++) {
+                pending.poll().run();
+            }
+            return queued;
+        }
+    }
+
+    private SieveFactory factory;
+
+    private Storage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        storage = new Storage();
+    }
+
+    private InMemoryMailAdapter mail() {
+        return new InMemoryMailAdapter()
+                .addHeader("From", "alice@example.org")
+                .addHeader("Subject", "Weekly news")
+                .setBody("Please find the agenda attached");
+    }
+
+    @Test
+    public void testHeaderScriptIsPrefetched() throws Exception {
+        final StorageMail mail = new StorageMail(mail(), storage);
+        final CompletableFuture<List<Action>> result = factory.evaluateAsync(
+                mail,
+                JUnitUtils.parse(factory, "require \"fileinto\"; if allof (header :contains \"Subject\" \"news\","
+                        + " address :domain \"From\" \"example.org\") { fileinto \"news\"; }"))
+                .toCompletableFuture();
+        assertFalse(result.isDone());
+        assertEquals(2, storage.complete());
+        assertTrue(result.isDone());
+        final List<Action> actions = result.get();
+        assertEquals(1, actions.size());
+        assertEquals("news", ((ActionFileInto) actions.get(0)).getDestination());
+        assertEquals(2, mail.fetches.get());
+    }
+
+    @Test
+    public void testBodySearchIsPrefetched() throws Exception {
+        final StorageMail mail = new StorageMail(mail(), storage);
+        final CompletableFuture<List<Action>> result = factory.evaluateAsync(
+                mail,
+                JUnitUtils.parse(factory, "require \"body\"; if header :contains \"Subject\" \"news\" {"
+                        + " if body :contains [\"agenda\", \"minutes\"] { discard; } }"))
+                .toCompletableFuture();
+        assertFalse(result.isDone());
+        assertEquals(1, mail.bodyFetches.get());
+        // The header and the body are fetched together, without resuming
+        assertEquals(2, storage.complete());
+        assertTrue(result.isDone());
+        final List<Action> actions = result.get();
+        assertEquals(1, actions.size());
+        assertTrue(actions.get(0) instanceof ActionDiscard);
+        assertEquals(1, mail.bodyFetches.get());
+    }
+
+    @Test
+    public void testSizeIsPrefetched() throws Exception {
+        final StorageMail mail = new StorageMail(mail(), storage);
+        final CompletableFuture<List<Action>> result = factory.evaluateAsync(
+                mail, JUnitUtils.parse(factory, "if size :over 1M { discard; }"))
+                .toCompletableFuture();
+        assertEquals(1, storage.complete());
+        final List<Action> actions = result.get();
+        assertEquals(1, actions.size());
+        assertTrue(actions.get(0) instanceof ActionKeep);
+    }
+
+    @Test
+    public void testFetchFailure() throws Exception {
+        final StorageMail mail = new StorageMail(mail(), storage);
+        mail.bodyFails = true;
+        final CompletableFuture<List<Action>> result = factory.evaluateAsync(
+                mail,
+                JUnitUtils.parse(factory, "require \"body\"; if body :contains \"agenda\" { discard; }"))
+                .toCompletableFuture();
+        storage.complete();
+        storage.complete();
+        assertTrue(result.isCompletedExceptionally());
+        try {
+            result.get();
+            fail("Expected the evaluation to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SieveMailException);
+        }
+    }
+
+    @Test
+    public void testSideEffectsAreRefused() throws Exception {
+        final StorageMail mail = new StorageMail(mail(), storage);
+        final CompletableFuture<List<Action>> result = factory.evaluateAsync(
+                mail,
+                JUnitUtils.parse(factory, "require [\"body\", \"log\"]; if body :contains \"agenda\" { log \"agenda\"; }"))
+                .toCompletableFuture();
+        assertTrue(result.isCompletedExceptionally());
+        try {
+            result.get();
+            fail("Expected the evaluation to be refused");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FeatureException);
+        }
+        assertEquals(0, mail.fetches.get());
+    }
+
+    @Test
+    public void testBodyMatchIsRefused() throws Exception {
+        final StorageMail mail = new StorageMail(mail(), storage);
+        final CompletableFuture<List<Action>> result = factory.evaluateAsync(
+                mail,
+                JUnitUtils.parse(factory, "require \"body\"; if body :is \"agenda\" { discard; }"))
+                .toCompletableFuture();
+        storage.complete();
+        assertTrue(result.isCompletedExceptionally());
+        try {
+            result.get();
+            fail("Expected the evaluation to be refused");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FeatureException);
+        }
+        assertEquals(0, mail.bodyFetches.get());
+    }
+
+    @Test
+    public void testManyConcurrentEvaluations() throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            final Node script = JUnitUtils.parse(factory, "require [\"body\", \"fileinto\"];"
+                    + " if anyof (header :is \"Subject\" \"Mail 7\","
+                    + " body :contains \"urgent\") { fileinto \"flagged\"; }");
+            final List<CompletableFuture<List<Action>>> results = new ArrayList<CompletableFuture<List<Action>>>();
+            for (int i = 0; i < 1000; i++) {
+                final InMemoryMailAdapter mail = new InMemoryMailAdapter()
+                        .addHeader("Subject", "Mail " + i).setBody(
+                                i % 10 == 3 ? "Something urgent" : "Nothing");
+                results.add(factory.evaluateAsync(new StorageMail(mail, pool),
+                        script).toCompletableFuture());
+            }
+            for (int i = 0; i < results.size(); i++) {
+                final List<Action> actions = results.get(i).get(10,
+                        TimeUnit.SECONDS);
+                assertEquals(1, actions.size());
+                if (i == 7 || i % 10 == 3) {
+                    assertTrue(actions.get(0) instanceof ActionFileInto);
+                } else {
+                    assertTrue(actions.get(0) instanceof ActionKeep);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.mail.BodyRequiredException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EvaluateHeadersTest {
+
+    private static final String HEADERS = "From: Alice <alice@example.org>\r\n"
+            + "To: bob@example.com\r\n"
+            + "Subject: =?UTF-8?Q?caf=C3=A9?= news\r\n"
+            + "List-Id: <news.example.org>\r\n\r\n"
+            + "The body may have started arriving";
+
+    private SieveFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+    }
+
+    private List<Action> evaluate(String script) throws Exception {
+        final ByteBuffer headers = ByteBuffer.wrap(HEADERS
+                .getBytes(StandardCharsets.UTF_8));
+        final List<Action> actions = factory.evaluateHeaders(headers, factory
+                .parse(new ByteArrayInputStream(script
+                        .getBytes(StandardCharsets.UTF_8))));
+        assertEquals(0, headers.position());
+        return actions;
+    }
+
+    @Test
+    public void testHeaderTests() throws Exception {
+        final List<Action> actions = evaluate("require \"fileinto\";"
+                + " if allof (exists \"List-Id\", header :contains \"Subject\" \"café\","
+                + " address :domain \"From\" \"example.org\") { fileinto \"news\"; }");
+        assertEquals(1, actions.size());
+        assertEquals("news", ((ActionFileInto) actions.get(0)).getDestination());
+    }
+
+    @Test
+    public void testImplicitKeep() throws Exception {
+        final List<Action> actions = evaluate("if header :is \"To\" \"carol@example.com\" { discard; }");
+        assertEquals(1, actions.size());
+        assertTrue(actions.get(0) instanceof ActionKeep);
+    }
+
+    @Test
+    public void testBodyNotReachedIsNotRequired() throws Exception {
+        final List<Action> actions = evaluate("require \"body\";"
+                + " if anyof (true, body :contains \"x\", size :over 1M) { discard; }");
+        assertEquals(1, actions.size());
+        assertTrue(actions.get(0) instanceof ActionDiscard);
+    }
+
+    @Test(expected = BodyRequiredException.class)
+    public void testBodyRequired() throws Exception {
+        evaluate("require \"body\"; if body :contains \"arriving\" { discard; }");
+    }
+
+    @Test(expected = BodyRequiredException.class)
+    public void testBodyMatchRequired() throws Exception {
+        evaluate("require \"body\"; if body :raw :matches \"*\" { discard; }");
+    }
+
+    @Test(expected = BodyRequiredException.class)
+    public void testSizeRequired() throws Exception {
+        evaluate("if header :contains \"Subject\" \"news\" { if size :over 1M { discard; } }");
+    }
+}
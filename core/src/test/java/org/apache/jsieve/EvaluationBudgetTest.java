@@ -0,0 +1,165 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jsieve.exception.BudgetExceededException;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EvaluationBudgetTest {
+
+    private static final String SCRIPT = "require \"fileinto\";\n"
+            + "if header :is \"X-Kind\" [\"a\", \"b\", \"c\", \"d\"] {\n"
+            + "  fileinto \"kind\";\n"
+            + "}\n"
+            + "if address :is \"From\" \"user@example.org\" {\n"
+            + "  fileinto \"user\";\n"
+            + "}\n";
+
+    /**
+     * Records the budget of the evaluation as its actions are executed.
+     */
+    private static class RecordingMail extends InMemoryMailAdapter {
+
+        SieveContext context;
+
+        EvaluationBudget budget;
+
+        boolean executed;
+
+        @Override
+        public void setContext(SieveContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void executeActions() throws SieveException {
+            executed = true;
+            budget = context.getBudget();
+        }
+    }
+
+    private SieveFactory factory;
+
+    private Node script;
+
+    private EvaluationLimits limits;
+
+    private RecordingMail mail;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        script = factory.parse(new ByteArrayInputStream(SCRIPT
+                .getBytes(StandardCharsets.UTF_8)));
+        limits = new EvaluationLimits();
+        factory.setEvaluationLimits(limits);
+        mail = new RecordingMail();
+        mail.addHeader("X-Kind", "d").addHeader("From", "user@example.org");
+    }
+
+    private BudgetExceededException evaluateExceeding() throws Exception {
+        try {
+            factory.evaluate(mail, script);
+            fail("Expected evaluation to exceed its budget");
+            return null;
+        } catch (BudgetExceededException e) {
+            assertTrue(!mail.executed);
+            assertNotNull(e.getCoordinate());
+            return e;
+        }
+    }
+
+    @Test
+    public void testUnlimitedEvaluationIsCharged() throws Exception {
+        factory.evaluate(mail, script);
+        assertTrue(mail.executed);
+        assertEquals(2, mail.getActions().size());
+        // require, two if commands, their tests and two fileinto commands
+        assertEquals(7, mail.budget.getSteps());
+        assertEquals(5, mail.budget.getComparisons());
+        assertEquals(4 + "user@example.org".length(), mail.budget
+                .getScannedBytes());
+    }
+
+    @Test
+    public void testNoBudgetWithoutLimits() throws Exception {
+        factory.setEvaluationLimits(null);
+        factory.evaluate(mail, script);
+        assertTrue(mail.executed);
+        assertNull(mail.budget);
+    }
+
+    @Test
+    public void testStepsExceeded() throws Exception {
+        limits.setMaxSteps(3);
+        final BudgetExceededException e = evaluateExceeding();
+        assertEquals(EvaluationLimits.Resource.STEPS, e.getResource());
+        assertEquals(3, e.getCoordinate().getStartLineNumber());
+    }
+
+    @Test
+    public void testComparisonsExceeded() throws Exception {
+        limits.setMaxComparisons(3);
+        final BudgetExceededException e = evaluateExceeding();
+        assertEquals(EvaluationLimits.Resource.COMPARISONS, e.getResource());
+        assertEquals(2, e.getCoordinate().getStartLineNumber());
+    }
+
+    @Test
+    public void testScannedBytesExceeded() throws Exception {
+        limits.setMaxScannedBytes(10);
+        final BudgetExceededException e = evaluateExceeding();
+        assertEquals(EvaluationLimits.Resource.SCANNED_BYTES, e.getResource());
+        assertEquals(5, e.getCoordinate().getStartLineNumber());
+    }
+
+    @Test
+    public void testElapsedTimeExceeded() throws Exception {
+        limits.setMaxElapsedTime(1, TimeUnit.NANOSECONDS);
+        final BudgetExceededException e = evaluateExceeding();
+        assertEquals(EvaluationLimits.Resource.ELAPSED_TIME, e.getResource());
+    }
+
+    @Test
+    public void testBudgetIsResetForEachEvaluation() throws Exception {
+        limits.setMaxSteps(7);
+        for (int i = 0; i < 3; i++) {
+            mail = new RecordingMail();
+            mail.addHeader("X-Kind", "d").addHeader("From",
+                    "user@example.org");
+            factory.evaluate(mail, script);
+            assertEquals(7, mail.budget.getSteps());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EvaluationFrameTest {
+
+    private static final String SCRIPT = "require \"fileinto\";"
+            + " if header :is \"X-Level\" \"1\" {"
+            + "   if header :is \"X-Kind\" \"a\" { fileinto \"1a\"; }"
+            + "   elsif header :is \"X-Kind\" \"b\" { fileinto \"1b\"; }"
+            + "   else { fileinto \"1other\"; }"
+            + " } elsif header :is \"X-Level\" \"2\" {"
+            + "   if header :is \"X-Kind\" \"a\" { fileinto \"2a\"; stop; }"
+            + " } else { keep; }"
+            + " if header :is \"X-Kind\" \"b\" { fileinto \"b\"; }";
+
+    /**
+     * Records the contexts set on it.
+     */
+    private static class RecordingMail extends InMemoryMailAdapter {
+
+        final List<SieveContext> contexts = new ArrayList<SieveContext>();
+
+        @Override
+        public void setContext(SieveContext context) {
+            if (context != null) {
+                contexts.add(context);
+            }
+        }
+    }
+
+    private SieveFactory factory;
+
+    private Node script;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        script = factory.parse(new ByteArrayInputStream(SCRIPT
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String evaluate(String level, String kind) throws Exception {
+        final RecordingMail mail = new RecordingMail();
+        mail.addHeader("X-Level", level).addHeader("X-Kind", kind);
+        factory.evaluate(mail, script);
+        final StringBuilder result = new StringBuilder();
+        for (final Object action : mail.getActions()) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(action instanceof ActionFileInto ? ((ActionFileInto) action)
+                    .getDestination()
+                    : action instanceof ActionKeep ? "keep" : action.toString());
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testReusedFrameEvaluatesEachMailAfresh() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals("1a", evaluate("1", "a"));
+            assertEquals("1b b", evaluate("1", "b"));
+            assertEquals("1other", evaluate("1", "c"));
+            assertEquals("2a", evaluate("2", "a"));
+            assertEquals("keep", evaluate("2", "c"));
+            assertEquals("keep b", evaluate("3", "b"));
+            assertEquals("keep", evaluate("3", "c"));
+        }
+    }
+
+    @Test
+    public void testFrameIsReusedOnThread() throws Exception {
+        final RecordingMail first = new RecordingMail();
+        final RecordingMail second = new RecordingMail();
+        factory.evaluate(first, script);
+        factory.evaluate(second, script);
+        assertSame(first.contexts.get(0), second.contexts.get(0));
+        assertTrue(first.contexts.get(0).getConditionManager() instanceof ConditionStack);
+        assertEquals(0, ((ConditionStack) first.contexts.get(0)
+                .getConditionManager()).getDepth());
+    }
+
+    @Test
+    public void testNestedEvaluationHasItsOwnFrame() throws Exception {
+        final RecordingMail inner = new RecordingMail();
+        final RecordingMail outer = new RecordingMail() {
+            @Override
+            public void executeActions() throws SieveException {
+                inner.addHeader("X-Level", "1").addHeader("X-Kind", "b");
+                factory.evaluate(inner, script);
+            }
+        };
+        outer.addHeader("X-Level", "2").addHeader("X-Kind", "a");
+        factory.evaluate(outer, script);
+        assertEquals(1, outer.getActions().size());
+        assertEquals("2a", ((ActionFileInto) outer.getActions().get(0))
+                .getDestination());
+        assertEquals(2, inner.getActions().size());
+        assertNotSame(outer.contexts.get(0), inner.contexts.get(0));
+    }
+}
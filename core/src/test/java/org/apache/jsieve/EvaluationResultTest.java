@@ -0,0 +1,132 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.apache.jsieve.utils.JUnitUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EvaluationResultTest {
+
+    /**
+     * Fails when asked to execute its actions.
+     */
+    private static class DryMail extends InMemoryMailAdapter {
+
+        @Override
+        public void executeActions() throws SieveException {
+            fail("Actions should not be executed");
+        }
+    }
+
+    private SieveFactory factory;
+
+    private DryMail mail;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        mail = new DryMail();
+        mail.addHeader("Subject", "sieve");
+    }
+
+    @Test
+    public void testActionsAreAnsweredWithoutExecution() throws Exception {
+        final EvaluationResult result = factory.evaluateResult(mail,
+                JUnitUtils.parse(factory, "require \"fileinto\";\n"
+                        + "if header :is \"Subject\" \"sieve\" {\n"
+                        + "  fileinto \"a\";\n"
+                        + "}\n"
+                        + "fileinto \"b\";\n"));
+        assertEquals(2, result.getActions().size());
+        assertEquals("a", ((ActionFileInto) result.getActions().get(0))
+                .getDestination());
+        assertEquals("b", ((ActionFileInto) result.getActions().get(1))
+                .getDestination());
+        assertFalse(result.isImplicitKeep());
+        assertTrue(result.getWarnings().isEmpty());
+        assertTrue(result.getEvaluationNanos() > 0);
+        assertTrue(mail.getActions().isEmpty());
+    }
+
+    @Test
+    public void testImplicitKeep() throws Exception {
+        final EvaluationResult result = factory.evaluateResult(mail,
+                JUnitUtils.parse(factory, "if header :is \"Subject\" \"other\" { discard; }"));
+        assertTrue(result.isImplicitKeep());
+        assertEquals(1, result.getActions().size());
+        assertTrue(result.getActions().get(0) instanceof ActionKeep);
+    }
+
+    @Test
+    public void testDuplicatesAreWarned() throws Exception {
+        final EvaluationResult result = factory.evaluateResult(mail,
+                JUnitUtils.parse(factory, "require \"fileinto\";\n"
+                        + "fileinto \"a\";\n"
+                        + "keep;\n"
+                        + "fileinto \"a\";\n"
+                        + "keep;\n"));
+        assertEquals(2, result.getActions().size());
+        assertEquals(2, result.getWarnings().size());
+        assertEquals("Duplicate fileinto \"a\" ignored. Line 4 column 1.",
+                result.getWarnings().get(0));
+        assertEquals("Duplicate keep ignored. Line 5 column 1.", result
+                .getWarnings().get(1));
+    }
+
+    @Test
+    public void testResultIsImmutable() throws Exception {
+        final EvaluationResult result = factory.evaluateResult(mail,
+                JUnitUtils.parse(factory, "keep;"));
+        try {
+            result.getActions().clear();
+            fail("Actions should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            result.getWarnings().add("warning");
+            fail("Warnings should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWarningsAreNotCarriedOver() throws Exception {
+        final Node script = JUnitUtils.parse(factory, "keep; keep;");
+        assertEquals(1, factory.evaluateResult(mail, script).getWarnings()
+                .size());
+        assertEquals(1, factory.evaluateResult(mail, script).getWarnings()
+                .size());
+        assertTrue(factory.evaluateResult(mail, JUnitUtils.parse(factory, "keep;")).getWarnings()
+                .isEmpty());
+    }
+}
@@ -0,0 +1,106 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.apache.jsieve.tests.Header;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeaderMatchTest {
+
+    private static final AtomicInteger MATCHES = new AtomicInteger();
+
+    /**
+     * Counts the header values matched through the overridable methods.
+     */
+    public static final class CountingHeader extends Header {
+
+        public CountingHeader() {
+            super();
+        }
+
+        @Override
+        protected boolean match(String comparator, String matchType,
+                String headerValue, List<String> keys, SieveContext context)
+                throws SieveException {
+            MATCHES.incrementAndGet();
+            return super.match(comparator, matchType, headerValue, keys,
+                    context);
+        }
+    }
+
+    private SieveFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        final ConfigurationManager configuration = new ConfigurationManager();
+        configuration.getTestMap().put("header", CountingHeader.class.getName());
+        factory = configuration.build();
+        MATCHES.set(0);
+    }
+
+    private InMemoryMailAdapter evaluate(String script) throws Exception {
+        final InMemoryMailAdapter mail = new InMemoryMailAdapter().addHeader(
+                "X-Count", "05 items").addHeader("X-Count", "7");
+        factory.evaluate(mail, factory.parse(new ByteArrayInputStream(script
+                .getBytes(StandardCharsets.UTF_8))));
+        return mail;
+    }
+
+    @Test
+    public void testOtherComparatorsAreMatchedThroughOverridableMethods()
+            throws Exception {
+        final InMemoryMailAdapter mail = evaluate("require \"comparator-i;ascii-numeric\";"
+                + " if header :comparator \"i;ascii-numeric\" :is \"X-Count\" \"7\" { discard; }");
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertEquals(2, MATCHES.get());
+    }
+
+    @Test
+    public void testFoldingComparatorsAreMatchedThroughOverridableMethods()
+            throws Exception {
+        final InMemoryMailAdapter mail = evaluate("if header :contains \"X-Count\" \"ITEMS\" { discard; }");
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertEquals(1, MATCHES.get());
+    }
+
+    @Test
+    public void testValuesAreDecodedOnce() throws Exception {
+        // Decodes to a literal encoded word, which must not be decoded again
+        final InMemoryMailAdapter mail = new InMemoryMailAdapter().addHeader(
+                "Subject", "=?UTF-8?Q?=3D=3FUTF-8=3FQ=3Fx=3F=3D?=");
+        factory.evaluate(mail, factory.parse(new ByteArrayInputStream(
+                "if header :is \"Subject\" \"=?UTF-8?Q?x?=\" { discard; }"
+                        .getBytes(StandardCharsets.UTF_8))));
+        assertTrue(mail.getActions().get(0) instanceof ActionDiscard);
+        assertEquals(1, MATCHES.get());
+    }
+}
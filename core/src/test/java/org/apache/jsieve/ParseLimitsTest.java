@@ -0,0 +1,154 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.jsieve.exception.ParseLimitException;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.JUnitUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParseLimitsTest {
+
+    private static final String SCRIPT = "require \"fileinto\";\n"
+            + "if anyof (header :is \"X-Kind\" [\"a\", \"b\"],\n"
+            + "          not exists \"X-Other\") {\n"
+            + "  if header :contains \"Subject\" \"sieve\" {\n"
+            + "    fileinto \"sieve\";\n"
+            + "  }\n"
+            + "}\n";
+
+    private SieveFactory factory;
+
+    private ParseLimits limits;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        limits = new ParseLimits();
+        factory.setParseLimits(limits);
+    }
+
+    private ParseLimitException parseExceeding(String script)
+            throws Exception {
+        try {
+            JUnitUtils.parse(factory, script);
+            fail("Expected the script to exceed the parse limits");
+            return null;
+        } catch (ParseLimitException e) {
+            assertNotNull(e.getCoordinate());
+            assertTrue(e.getMessage().contains("Line "));
+            return e;
+        }
+    }
+
+    @Test
+    public void testScriptWithinLimits() throws Exception {
+        limits.setMaxScriptBytes(SCRIPT.length());
+        limits.setMaxNestingDepth(3);
+        limits.setMaxStringListMembers(8);
+        limits.setMaxCommands(4);
+        limits.setMaxLiteralLength(10);
+        assertNotNull(JUnitUtils.parse(factory, SCRIPT));
+        // Limits are enforced for every parse
+        assertNotNull(JUnitUtils.parse(factory, SCRIPT));
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        factory.setParseLimits(null);
+        assertNotNull(JUnitUtils.parse(factory, SCRIPT));
+        factory.setParseLimits(new ParseLimits());
+        assertNotNull(JUnitUtils.parse(factory, SCRIPT));
+    }
+
+    @Test
+    public void testScriptBytesExceeded() throws Exception {
+        limits.setMaxScriptBytes(SCRIPT.indexOf("not"));
+        final ParseLimitException e = parseExceeding(SCRIPT);
+        assertEquals(ParseLimits.Resource.SCRIPT_BYTES, e.getResource());
+        assertEquals(3, e.getCoordinate().getStartLineNumber());
+        assertEquals(11, e.getCoordinate().getStartColumnNumber());
+    }
+
+    @Test
+    public void testLongScriptBytesExceeded() throws Exception {
+        final StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            script.append("keep;\n");
+        }
+        limits.setMaxScriptBytes(50000);
+        assertEquals(ParseLimits.Resource.SCRIPT_BYTES, parseExceeding(
+                script.toString()).getResource());
+        limits.setMaxScriptBytes(60000);
+        assertNotNull(JUnitUtils.parse(factory, script.toString()));
+    }
+
+    @Test
+    public void testNestingDepthExceeded() throws Exception {
+        limits.setMaxNestingDepth(2);
+        final ParseLimitException e = parseExceeding(SCRIPT);
+        assertEquals(ParseLimits.Resource.NESTING_DEPTH, e.getResource());
+        assertEquals(3, e.getCoordinate().getStartLineNumber());
+        assertEquals(15, e.getCoordinate().getStartColumnNumber());
+    }
+
+    @Test
+    public void testDeepNestingIsRejectedWithoutRecursion() throws Exception {
+        final StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            script.append("if true {");
+        }
+        limits.setMaxNestingDepth(100);
+        final ParseLimitException e = parseExceeding(script.toString());
+        assertEquals(ParseLimits.Resource.NESTING_DEPTH, e.getResource());
+    }
+
+    @Test
+    public void testStringListMembersExceeded() throws Exception {
+        limits.setMaxStringListMembers(3);
+        final ParseLimitException e = parseExceeding(SCRIPT);
+        assertEquals(ParseLimits.Resource.STRING_LIST_MEMBERS, e.getResource());
+        assertEquals(2, e.getCoordinate().getStartLineNumber());
+        assertEquals(37, e.getCoordinate().getStartColumnNumber());
+    }
+
+    @Test
+    public void testCommandsExceeded() throws Exception {
+        limits.setMaxCommands(3);
+        final ParseLimitException e = parseExceeding(SCRIPT);
+        assertEquals(ParseLimits.Resource.COMMANDS, e.getResource());
+        assertEquals(5, e.getCoordinate().getStartLineNumber());
+    }
+
+    @Test
+    public void testLiteralLengthExceeded() throws Exception {
+        limits.setMaxLiteralLength(9);
+        final ParseLimitException e = parseExceeding(SCRIPT);
+        assertEquals(ParseLimits.Resource.LITERAL_LENGTH, e.getResource());
+        assertEquals(1, e.getCoordinate().getStartLineNumber());
+        assertEquals(9, e.getCoordinate().getStartColumnNumber());
+    }
+}
@@ -0,0 +1,122 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.HeaderIndex;
+import org.apache.jsieve.mail.HeaderIndexImpl;
+import org.apache.jsieve.mail.HeaderIndexProvider;
+import org.apache.jsieve.mail.RawHeaderProvider;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RawHeaderMatchTest {
+
+    /**
+     * Answers raw header values and counts the values looked up by name
+     * through its header index.
+     */
+    private static final class RawMail extends InMemoryMailAdapter implements
+            RawHeaderProvider, HeaderIndexProvider {
+
+        int lookups;
+
+        public List<ByteBuffer> getRawMatchingHeader(String name)
+                throws SieveMailException {
+            final List<ByteBuffer> result = new ArrayList<ByteBuffer>();
+            for (final String value : getMatchingHeader(name)) {
+                result.add(ByteBuffer.wrap(value
+                        .getBytes(StandardCharsets.UTF_8)));
+            }
+            return result;
+        }
+
+        public HeaderIndex getHeaderIndex() throws SieveMailException {
+            final HeaderIndex index = HeaderIndexImpl.build(this);
+            return new HeaderIndex() {
+
+                public List<String> getMatchingHeader(String name)
+                        throws SieveMailException {
+                    lookups++;
+                    return index.getMatchingHeader(name);
+                }
+
+                public Set<String> getHeaderNames() throws SieveMailException {
+                    return index.getHeaderNames();
+                }
+            };
+        }
+    }
+
+    private SieveFactory factory;
+
+    private RawMail mail;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        mail = new RawMail();
+        mail.addHeader("Subject", "plain").addHeader("Subject",
+                "=?UTF-8?Q?caf=C3=A9_cr=C3=A8me?=");
+    }
+
+    private void evaluate(String script) throws Exception {
+        factory.evaluate(mail, factory.parse(new ByteArrayInputStream(script
+                .getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testEncodedValuesAreDecodedOncePerEvaluation()
+            throws Exception {
+        evaluate("require \"fileinto\";"
+                + " if header :contains \"Subject\" \"CAFÉ\" { fileinto \"a\"; }"
+                + " if header :contains \"Subject\" \"crème\" { fileinto \"b\"; }"
+                + " if header :matches \"Subject\" \"*CRÈME\" { fileinto \"c\"; }");
+        assertEquals(3, mail.getActions().size());
+        assertEquals("c", ((ActionFileInto) mail.getActions().get(2))
+                .getDestination());
+        assertEquals(1, mail.lookups);
+    }
+
+    @Test
+    public void testOctetMatchesCachedDecodedValues() throws Exception {
+        evaluate("require \"fileinto\";"
+                + " if header :comparator \"i;octet\" :is \"Subject\" \"café crème\" { fileinto \"a\"; }"
+                + " if header :comparator \"i;octet\" :is \"Subject\" \"CAFÉ CRÈME\" { fileinto \"b\"; }"
+                + " if header :comparator \"i;octet\" :is \"Subject\" \"plain\" { fileinto \"c\"; }");
+        assertEquals(2, mail.getActions().size());
+        assertTrue(mail.getActions().get(0) instanceof ActionFileInto);
+        assertEquals("c", ((ActionFileInto) mail.getActions().get(1))
+                .getDestination());
+        assertEquals(1, mail.lookups);
+    }
+}
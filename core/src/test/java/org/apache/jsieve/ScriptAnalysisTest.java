@@ -0,0 +1,151 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptAnalysisTest {
+
+    private SieveFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+    }
+
+    private ScriptAnalysis analyze(String script) throws Exception {
+        return factory.analyze(factory.parse(new ByteArrayInputStream(script
+                .getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void testEmptyScript() throws Exception {
+        final ScriptAnalysis analysis = analyze("");
+        assertFalse(analysis.isAnyHeaderRead());
+        assertTrue(analysis.getHeaderNames().isEmpty());
+        assertTrue(analysis.isHeaderOnly());
+        assertFalse(analysis.isEnvelopeRead());
+    }
+
+    @Test
+    public void testHeaderNames() throws Exception {
+        final ScriptAnalysis analysis = analyze("if anyof (header :comparator \"i;octet\" :contains [\"Subject\", \"X-Spam\"] \"x\","
+                + " not address :domain :is \"From\" \"example.org\") { discard; }"
+                + " elsif exists \"List-Id\" { keep; } else { if true { stop; } }");
+        assertFalse(analysis.isAnyHeaderRead());
+        assertEquals(new HashSet<String>(Arrays.asList("subject", "x-spam",
+                "from", "list-id")), analysis.getHeaderNames());
+        assertTrue(analysis.isHeaderRead(" SUBJECT"));
+        assertFalse(analysis.isHeaderRead("i;octet"));
+        assertFalse(analysis.isHeaderRead("To"));
+        assertTrue(analysis.isHeaderOnly());
+    }
+
+    @Test
+    public void testSizeAndEnvelope() throws Exception {
+        final ScriptAnalysis analysis = analyze("require \"envelope\";"
+                + " if allof (size :over 100K, envelope :is \"from\" \"a@b\") { discard; }");
+        assertTrue(analysis.isSizeRead());
+        assertTrue(analysis.isEnvelopeRead());
+        assertFalse(analysis.isBodyRead());
+        assertFalse(analysis.isHeaderOnly());
+        assertTrue(analysis.getHeaderNames().isEmpty());
+    }
+
+    @Test
+    public void testBody() throws Exception {
+        ScriptAnalysis analysis = analyze("require \"body\"; if body :contains \"x\" { discard; }");
+        assertTrue(analysis.isBodyTextRead());
+        assertFalse(analysis.isRawBodyRead());
+        assertTrue(analysis.isBodyRead());
+
+        analysis = analyze("require \"body\"; if body :raw :contains \"x\" { discard; }");
+        assertFalse(analysis.isBodyTextRead());
+        assertTrue(analysis.isRawBodyRead());
+
+        analysis = analyze("require \"body\"; if body :content [\"text/HTML\", \"text/plain\"] :contains \"x\" { discard; }");
+        assertFalse(analysis.isBodyTextRead());
+        assertFalse(analysis.isAnyContentRead());
+        assertEquals(new HashSet<String>(Arrays.asList("text/html",
+                "text/plain")), analysis.getContentTypes());
+        assertTrue(analysis.isBodyRead());
+    }
+
+    @Test
+    public void testUnknownCommandReadsAnything() throws Exception {
+        final ScriptAnalysis analysis = analyze("if header :is \"Subject\" \"x\" { throwTestException; }");
+        assertTrue(analysis.isAnyHeaderRead());
+        assertTrue(analysis.isHeaderRead("To"));
+        assertTrue(analysis.isBodyRead());
+        assertTrue(analysis.isSizeRead());
+        assertTrue(analysis.isEnvelopeRead());
+    }
+
+    @Test
+    public void testSizeLimits() throws Exception {
+        assertEquals(new HashSet<Integer>(Arrays.asList(100, 2048)), analyze(
+                "if anyof (size :over 100, size :under 2K) { discard; }")
+                .getSizeLimits());
+        assertTrue(analyze("keep;").getSizeLimits().isEmpty());
+    }
+
+    @Test
+    public void testSideEffects() throws Exception {
+        assertTrue(analyze("require \"log\"; log \"x\";").hasSideEffects());
+        assertTrue(analyze("require \"vacation\"; vacation \"away\";")
+                .hasSideEffects());
+        assertFalse(analyze("require \"fileinto\"; fileinto \"x\";")
+                .hasSideEffects());
+    }
+
+    @Test
+    public void testBodyTransformAfterMatchType() throws Exception {
+        final ScriptAnalysis analysis = analyze("require \"body\";"
+                + " if body :comparator \"i;octet\" :is :raw \"x\" { discard; }");
+        assertTrue(analysis.isRawBodyRead());
+        assertFalse(analysis.isBodyTextRead());
+    }
+
+    @Test
+    public void testBodySearches() throws Exception {
+        final ScriptAnalysis analysis = analyze("require \"body\";"
+                + " if anyof (body :contains [\"a\", \"b\"], body :raw :contains \"c\","
+                + " body :content \"text/html\" :contains \"d\", body :is \"e\","
+                + " body :comparator \"i;octet\" :contains \"f\") { discard; }"
+                + " if body :text :contains [\"a\", \"b\"] { keep; }");
+        assertEquals(Arrays.asList(
+                new ScriptAnalysis.BodyKeys(":text", Collections.<String> emptyList(),
+                        Arrays.asList("a", "b")),
+                new ScriptAnalysis.BodyKeys(":raw", Collections.<String> emptyList(),
+                        Arrays.asList("c")),
+                new ScriptAnalysis.BodyKeys(":content", Arrays.asList("text/html"),
+                        Arrays.asList("d"))), analysis.getBodySearches());
+    }
+}
@@ -0,0 +1,328 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SieveEvaluatorTest {
+
+    /**
+     * Blocks reads of its headers until released, recording the threads on
+     * which it is called.
+     */
+    private static class GatedMail extends InMemoryMailAdapter {
+
+        private final CountDownLatch gate;
+
+        private final AtomicInteger reading;
+
+        private final AtomicInteger mostReading;
+
+        private final List<String> order;
+
+        private final String name;
+
+        private Thread contextThread;
+
+        private Thread readThread;
+
+        private Thread clearThread;
+
+        private SieveContext context;
+
+        GatedMail(String name, CountDownLatch gate, AtomicInteger reading,
+                AtomicInteger mostReading, List<String> order) {
+            this.name = name;
+            this.gate = gate;
+            this.reading = reading;
+            this.mostReading = mostReading;
+            this.order = order;
+            addHeader("Subject", name);
+        }
+
+        @Override
+        public void setContext(SieveContext context) {
+            if (context == null) {
+                clearThread = Thread.currentThread();
+            } else {
+                contextThread = Thread.currentThread();
+                this.context = context;
+            }
+        }
+
+        @Override
+        public List<String> getHeader(String header) throws SieveMailException {
+            readThread = Thread.currentThread();
+            order.add(name);
+            final int now = reading.incrementAndGet();
+            synchronized (mostReading) {
+                mostReading.set(Math.max(mostReading.get(), now));
+            }
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new SieveMailException(e);
+            } finally {
+                reading.decrementAndGet();
+            }
+            if ("broken".equals(name)) {
+                throw new SieveMailException("Storage unavailable");
+            }
+            return super.getHeader(header);
+        }
+    }
+
+    private SieveFactory factory;
+
+    private Node script;
+
+    private CountDownLatch gate;
+
+    private AtomicInteger reading;
+
+    private AtomicInteger mostReading;
+
+    private List<String> order;
+
+    private SieveEvaluator evaluator;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        script = factory.parse(new ByteArrayInputStream(
+                "if header :is \"Subject\" \"spam\" { discard; }"
+                        .getBytes(StandardCharsets.UTF_8)));
+        gate = new CountDownLatch(1);
+        reading = new AtomicInteger();
+        mostReading = new AtomicInteger();
+        order = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gate.countDown();
+        if (evaluator != null) {
+            evaluator.shutdown();
+            assertTrue(evaluator.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private GatedMail mail(String name) {
+        return new GatedMail(name, gate, reading, mostReading, order);
+    }
+
+    private void awaitReading(int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (reading.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, reading.get());
+    }
+
+    @Test
+    public void testInFlightLimit() throws Exception {
+        evaluator = new SieveEvaluator(factory, 3, 100);
+        final List<CompletableFuture<SieveEvaluator.Job>> jobs = new ArrayList<CompletableFuture<SieveEvaluator.Job>>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(evaluator.submit("tenant", mail("mail " + i), script));
+        }
+        awaitReading(3);
+        assertEquals(3, evaluator.getInFlight());
+        assertEquals(7, evaluator.getQueued());
+        gate.countDown();
+        for (final CompletableFuture<SieveEvaluator.Job> job : jobs) {
+            assertEquals(1, job.get(10, TimeUnit.SECONDS).getMail()
+                    .getActions().size());
+        }
+        assertEquals(3, mostReading.get());
+        assertEquals(10, evaluator.getCompleted());
+        assertEquals(0, evaluator.getFailed());
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        evaluator = new SieveEvaluator(factory, 1, 2);
+        final CompletableFuture<SieveEvaluator.Job> first = evaluator.submit(
+                "tenant", mail("first"), script);
+        awaitReading(1);
+        assertNotNull(evaluator.submit("tenant", mail("second"), script));
+        assertNotNull(evaluator.submit("tenant", mail("third"), script));
+        assertNull(evaluator.trySubmit("tenant", mail("fourth"), script, 10,
+                TimeUnit.MILLISECONDS));
+        assertEquals(2, evaluator.getQueued());
+        gate.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        assertNotNull(evaluator.trySubmit("tenant", mail("fourth"), script,
+                10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTenantsTakeTurns() throws Exception {
+        evaluator = new SieveEvaluator(factory, 1, 100);
+        evaluator.submit("x", mail("x1"), script);
+        awaitReading(1);
+        final List<CompletableFuture<SieveEvaluator.Job>> jobs = new ArrayList<CompletableFuture<SieveEvaluator.Job>>();
+        for (int i = 1; i <= 3; i++) {
+            jobs.add(evaluator.submit("a", mail("a" + i), script));
+        }
+        for (int i = 1; i <= 2; i++) {
+            jobs.add(evaluator.submit("b", mail("b" + i), script));
+        }
+        gate.countDown();
+        for (final CompletableFuture<SieveEvaluator.Job> job : jobs) {
+            job.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("x1", "a1", "b1", "a2", "b2", "a3"), order);
+    }
+
+    @Test
+    public void testContextIsSetAndClearedOnTheEvaluatingThread()
+            throws Exception {
+        gate.countDown();
+        evaluator = new SieveEvaluator(factory, 2, 10);
+        final GatedMail first = mail("first");
+        final GatedMail second = mail("second");
+        evaluator.submit("tenant", first, script).get(10, TimeUnit.SECONDS);
+        evaluator.submit("tenant", second, script).get(10, TimeUnit.SECONDS);
+        assertNotNull(first.contextThread);
+        assertSame(first.contextThread, first.readThread);
+        assertSame(first.contextThread, first.clearThread);
+        assertNotNull(second.contextThread);
+        assertSame(second.contextThread, second.clearThread);
+        assertFalse(first.contextThread == second.contextThread);
+        assertFalse(first.contextThread == Thread.currentThread());
+    }
+
+    @Test
+    public void testFramesAreReusedAcrossThreads() throws Exception {
+        gate.countDown();
+        evaluator = new SieveEvaluator(factory, 1, 10);
+        final GatedMail first = mail("first");
+        final GatedMail second = mail("second");
+        evaluator.submit("tenant", first, script).get(10, TimeUnit.SECONDS);
+        evaluator.submit("tenant", second, script).get(10, TimeUnit.SECONDS);
+        assertFalse(first.contextThread == second.contextThread);
+        assertSame(first.context, second.context);
+    }
+
+    @Test
+    public void testQueueLatencyIsMeasured() throws Exception {
+        evaluator = new SieveEvaluator(factory, 1, 10);
+        evaluator.submit("tenant", mail("first"), script);
+        awaitReading(1);
+        final CompletableFuture<SieveEvaluator.Job> second = evaluator.submit(
+                "tenant", mail("second"), script);
+        Thread.sleep(20);
+        gate.countDown();
+        final SieveEvaluator.Job job = second.get(10, TimeUnit.SECONDS);
+        assertTrue(job.getQueueNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(job.getEvaluationNanos() >= 0);
+        assertTrue(evaluator.getMaxQueueNanos() >= job.getQueueNanos());
+        assertTrue(evaluator.getMeanQueueNanos() > 0);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        gate.countDown();
+        evaluator = new SieveEvaluator(factory, 1, 10);
+        try {
+            evaluator.submit("tenant", mail("broken"), script).get(10,
+                    TimeUnit.SECONDS);
+            fail("Expected the evaluation to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SieveMailException);
+        }
+        assertEquals(1, evaluator.getFailed());
+        assertEquals(0, evaluator.getInFlight());
+    }
+
+    @Test
+    public void testThreadsWhichCannotBeStartedFailTheirJobs()
+            throws Exception {
+        gate.countDown();
+        final AtomicInteger threads = new AtomicInteger();
+        evaluator = new SieveEvaluator(factory, 1, 10, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                if (threads.incrementAndGet() == 1) {
+                    throw new IllegalStateException("No more threads");
+                }
+                return new Thread(runnable) {
+                    @Override
+                    public synchronized void start() {
+                        throw new IllegalThreadStateException("Not started");
+                    }
+                };
+            }
+        });
+        final CompletableFuture<SieveEvaluator.Job> first = evaluator.submit(
+                "tenant", mail("first"), script);
+        final CompletableFuture<SieveEvaluator.Job> second = evaluator.submit(
+                "tenant", mail("second"), script);
+        try {
+            first.get(10, TimeUnit.SECONDS);
+            fail("Expected the thread factory to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            second.get(10, TimeUnit.SECONDS);
+            fail("Expected the thread not to start");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalThreadStateException);
+        }
+        assertEquals(0, evaluator.getInFlight());
+        evaluator.shutdown();
+        assertTrue(evaluator.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testShutdown() throws Exception {
+        evaluator = new SieveEvaluator(factory, 1, 10);
+        evaluator.shutdown();
+        evaluator.submit("tenant", mail("late"), script);
+    }
+}
@@ -0,0 +1,107 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.exception.StopException;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+
+/**
+ * <p>
+ * Compares the cost of evaluating filters which end with <code>stop</code>
+ * when stop is recorded by the command state, as the Stop Command does, and
+ * when it is signalled by throwing a {@link StopException}, as it once did.
+ * </p>
+ * 
+ * <p>
+ * Not a test: run its <code>main</code> method with the test classpath.
+ * </p>
+ */
+public class StopBenchmark {
+
+    /**
+     * Stops by throwing, as the Stop Command once did.
+     */
+    public static class ThrowingStop implements ExecutableCommand {
+
+        public Object execute(MailAdapter mail, Arguments arguments,
+                Block block, SieveContext context) throws SieveException {
+            throw new StopException("Stop requested");
+        }
+    }
+
+    private static final int ROUNDS = 5;
+
+    private static final int EVALUATIONS = 100000;
+
+    private static String script(String stop) {
+        return "require \"fileinto\";"
+                + " if header :contains \"Subject\" \"news\" {"
+                + "   if address :domain \"From\" \"example.org\" {"
+                + "     if exists \"List-Id\" { fileinto \"lists\"; " + stop + "; }"
+                + "   }"
+                + " }"
+                + " fileinto \"inbox\";";
+    }
+
+    public static void main(String[] args) throws Exception {
+        final ConfigurationManager configuration = new ConfigurationManager();
+        configuration.getCommandMap().put("throwingstop",
+                ThrowingStop.class.getName());
+        final SieveFactory factory = configuration.build();
+        final Node recorded = parse(factory, script("stop"));
+        final Node thrown = parse(factory, script("throwingstop"));
+        for (int round = 1; round <= ROUNDS; round++) {
+            final long recordedNanos = time(factory, recorded);
+            final long thrownNanos = time(factory, thrown);
+            System.out.println("Round " + round + ": stop "
+                    + recordedNanos / EVALUATIONS + " ns/evaluation,"
+                    + " StopException " + thrownNanos / EVALUATIONS
+                    + " ns/evaluation");
+        }
+    }
+
+    private static Node parse(SieveFactory factory, String script)
+            throws Exception {
+        return factory.parse(new ByteArrayInputStream(script
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static long time(SieveFactory factory, Node script)
+            throws SieveException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < EVALUATIONS; i++) {
+            final InMemoryMailAdapter mail = new InMemoryMailAdapter()
+                    .addHeader("From", "alice@example.org")
+                    .addHeader("Subject", "Weekly news")
+                    .addHeader("List-Id", "<news.example.org>");
+            factory.evaluate(mail, script);
+            if (mail.getActions().size() != 1) {
+                throw new IllegalStateException("Expected a single fileinto");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
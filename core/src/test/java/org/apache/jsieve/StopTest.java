@@ -55,6 +55,28 @@ public class StopTest {
         Assert.assertTrue(isTestPassed);
     }
 
+    /**
+     * Test for Command 'stop' within nested blocks, which stops the commands
+     * after the enclosing blocks too.
+     */
+    @Test
+    public void testStopInNestedBlock() {
+        boolean isTestPassed = false;
+        String script = "if true { if true { keep; stop; throwTestException; } throwTestException; } throwTestException;";
+
+        try {
+            MailAdapter mail = JUnitUtils.createMail();
+            JUnitUtils.interpret(mail, script);
+            Assert.assertTrue(mail.getActions().size() == 1);
+            Assert.assertTrue(mail.getActions().get(0) instanceof ActionKeep);
+            isTestPassed = true;
+        } catch (ThrowTestException.TestException e) {
+        } catch (ParseException e) {
+        } catch (SieveException e) {
+        }
+        Assert.assertTrue(isTestPassed);
+    }
+
     /**
      * Test for Command 'stop' with invalid arguments
      */
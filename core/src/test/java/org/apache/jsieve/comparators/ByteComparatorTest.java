@@ -0,0 +1,124 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.comparators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ByteComparatorTest {
+
+    private static final String ALPHABET = "aAbB*?\\. \t-";
+
+    private static ByteBuffer buffer(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOctet() throws Exception {
+        final Octet octet = new Octet();
+        assertTrue(octet.equals(buffer("Hello"), bytes("Hello")));
+        assertFalse(octet.equals(buffer("Hello"), bytes("hello")));
+        assertTrue(octet.contains(buffer("Hello World"), bytes("o W")));
+        assertFalse(octet.contains(buffer("Hello World"), bytes("o w")));
+        assertTrue(octet.contains(buffer("Hello"), bytes("")));
+        assertTrue(octet.matches(buffer("Hello"), bytes("H*l?")));
+        assertFalse(octet.matches(buffer("Hello"), bytes("h*")));
+    }
+
+    @Test
+    public void testAsciiCasemap() throws Exception {
+        final AsciiCasemap casemap = new AsciiCasemap();
+        assertTrue(casemap.equals(buffer("Hello"), bytes("hELLO")));
+        assertTrue(casemap.contains(buffer("Hello World"), bytes("O w")));
+        assertTrue(casemap.matches(buffer("Hello"), bytes("h*L?")));
+        assertFalse(casemap.matches(buffer("Hello"), bytes("h*L")));
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        final Octet octet = new Octet();
+        assertTrue(octet.matches(buffer("a*b"), bytes("a\\*b")));
+        assertFalse(octet.matches(buffer("axb"), bytes("a\\*b")));
+        assertTrue(octet.matches(buffer("a\\b"), bytes("a\\b")));
+        assertTrue(octet.matches(buffer("a\\"), bytes("a\\")));
+        assertTrue(octet.matches(buffer("a\\b"), bytes("a\\\\b")));
+    }
+
+    @Test
+    public void testPositionIsRespected() throws Exception {
+        final ByteBuffer value = buffer("xxHello");
+        value.position(2);
+        assertTrue(new Octet().equals(value, bytes("Hello")));
+        assertTrue(new Octet().matches(value, bytes("Hel*")));
+        assertEquals(2, value.position());
+    }
+
+    @Test
+    public void testPlainAscii() throws Exception {
+        assertTrue(ComparatorUtils.isPlainAscii(buffer("Hello\tWorld = ?")));
+        assertFalse(ComparatorUtils.isPlainAscii(buffer("=?utf-8?q?x?=")));
+        assertFalse(ComparatorUtils.isPlainAscii(buffer("folded\r\n value")));
+        assertFalse(ComparatorUtils.isPlainAscii(buffer("café")));
+    }
+
+    /**
+     * Octet operations on plain values agree with the string operations.
+     */
+    @Test
+    public void testAgreesWithStrings() throws Exception {
+        final Random random = new Random(4790);
+        final Comparator[] comparators = { new Octet(), new AsciiCasemap() };
+        for (int i = 0; i < 20000; i++) {
+            final String value = randomString(random, 8);
+            final String key = randomString(random, 5);
+            for (final Comparator comparator : comparators) {
+                final ByteComparator byteComparator = (ByteComparator) comparator;
+                final String message = comparator.getClass().getSimpleName()
+                        + " '" + value + "' '" + key + "'";
+                assertEquals(message, comparator.equals(value, key),
+                        byteComparator.equals(buffer(value), bytes(key)));
+                assertEquals(message, comparator.contains(value, key),
+                        byteComparator.contains(buffer(value), bytes(key)));
+                assertEquals(message, comparator.matches(value, key),
+                        byteComparator.matches(buffer(value), bytes(key)));
+            }
+        }
+    }
+
+    private static String randomString(Random random, int maxLength) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+}
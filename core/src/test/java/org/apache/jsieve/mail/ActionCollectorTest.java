@@ -0,0 +1,177 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.SieveContext;
+import org.apache.jsieve.SieveFactory;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActionCollectorTest {
+
+    /**
+     * Counts the calls to getActions.
+     */
+    private static class CountingMail extends InMemoryMailAdapter {
+
+        int getActionsCalls;
+
+        SieveContext context;
+
+        List<Action> collected;
+
+        @Override
+        public List<Action> getActions() {
+            getActionsCalls++;
+            return super.getActions();
+        }
+
+        @Override
+        public void setContext(SieveContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void executeActions() throws SieveException {
+            collected = new ArrayList<Action>(context.getActionCollector()
+                    .getActions());
+        }
+    }
+
+    private SieveFactory factory;
+
+    private CountingMail mail;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new ConfigurationManager().build();
+        mail = new CountingMail();
+    }
+
+    private void evaluate(String script) throws Exception {
+        factory.evaluate(mail, factory.parse(new ByteArrayInputStream(script
+                .getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testDuplicatesAreDropped() throws Exception {
+        evaluate("require \"fileinto\";"
+                + " fileinto \"a\"; redirect \"x@example.org\"; keep;"
+                + " fileinto \"b\"; fileinto \"a\"; keep;"
+                + " redirect \"x@example.org\"; redirect \"y@example.org\";");
+        final List<Action> actions = mail.getActions();
+        assertEquals(5, actions.size());
+        assertEquals("a", ((ActionFileInto) actions.get(0)).getDestination());
+        assertEquals("x@example.org", ((ActionRedirect) actions.get(1))
+                .getAddress());
+        assertTrue(actions.get(2) instanceof ActionKeep);
+        assertEquals("b", ((ActionFileInto) actions.get(3)).getDestination());
+        assertEquals("y@example.org", ((ActionRedirect) actions.get(4))
+                .getAddress());
+        assertEquals(actions, mail.collected);
+    }
+
+    @Test
+    public void testMailIsAskedForActionsOnce() throws Exception {
+        final StringBuilder script = new StringBuilder("require \"fileinto\";");
+        for (int i = 0; i < 100; i++) {
+            script.append(" fileinto \"folder").append(i % 10).append("\";");
+        }
+        evaluate(script.toString());
+        assertEquals(1, mail.getActionsCalls);
+        assertEquals(10, mail.getActions().size());
+    }
+
+    @Test
+    public void testActionsAddedBeforeEvaluationAreNotDuplicated()
+            throws Exception {
+        mail.addAction(new ActionFileInto("a"));
+        evaluate("require \"fileinto\"; fileinto \"a\"; fileinto \"b\";");
+        assertEquals(2, mail.getActions().size());
+        assertEquals(1, mail.collected.size());
+    }
+
+    @Test
+    public void testImplicitKeepIsCollected() throws Exception {
+        evaluate("if false { discard; }");
+        assertEquals(1, mail.collected.size());
+        assertTrue(mail.collected.get(0) instanceof ActionKeep);
+    }
+
+    @Test
+    public void testOnlyFileIntoKeepAndRedirectAreDeduplicated()
+            throws Exception {
+        final ActionCollector collector = new ActionCollector();
+        collector.reset(mail);
+        assertTrue(collector.add(new ActionReject("no")));
+        assertTrue(collector.add(new ActionReject("no")));
+        assertTrue(collector.add(new ActionDiscard()));
+        assertTrue(collector.add(new ActionDiscard()));
+        assertEquals(4, collector.getActions().size());
+    }
+
+    @Test
+    public void testMailIsAskedForActionsOnlyForFileInto() throws Exception {
+        final ActionCollector collector = new ActionCollector();
+        collector.reset(mail);
+        assertTrue(collector.add(new ActionReject("no")));
+        assertTrue(collector.add(new ActionDiscard()));
+        assertTrue(collector.add(new ActionKeep()));
+        assertFalse(collector.add(new ActionKeep()));
+        assertTrue(collector.add(new ActionRedirect("x@example.org")));
+        assertEquals(0, mail.getActionsCalls);
+        assertTrue(collector.add(new ActionFileInto("a")));
+        assertFalse(collector.add(new ActionFileInto("a")));
+        assertEquals(1, mail.getActionsCalls);
+    }
+
+    @Test
+    public void testImplicitKeepDoesNotAskForActions() throws Exception {
+        evaluate("if false { discard; }");
+        assertEquals(0, mail.getActionsCalls);
+    }
+
+    @Test
+    public void testCollectorOfOtherMailIsNotUsed() throws Exception {
+        final ActionCollector collector = new ActionCollector();
+        collector.reset(mail);
+        assertTrue(collector.isCollectorOf(mail));
+        assertFalse(collector.isCollectorOf(new InMemoryMailAdapter()));
+        assertTrue(collector.add(new ActionKeep()));
+        assertFalse(collector.add(new ActionKeep()));
+        assertSame(mail.getActions().get(0), collector.getActions().get(0));
+        collector.reset(null);
+        assertFalse(collector.isCollectorOf(null));
+        assertTrue(collector.getActions().isEmpty());
+    }
+}
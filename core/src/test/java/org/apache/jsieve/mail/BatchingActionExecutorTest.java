@@ -0,0 +1,160 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.SieveFactory;
+import org.apache.jsieve.mail.optional.ActionVacation;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.utils.InMemoryActionSink;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchingActionExecutorTest {
+
+    private InMemoryActionSink<String> sink;
+
+    private BatchingActionExecutor<String> executor;
+
+    @Before
+    public void setUp() throws Exception {
+        sink = new InMemoryActionSink<String>();
+        executor = new BatchingActionExecutor<String>(sink, 3, 1,
+                TimeUnit.HOURS);
+    }
+
+    private static List<Action> actions(Action... actions) {
+        return new ArrayList<Action>(Arrays.asList(actions));
+    }
+
+    @Test
+    public void testActionsAreGroupedByTarget() throws Exception {
+        executor.submit("m1", actions(new ActionFileInto("a"),
+                new ActionFileInto("b")));
+        executor.submit("m2", actions(new ActionFileInto("a"),
+                new ActionKeep()));
+        assertEquals(2, executor.getPending());
+        assertTrue(sink.getCalls().isEmpty());
+        executor.submit("m3", actions(new ActionFileInto("b"),
+                new ActionFileInto("a")));
+        assertEquals(0, executor.getPending());
+        assertEquals(1, executor.getFlushes());
+        assertEquals(Arrays.asList("fileinto a [m1, m2]", "fileinto b [m3]",
+                "fileinto b [m1]", "keep [m2]", "fileinto a [m3]"), sink
+                .getCalls());
+        assertEquals(Arrays.asList("a", "b"), sink.getMailboxes("m1"));
+        assertEquals(Arrays.asList("a", "INBOX"), sink.getMailboxes("m2"));
+        assertEquals(Arrays.asList("b", "a"), sink.getMailboxes("m3"));
+    }
+
+    @Test
+    public void testAllActionTypes() throws Exception {
+        executor.submit("m1", actions(new ActionRedirect("x@example.org"),
+                new ActionDiscard(), ActionVacation.builder().reason("away").build()));
+        executor.submit("m2", actions(new ActionReject("no"),
+                new ActionRedirect("x@example.org")));
+        executor.submit("m3", actions());
+        assertEquals(Arrays.asList("redirect x@example.org [m1]",
+                "reject no [m2]", "redirect x@example.org [m2]",
+                "execute ActionVacation [m1]"), sink.getCalls());
+    }
+
+    @Test
+    public void testFailureStopsOnlyItsMails() throws Exception {
+        sink.failOn("fileinto a");
+        executor.submit("m1", actions(new ActionFileInto("a"),
+                new ActionKeep()));
+        executor.submit("m2", actions(new ActionFileInto("b"),
+                new ActionFileInto("a"), new ActionKeep()));
+        executor.flush();
+        assertEquals(Arrays.asList("fileinto b [m2]"), sink.getCalls());
+        assertEquals(2, sink.getFailures().get("m1").size());
+        final List<Action> failed = sink.getFailures().get("m2");
+        assertEquals(2, failed.size());
+        assertEquals("a", ((ActionFileInto) failed.get(0)).getDestination());
+        assertTrue(failed.get(1) instanceof ActionKeep);
+    }
+
+    @Test
+    public void testDueBatchIsFlushed() throws Exception {
+        executor = new BatchingActionExecutor<String>(sink, 100, 0,
+                TimeUnit.NANOSECONDS);
+        executor.submit("m1", actions(new ActionKeep()));
+        assertEquals(Arrays.asList("keep [m1]"), sink.getCalls());
+
+        executor = new BatchingActionExecutor<String>(sink, 100, 1,
+                TimeUnit.HOURS);
+        executor.submit("m2", actions(new ActionKeep()));
+        executor.flushIfDue();
+        assertEquals(1, executor.getPending());
+        executor.close();
+        assertEquals(Arrays.asList("keep [m1]", "keep [m2]"), sink.getCalls());
+    }
+
+    @Test
+    public void testScheduledFlush() throws Exception {
+        final ScheduledExecutorService scheduler = Executors
+                .newSingleThreadScheduledExecutor();
+        try {
+            executor = new BatchingActionExecutor<String>(sink, 100, 10,
+                    TimeUnit.MILLISECONDS, scheduler);
+            executor.submit("m1", actions(new ActionKeep()));
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (executor.getPending() > 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(Arrays.asList("keep [m1]"), sink.getCalls());
+            executor.close();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEvaluationResultsAreBatched() throws Exception {
+        final SieveFactory factory = new ConfigurationManager().build();
+        final Node script = factory.parse(new ByteArrayInputStream(
+                ("require \"fileinto\";"
+                        + " if header :contains \"Subject\" \"list\" {"
+                        + " fileinto \"lists\"; stop; }").getBytes(StandardCharsets.UTF_8)));
+        executor.submit("m1", factory.evaluateResult(new InMemoryMailAdapter()
+                .addHeader("Subject", "list post"), script));
+        executor.submit("m2", factory.evaluateResult(new InMemoryMailAdapter()
+                .addHeader("Subject", "hello"), script));
+        executor.submit("m3", factory.evaluateResult(new InMemoryMailAdapter()
+                .addHeader("Subject", "another list post"), script));
+        assertEquals(Arrays.asList("fileinto lists [m1, m3]", "keep [m2]"),
+                sink.getCalls());
+    }
+}
@@ -0,0 +1,85 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Test;
+
+public class HeaderIndexImplTest {
+
+    @Test
+    public void testNamesAreNormalizedAndMerged() throws Exception {
+        final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        headers.put("Received", Arrays.asList("one"));
+        headers.put(" received ", Arrays.asList("two", "three"));
+        headers.put("Subject", Arrays.asList("hello"));
+        final HeaderIndex index = new HeaderIndexImpl(headers);
+
+        assertEquals(Arrays.asList("one", "two", "three"), index
+                .getMatchingHeader("RECEIVED"));
+        assertEquals(Arrays.asList("hello"), index.getMatchingHeader("subject"));
+        assertTrue(index.getMatchingHeader("From").isEmpty());
+        assertEquals(2, index.getHeaderNames().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testValuesAreImmutable() throws Exception {
+        final HeaderIndex index = new HeaderIndexImpl(Collections.singletonMap(
+                "To", Arrays.asList("a@example.org")));
+        index.getMatchingHeader("to").add("b@example.org");
+    }
+
+    @Test
+    public void testBuildMatchesMailUtils() throws Exception {
+        final InMemoryMailAdapter mail = new InMemoryMailAdapter();
+        mail.addHeader("From", "a@example.org").addHeader("X-Spam", "yes")
+                .addHeader("from ", "b@example.org").addHeader("TO",
+                        "c@example.org");
+        final HeaderIndex index = HeaderIndexImpl.build(mail);
+        for (final String name : new String[] { "From", "from", "x-spam",
+                "To", "Cc" }) {
+            assertEquals(MailUtils.getMatchingHeader(mail, name), index
+                    .getMatchingHeader(name));
+        }
+    }
+
+    @Test
+    public void testCacheReadsHeadersOnce() throws Exception {
+        final InMemoryMailAdapter mail = new InMemoryMailAdapter();
+        mail.addHeader("From", "a@example.org").addHeader("Subject", "hi");
+        final MessageCache cache = new MessageCache(mail);
+        cache.getMatchingHeader("from");
+        final int reads = mail.getHeaderReads();
+        cache.getMatchingHeader("subject");
+        cache.getMatchingHeader("cc");
+        assertEquals(reads, mail.getHeaderReads());
+        assertSame(cache.getHeaderIndex(), cache.getHeaderIndex());
+    }
+}
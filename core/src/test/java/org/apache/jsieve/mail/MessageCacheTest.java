@@ -0,0 +1,89 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jsieve.comparators.AsciiCasemap;
+import org.apache.jsieve.comparators.Octet;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageCacheTest {
+
+    private InMemoryMailAdapter mail;
+
+    private MessageCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        mail = new InMemoryMailAdapter();
+        mail.addHeader("Subject", "=?ISO-8859-1?Q?Caf=E9?= time").addHeader(
+                "From", "Someone\r\n <someone@example.org>").addHeader("To",
+                "a@Example.ORG, b@example.net");
+        cache = new MessageCache(mail);
+    }
+
+    @Test
+    public void testDecodedHeader() throws Exception {
+        assertEquals(Arrays.asList("Café time"), cache
+                .getDecodedHeader("subject"));
+        assertEquals(Arrays.asList("Someone <someone@example.org>"), cache
+                .getDecodedHeader("From"));
+    }
+
+    @Test
+    public void testFoldedHeader() throws Exception {
+        assertEquals(Arrays.asList("CAFÉ TIME"), cache.getFoldedHeader(
+                "Subject", new AsciiCasemap()));
+        assertEquals(Arrays.asList("Café time"), cache.getFoldedHeader(
+                "Subject", new Octet()));
+    }
+
+    @Test
+    public void testValuesAreMemoized() throws Exception {
+        assertSame(cache.getDecodedHeader("Subject"), cache
+                .getDecodedHeader("SUBJECT"));
+        assertSame(cache.getFoldedHeader("from", new AsciiCasemap()), cache
+                .getFoldedHeader("From", new AsciiCasemap()));
+        final int reads = mail.getHeaderReads();
+        cache.getFoldedHeader("subject", new AsciiCasemap());
+        assertEquals(reads, mail.getHeaderReads());
+    }
+
+    @Test
+    public void testAddressesAreParsedOnce() throws Exception {
+        final List<ParsedAddress> addresses = cache.getAddresses("to");
+        assertEquals(2, addresses.size());
+        assertEquals("a", addresses.get(0).getLocalPart());
+        assertEquals("Example.ORG", addresses.get(0).getDomain());
+        assertEquals("example.org", addresses.get(0).getLowerCaseDomain());
+        assertEquals("a@Example.ORG", addresses.get(0).getAddress());
+        assertEquals("b@example.net", addresses.get(1).getAddress());
+        assertSame(addresses, cache.getAddresses("TO"));
+        assertTrue(cache.getAddresses("cc").isEmpty());
+    }
+}
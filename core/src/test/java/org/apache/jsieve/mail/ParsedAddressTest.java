@@ -0,0 +1,84 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.SieveFactory;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Test;
+
+public class ParsedAddressTest {
+
+    /**
+     * Answers a sender without a domain, as mime4j does for
+     * <code>From: root</code>.
+     */
+    private static class LocalOnlyMail extends InMemoryMailAdapter {
+
+        @Override
+        public Address[] parseAddresses(String headerName) {
+            return new Address[] { new AddressImpl("root", null) };
+        }
+    }
+
+    @Test
+    public void testAddressWithDomain() throws Exception {
+        final ParsedAddress address = new ParsedAddress("User", "Example.ORG");
+        assertEquals("User", address.getLocalPart());
+        assertEquals("Example.ORG", address.getDomain());
+        assertEquals("example.org", address.getLowerCaseDomain());
+        assertEquals("User@Example.ORG", address.getAddress());
+    }
+
+    @Test
+    public void testAddressWithoutDomain() throws Exception {
+        final ParsedAddress address = new ParsedAddress(new AddressImpl(
+                "root", null));
+        assertEquals("root", address.getLocalPart());
+        assertNull(address.getDomain());
+        assertEquals("", address.getLowerCaseDomain());
+        assertEquals("root", address.getAddress());
+    }
+
+    private boolean isKept(String script) throws Exception {
+        final SieveFactory factory = new ConfigurationManager().build();
+        final LocalOnlyMail mail = new LocalOnlyMail();
+        mail.addHeader("From", "root");
+        factory.evaluate(mail, factory.parse(new ByteArrayInputStream(script
+                .getBytes(StandardCharsets.UTF_8))));
+        return mail.getActions().get(0) instanceof ActionKeep;
+    }
+
+    @Test
+    public void testAddressTestsOnLocalOnlyAddress() throws Exception {
+        assertFalse(isKept("if address :all \"From\" \"root\" { discard; }"));
+        assertFalse(isKept("if address :localpart \"From\" \"root\" { discard; }"));
+        assertTrue(isKept("if address :domain :contains \"From\" \"example\" { discard; }"));
+        assertFalse(isKept("if address :domain :is \"From\" \"\" { discard; }"));
+    }
+}
@@ -0,0 +1,144 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve.mail.body;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.exception.FeatureException;
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.MessageSource;
+import org.apache.jsieve.mail.MessageSourceProvider;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Test;
+
+public class BodyMatchTest {
+
+    private static final String MAIL = "Subject: test\r\n"
+            + "Content-Type: multipart/alternative; boundary=\"B\"\r\n\r\n"
+            + "--B\r\nContent-Type: text/plain\r\n\r\nCheap watches here\r\n"
+            + "--B\r\nContent-Type: text/html; charset=UTF-8\r\n"
+            + "Content-Transfer-Encoding: base64\r\n\r\n"
+            + "PHA+TG90dGVyeSB3aW5uZXI8L3A+\r\n"
+            + "--B--\r\n";
+
+    /**
+     * Provides the source of {@link #MAIL}.
+     */
+    private static final class StreamingMail extends InMemoryMailAdapter
+            implements MessageSourceProvider {
+
+        public MessageSource getMessageSource() {
+            return new MessageSource() {
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(MAIL
+                            .getBytes(StandardCharsets.US_ASCII));
+                }
+
+                public long getSize() {
+                    return MAIL.length();
+                }
+            };
+        }
+    }
+
+    private static List<String> evaluate(InMemoryMailAdapter mail,
+            String... tests) throws Exception {
+        final StringBuilder script = new StringBuilder(
+                "require [\"body\", \"fileinto\"];\r\n");
+        for (int i = 0; i < tests.length; i++) {
+            script.append("if ").append(tests[i]).append(" { fileinto \"")
+                    .append(i).append("\"; }\r\n");
+        }
+        new ConfigurationManager().build().interpret(mail,
+                new ByteArrayInputStream(script.toString().getBytes(
+                        StandardCharsets.UTF_8)));
+        final List<String> destinations = new ArrayList<String>();
+        for (final Action action : mail.getActions()) {
+            destinations.add(((ActionFileInto) action).getDestination());
+        }
+        return destinations;
+    }
+
+    @Test
+    public void testIs() throws Exception {
+        assertEquals(Arrays.asList("0", "2", "3"), evaluate(new StreamingMail(),
+                "body :is \"cheap watches here\"",
+                        "body :is \"cheap watches\"",
+                        "body :content \"text/html\" :is \"<P>lottery winner</P>\"",
+                        "body :is :raw :comparator \"i;octet\" \"--B\r\nContent-Type: text/plain\r\n\r\nCheap watches here\r\n"
+                        + "--B\r\nContent-Type: text/html; charset=UTF-8\r\n"
+                        + "Content-Transfer-Encoding: base64\r\n\r\n"
+                        + "PHA+TG90dGVyeSB3aW5uZXI8L3A+\r\n--B--\r\n\""));
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        assertEquals(Arrays.asList("0", "2", "4"), evaluate(new StreamingMail(),
+                "body :matches \"*WATCHES*\"",
+                        "body :matches \"watches*\"",
+                        "body :text :matches [\"nothing\", \"cheap ?atches*\"]",
+                        "body :raw :matches \"*<p>*\"",
+                        "body :matches :raw \"*PHA+*\""));
+    }
+
+    @Test
+    public void testComparator() throws Exception {
+        assertEquals(Arrays.asList("1", "2", "4"), evaluate(new StreamingMail(),
+                "body :comparator \"i;octet\" :contains \"cheap\"",
+                        "body :comparator \"i;octet\" :contains \"Cheap\"",
+                        "body :comparator \"i;ascii-casemap\" :is \"CHEAP WATCHES HERE\"",
+                        "body :comparator \"i;octet\" :is \"CHEAP WATCHES HERE\"",
+                        "body :content \"text\" :comparator \"i;octet\" :matches \"*Lottery*\""));
+    }
+
+    @Test
+    public void testRequiresSource() throws Exception {
+        final InMemoryMailAdapter mail = new InMemoryMailAdapter()
+                .setBody("Cheap watches");
+        try {
+            evaluate(mail, "body :contains \"watches\"",
+                    "body :is \"Cheap watches\"");
+            fail("Expected a mail without source to be refused");
+        } catch (FeatureException e) {
+            // Refused before the first test was executed
+            assertTrue(mail.getActions().isEmpty());
+        }
+    }
+
+    @Test
+    public void testContainsStillSearched() throws Exception {
+        assertEquals(Collections.singletonList("0"), evaluate(
+                new InMemoryMailAdapter().setBody("Cheap watches"),
+                "body :comparator \"i;ascii-casemap\" :contains \"WATCHES\""));
+    }
+}
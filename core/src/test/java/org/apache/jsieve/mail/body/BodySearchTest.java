@@ -0,0 +1,188 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail.body;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.EvaluationLimits;
+import org.apache.jsieve.SieveFactory;
+import org.apache.jsieve.exception.BudgetExceededException;
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.ActionFileInto;
+import org.apache.jsieve.mail.MessageSource;
+import org.apache.jsieve.mail.MessageSourceProvider;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.utils.InMemoryMailAdapter;
+import org.junit.Test;
+
+public class BodySearchTest {
+
+    private static final String MAIL = "Subject: test\r\n"
+            + "Content-Type: multipart/alternative; boundary=\"B\"\r\n\r\n"
+            + "--B\r\nContent-Type: text/plain\r\n\r\nCheap watches here\r\n"
+            + "--B\r\nContent-Type: text/html\r\n\r\n<p>Lottery winner</p>\r\n"
+            + "--B--\r\n";
+
+    private static final String SCRIPT = "require [\"body\", \"fileinto\"];\r\n"
+            + "if body :contains \"watches\" { fileinto \"a\"; }\r\n"
+            + "if body :text :contains [\"absent\", \"lottery\"] { fileinto \"b\"; }\r\n"
+            + "if body :text :contains \"missing\" { fileinto \"c\"; }\r\n"
+            + "if anyof (body :contains \"watches\", body :contains \"cheap\") { fileinto \"d\"; }\r\n"
+            + "if body :raw :contains \"<p>\" { fileinto \"e\"; }\r\n"
+            + "if body :raw :contains \"plain\" { fileinto \"f\"; }\r\n"
+            + "if body :content \"text/html\" :contains \"lottery\" { fileinto \"g\"; }\r\n"
+            + "if body :content [\"TEXT/HTML\"] :contains \"watches\" { fileinto \"h\"; }\r\n";
+
+    /**
+     * Counts the searches made through the adapter.
+     */
+    private static class CountingMail extends InMemoryMailAdapter {
+
+        int searches = 0;
+
+        CountingMail() {
+            setBody("Cheap watches here <p>Lottery winner</p> plain");
+            setContentType("text/html");
+        }
+
+        @Override
+        public boolean isInBodyText(List<String> phrasesCaseInsensitive)
+                throws SieveMailException {
+            searches++;
+            return super.isInBodyText(phrasesCaseInsensitive);
+        }
+    }
+
+    /**
+     * Counts the passes made over the source.
+     */
+    private static final class StreamingMail extends CountingMail implements
+            MessageSourceProvider {
+
+        int passes = 0;
+
+        public MessageSource getMessageSource() {
+            return new MessageSource() {
+                public InputStream getInputStream() {
+                    passes++;
+                    return new ByteArrayInputStream(MAIL
+                            .getBytes(StandardCharsets.US_ASCII));
+                }
+
+                public long getSize() {
+                    return MAIL.length();
+                }
+            };
+        }
+    }
+
+    private static List<String> evaluate(InMemoryMailAdapter mail)
+            throws Exception {
+        return evaluate(new ConfigurationManager().build(), mail);
+    }
+
+    private static List<String> evaluate(SieveFactory factory,
+            InMemoryMailAdapter mail) throws Exception {
+        factory.interpret(mail, new ByteArrayInputStream(SCRIPT
+                .getBytes(StandardCharsets.UTF_8)));
+        final List<String> destinations = new ArrayList<String>();
+        for (final Action action : mail.getActions()) {
+            destinations.add(((ActionFileInto) action).getDestination());
+        }
+        return destinations;
+    }
+
+    @Test
+    public void testOnePassPerTransformation() throws Exception {
+        final StreamingMail mail = new StreamingMail();
+        assertEquals(Arrays.asList("a", "b", "d", "e", "f", "g"),
+                evaluate(mail));
+        // One pass each for :text, :raw and :content "text/html"
+        assertEquals(3, mail.passes);
+        assertEquals(0, mail.searches);
+    }
+
+    @Test
+    public void testEachPassIsChargedOnce() throws Exception {
+        final SieveFactory factory = new ConfigurationManager().build();
+        final EvaluationLimits limits = new EvaluationLimits();
+        limits.setMaxScannedBytes(3 * MAIL.length());
+        factory.setEvaluationLimits(limits);
+        final StreamingMail mail = new StreamingMail();
+        assertEquals(Arrays.asList("a", "b", "d", "e", "f", "g"),
+                evaluate(factory, mail));
+        assertEquals(3, mail.passes);
+
+        limits.setMaxScannedBytes(3 * MAIL.length() - 1);
+        try {
+            evaluate(factory, new StreamingMail());
+            fail("Expected the third pass to exceed the budget");
+        } catch (BudgetExceededException e) {
+            assertEquals(EvaluationLimits.Resource.SCANNED_BYTES, e
+                    .getResource());
+        }
+    }
+
+    @Test
+    public void testAdapterSearchedOncePerKeys() throws Exception {
+        final CountingMail mail = new CountingMail();
+        evaluate(mail);
+        // "watches" is sought twice by the script but once from the adapter
+        assertEquals(7, mail.searches);
+    }
+
+    @Test
+    public void testResultsAreRemembered() throws Exception {
+        final CountingMail mail = new CountingMail();
+        final BodySearch search = new BodySearch(BodySearch.TEXT, null);
+        assertTrue(search.isFound(mail, Arrays.asList("watches"), null));
+        assertTrue(search.isFound(mail, new ArrayList<String>(Arrays
+                .asList("watches")), null));
+        assertFalse(search.isFound(mail, Arrays.asList("absent"), null));
+        assertEquals(2, mail.searches);
+    }
+
+    @Test
+    public void testRegisteredKeysShareAPass() throws Exception {
+        final StreamingMail mail = new StreamingMail();
+        final BodySearch search = new BodySearch(BodySearch.TEXT, null);
+        search.register(Arrays.asList("watches"));
+        search.register(Arrays.asList("absent"));
+        search.register(Arrays.asList("lottery"));
+        assertFalse(search.isFound(mail, Arrays.asList("absent"), null));
+        assertTrue(search.isFound(mail, Arrays.asList("lottery"), null));
+        assertTrue(search.isFound(mail, Arrays.asList("watches"), null));
+        assertEquals(1, mail.passes);
+        // Keys not registered in advance need another pass
+        assertTrue(search.isFound(mail, Arrays.asList("cheap"), null));
+        assertEquals(2, mail.passes);
+    }
+}
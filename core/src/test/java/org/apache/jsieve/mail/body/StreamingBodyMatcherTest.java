@@ -0,0 +1,190 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mail.body;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StreamingBodyMatcherTest {
+
+    private static final String MULTIPART = "From: someone@example.org\r\n"
+            + "Subject: Hello\r\n"
+            + "Content-Type: multipart/mixed; boundary=\"XYZ\"\r\n" + "\r\n"
+            + "Preamble\r\n" + "--XYZ\r\n"
+            + "Content-Type: text/plain; charset=ISO-8859-1\r\n"
+            + "Content-Transfer-Encoding: quoted-printable\r\n" + "\r\n"
+            + "Un caf=E9 noir, s'il vous pla=EEt\r\n" + "--XYZ\r\n"
+            + "Content-Type: text/html; charset=UTF-8\r\n"
+            + "Content-Transfer-Encoding: base64\r\n" + "\r\n"
+            + "PGI+QmlnIFNhbGU8L2I+\r\n" + "--XYZ\r\n"
+            + "Content-Type: application/octet-stream\r\n" + "\r\n"
+            + "binary stuff\r\n" + "--XYZ--\r\n";
+
+    private final StreamingBodyMatcher matcher = new StreamingBodyMatcher();
+
+    private static InputStream source(String mail) {
+        return new ByteArrayInputStream(mail
+                .getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static List<String> list(String... values) {
+        return Arrays.asList(values);
+    }
+
+    @Test
+    public void testTextIsDecoded() throws Exception {
+        assertTrue(matcher.isInBodyText(source(MULTIPART), list("CAFÉ")));
+        assertTrue(matcher.isInBodyText(source(MULTIPART), list("big sale")));
+        assertFalse(matcher.isInBodyText(source(MULTIPART), list("caf=E9")));
+    }
+
+    @Test
+    public void testTextIgnoresOtherTypesAndHeaders() throws Exception {
+        assertFalse(matcher.isInBodyText(source(MULTIPART),
+                list("binary stuff")));
+        assertFalse(matcher.isInBodyText(source(MULTIPART), list("someone")));
+    }
+
+    @Test
+    public void testAnyPhraseMatches() throws Exception {
+        assertTrue(matcher.isInBodyText(source(MULTIPART), list("absent",
+                "plaît", "missing")));
+        assertFalse(matcher.isInBodyText(source(MULTIPART), list("absent",
+                "missing")));
+    }
+
+    @Test
+    public void testContentTypes() throws Exception {
+        assertTrue(matcher.isInBodyContent(source(MULTIPART),
+                list("application"), list("BINARY")));
+        assertTrue(matcher.isInBodyContent(source(MULTIPART),
+                list("TEXT/HTML"), list("<b>")));
+        assertFalse(matcher.isInBodyContent(source(MULTIPART),
+                list("text/plain"), list("<b>")));
+        assertTrue(matcher.isInBodyContent(source(MULTIPART), list(""),
+                list("binary")));
+        assertFalse(matcher.isInBodyContent(source(MULTIPART), list("image"),
+                list("")));
+        assertTrue(matcher.isInBodyContent(source(MULTIPART), list("image",
+                "text"), list("")));
+    }
+
+    @Test
+    public void testRawIsNotDecoded() throws Exception {
+        assertTrue(matcher.isInBodyRaw(source(MULTIPART), list("CAF=e9")));
+        assertTrue(matcher.isInBodyRaw(source(MULTIPART), list("preamble")));
+        assertFalse(matcher.isInBodyRaw(source(MULTIPART), list("café")));
+        assertFalse(matcher.isInBodyRaw(source(MULTIPART), list("Subject")));
+    }
+
+    @Test
+    public void testRawBuffer() throws Exception {
+        final ByteBuffer mail = ByteBuffer.wrap(MULTIPART
+                .getBytes(StandardCharsets.ISO_8859_1));
+        mail.position(StreamingBodyMatcher.getBodyOffset(mail));
+        assertTrue(matcher.isInBodyRaw(mail, list("absent", "CAF=e9")));
+        assertFalse(matcher.isInBodyRaw(mail, list("café")));
+        assertFalse(matcher.isInBodyRaw(mail, list("Subject")));
+        assertTrue(mail.position() > 0);
+    }
+
+    @Test
+    public void testBodyOffset() throws Exception {
+        assertEquals(8, StreamingBodyMatcher.getBodyOffset(ByteBuffer
+                .wrap("A: b\r\n\r\nbody".getBytes(StandardCharsets.US_ASCII))));
+        assertEquals(6, StreamingBodyMatcher.getBodyOffset(ByteBuffer
+                .wrap("A: b\n\nbody".getBytes(StandardCharsets.US_ASCII))));
+        assertEquals(1, StreamingBodyMatcher.getBodyOffset(ByteBuffer
+                .wrap("\nbody".getBytes(StandardCharsets.US_ASCII))));
+        assertEquals(6, StreamingBodyMatcher.getBodyOffset(ByteBuffer
+                .wrap("A: b\r\n".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    public void testRawWithBareLineFeeds() throws Exception {
+        final String mail = "Subject: x\nX-Other: y\n\nBody text\n";
+        assertTrue(matcher.isInBodyRaw(source(mail), list("body TEXT")));
+        assertFalse(matcher.isInBodyRaw(source(mail), list("other")));
+    }
+
+    @Test
+    public void testSinglePartDefaultsToText() throws Exception {
+        final String mail = "Subject: x\r\n\r\nPlain body\r\n";
+        assertTrue(matcher.isInBodyText(source(mail), list("plain")));
+        assertTrue(matcher.isInBodyContent(source(mail), list("text/plain"),
+                list("body")));
+    }
+
+    @Test
+    public void testPhraseSpanningBuffers() throws Exception {
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 4094; i++) {
+            body.append('a');
+        }
+        body.append("needle");
+        final String mail = "Subject: x\r\n\r\n" + body + "\r\n";
+        assertTrue(matcher.isInBodyText(source(mail), list("aneedle")));
+        assertTrue(matcher.isInBodyRaw(source(mail), list("aneedle")));
+        assertFalse(matcher.isInBodyText(source(mail), list("needles")));
+    }
+
+    @Test
+    public void testOverlappingPhrases() throws Exception {
+        final PhraseAutomaton automaton = new PhraseAutomaton(list("he",
+                "she", "hers", "his"), false);
+        assertTrue(find(automaton, "ushers"));
+        assertTrue(find(automaton, "aHIs"));
+        assertFalse(find(automaton, "hxsx"));
+        final PhraseAutomaton nested = new PhraseAutomaton(list("abcd", "bc"),
+                true);
+        assertTrue(find(nested, "xABCx"));
+        assertFalse(find(nested, "acbd"));
+    }
+
+    @Test
+    public void testNoPhrases() throws Exception {
+        assertFalse(matcher.isInBodyText(source(MULTIPART), Collections
+                .<String> emptyList()));
+        assertFalse(matcher.isInBodyRaw(source(MULTIPART), Collections
+                .<String> emptyList()));
+    }
+
+    private static boolean find(PhraseAutomaton automaton, String text) {
+        int state = PhraseAutomaton.START;
+        for (int i = 0; i < text.length(); i++) {
+            state = automaton.next(state, text.charAt(i));
+            if (automaton.isMatch(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
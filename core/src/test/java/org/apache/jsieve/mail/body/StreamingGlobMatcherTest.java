@@ -0,0 +1,152 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+
+package org.apache.jsieve.mail.body;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.jsieve.comparators.ComparatorUtils;
+import org.junit.Test;
+
+public class StreamingGlobMatcherTest {
+
+    private static boolean matches(StreamingGlobMatcher matcher, String text,
+            int chunk) {
+        final StreamingGlobMatcher.Run run = matcher.start();
+        final char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i += chunk) {
+            run.feed(chars, i, Math.min(chunk, chars.length - i));
+        }
+        return run.isMatched();
+    }
+
+    private static boolean matches(StreamingGlobMatcher matcher, String text) {
+        return matches(matcher, text, 3);
+    }
+
+    @Test
+    public void testIs() {
+        final StreamingGlobMatcher matcher = StreamingGlobMatcher.forIs("a*c");
+        assertTrue(matches(matcher, "a*c"));
+        assertFalse(matches(matcher, "abc"));
+        assertFalse(matches(matcher, "a*cd"));
+        assertFalse(matches(matcher, "a*"));
+        assertTrue(matches(StreamingGlobMatcher.forIs(""), ""));
+        assertFalse(matches(StreamingGlobMatcher.forIs(""), "x"));
+    }
+
+    @Test
+    public void testContains() {
+        final StreamingGlobMatcher matcher = StreamingGlobMatcher
+                .forContains("a?c");
+        assertTrue(matches(matcher, "xxa?cxx"));
+        assertFalse(matches(matcher, "xxabcxx"));
+        assertTrue(matches(StreamingGlobMatcher.forContains(""), ""));
+        assertTrue(matches(StreamingGlobMatcher.forContains("aab"), "aaab"));
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(matches(StreamingGlobMatcher.forMatches("a*b?d"), "axxxbcd"));
+        assertFalse(matches(StreamingGlobMatcher.forMatches("a*b?d"), "axxxbd"));
+        assertTrue(matches(StreamingGlobMatcher.forMatches("**"), ""));
+        assertTrue(matches(StreamingGlobMatcher.forMatches("\\*\\?\\\\"), "*?\\"));
+        assertFalse(matches(StreamingGlobMatcher.forMatches("\\*"), "x"));
+        assertTrue(matches(StreamingGlobMatcher.forMatches("\\a"), "\\a"));
+    }
+
+    @Test
+    public void testDecidedEarly() {
+        final StreamingGlobMatcher.Run found = StreamingGlobMatcher
+                .forContains("needle").start();
+        found.feed("hay needle");
+        assertTrue(found.isDecided());
+        assertTrue(found.isMatched());
+
+        final StreamingGlobMatcher.Run failed = StreamingGlobMatcher
+                .forMatches("abc*").start();
+        failed.feed("x");
+        assertTrue(failed.isDecided());
+        assertFalse(failed.isMatched());
+
+        final StreamingGlobMatcher.Run open = StreamingGlobMatcher
+                .forMatches("*abc").start();
+        open.feed("abc");
+        assertFalse(open.isDecided());
+        assertTrue(open.isMatched());
+    }
+
+    @Test
+    public void testReset() {
+        final StreamingGlobMatcher.Run run = StreamingGlobMatcher.forIs("ab")
+                .start();
+        run.feed("abc");
+        assertFalse(run.isMatched());
+        run.reset();
+        run.feed("ab");
+        assertTrue(run.isMatched());
+    }
+
+    @Test
+    public void testLongPattern() {
+        final StringBuilder glob = new StringBuilder();
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            glob.append("x*");
+            text.append("xy");
+        }
+        assertTrue(matches(StreamingGlobMatcher.forMatches(glob.toString()),
+                text.toString()));
+        assertFalse(matches(StreamingGlobMatcher.forMatches(glob + "z"), text
+                .toString()));
+    }
+
+    @Test
+    public void testAgreesWithRegularExpressions() throws Exception {
+        final Random random = new Random(42);
+        final String globAlphabet = "ab*?\\";
+        final String textAlphabet = "ab*?\\";
+        for (int i = 0; i < 20000; i++) {
+            final String glob = random(random, globAlphabet, 6);
+            final String text = random(random, textAlphabet, 8);
+            final boolean expected = ComparatorUtils.matches(text, glob);
+            final StreamingGlobMatcher matcher = StreamingGlobMatcher
+                    .forMatches(glob);
+            for (int chunk = 1; chunk < 4; chunk++) {
+                if (expected != matches(matcher, text, chunk)) {
+                    throw new AssertionError("\"" + glob + "\" against \""
+                            + text + "\" should be " + expected);
+                }
+            }
+        }
+    }
+
+    private static String random(Random random, String alphabet, int length) {
+        final StringBuilder builder = new StringBuilder();
+        final int size = random.nextInt(length + 1);
+        for (int i = 0; i < size; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
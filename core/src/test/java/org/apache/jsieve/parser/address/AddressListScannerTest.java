@@ -0,0 +1,220 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.parser.address;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jsieve.parser.generated.address.ASTaddr_spec;
+import org.apache.jsieve.parser.generated.address.ASTaddress_list;
+import org.apache.jsieve.parser.generated.address.ASTdomain;
+import org.apache.jsieve.parser.generated.address.ASTlocal_part;
+import org.apache.jsieve.parser.generated.address.AddressListParser;
+import org.apache.jsieve.parser.generated.address.ParseException;
+import org.apache.jsieve.parser.generated.address.Token;
+import org.junit.Test;
+
+/**
+ * Checks that {@link AddressListScanner} conforms to the JavaCC address list
+ * grammar, which is used as the reference.
+ */
+public class AddressListScannerTest {
+
+    private static final String[] EXAMPLES = { "", " ", ",", ",,",
+            "coyote@example.org", "coyote@example.org, roadrunner@example.org",
+            "Wile E. Coyote <coyote@example.org>",
+            "\"Coyote, Wile E.\" <coyote@example.org>",
+            "\"wile e\"@example.org", "wile.\"e\"@example.org",
+            "\"wile\".\"e\"@example.org", "wile . e @ example . org",
+            "wile(comment)@example.org", "wile@(comment)example.org",
+            "wile@example.(a (nested) comment)org", "coyote@[127.0.0.1]",
+            "coyote@[127.0.\\0.1]", "<@route.example,@other.example:a@b>",
+            "<@route.example,,@other.example:a@b>",
+            "group: a@b, c@d;", "undisclosed-recipients:;",
+            "group: Name <a@b>, ;, e@f", "\"quoted \\\" pair\"@example.org",
+            "a@b c", "a b@c", "\"a\"b@c", "a@b.", "a.@b", "a@b .", "<a@b",
+            "a@b>", "a@b\r\n", "a@b\r\n c@d", "café@example.org",
+            "\"café\"@example.org", "a@[b[c]", "a@b (unterminated",
+            "\"unterminated@b", "a@b, (comment only)", "a@b; c@d",
+            "What a load of rubbish - not an address in sight!", "@b",
+            "a@", "a..b@c", "a@b..c", "<a@b> <c@d>", "a@b\tc@d" };
+
+    private static final String[] FRAGMENTS = { "a", "bc", "d.e", "f.", ".",
+            "@", ",", ":", ";", "<", ">", " ", "\t", "\"q\"", "\"x y\"",
+            "\"\\\"\"", "(c)", "((n))", "(\\))", "[1.2]", "[\\]]", "\r\n",
+            "é", "\\", "\"", "(", "[", "]", ")" };
+
+    private static final String[] LOCAL_PARTS = { "a", "a.b", "a.\"b\"",
+            "\"a b\"", "\"a\".b", "a . b", "a(c).b", "\"\\\"\"", "a.", "a b" };
+
+    private static final String[] DOMAINS = { "example.org", "b . c",
+            "b(c).d", "[1.2.3.4]", "[1\\.2]", "b.", "b c" };
+
+    private static final String[] PHRASES = { "", "Name ", "\"Some, One\" ",
+            "A. N. Other ", "(c) " };
+
+    private static final String[] SEPARATORS = { ",", ", ", " ,(c)", ",,",
+            " " };
+
+    private static final String[] SPACES = { "", "", " ", "(c)" };
+
+    @Test
+    public void testExamples() throws Exception {
+        final AddressListScanner scanner = new AddressListScanner();
+        for (final String example : EXAMPLES) {
+            assertConforms(scanner, example);
+        }
+    }
+
+    @Test
+    public void testRandomLists() throws Exception {
+        final AddressListScanner scanner = new AddressListScanner();
+        final Random random = new Random(20101);
+        for (int i = 0; i < 20000; i++) {
+            final StringBuilder list = new StringBuilder();
+            final int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                list.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertConforms(scanner, list.toString());
+        }
+    }
+
+    @Test
+    public void testRandomAddresses() throws Exception {
+        final AddressListScanner scanner = new AddressListScanner();
+        final Random random = new Random(3028);
+        for (int i = 0; i < 20000; i++) {
+            final StringBuilder list = new StringBuilder();
+            final int addresses = 1 + random.nextInt(3);
+            for (int j = 0; j < addresses; j++) {
+                if (j > 0) {
+                    list.append(pick(random, SEPARATORS));
+                }
+                final boolean angle = random.nextBoolean();
+                if (angle) {
+                    list.append(pick(random, PHRASES)).append('<');
+                }
+                list.append(pick(random, LOCAL_PARTS)).append(
+                        pick(random, SPACES)).append('@').append(
+                        pick(random, SPACES)).append(pick(random, DOMAINS));
+                if (angle) {
+                    list.append('>');
+                }
+            }
+            if (random.nextInt(4) == 0) {
+                // Damage the list
+                list.insert(random.nextInt(list.length() + 1), pick(random,
+                        FRAGMENTS));
+            }
+            assertConforms(scanner, list.toString());
+        }
+    }
+
+    private String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    @Test
+    public void testOffsets() throws Exception {
+        final AddressListScanner scanner = new AddressListScanner();
+        final String list = "Wile <coyote@example.org>, \"road runner\"@example.org";
+        assertEquals(2, scanner.scan(list));
+        assertEquals(6, scanner.getLocalPartStart(0));
+        assertEquals(12, scanner.getLocalPartEnd(0));
+        assertEquals(13, scanner.getDomainStart(0));
+        assertEquals(24, scanner.getDomainEnd(0));
+        assertEquals("coyote", scanner.getLocalPart(0));
+        assertEquals("example.org", scanner.getDomain(0));
+        assertEquals("\"road runner\"", list.substring(scanner
+                .getLocalPartStart(1), scanner.getLocalPartEnd(1)));
+        assertEquals("road runner", scanner.getLocalPart(1));
+    }
+
+    private void assertConforms(AddressListScanner scanner, String list) {
+        final List<String> expected = parse(list);
+        List<String> actual;
+        try {
+            final int count = scanner.scan(list);
+            actual = new ArrayList<String>(count * 2);
+            for (int i = 0; i < count; i++) {
+                actual.add(scanner.getLocalPart(i));
+                actual.add(scanner.getDomain(i));
+            }
+        } catch (ParseException e) {
+            actual = null;
+        }
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            fail("For '" + list + "' expected " + expected + " but was "
+                    + actual);
+        }
+    }
+
+    /**
+     * Parses using the grammar.
+     * 
+     * @return local parts and domains in turn or null when the list is invalid
+     */
+    private List<String> parse(String list) {
+        final List<String> results = new ArrayList<String>();
+        try {
+            final ASTaddress_list root = new AddressListParser(
+                    new StringReader(list)).parse();
+            root.childrenAccept(new BaseAddressListVisitor() {
+                public Object visit(ASTaddr_spec node, Object data) {
+                    return node.childrenAccept(this, data);
+                }
+
+                public Object visit(ASTlocal_part node, Object data) {
+                    results.add(contents(node));
+                    return data;
+                }
+
+                public Object visit(ASTdomain node, Object data) {
+                    if (node.jjtGetParent() instanceof ASTaddr_spec) {
+                        results.add(contents(node));
+                    }
+                    return data;
+                }
+            }, null);
+            return results;
+        } catch (ParseException e) {
+            return null;
+        } catch (Error e) {
+            return null;
+        }
+    }
+
+    private String contents(AddressNode node) {
+        final StringBuilder buffer = new StringBuilder();
+        Token next = node.firstToken;
+        while (next != node.lastToken) {
+            buffer.append(next.image);
+            next = next.next;
+        }
+        buffer.append(node.lastToken.image);
+        return buffer.toString();
+    }
+}
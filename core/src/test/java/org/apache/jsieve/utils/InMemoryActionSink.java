@@ -0,0 +1,123 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.ActionSink;
+
+/**
+ * <p>
+ * Class InMemoryActionSink implements an {@link ActionSink} which records,
+ * in memory, each call made to it as a line such as
+ * <code>fileinto a [m1, m2]</code>, and the mailboxes into which each mail
+ * has been filed.
+ * </p>
+ * 
+ * <p>
+ * Targets may be made to fail, so that tests may check how failures are
+ * handled.
+ * </p>
+ */
+public class InMemoryActionSink<M> implements ActionSink<M> {
+
+    private final List<String> calls = new ArrayList<String>();
+
+    private final Map<M, List<String>> mailboxes = new LinkedHashMap<M, List<String>>();
+
+    private final Map<M, List<Action>> failures = new LinkedHashMap<M, List<Action>>();
+
+    private final Set<String> failing = new HashSet<String>();
+
+    /**
+     * Makes calls for the given target fail, such as <code>fileinto a</code>
+     * or <code>keep</code>.
+     */
+    public synchronized InMemoryActionSink<M> failOn(String target) {
+        failing.add(target);
+        return this;
+    }
+
+    public synchronized List<String> getCalls() {
+        return new ArrayList<String>(calls);
+    }
+
+    public synchronized List<String> getMailboxes(M mail) {
+        final List<String> result = mailboxes.get(mail);
+        return result == null ? new ArrayList<String>() : new ArrayList<String>(result);
+    }
+
+    public synchronized Map<M, List<Action>> getFailures() {
+        return new LinkedHashMap<M, List<Action>>(failures);
+    }
+
+    public void fileInto(String destination, List<M> mails)
+            throws SieveException {
+        record("fileinto " + destination, mails, destination);
+    }
+
+    public void keep(List<M> mails) throws SieveException {
+        record("keep", mails, "INBOX");
+    }
+
+    public void redirect(String address, List<M> mails) throws SieveException {
+        record("redirect " + address, mails, null);
+    }
+
+    public void reject(String reason, List<M> mails) throws SieveException {
+        record("reject " + reason, mails, null);
+    }
+
+    public void execute(Action action, M mail) throws SieveException {
+        final List<M> mails = new ArrayList<M>();
+        mails.add(mail);
+        record("execute " + action.getClass().getSimpleName(), mails, null);
+    }
+
+    public synchronized void failed(M mail, List<Action> actions,
+            SieveException cause) {
+        failures.put(mail, new ArrayList<Action>(actions));
+    }
+
+    private synchronized void record(String target, List<M> mails,
+            String mailbox) throws SieveException {
+        if (failing.contains(target)) {
+            throw new SieveException("Failed " + target);
+        }
+        calls.add(target + " " + mails);
+        if (mailbox != null) {
+            for (final M mail : mails) {
+                List<String> filed = mailboxes.get(mail);
+                if (filed == null) {
+                    filed = new ArrayList<String>();
+                    mailboxes.put(mail, filed);
+                }
+                filed.add(mailbox);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.jsieve.SieveContext;
+import org.apache.jsieve.exception.SieveException;
+import org.apache.jsieve.mail.Action;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MailUtils;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.parser.address.SieveAddressBuilder;
+
+/**
+ * <p>
+ * Class InMemoryMailAdapter implements a mock MailAdapter over headers and a
+ * plain text body held in memory. Unlike {@link SieveMailAdapter} it does not
+ * require JavaMail.
+ * </p>
+ * 
+ * <p>
+ * The number of calls made to read headers is recorded so that tests may
+ * check how often the mail is consulted.
+ * </p>
+ */
+public class InMemoryMailAdapter implements MailAdapter {
+
+    private final List<String> names = new ArrayList<String>();
+
+    private final List<String> values = new ArrayList<String>();
+
+    private final List<Action> actions = new ArrayList<Action>();
+
+    private String body = "";
+
+    private String contentType = "text/plain";
+
+    private int headerReads;
+
+    public InMemoryMailAdapter addHeader(String name, String value) {
+        names.add(name);
+        values.add(value);
+        return this;
+    }
+
+    public InMemoryMailAdapter setBody(String body) {
+        this.body = body;
+        return this;
+    }
+
+    public InMemoryMailAdapter setContentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    /**
+     * Gets the number of calls made to {@link #getHeader(String)} and
+     * {@link #getHeaderNames()}.
+     * 
+     * @return number of reads
+     */
+    public int getHeaderReads() {
+        return headerReads;
+    }
+
+    public void setContext(SieveContext context) {
+    }
+
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    public void addAction(Action action) {
+        actions.add(action);
+    }
+
+    public void executeActions() throws SieveException {
+    }
+
+    public List<String> getHeader(String name) throws SieveMailException {
+        headerReads++;
+        final List<String> result = new ArrayList<String>();
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equals(name)) {
+                result.add(values.get(i));
+            }
+        }
+        return result;
+    }
+
+    public List<String> getHeaderNames() throws SieveMailException {
+        headerReads++;
+        final List<String> result = new ArrayList<String>();
+        for (final String name : names) {
+            if (!result.contains(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    public List<String> getMatchingHeader(String name)
+            throws SieveMailException {
+        return MailUtils.getMatchingHeader(this, name);
+    }
+
+    public int getSize() throws SieveMailException {
+        int size = body.length() + 2;
+        for (int i = 0; i < names.size(); i++) {
+            size += names.get(i).length() + values.get(i).length() + 4;
+        }
+        return size;
+    }
+
+    public String getContentType() throws SieveMailException {
+        return contentType;
+    }
+
+    public boolean isInBodyText(List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        final String text = body.toLowerCase(Locale.US);
+        for (final String phrase : phrasesCaseInsensitive) {
+            if (text.contains(phrase.toLowerCase(Locale.US))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isInBodyRaw(List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        return isInBodyText(phrasesCaseInsensitive);
+    }
+
+    public boolean isInBodyContent(List<String> contentTypes,
+            List<String> phrasesCaseInsensitive) throws SieveMailException {
+        return contentTypes.contains(contentType)
+                && isInBodyText(phrasesCaseInsensitive);
+    }
+
+    public Address[] parseAddresses(String headerName)
+            throws SieveMailException {
+        try {
+            final SieveAddressBuilder builder = new SieveAddressBuilder();
+            for (final String value : getMatchingHeader(headerName)) {
+                builder.addAddresses(value);
+            }
+            return builder.getAddresses();
+        } catch (org.apache.jsieve.parser.generated.address.ParseException ex) {
+            throw new SieveMailException(ex);
+        }
+    }
+}
@@ -20,12 +20,14 @@
 package org.apache.jsieve.utils;
 
 import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
 
 import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.SieveFactory;
 import org.apache.jsieve.exception.SieveException;
 import org.apache.jsieve.mail.MailAdapter;
 import org.apache.jsieve.parser.generated.Node;
@@ -62,6 +64,20 @@ public class JUnitUtils {
                 new ByteArrayInputStream(script.getBytes()));
     }
 
+    /**
+     * Method parse parses a script using the given factory, so that the
+     * limits and extensions configured on it apply.
+     * 
+     * @param factory
+     * @param script
+     * @throws ParseException
+     */
+    static public Node parse(SieveFactory factory, String script)
+            throws ParseException {
+        return factory.parse(new ByteArrayInputStream(script
+                .getBytes(StandardCharsets.UTF_8)));
+    }
+
     /**
      * Method createMimeMessage answers an empty MimeMessage.
      * 
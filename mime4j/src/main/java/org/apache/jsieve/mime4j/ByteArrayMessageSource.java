@@ -0,0 +1,71 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mime4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.jsieve.mail.BufferedMessageSource;
+import org.apache.jsieve.mail.MessageSource;
+import org.apache.jsieve.mail.body.StreamingBodyMatcher;
+
+/**
+ * {@link MessageSource} over a mail held in memory. The bytes are not copied
+ * and should not be changed once the source has been created.
+ */
+public class ByteArrayMessageSource implements BufferedMessageSource {
+
+    private final byte[] bytes;
+
+    /**
+     * Constructs a source over the given raw mail.
+     * 
+     * @param bytes
+     *            raw mail, not null
+     */
+    public ByteArrayMessageSource(final byte[] bytes) {
+        super();
+        this.bytes = bytes;
+    }
+
+    /**
+     * @see MessageSource#getInputStream()
+     */
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * @see MessageSource#getSize()
+     */
+    public long getSize() {
+        return bytes.length;
+    }
+
+    /**
+     * @see BufferedMessageSource#getBody()
+     */
+    public ByteBuffer getBody() {
+        final ByteBuffer body = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        body.position(StreamingBodyMatcher.getBodyOffset(body));
+        return body;
+    }
+}
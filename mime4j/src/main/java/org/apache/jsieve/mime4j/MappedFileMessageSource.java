@@ -0,0 +1,136 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mime4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.jsieve.mail.BufferedMessageSource;
+import org.apache.jsieve.mail.ByteBufferInputStream;
+import org.apache.jsieve.mail.body.StreamingBodyMatcher;
+
+/**
+ * <p>
+ * {@link BufferedMessageSource} over a spool file mapped into memory.
+ * </p>
+ * 
+ * <p>
+ * The file is mapped read only when the source is constructed and its
+ * channel closed straight away; the mapping remains valid until it is garbage
+ * collected. The size is the length of the file. The body is located by a
+ * single scan for the blank line ending the header block, made the first time
+ * it is needed. Streams and views read the mapping directly, so the mail is
+ * never copied onto the heap.
+ * </p>
+ * 
+ * <p>
+ * The file should not be changed while the source is in use. Instances may
+ * be shared between threads.
+ * </p>
+ */
+public class MappedFileMessageSource implements BufferedMessageSource {
+
+    private final MappedByteBuffer mapped;
+
+    private volatile int bodyOffset = -1;
+
+    /**
+     * Maps the given spool file.
+     * 
+     * @param file
+     *            <code>File</code>, not null
+     * @throws IOException
+     *             when the file cannot be mapped, or is larger than
+     *             <code>Integer.MAX_VALUE</code> bytes
+     */
+    public MappedFileMessageSource(final File file) throws IOException {
+        this(file.toPath());
+    }
+
+    /**
+     * Maps the given spool file.
+     * 
+     * @param path
+     *            <code>Path</code>, not null
+     * @throws IOException
+     *             when the file cannot be mapped, or is larger than
+     *             <code>Integer.MAX_VALUE</code> bytes
+     */
+    public MappedFileMessageSource(final Path path) throws IOException {
+        super();
+        final FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Mail too large to map: " + path);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @see org.apache.jsieve.mail.MessageSource#getInputStream()
+     */
+    public InputStream getInputStream() {
+        return new ByteBufferInputStream(mapped.duplicate());
+    }
+
+    /**
+     * Answers the length of the file when it was mapped.
+     * 
+     * @see org.apache.jsieve.mail.MessageSource#getSize()
+     */
+    public long getSize() {
+        return mapped.capacity();
+    }
+
+    /**
+     * @see BufferedMessageSource#getBody()
+     */
+    public ByteBuffer getBody() {
+        final ByteBuffer body = mapped.asReadOnlyBuffer();
+        body.position(getBodyOffset());
+        return body;
+    }
+
+    /**
+     * Answers the offset within the file of the first byte of the body.
+     * 
+     * @return offset, equal to the size when the mail has no body
+     */
+    public int getBodyOffset() {
+        int offset = bodyOffset;
+        if (offset < 0) {
+            // Benign race: every thread computes the same value
+            offset = StreamingBodyMatcher.getBodyOffset(mapped.duplicate());
+            bodyOffset = offset;
+        }
+        return offset;
+    }
+}
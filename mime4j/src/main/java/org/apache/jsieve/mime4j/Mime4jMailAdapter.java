@@ -0,0 +1,197 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mime4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.jsieve.mail.BufferedMessageSource;
+import org.apache.jsieve.mail.HeaderBlockMailAdapter;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageSource;
+import org.apache.jsieve.mail.MessageSourceProvider;
+import org.apache.jsieve.mail.SieveMailException;
+import org.apache.jsieve.mail.body.StreamingBodyMatcher;
+
+/**
+ * <p>
+ * {@link MailAdapter} reading the raw source of a mail with <a
+ * href='http://james.apache.org/mime4j'>Apache Mime4J</a>.
+ * </p>
+ * 
+ * <p>
+ * Only the header block is read when the adapter is constructed, and headers
+ * are answered as by {@link HeaderBlockMailAdapter}. The body is not read
+ * until a body test is evaluated, and then it is streamed from the
+ * {@link MessageSource} without being retained. The size is answered by the
+ * source without reading the mail.
+ * </p>
+ * 
+ * <p>
+ * Actions are accumulated by {@link #addAction(org.apache.jsieve.mail.Action)}.
+ * {@link #executeActions()} does nothing: subclasses may override it to apply
+ * the actions, or callers may apply those answered by {@link #getActions()}
+ * once the script has been evaluated.
+ * </p>
+ * 
+ * <p>
+ * Apart from the actions and the decoded headers, instances are not changed
+ * after construction. A new adapter should be created for each evaluation.
+ * </p>
+ */
+public class Mime4jMailAdapter extends HeaderBlockMailAdapter {
+
+    private final MessageSource source;
+
+    private final StreamingBodyMatcher bodyMatcher;
+
+    /**
+     * Constructs an adapter over a mail held in memory.
+     * 
+     * @param bytes
+     *            raw mail, not null
+     * @throws SieveMailException
+     *             when the header block cannot be read
+     */
+    public Mime4jMailAdapter(final byte[] bytes) throws SieveMailException {
+        this(new ByteArrayMessageSource(bytes));
+    }
+
+    /**
+     * Constructs an adapter over the given source, reading its header block
+     * with {@link StreamingBodyMatcher#DEFAULT_CONFIG}.
+     * 
+     * @param source
+     *            <code>MessageSource</code>, not null
+     * @throws SieveMailException
+     *             when the header block cannot be read
+     */
+    public Mime4jMailAdapter(final MessageSource source)
+            throws SieveMailException {
+        this(source, StreamingBodyMatcher.DEFAULT_CONFIG);
+    }
+
+    /**
+     * Constructs an adapter over the given source, reading it with the given
+     * configuration.
+     * 
+     * @param source
+     *            <code>MessageSource</code>, not null
+     * @param config
+     *            <code>MimeConfig</code>, not null
+     * @throws SieveMailException
+     *             when the header block cannot be read
+     */
+    public Mime4jMailAdapter(final MessageSource source, final MimeConfig config)
+            throws SieveMailException {
+        super(open(source), config);
+        this.source = source;
+        this.bodyMatcher = new StreamingBodyMatcher(config);
+    }
+
+    /**
+     * @see MessageSourceProvider#getMessageSource()
+     */
+    @Override
+    public MessageSource getMessageSource() {
+        return source;
+    }
+
+    /**
+     * Answers the size of the source, or <code>Integer.MAX_VALUE</code> when
+     * this is larger.
+     * 
+     * @see MailAdapter#getSize()
+     */
+    @Override
+    public int getSize() throws SieveMailException {
+        try {
+            return (int) Math.min(source.getSize(), Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        }
+    }
+
+    /**
+     * @see MailAdapter#isInBodyText(List)
+     */
+    @Override
+    public boolean isInBodyText(final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        final InputStream in = open(source);
+        try {
+            return bodyMatcher.isInBodyText(in, phrasesCaseInsensitive);
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Searches a {@link BufferedMessageSource} in place, otherwise streams the
+     * source.
+     * 
+     * @see MailAdapter#isInBodyRaw(List)
+     */
+    @Override
+    public boolean isInBodyRaw(final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        if (source instanceof BufferedMessageSource) {
+            try {
+                return bodyMatcher.isInBodyRaw(((BufferedMessageSource) source)
+                        .getBody(), phrasesCaseInsensitive);
+            } catch (IOException e) {
+                throw new SieveMailException(e);
+            }
+        }
+        final InputStream in = open(source);
+        try {
+            return bodyMatcher.isInBodyRaw(in, phrasesCaseInsensitive);
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * @see MailAdapter#isInBodyContent(List, List)
+     */
+    @Override
+    public boolean isInBodyContent(final List<String> contentTypes,
+            final List<String> phrasesCaseInsensitive)
+            throws SieveMailException {
+        final InputStream in = open(source);
+        try {
+            return bodyMatcher.isInBodyContent(in, contentTypes,
+                    phrasesCaseInsensitive);
+        } finally {
+            close(in);
+        }
+    }
+
+    private static InputStream open(final MessageSource source)
+            throws SieveMailException {
+        try {
+            return source.getInputStream();
+        } catch (IOException e) {
+            throw new SieveMailException(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mime4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileMessageSourceTest {
+
+    private static final String HEADER = "Subject: spooled\r\nX-Raw: needle\r\n\r\n";
+
+    private static final String BODY = "Body with a NEEDLE=20in it\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedFileMessageSource spool(String mail) throws Exception {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), mail.getBytes(StandardCharsets.US_ASCII));
+        return new MappedFileMessageSource(file);
+    }
+
+    @Test
+    public void testSizeIsFileLength() throws Exception {
+        assertEquals(HEADER.length() + BODY.length(), spool(HEADER + BODY)
+                .getSize());
+    }
+
+    @Test
+    public void testBody() throws Exception {
+        final MappedFileMessageSource source = spool(HEADER + BODY);
+        assertEquals(HEADER.length(), source.getBodyOffset());
+        final ByteBuffer body = source.getBody();
+        assertTrue(body.isReadOnly());
+        assertEquals(BODY.length(), body.remaining());
+        assertEquals('B', body.get(body.position()));
+    }
+
+    @Test
+    public void testNoBody() throws Exception {
+        final MappedFileMessageSource source = spool("Subject: none\r\n");
+        assertEquals(source.getSize(), source.getBodyOffset());
+        assertEquals(0, source.getBody().remaining());
+    }
+
+    @Test
+    public void testStreamsAreIndependent() throws Exception {
+        final MappedFileMessageSource source = spool(HEADER + BODY);
+        final InputStream first = source.getInputStream();
+        assertEquals('S', first.read());
+        final byte[] all = new byte[(int) source.getSize() + 1];
+        final InputStream second = source.getInputStream();
+        assertEquals(all.length - 1, second.read(all));
+        assertEquals(-1, second.read(all));
+        assertEquals('u', first.read());
+    }
+
+    @Test
+    public void testRawBodySearch() throws Exception {
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(spool(HEADER
+                + BODY));
+        assertTrue(mail.isInBodyRaw(Arrays.asList("needle=20")));
+        assertFalse(mail.isInBodyRaw(Arrays.asList("spooled")));
+        assertTrue(mail.isInBodyText(Arrays.asList("body with")));
+        assertEquals(HEADER.length() + BODY.length(), mail.getSize());
+    }
+
+    @Test
+    public void testEvaluation() throws Exception {
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(spool(HEADER
+                + BODY));
+        final String script = "require \"body\"; if allof (size :under 100, body :raw :contains \"needle\") { discard; }";
+        new ConfigurationManager().build().interpret(mail,
+                new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(ActionDiscard.class, mail.getActions().get(0).getClass());
+    }
+}
@@ -0,0 +1,176 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.jsieve.mime4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jsieve.ConfigurationManager;
+import org.apache.jsieve.mail.ActionDiscard;
+import org.apache.jsieve.mail.ActionKeep;
+import org.apache.jsieve.mail.MailAdapter;
+import org.apache.jsieve.mail.MessageSource;
+import org.junit.Test;
+
+public class Mime4jMailAdapterTest {
+
+    private static final String MAIL = "From: \"Some One\" <someone@Example.ORG>\r\n"
+            + "To: a@example.org, b@example.net\r\n"
+            + "Subject: =?ISO-8859-1?Q?Caf=E9?=\r\n folded\r\n"
+            + "X-Tag: one\r\n" + "x-tag : two\r\n"
+            + "Content-Type: text/plain; charset=ISO-8859-1\r\n"
+            + "Content-Transfer-Encoding: quoted-printable\r\n" + "\r\n"
+            + "Un caf=E9 noir\r\n";
+
+    /**
+     * Counts the streams opened over a mail held in memory.
+     */
+    private static final class CountingSource implements MessageSource {
+
+        private final byte[] bytes;
+
+        private int opened = 0;
+
+        CountingSource(String mail) {
+            bytes = mail.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        public InputStream getInputStream() throws IOException {
+            opened++;
+            return new ByteArrayInputStream(bytes);
+        }
+
+        public long getSize() {
+            return bytes.length;
+        }
+    }
+
+    private static List<String> list(String... values) {
+        return Arrays.asList(values);
+    }
+
+    @Test
+    public void testHeaders() throws Exception {
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(MAIL
+                .getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(list("From", "To", "Subject", "X-Tag", "x-tag",
+                "Content-Type", "Content-Transfer-Encoding"), mail
+                .getHeaderNames());
+        assertEquals(list("one"), mail.getHeader("X-Tag"));
+        assertEquals(Collections.emptyList(), mail.getHeader("x-Tag"));
+        assertEquals(list("one", "two"), mail.getMatchingHeader(" X-TAG"));
+        assertEquals(list("=?ISO-8859-1?Q?Caf=E9?= folded"), mail
+                .getMatchingHeader("subject"));
+        assertEquals("text/plain; charset=ISO-8859-1", mail.getContentType());
+    }
+
+    @Test
+    public void testRawHeaders() throws Exception {
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(MAIL
+                .getBytes(StandardCharsets.ISO_8859_1));
+        final List<ByteBuffer> tags = mail.getRawMatchingHeader("X-TAG ");
+        assertEquals(2, tags.size());
+        assertEquals("one", string(tags.get(0)));
+        assertEquals("two", string(tags.get(1)));
+        assertEquals("=?ISO-8859-1?Q?Caf=E9?=\r\n folded", string(mail
+                .getRawMatchingHeader("subject").get(0)));
+        assertTrue(mail.getRawMatchingHeader("cc").isEmpty());
+    }
+
+    @Test
+    public void testAddresses() throws Exception {
+        final MailAdapter.Address[] addresses = new Mime4jMailAdapter(MAIL
+                .getBytes(StandardCharsets.ISO_8859_1)).parseAddresses("to");
+        assertEquals(2, addresses.length);
+        assertEquals("a", addresses[0].getLocalPart());
+        assertEquals("example.net", addresses[1].getDomain());
+    }
+
+    @Test
+    public void testOnlyHeaderIsReadUpFront() throws Exception {
+        final CountingSource source = new CountingSource(MAIL);
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(source);
+        assertEquals(1, source.opened);
+        assertEquals(MAIL.length(), mail.getSize());
+        mail.getMatchingHeader("from");
+        assertEquals(1, source.opened);
+        assertTrue(mail.isInBodyText(list("CAFÉ")));
+        assertEquals(2, source.opened);
+    }
+
+    @Test
+    public void testBody() throws Exception {
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(MAIL
+                .getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(mail.isInBodyText(list("noir")));
+        assertFalse(mail.isInBodyText(list("subject")));
+        assertTrue(mail.isInBodyRaw(list("caf=e9")));
+        assertTrue(mail.isInBodyContent(list("text/plain"), list("café")));
+        assertFalse(mail.isInBodyContent(list("image"), list("café")));
+    }
+
+    @Test
+    public void testNoBody() throws Exception {
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(
+                "Subject: only\r\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(list("only"), mail.getMatchingHeader("subject"));
+        assertEquals("text/plain", mail.getContentType());
+        assertFalse(mail.isInBodyText(list("only")));
+    }
+
+    @Test
+    public void testEvaluation() throws Exception {
+        assertEquals(ActionDiscard.class, evaluate("if header :contains \"subject\" \"CAFÉ FOLDED\" { discard; }"));
+        assertEquals(ActionDiscard.class, evaluate("if address :domain :is \"from\" \"example.org\" { discard; }"));
+        assertEquals(ActionDiscard.class, evaluate("require \"body\"; if body :contains \"café noir\" { discard; }"));
+        assertEquals(ActionKeep.class, evaluate("require \"body\"; if body :raw :contains \"café\" { discard; }"));
+        assertEquals(ActionDiscard.class, evaluate("if size :under 1000 { discard; }"));
+        assertEquals(ActionDiscard.class, evaluate("if header :is \"x-tag\" \"TWO\" { discard; }"));
+        assertEquals(ActionKeep.class, evaluate("if header :comparator \"i;octet\" :is \"x-tag\" \"TWO\" { discard; }"));
+        assertEquals(ActionDiscard.class, evaluate("if header :matches \"to\" \"*@example.?et\" { discard; }"));
+        assertEquals(ActionDiscard.class, evaluate("if header :contains \"cc\" \"\" { discard; }"));
+        assertEquals(ActionKeep.class, evaluate("if header :is \"cc\" \"\" { discard; }"));
+    }
+
+    private static String string(ByteBuffer value) {
+        final byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private Class<?> evaluate(String script) throws Exception {
+        final Mime4jMailAdapter mail = new Mime4jMailAdapter(MAIL
+                .getBytes(StandardCharsets.ISO_8859_1));
+        new ConfigurationManager().build().interpret(mail,
+                new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, mail.getActions().size());
+        return mail.getActions().get(0).getClass();
+    }
+}